@@ -77,8 +77,7 @@ public class AddEmployee_Interface extends JFrame implements ActionListener
 			admin.setVisible(false);
 			admin.dispose();
 			
-                        POSSystem sys=new POSSystem();
-			admin = new Admin_Interface(sys);
+			admin = new Admin_Interface(admin.system1);
 			admin.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 			admin.setVisible(true);
 			
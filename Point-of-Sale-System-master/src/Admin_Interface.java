@@ -4,6 +4,7 @@ import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
+import java.time.LocalDate;
 import java.util.List;
 
 import javax.swing.JButton;
@@ -26,6 +27,8 @@ public class Admin_Interface extends JFrame implements ActionListener{
 	private JButton updateButton;
 	private JButton cashierButton;
 	private JButton LogOutButton;
+	private JButton salesButton;
+	private JButton zReportButton;
 	private JTextArea textShow;
 	private JScrollPane scroll;
 	POSSystem system1;
@@ -71,6 +74,14 @@ public class Admin_Interface extends JFrame implements ActionListener{
 		LogOutButton.setBounds(xSize*4/5,ySize*6/8,150,80);
 		add(LogOutButton);
 		
+		salesButton = new JButton("Today's Sales");
+		salesButton.setBounds(xSize*4/5-170,ySize/8,150,80);
+		add(salesButton);
+		
+		zReportButton = new JButton("Z Report");
+		zReportButton.setBounds(xSize*4/5-170,ySize*2/8,150,80);
+		add(zReportButton);
+		
 		textShow=new JTextArea();  
 		textShow.setBackground(Color.white);  
 		textShow.setForeground(Color.black);  
@@ -92,11 +103,24 @@ public class Admin_Interface extends JFrame implements ActionListener{
 		updateButton.addActionListener(this);
 		cashierButton.addActionListener(this);
 		LogOutButton.addActionListener(this);
+		salesButton.addActionListener(this);
+		zReportButton.addActionListener(this);
 	}
 	
 	
 	public void actionPerformed(ActionEvent event)
 	{
+		if (!system1.touch())
+		{
+			//idle too long, the session manager has logged the admin out
+			JOptionPane.showMessageDialog(null, "Your session has expired, please log in again");
+			Login_Interface login = new Login_Interface();
+			login.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+			login.setVisible(true);
+			this.setVisible(false);
+			dispose();
+			return;
+		}
 		if (event.getSource() == addButton)
 		{
 			AddEmployee_Interface empInterface = new AddEmployee_Interface(true,this);
@@ -133,8 +157,7 @@ public class Admin_Interface extends JFrame implements ActionListener{
 		
 		if (event.getSource() == cashierButton) //enter cashier interface
 		{
-                    POSSystem sys=new POSSystem();
-			Cashier_Interface cashier = new Cashier_Interface(sys);
+			Cashier_Interface cashier = new Cashier_Interface(system1);
 			cashier.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 			cashier.setVisible(true);
 			
@@ -142,6 +165,29 @@ public class Admin_Interface extends JFrame implements ActionListener{
 			dispose();
 		}
 		
+		if (event.getSource() == salesButton) //running totals kept at checkout
+		{
+			SalesAggregates.DayTotal today = SalesAggregates.forFile(SalesJournal.journalFile).day(LocalDate.now());
+			JOptionPane.showMessageDialog(null, String.format("Sales: %d (%d items)%nRevenue: $%.2f%nTax: $%.2f%n"
+					+ "Coupons: $%.2f%nReturns: %d ($%.2f refunded)%nLate fees: $%.2f", today.getSales(), today.getUnits(),
+					today.getRevenue(), today.getTax(), today.getCouponDiscount(), today.getReturns(), today.getRefunds(),
+					today.getLateFees()), "Sales for " + today.getDay(), JOptionPane.INFORMATION_MESSAGE);
+		}
+		
+		if (event.getSource() == zReportButton) //closing report of today, read from the sales journal
+		{
+			ZReport report = ZReport.forDay(SalesJournal.journalFile, LocalDate.now());
+			if (report == null)
+				JOptionPane.showMessageDialog(null, "Unable to read the sales journal");
+			else
+			{
+				JTextArea reportText = new JTextArea(report.format());
+				reportText.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
+				reportText.setEditable(false);
+				JOptionPane.showMessageDialog(null, reportText, "Z Report", JOptionPane.INFORMATION_MESSAGE);
+			}
+		}
+		
 		if (event.getSource() == LogOutButton) //logs out
 		{
 			//Registering logout
@@ -167,10 +213,11 @@ public class Admin_Interface extends JFrame implements ActionListener{
 		{
 			//Organizes the scrollable text area
 			String employeeString;
+			String password = PasswordHasher.isHashed(temp.getPassword()) ? "********" : temp.getPassword();
 			if (temp.getName().length() >= 12)
-				employeeString = temp.getUsername() + "\t" + temp.getPosition() + " \t"  + temp.getName() + "\t" + temp.getPassword() + "\n";
+				employeeString = temp.getUsername() + "\t" + temp.getPosition() + " \t"  + temp.getName() + "\t" + password + "\n";
 			else
-				employeeString = temp.getUsername() + "\t" + temp.getPosition() + " \t"  + temp.getName() + "\t\t" + temp.getPassword() + "\n";
+				employeeString = temp.getUsername() + "\t" + temp.getPosition() + " \t"  + temp.getName() + "\t\t" + password + "\n";
 			textShow.append(employeeString);
 		}
 	}
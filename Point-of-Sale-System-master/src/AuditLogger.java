@@ -0,0 +1,287 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+//Writes the employee login/logout lines of the employee log in the background. Callers only put an
+//event on a bounded queue, and block when it is full instead of growing it. A single writer thread
+//waits up to the flush interval for more events, formats the batch and appends it to the log file
+//with one write on a channel that stays open. The file is reopened if it was moved or deleted, which
+//is how the log is rotated into segments by SegmentedLog after a batch makes it too large or too old.
+//A batch that cannot be written is retried a few times, one flush interval apart, and then counted and
+//reported as lost rather than as written.
+public class AuditLogger implements Closeable
+{
+  public static String logFile = "Database/employeeLogfile.txt";
+  public static int defaultCapacity = 4096;
+  public static long defaultFlushMillis = 200;
+  public static int retries = 3; //further attempts at writing a batch before it is given up
+
+  //DateTimeFormatter is immutable, unlike the SimpleDateFormat the log was written with
+  private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+  private static final Event STOP = new Event(null, null, null, null, 0);
+
+  //Singleton design pattern applied, every POSSystem of this register shares the writer
+  private static AuditLogger uniqueInstance = null;
+
+  static class Event
+  {
+    final String name, username, position, action;
+    final long time;
+
+    Event(String name, String username, String position, String action, long time)
+    {
+      this.name = name; this.username = username; this.position = position; this.action = action; this.time = time;
+    }
+  }
+
+  private final File file;
+  private final long flushMillis;
+  private final ArrayBlockingQueue<Event> queue;
+  private final Thread writer;
+  private FileChannel channel = null;
+  private Object channelKey = null; //identity of the file the channel writes to
+
+  //events accepted and events done with, flush waits for the second to catch up with the first
+  private long enqueued = 0;
+  private long written = 0; //including the lost ones
+  private long lost = 0;
+  private final Object progress = new Object();
+
+  public AuditLogger(String logFile, int capacity, long flushMillis)
+  {
+    this.file = new File(logFile);
+    this.flushMillis = flushMillis;
+    this.queue = new ArrayBlockingQueue<Event>(capacity);
+    this.writer = new Thread(this::run, "audit-logger");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  public static synchronized AuditLogger getInstance()
+  {
+    if (uniqueInstance == null)
+    {
+      final AuditLogger logger = new AuditLogger(logFile, defaultCapacity, defaultFlushMillis);
+      //the writer is a daemon, events still queued when the register exits are written here
+      Runtime.getRuntime().addShutdownHook(new Thread(logger::flush));
+      uniqueInstance = logger;
+    }
+    return uniqueInstance;
+  }
+
+  public void logIn(String username, String name, String position, long time)
+  {
+    log(new Event(name, username, position, "logs into", time));
+  }
+
+  public void logOut(String username, String name, String position, long time)
+  {
+    log(new Event(name, username, position, "logs out of", time));
+  }
+
+  private void log(Event event)
+  {
+    synchronized (progress)
+    {
+      enqueued++;
+    }
+    try {
+      queue.put(event); //backpressure, waits for the writer when the queue is full
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      eventLost(1); //dropped, flush must not wait for it
+    }
+  }
+
+  //the log line of a login or logout
+  static String format(Event event)
+  {
+    return event.name + " (" + event.username + " " + event.position + ") " + event.action
+      + " POS System. Time: " + TIME.format(Instant.ofEpochMilli(event.time));
+  }
+
+  //waits until every event logged before this call is in the file
+  public void flush()
+  {
+    synchronized (progress)
+    {
+      long target = enqueued;
+      try {
+        while (written < target && writer.isAlive())
+          progress.wait(flushMillis + 1000);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  //events that never made it into the file
+  public long getLost()
+  {
+    synchronized (progress)
+    {
+      return lost;
+    }
+  }
+
+  public void close()
+  {
+    flush();
+    try {
+      queue.put(STOP);
+      writer.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void run()
+  {
+    List<Event> batch = new ArrayList<Event>();
+    StringBuilder lines = new StringBuilder();
+    try {
+      while (true)
+      {
+        batch.add(queue.take());
+        //gives concurrent logins until the flush interval to join the batch
+        long deadline = System.currentTimeMillis() + flushMillis;
+        queue.drainTo(batch);
+        long wait;
+        while (batch.get(batch.size() - 1) != STOP && (wait = deadline - System.currentTimeMillis()) > 0)
+        {
+          Event next = queue.poll(wait, TimeUnit.MILLISECONDS);
+          if (next == null)
+            break;
+          batch.add(next);
+          queue.drainTo(batch);
+        }
+
+        boolean stop = false;
+        int events = 0;
+        lines.setLength(0);
+        for (Event event : batch)
+        {
+          if (event == STOP)
+          {
+            stop = true;
+            continue;
+          }
+          lines.append(format(event)).append(LINE_SEPARATOR);
+          events++;
+        }
+        if (write(lines))
+          eventDone(events);
+        else
+        {
+          System.out.println("Lost " + events + " events of employee log '" + file + "'");
+          eventLost(events);
+        }
+        batch.clear();
+        if (stop)
+          break;
+      }
+    }
+    catch (InterruptedException e) {
+      //the register is shutting down
+    }
+    finally {
+      closeChannel();
+      synchronized (progress)
+      {
+        progress.notifyAll();
+      }
+    }
+  }
+
+  private void eventDone(int events)
+  {
+    synchronized (progress)
+    {
+      written += events;
+      progress.notifyAll();
+    }
+  }
+
+  private void eventLost(int events)
+  {
+    synchronized (progress)
+    {
+      written += events;
+      lost += events;
+      progress.notifyAll();
+    }
+  }
+
+  //false if the lines could not be written; a retry continues after the bytes already written
+  private boolean write(StringBuilder lines)
+  {
+    if (lines.length() == 0)
+      return true;
+    ByteBuffer buffer = StandardCharsets.UTF_8.encode(lines.toString());
+    for (int attempt = 0; ; attempt++)
+    {
+      try {
+        if (channel == null || !file.exists() || !fileKey().equals(channelKey))
+        {
+          closeChannel();
+          channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+          channelKey = fileKey();
+        }
+        while (buffer.hasRemaining())
+          channel.write(buffer);
+        if (SegmentedLog.forFile(file.getPath()).rotateIfNeeded())
+          closeChannel();
+        return true;
+      }
+      catch (IOException e) {
+        closeChannel(); //retried with a new channel
+        if (attempt >= retries)
+        {
+          System.out.println("Unable to write to employee log '" + file + "'");
+          return false;
+        }
+      }
+      try {
+        Thread.sleep(flushMillis);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt(); //the register is shutting down, the writer stops at the next take
+        return false;
+      }
+    }
+  }
+
+  //the file's identity, a rotation by another register replaces the file under the same name
+  private Object fileKey() throws IOException
+  {
+    Object key = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+    return key != null ? key : file.getCanonicalPath(); //no identity on this file system, the name will do
+  }
+
+  private void closeChannel()
+  {
+    if (channel == null)
+      return;
+    try {
+      channel.close();
+    }
+    catch (IOException e) {
+      System.out.println("Unable to close employee log '" + file + "'");
+    }
+    channel = null;
+  }
+}
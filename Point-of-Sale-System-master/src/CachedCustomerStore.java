@@ -0,0 +1,181 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+//Read-through, write-through LRU cache in front of another customer store. A customer looked up for a
+//rental and again for the return is read from the store once. The cache is bounded both by number of
+//customers and by the estimated size of their records, and drops everything when the store reports
+//that it was changed from outside this cache.
+public class CachedCustomerStore extends CustomerStore
+{
+  public static int defaultMaxEntries = 10000;
+  public static long defaultMaxBytes = 16L*1024*1024;
+
+  private static final String NOT_REGISTERED = new String(""); //cached result of looking up an unknown phone
+  private static final int ENTRY_OVERHEAD = 64; //map entry, key and string headers
+
+  private final CustomerStore store;
+  private final int maxEntries;
+  private final long maxBytes;
+  private long bytes = 0;
+  private long storeVersion;
+
+  private final LinkedHashMap<Long, String> records = new LinkedHashMap<Long, String>(16, 0.75f, true); //access order
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public CachedCustomerStore(CustomerStore store)
+  {
+    this(store, defaultMaxEntries, defaultMaxBytes);
+  }
+
+  public CachedCustomerStore(CustomerStore store, int maxEntries, long maxBytes)
+  {
+    this.store = store;
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    this.storeVersion = store.version();
+  }
+
+  public CustomerStore getStore() {return store;}
+
+  public String find(long phone)
+  {
+    synchronized (this)
+    {
+      checkVersion();
+      String record = records.get(phone);
+      if (record != null)
+      {
+        hits.incrementAndGet();
+        return record == NOT_REGISTERED ? null : record;
+      }
+    }
+    misses.incrementAndGet();
+    String record = store.find(phone);
+    synchronized (this)
+    {
+      //a concurrent write of this customer already cached a newer record
+      if (!records.containsKey(phone))
+        cache(phone, record == null ? NOT_REGISTERED : record);
+    }
+    return record;
+  }
+
+  public boolean create(long phone)
+  {
+    if (!store.create(phone))
+      return false;
+    synchronized (this)
+    {
+      records.remove(phone); //the store decides how a new customer's record looks
+      storeVersion = store.version();
+    }
+    return true;
+  }
+
+  public int createAll(long[] phones)
+  {
+    int created = store.createAll(phones);
+    synchronized (this)
+    {
+      clear(); //unknown phones may have been cached as not registered
+      storeVersion = store.version();
+    }
+    return created;
+  }
+
+  //the record is cached while the store still holds the customer's write lock, so concurrent updates of one
+  //customer reach the cache in the order they reached the store
+  public boolean update(long phone, UnaryOperator<String> change)
+  {
+    boolean updated = store.update(phone, record -> {
+      String written = change.apply(record);
+      synchronized (this)
+      {
+        if (written != null)
+          cache(phone, written);
+      }
+      return written;
+    });
+    synchronized (this)
+    {
+      if (!updated)
+        records.remove(phone); //the write failed after the record was cached
+      storeVersion = store.version();
+    }
+    return updated;
+  }
+
+  //bulk passes go straight to the store and are not cached
+  public boolean forEach(Consumer<String> action)
+  {
+    return store.forEach(action);
+  }
+
+  public boolean updateAll(UnaryOperator<String> change)
+  {
+    boolean updated = store.updateAll(change);
+    synchronized (this)
+    {
+      clear();
+      storeVersion = store.version();
+    }
+    return updated;
+  }
+
+  public long version() {return store.version();}
+
+  public synchronized void clear()
+  {
+    records.clear();
+    bytes = 0;
+  }
+
+  public synchronized int size() {return records.size();}
+  public synchronized long getBytes() {return bytes;}
+  public long getHits() {return hits.get();}
+  public long getMisses() {return misses.get();}
+  public long getEvictions() {return evictions.get();}
+
+  public double getHitRate()
+  {
+    long lookups = hits.get() + misses.get();
+    return lookups == 0 ? 0 : (double) hits.get()/lookups;
+  }
+
+  private void checkVersion()
+  {
+    long version = store.version();
+    if (version != storeVersion)
+    {
+      clear();
+      storeVersion = version;
+    }
+  }
+
+  private void cache(long phone, String record)
+  {
+    String previous = records.put(phone, record);
+    if (previous != null)
+      bytes -= weight(previous);
+    bytes += weight(record);
+
+    //evicts the least recently used customers
+    Iterator<String> eldest = records.values().iterator();
+    while ((records.size() > maxEntries || bytes > maxBytes) && records.size() > 1)
+    {
+      bytes -= weight(eldest.next());
+      eldest.remove();
+      evictions.incrementAndGet();
+    }
+  }
+
+  private static long weight(String record)
+  {
+    return ENTRY_OVERHEAD + 2L*record.length();
+  }
+}
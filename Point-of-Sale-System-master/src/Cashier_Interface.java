@@ -17,6 +17,7 @@ public class Cashier_Interface extends JFrame implements ActionListener{
 	private JButton rentalButton;
 	private JButton returnButton;
 	private JButton LogOutButton;
+	private JButton reprintButton;
 	private Transaction_Interface transaction;
         POSSystem system1;
 	
@@ -50,10 +51,15 @@ public class Cashier_Interface extends JFrame implements ActionListener{
 		LogOutButton.setBounds(0,ySize*4/5,xSize,100);
 		add(LogOutButton);
 		
+		reprintButton = new JButton("Reprint Receipt");
+		reprintButton.setBounds(0,ySize/5-110,xSize,100);
+		add(reprintButton);
+		
 		saleButton.addActionListener(this);
 		rentalButton.addActionListener(this);
 		returnButton.addActionListener(this);
 		LogOutButton.addActionListener(this);
+		reprintButton.addActionListener(this);
 		
 		POSSystem system = new POSSystem();
 		if (system.checkTemp())
@@ -90,7 +96,7 @@ public class Cashier_Interface extends JFrame implements ActionListener{
 				
 				String operation = system.continueFromTemp(phoneNum);
 				
-				transaction = new Transaction_Interface(operation);
+				transaction = new Transaction_Interface(operation, system1);
 				transaction.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 				transaction.setVisible(true);
 				this.setVisible(false);
@@ -105,10 +111,21 @@ public class Cashier_Interface extends JFrame implements ActionListener{
 	
 	public void actionPerformed(ActionEvent event)
 	{
+		if (!system1.touch())
+		{
+			//idle too long, the session manager has logged the cashier out
+			JOptionPane.showMessageDialog(null, "Your session has expired, please log in again");
+			Login_Interface login = new Login_Interface();
+			login.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+			login.setVisible(true);
+			this.setVisible(false);
+			dispose();
+			return;
+		}
 		//If sale button is pressed:
 		if (event.getSource() == saleButton)
 		{
-			transaction = new Transaction_Interface("Sale");
+			transaction = new Transaction_Interface("Sale", system1);
 			transaction.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 			transaction.setVisible(true);
 			this.setVisible(false);
@@ -118,7 +135,7 @@ public class Cashier_Interface extends JFrame implements ActionListener{
 		//If rental button is pressed
 		if (event.getSource() == rentalButton)
 		{
-			transaction = new Transaction_Interface("Rental");
+			transaction = new Transaction_Interface("Rental", system1);
 			transaction.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 			transaction.setVisible(true);
 			this.setVisible(false);
@@ -128,13 +145,31 @@ public class Cashier_Interface extends JFrame implements ActionListener{
 		//If return button is pressed
 		if (event.getSource() == returnButton)
 		{
-			transaction = new Transaction_Interface("Return");
+			transaction = new Transaction_Interface("Return", system1);
 			transaction.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 			transaction.setVisible(true);
 			this.setVisible(false);
 			dispose();
 		}
 			
+		//looks the sale up by its receipt number
+		if (event.getSource() == reprintButton)
+		{
+			String receipt = JOptionPane.showInputDialog("Enter the receipt number");
+			SalesJournal.Record sale = null;
+			try {
+				if (receipt != null)
+					sale = TransactionIndex.forFile(SalesJournal.journalFile).find(Long.parseLong(receipt.trim()));
+			}
+			catch (NumberFormatException e) {
+				//reported below
+			}
+			if (sale == null)
+				JOptionPane.showMessageDialog(null, "No sale with that receipt number");
+			else
+				JOptionPane.showMessageDialog(null, TransactionIndex.receipt(sale));
+		}
+		
 		//If logout button is pressed
 		if (event.getSource() == LogOutButton)
 		{
@@ -0,0 +1,552 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
+
+//Checkout split in two: endPOS only appends the transaction's record to the sales journal, which is
+//forced to disk and gives the receipt number, and hands it to this pipeline. A single applier thread then
+//does what endPOS used to do before the cashier could move on, in checkout order: rewrites the inventory,
+//adds or closes the customer's rentals, appends the invoice or returns log and updates the sales totals.
+//The queue is bounded, a checkout waits for the applier when it is full instead of growing it.
+//The last transaction applied is kept in <journal>.<register>.applied, forced after every one. When the
+//pipeline starts after a register stopped without closing it, this register's records in the journal after
+//that transaction are applied first, so every committed checkout is applied.
+//The one being applied when the register stopped may have been partly applied. Before each change that
+//cannot be made twice (the inventory rewrite, the rentals added to the customer, the log appends) the
+//applier forces an intent to the same file: the transaction, the step and a CRC32 of what the change
+//writes, or where the log text goes. On replay a step before the intent's is skipped, and the intent's own
+//step is skipped if the inventory or the customer's record has that CRC or the log holds the text after
+//that offset. The inventory is written to a temporary file and moved over, so it is either old or new.
+//Off unless started, endPOS then applies everything itself as before; a register started that way first
+//recovers what its last pipelined run left unapplied and closes the cursor, so the checkouts it applies
+//itself are not applied again when the pipeline is next started. The cursor is locked while open, two
+//processes started with the same register ID cannot both run it.
+public class CommitPipeline implements Closeable
+{
+  public static int defaultCapacity = 1024;
+
+  private static final Commit STOP = new Commit(null, null);
+
+  //steps of applying a record that are not idempotent, numbered in the order every record type makes them
+  private static final int INVENTORY = 1;
+  private static final int RENTALS = 2;
+  private static final int LOG = 3;
+  private static final int CURSOR_BYTES = 9 + 28; //last applied, closed, then the intent
+  private static volatile CommitPipeline running = null;
+
+  static class Commit
+  {
+    final SalesJournal.Record record;
+    final String databaseFile;
+
+    Commit(SalesJournal.Record record, String databaseFile)
+    {
+      this.record = record; this.databaseFile = databaseFile;
+    }
+  }
+
+  private final String journalFile;
+  private final String register;
+  private final File cursorFile;
+  private final ArrayBlockingQueue<Commit> queue;
+  private final Thread applier;
+  private FileChannel cursor;
+  private long lastApplied = 0;
+  private boolean replay = false;
+  private long replayTo = 0; //records after this were committed through the queue
+  //intent of the step in flight when the register stopped, 0 once replayed
+  private long inFlightId = 0;
+  private int inFlightStep = 0;
+  private long inFlightCrc = 0;
+  private long inFlightOffset = 0;
+
+  //commits accepted and commits applied, flush waits for the second to catch up with the first
+  private long submitted = 0;
+  private long applied = 0;
+  private final Object progress = new Object();
+
+  CommitPipeline(String journalFile, String register, int capacity) throws IOException
+  {
+    this.journalFile = journalFile;
+    this.register = register;
+    this.cursorFile = new File(journalFile + "." + register + ".applied");
+    this.queue = new ArrayBlockingQueue<Commit>(capacity);
+    openCursor();
+    this.applier = new Thread(this::run, "commit-pipeline");
+    applier.setDaemon(true);
+    applier.start();
+  }
+
+  //starts applying this register's checkouts in the background, after any left unapplied by the last run
+  public static synchronized CommitPipeline start(String journalFile, String register, int capacity) throws IOException
+  {
+    if (running != null)
+      return running;
+    final CommitPipeline pipeline = new CommitPipeline(journalFile, register, capacity);
+    //the applier is a daemon, commits still queued when the register exits are applied here
+    Runtime.getRuntime().addShutdownHook(new Thread(pipeline::close));
+    running = pipeline;
+    return pipeline;
+  }
+
+  //applies the checkouts the register's last pipelined run left unapplied and closes its cursor, for a
+  //register that applies its own checkouts; nothing to do if it never ran the pipeline
+  public static void recover(String journalFile, String register) throws IOException
+  {
+    if (new File(journalFile + "." + register + ".applied").exists())
+      new CommitPipeline(journalFile, register, 1).close();
+  }
+
+  //the started pipeline, null while checkouts apply their own side effects
+  public static CommitPipeline running() {return running;}
+
+  //stops the started pipeline once everything queued is applied
+  public static synchronized void stop()
+  {
+    if (running != null)
+      running.close();
+    running = null;
+  }
+
+  //appends the record to the journal and queues its side effects, returns its transaction ID; if the
+  //journal cannot be written the side effects are applied now, as endPOS did, and -1 is returned
+  public long commit(SalesJournal.Record record, String databaseFile)
+  {
+    return commit(Collections.singletonList(record), databaseFile);
+  }
+
+  //the transaction's record first, then records with nothing to apply (its tender), appended in one batch
+  public long commit(List<SalesJournal.Record> records, String databaseFile)
+  {
+    SalesJournal.Record record = records.get(0);
+    long transactionId = SalesJournal.forFile(journalFile).append(records) < 0 ? -1 : record.getTransactionId();
+    if (transactionId <= 0 || !applier.isAlive())
+    {
+      apply(record, databaseFile);
+      return transactionId;
+    }
+    synchronized (progress)
+    {
+      submitted++;
+    }
+    try {
+      queue.put(new Commit(record, databaseFile)); //backpressure, waits for the applier when the queue is full
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      apply(record, databaseFile); //not queued, applied here as endPOS did
+      committed(1);
+    }
+    return transactionId;
+  }
+
+  //waits until every commit queued before this call is applied
+  public void flush()
+  {
+    synchronized (progress)
+    {
+      long target = submitted;
+      try {
+        while (applied < target && applier.isAlive())
+          progress.wait(1000);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  public void close()
+  {
+    if (!applier.isAlive())
+      return;
+    flush();
+    try {
+      queue.put(STOP);
+      applier.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  int queued() {return queue.size();}
+
+  private void run()
+  {
+    try {
+      if (replay)
+        replay();
+      while (true)
+      {
+        Commit commit = queue.take();
+        if (commit == STOP)
+          break;
+        //already applied by the replay, which read it from the journal
+        if (commit.record.getTransactionId() > lastApplied)
+        {
+          apply(commit.record, commit.databaseFile, true);
+          advance(commit.record.getTransactionId(), false);
+        }
+        committed(1);
+      }
+      advance(lastApplied, true);
+    }
+    catch (InterruptedException e) {
+      //the register is shutting down, the cursor says where to replay from
+    }
+    finally {
+      closeCursor();
+      synchronized (progress)
+      {
+        progress.notifyAll();
+      }
+    }
+  }
+
+  private void committed(int commits)
+  {
+    synchronized (progress)
+    {
+      applied += commits;
+      progress.notifyAll();
+    }
+  }
+
+  //applies this register's records after the last one applied, committed before the register stopped
+  private void replay()
+  {
+    TransactionIndex transactions = TransactionIndex.forFile(journalFile);
+    long offset = Math.max(0, transactions.offsetOf(lastApplied));
+    int replayed = 0;
+    try (SalesJournal.Reader reader = new SalesJournal.Reader(journalFile, offset))
+    {
+      SalesJournal.Record record;
+      while ((record = reader.next()) != null)
+      {
+        if (record.getTransactionId() > replayTo)
+          break;
+        if (record.getTransactionId() <= lastApplied || !register.equals(record.getRegister()))
+          continue;
+        String databaseFile = databaseFile(record.getType());
+        if (databaseFile == null)
+          continue; //tenders have nothing to apply
+        apply(record, databaseFile, true);
+        advance(record.getTransactionId(), false);
+        inFlightId = 0; //only the first transaction replayed can have been partly applied
+        replayed++;
+      }
+    }
+    catch (FileNotFoundException e) {
+      //nothing committed yet
+    }
+    catch (IOException e) {
+      System.out.println("Error reading file '" + journalFile + "'");
+    }
+    if (replayed > 0)
+      System.out.println("Applied " + replayed + " checkouts left from the last run");
+  }
+
+  //inventory the checkout of a record type changes, "" for none and null for records with nothing to apply
+  private static String databaseFile(byte type)
+  {
+    switch (type)
+    {
+      case SalesJournal.SALE:
+        return TransactionService.itemDatabase;
+      case SalesJournal.RENTAL:
+      case SalesJournal.RENTAL_RETURN:
+        return TransactionService.rentalDatabase;
+      case SalesJournal.RETURN:
+        return ""; //unsatisfactory items are put back on the shelf by the inventory screen
+      default:
+        return null;
+    }
+  }
+
+  //the side effects endPOS has for the record, applied without intents when the journal could not be written
+  void apply(SalesJournal.Record record, String databaseFile)
+  {
+    apply(record, databaseFile, false);
+  }
+
+  private void apply(SalesJournal.Record record, String databaseFile, boolean intents)
+  {
+    long transactionId = intents ? record.getTransactionId() : 0;
+    List<Item> lines = record.getLines();
+    switch (record.getType())
+    {
+      case SalesJournal.SALE:
+        updateInventory(transactionId, databaseFile, lines, true);
+        appendLog(transactionId, SalesJournal.legacyLog, invoice(record));
+        break;
+      case SalesJournal.RENTAL:
+        updateInventory(transactionId, databaseFile, lines, true);
+        addRentals(transactionId, record);
+        break;
+      case SalesJournal.RENTAL_RETURN:
+      case SalesJournal.RETURN:
+        if (!databaseFile.isEmpty())
+        {
+          updateInventory(transactionId, databaseFile, lines, false);
+          //only the rentals still out are closed, applying a return twice closes nothing more
+          new Management().updateRentalStatus(record.getCustomer(), ReturnQuote.compute(record.getCustomer(), lines).getReturned());
+        }
+        if (record.getType() == SalesJournal.RETURN)
+          appendLog(transactionId, ReturnAnalytics.returnsLog, returned(record));
+        break;
+      default:
+        return;
+    }
+    SalesAggregates.forFile(journalFile).refresh();
+  }
+
+  //true if the step of the transaction in flight when the register stopped was already made
+  private boolean made(long transactionId, int step, BooleanSupplier check)
+  {
+    if (transactionId == 0 || transactionId != inFlightId)
+      return false;
+    if (step != inFlightStep)
+      return step < inFlightStep;
+    return check.getAsBoolean();
+  }
+
+  //counts read from the file now, the cart's copy from when the transaction started may be stale
+  private void updateInventory(long transactionId, String databaseFile, List<Item> lines, boolean takeFromInventory)
+  {
+    if (databaseFile.isEmpty() || lines.isEmpty())
+      return;
+    File file = new File(databaseFile);
+    synchronized (TransactionService.inventoryLock(databaseFile))
+    {
+      if (made(transactionId, INVENTORY, () -> inFlightCrc == crc(file)))
+        return;
+      List<Item> stock = new ArrayList<Item>();
+      if (!Inventory.getInstance().accessInventory(databaseFile, stock))
+        return;
+      //as Inventory.updateInventory changes the amounts and writes the file
+      StringBuilder text = new StringBuilder();
+      for (Item item : stock)
+      {
+        for (Item line : lines)
+        {
+          if (line.getItemID() == item.getItemID())
+          {
+            item.updateAmount(takeFromInventory ? item.getAmount() - line.getAmount() : item.getAmount() + line.getAmount());
+            break;
+          }
+        }
+        text.append(item.getItemID()).append(" ").append(item.getItemName()).append(" ").append(String.valueOf(item.getPrice()))
+          .append(" ").append(item.getAmount()).append(System.getProperty("line.separator"));
+      }
+      byte[] contents = text.toString().getBytes(StandardCharsets.UTF_8);
+      intent(transactionId, INVENTORY, crc(contents), 0);
+      File temp = new File(databaseFile + ".tmp");
+      try {
+        Files.write(temp.toPath(), contents);
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (IOException e) {
+        System.out.println("Unable to write file '" + databaseFile + "'");
+      }
+    }
+  }
+
+  //the rented items added to the customer's record, dated the day of the checkout
+  private void addRentals(long transactionId, SalesJournal.Record record)
+  {
+    CustomerStore store = Management.getCustomerStore();
+    long phone = record.getCustomer();
+    String date = new SimpleDateFormat("MM/dd/yy").format(new Date(record.getTime()));
+    if (made(transactionId, RENTALS, () -> {
+          String current = store.find(phone);
+          return current != null && inFlightCrc == crc(current.getBytes(StandardCharsets.UTF_8));
+        }))
+      return;
+    store.update(phone, line -> {
+      String changed = Management.withRentals(line, record.getLines(), date);
+      intent(transactionId, RENTALS, crc(changed.getBytes(StandardCharsets.UTF_8)), 0);
+      return changed;
+    });
+  }
+
+  //the sale in the invoice record, as POS.endPOS writes it
+  private static String invoice(SalesJournal.Record record)
+  {
+    String separator = System.getProperty("line.separator");
+    StringBuilder text = new StringBuilder();
+    text.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(record.getTime()))).append(separator);
+    for (Item item : record.getLines())
+      text.append(item.getItemID()).append(" ").append(item.getItemName()).append(" ").append(item.getAmount())
+        .append(" ").append(Double.toString(item.getPrice()*item.getAmount())).append(separator);
+    text.append("Total with tax: ").append(record.getTotal()).append(separator);
+    return text.toString();
+  }
+
+  //the return in the returns log, as POH.endPOS writes it
+  private static String returned(SalesJournal.Record record)
+  {
+    String separator = System.getProperty("line.separator");
+    StringBuilder text = new StringBuilder();
+    text.append("Return ").append(record.getTransactionId()).append(" ")
+      .append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(record.getTime())))
+      .append(" receipt ").append(record.getReference()).append(separator);
+    for (Item item : record.getLines())
+      text.append(item.getItemID()).append(" ").append(item.getItemName()).append(" ").append(item.getAmount())
+        .append(" ").append(Double.toString(item.getPrice()*item.getAmount())).append(separator);
+    text.append(separator);
+    return text.toString();
+  }
+
+  private void appendLog(long transactionId, String logFile, String text)
+  {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    File log = new File(logFile);
+    if (made(transactionId, LOG, () -> contains(log, inFlightOffset, bytes)))
+      return;
+    intent(transactionId, LOG, crc(bytes), log.length());
+    try (OutputStream out = new FileOutputStream(log, true))
+    {
+      out.write(bytes);
+    }
+    catch (IOException e) {
+      System.out.println("Unable to write to log '" + logFile + "'");
+      return;
+    }
+    SegmentedLog.forFile(logFile).rotateIfNeeded();
+  }
+
+  //true if the text was appended at or after the offset; a log shorter than the offset was rotated, which
+  //only happens after an append
+  private static boolean contains(File log, long offset, byte[] text)
+  {
+    if (log.length() < offset)
+      return true;
+    try (RandomAccessFile file = new RandomAccessFile(log, "r"))
+    {
+      byte[] tail = new byte[(int) Math.min(Integer.MAX_VALUE - 8, file.length() - offset)];
+      file.seek(offset);
+      file.readFully(tail);
+      for (int at = 0; at + text.length <= tail.length; at++)
+      {
+        int matched = 0;
+        while (matched < text.length && tail[at + matched] == text[matched])
+          matched++;
+        if (matched == text.length)
+          return true;
+      }
+      return false;
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static long crc(byte[] bytes)
+  {
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    return crc.getValue();
+  }
+
+  private static long crc(File file)
+  {
+    try {
+      return crc(Files.readAllBytes(file.toPath()));
+    }
+    catch (IOException e) {
+      return -1;
+    }
+  }
+
+  //forced before the step's change is made, transactions applied without the journal have none
+  private void intent(long transactionId, int step, long crc, long offset)
+  {
+    if (transactionId == 0)
+      return;
+    try {
+      ByteBuffer buffer = ByteBuffer.allocate(CURSOR_BYTES - 9);
+      buffer.putLong(transactionId).putInt(step).putLong(crc).putLong(offset).flip();
+      while (buffer.hasRemaining())
+        cursor.write(buffer, 9 + buffer.position());
+      cursor.force(false);
+    }
+    catch (IOException e) {
+      System.out.println("Unable to write file '" + cursorFile + "'");
+    }
+  }
+
+  //reads where the last run stopped; a register never started with the pipeline starts after the journal's end
+  private void openCursor() throws IOException
+  {
+    boolean exists = cursorFile.exists() && cursorFile.length() >= 9;
+    cursor = FileChannel.open(cursorFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    boolean owned;
+    try {
+      owned = cursor.tryLock() != null; //released when the cursor is closed
+    }
+    catch (OverlappingFileLockException e) {
+      owned = false;
+    }
+    if (!owned)
+    {
+      cursor.close();
+      throw new IOException("register '" + register + "' is already running, give each register its own -Dpos.register");
+    }
+    if (exists)
+    {
+      ByteBuffer buffer = ByteBuffer.allocate(CURSOR_BYTES);
+      while (buffer.hasRemaining() && cursor.read(buffer, buffer.position()) > 0);
+      lastApplied = buffer.getLong(0);
+      replay = buffer.get(8) == 0; //not closed, the register stopped with commits maybe unapplied
+      if (replay && buffer.getLong(9) > lastApplied)
+      {
+        inFlightId = buffer.getLong(9);
+        inFlightStep = buffer.getInt(17);
+        inFlightCrc = buffer.getLong(21);
+        inFlightOffset = buffer.getLong(29);
+      }
+    }
+    TransactionIndex transactions = TransactionIndex.forFile(journalFile);
+    if (new File(journalFile).exists())
+      transactions.update();
+    replayTo = transactions.lastId();
+    if (!replay)
+      lastApplied = Math.max(lastApplied, replayTo);
+    advance(lastApplied, false);
+  }
+
+  private void advance(long transactionId, boolean closed)
+  {
+    lastApplied = transactionId;
+    try {
+      ByteBuffer buffer = ByteBuffer.allocate(9);
+      buffer.putLong(transactionId).put((byte) (closed ? 1 : 0)).flip();
+      while (buffer.hasRemaining())
+        cursor.write(buffer, buffer.position());
+      cursor.force(false);
+    }
+    catch (IOException e) {
+      System.out.println("Unable to write file '" + cursorFile + "'");
+    }
+  }
+
+  private void closeCursor()
+  {
+    try {
+      cursor.close();
+    }
+    catch (IOException e) {
+      System.out.println("Unable to close file '" + cursorFile + "'");
+    }
+  }
+}
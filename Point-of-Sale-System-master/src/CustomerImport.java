@@ -0,0 +1,114 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+//Bulk registration of another store's customer list. The phone number is the first column of the CSV,
+//any punctuation in it is ignored and rows without one (the header, blank lines) are skipped. Phones are
+//kept in a primitive array, sorted and de-duplicated, then handed to the customer store in one call so
+//the text database is read once and appended to once.
+public class CustomerImport
+{
+  private static final int MAX_DIGITS = 18; //larger numbers do not fit a long
+
+  private int rows = 0;
+  private int skipped = 0;
+
+  //registers the customers of the CSV, returns the number of new customers or -1 on failure
+  public int importCsv(String csvFile, CustomerStore store)
+  {
+    long[] phones = readPhones(csvFile);
+    if (phones == null)
+      return -1;
+    return store.createAll(phones);
+  }
+
+  //sorted distinct phones of the CSV, null if it cannot be read
+  long[] readPhones(String csvFile)
+  {
+    long[] phones = new long[1024];
+    int count = 0;
+    rows = 0;
+    skipped = 0;
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(csvFile), StandardCharsets.UTF_8), 1 << 16);
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        rows++;
+        long phone = parsePhone(line);
+        if (phone <= 0)
+        {
+          skipped++;
+          continue;
+        }
+        if (count == phones.length)
+          phones = Arrays.copyOf(phones, count*2);
+        phones[count++] = phone;
+      }
+      reader.close();
+    }
+    catch (FileNotFoundException e) {
+      System.out.println("Unable to open file '" + csvFile + "'");
+      return null;
+    }
+    catch (IOException e) {
+      System.out.println("Error reading file '" + csvFile + "'");
+      return null;
+    }
+
+    Arrays.sort(phones, 0, count);
+    int distinct = 0;
+    for (int i = 0; i < count; i++)
+    {
+      if (distinct == 0 || phones[distinct - 1] != phones[i])
+        phones[distinct++] = phones[i];
+    }
+    return Arrays.copyOf(phones, distinct);
+  }
+
+  //digits of the first column, e.g. "(555) 123-4567" -> 5551234567; -1 if it has none or too many
+  static long parsePhone(String line)
+  {
+    long phone = 0;
+    int digits = 0;
+    for (int i = 0; i < line.length(); i++)
+    {
+      char c = line.charAt(i);
+      if (c == ',')
+        break;
+      if (c >= '0' && c <= '9')
+      {
+        if (++digits > MAX_DIGITS)
+          return -1;
+        phone = phone*10 + (c - '0');
+      }
+    }
+    return digits == 0 ? -1 : phone;
+  }
+
+  public int getRows() {return rows;}
+  public int getSkipped() {return skipped;}
+
+  //usage: CustomerImport customers.csv
+  public static void main(String[] args)
+  {
+    if (args.length != 1)
+    {
+      System.out.println("usage: CustomerImport customers.csv");
+      System.exit(1);
+    }
+    //the same store the registers use, not the user database in place of a locked mapped store
+    if (!Management.openCustomerStore())
+      System.exit(1);
+    long start = System.currentTimeMillis();
+    CustomerImport customerImport = new CustomerImport();
+    int created = customerImport.importCsv(args[0], Management.getCustomerStore());
+    if (!Management.closeCustomerStore())
+      created = -1;
+    if (created < 0)
+      System.exit(1);
+    System.out.println("Imported " + created + " new customers from " + customerImport.getRows() + " rows ("
+      + customerImport.getSkipped() + " skipped) in " + (System.currentTimeMillis() - start) + " ms");
+  }
+}
@@ -0,0 +1,63 @@
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+//Storage of the customer records used by Management. A record is the customer's line as kept in the
+//user database: the phone number followed by "itemID,date,returned" rental entries.
+//Each store decides how its writers are serialized; update must not lose a concurrent update of the same customer.
+public abstract class CustomerStore
+{
+  //returns the customer's record, or null if the customer is not registered or the store cannot be read
+  public abstract String find(long phone);
+
+  //registers a customer without rentals
+  public abstract boolean create(long phone);
+
+  //registers the phones that are not customers yet, phones must be sorted and distinct; returns the number registered or -1 on failure
+  public int createAll(long[] phones)
+  {
+    int created = 0;
+    for (long phone : phones)
+    {
+      if (find(phone) == null)
+      {
+        if (!create(phone))
+          return -1;
+        created++;
+      }
+    }
+    return created;
+  }
+
+  //atomically replaces the customer's record with change(record), false if the customer was not found or nothing was written
+  public abstract boolean update(long phone, UnaryOperator<String> change);
+
+  //passes every customer record to the action, returns false if the store could not be read
+  public abstract boolean forEach(Consumer<String> action);
+
+  //applies change to every record, stores that can rewrite in a single pass override this
+  public boolean updateAll(UnaryOperator<String> change)
+  {
+    final List<Long> phones = new ArrayList<Long>();
+    if (!forEach(record -> phones.add(phoneOf(record))))
+      return false;
+    boolean updated = true;
+    for (long phone : phones)
+      updated &= update(phone, change);
+    return updated;
+  }
+
+  //changes whenever the stored records are modified, so callers can tell when cached records are stale
+  public long version() {return 0;}
+
+  //phone number at the start of a record, -1 if the line is not a customer record
+  public static long phoneOf(String record)
+  {
+    int end = record.indexOf(' ');
+    try {
+      return Long.parseLong(end < 0 ? record : record.substring(0, end));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Employees of an employee database indexed by username. The employee store is read on the first lookup
+//and again only after EmployeeManagement changes it, or when the store's version shows that another
+//register changed it. Each load builds a new map, so lookups never lock.
+public class EmployeeDirectory
+{
+  //one directory per database file, shared by every POSSystem of this register
+  private static final Map<String, EmployeeDirectory> directories = new ConcurrentHashMap<String, EmployeeDirectory>();
+
+  private final EmployeeStore store;
+  private volatile Map<String, Employee> employees = null; //null until loaded or after invalidate
+  private volatile long loadedVersion;
+
+  EmployeeDirectory(String databaseFile)
+  {
+    this.store = EmployeeStore.forFile(databaseFile);
+  }
+
+  public static EmployeeDirectory forFile(String databaseFile)
+  {
+    return directories.computeIfAbsent(databaseFile, EmployeeDirectory::new);
+  }
+
+  //called after the employee database is written, the next lookup reloads it
+  public static void invalidate(String databaseFile)
+  {
+    EmployeeDirectory directory = directories.get(databaseFile);
+    if (directory != null)
+      directory.invalidate();
+  }
+
+  public void invalidate()
+  {
+    employees = null;
+  }
+
+  //null if there is no employee with this username
+  public Employee find(String username)
+  {
+    return current().get(username);
+  }
+
+  public int size()
+  {
+    return current().size();
+  }
+
+  private Map<String, Employee> current()
+  {
+    Map<String, Employee> loaded = employees;
+    if (loaded == null || loadedVersion != version())
+    {
+      synchronized (this)
+      {
+        if (employees == null || loadedVersion != version())
+        {
+          loadedVersion = version();
+          employees = load();
+        }
+        loaded = employees;
+      }
+    }
+    return loaded;
+  }
+
+  private long version()
+  {
+    return store.version();
+  }
+
+  private Map<String, Employee> load()
+  {
+    Map<String, Employee> loaded = new HashMap<String, Employee>();
+    for (Employee employee : store.list())
+      loaded.put(employee.getUsername(), employee);
+    return loaded;
+  }
+}
@@ -0,0 +1,131 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Allocates employee usernames. The sequence file holds the first ID no register has reserved yet.
+//A register reserves a block of IDs by advancing it under an exclusive file lock, then hands them
+//out with a compare-and-set on an in-memory counter, so two admins never get the same ID and only
+//one add in every block touches the disk. IDs of a block left unused when the register exits are skipped.
+public class EmployeeIdSequence
+{
+  public static String sequenceFile = "Database/employeeSequence.txt";
+  public static int defaultBlockSize = 100;
+
+  //Singleton design pattern applied, one block per register
+  private static EmployeeIdSequence uniqueInstance = null;
+
+  private static class Block
+  {
+    final AtomicLong next;
+    final long limit;
+
+    Block(long first, long limit)
+    {
+      this.next = new AtomicLong(first);
+      this.limit = limit;
+    }
+  }
+
+  private final File file;
+  private final String employeeDatabase;
+  private final int blockSize;
+  private volatile Block block = null;
+
+  //file locks are held per JVM, sequences of the same file in one register take turns
+  private static final Object reserving = new Object();
+
+  public EmployeeIdSequence(String sequenceFile, String employeeDatabase, int blockSize)
+  {
+    this.file = new File(sequenceFile);
+    this.employeeDatabase = employeeDatabase;
+    this.blockSize = blockSize;
+  }
+
+  public static synchronized EmployeeIdSequence getInstance()
+  {
+    if (uniqueInstance == null)
+      uniqueInstance = new EmployeeIdSequence(sequenceFile, EmployeeManagement.employeeDatabase, defaultBlockSize);
+    return uniqueInstance;
+  }
+
+  //next unused employee ID, -1 if a block cannot be reserved
+  public long nextId()
+  {
+    while (true)
+    {
+      Block current = block;
+      if (current != null)
+      {
+        long id = current.next.get();
+        while (id < current.limit)
+        {
+          if (current.next.compareAndSet(id, id + 1))
+            return id;
+          id = current.next.get();
+        }
+      }
+      synchronized (this)
+      {
+        //another thread may have reserved a block while this one waited
+        if (block == current)
+        {
+          Block reserved = reserve();
+          if (reserved == null)
+            return -1;
+          block = reserved;
+        }
+      }
+    }
+  }
+
+  private Block reserve()
+  {
+    synchronized (reserving)
+    {
+      return reserveLocked();
+    }
+  }
+
+  private Block reserveLocked()
+  {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+         FileChannel channel = raf.getChannel())
+    {
+      channel.lock(); //released when the channel is closed
+      ByteBuffer contents = ByteBuffer.allocate((int) channel.size());
+      while (contents.hasRemaining() && channel.read(contents, contents.position()) >= 0) {}
+      String stored = new String(contents.array(), StandardCharsets.UTF_8).trim();
+      long first = stored.isEmpty() ? firstFromDatabase() : Long.parseLong(stored);
+
+      //written over the old value, which is never longer, then cut to its length: a crash leaves the old
+      //value or the new one, never an empty file that would start again from the database
+      ByteBuffer advanced = ByteBuffer.wrap(Long.toString(first + blockSize).getBytes(StandardCharsets.UTF_8));
+      while (advanced.hasRemaining())
+        channel.write(advanced, advanced.position());
+      channel.truncate(advanced.limit());
+      channel.force(false); //the block is ours only once the advanced value is on disk
+      return new Block(first, first + blockSize);
+    }
+    catch (IOException | NumberFormatException e) {
+      System.out.println("Unable to reserve employee IDs from '" + file + "'");
+      return null;
+    }
+  }
+
+  //first reservation: continues after the highest username in the employee database, journal included
+  private long firstFromDatabase()
+  {
+    long highest = 110000;
+    for (Employee employee : EmployeeStore.forFile(employeeDatabase).list())
+    {
+      try {
+        highest = Math.max(highest, Long.parseLong(employee.getUsername()));
+      } catch (NumberFormatException e) {
+        continue;
+      }
+    }
+    return highest + 1;
+  }
+}
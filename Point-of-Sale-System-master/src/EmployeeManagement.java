@@ -18,27 +18,14 @@ public class EmployeeManagement{
   
   public void add(String name,String password, boolean employee)
   {
-	  readFile();
-	  String toWrite = "";
-	  int username= (Integer.parseInt(employees.get(employees.size()-1).getUsername())+1);
-	  try{
-	      FileWriter fw = new FileWriter(employeeDatabase,true);
-	      BufferedWriter bw = new BufferedWriter(fw);
-	      if (employee)
-	    	  toWrite = Integer.toString(username) +" "+ "Cashier" +" " + name +" "+password;
-	      else
-	    	  toWrite = Integer.toString(username) +" "+ "Admin" +" " + name +" "+password;
-	      //bw.write(System.getProperty( "line.separator" ));
-	      bw.write(toWrite);
-	      bw.write(System.getProperty( "line.separator" ));
-	      bw.close();
-	      
-	    } catch (FileNotFoundException e) {
-	      System.out.println("Unable to open file Log File for logIn"); 
-	    }
-	    catch (IOException e) {
-	      e.printStackTrace();
-	    }
+	  //reserved from the shared sequence, concurrent adds never get the same username
+	  long username = EmployeeIdSequence.getInstance().nextId();
+	  if (username < 0)
+		  return;
+	  String position = employee ? "Cashier" : "Admin";
+	  //only the salted verifier of the password is stored
+	  if (EmployeeStore.forFile(employeeDatabase).put(new Employee(Long.toString(username), name, position, PasswordHasher.hash(password))))
+		  EmployeeDirectory.invalidate(employeeDatabase);
   }
   
   public boolean delete(String username)
@@ -59,98 +46,41 @@ public class EmployeeManagement{
 	  if (!find)
 		  return find;
 	  
-	  else
-	  {
-		  employees.remove(index);
-		  
-		  boolean ableToOpen=true;
-		    try{
-		      File tempF= new File (temp);
-		      BufferedWriter writer = new BufferedWriter(new FileWriter(tempF));
-		      for (int i=0; i<employees.size();i++){
-		        writer.write(employees.get(i).getUsername()+" "+employees.get(i).getPosition()+" "+employees.get(i).getName()+" "+employees.get(i).getPassword());
-		        writer.write(System.getProperty( "line.separator" ));
-		      }
-		      writer.close(); 
-		      File file = new File(employeeDatabase);
-		      file.delete();
-		      tempF.renameTo(new File(employeeDatabase));
-		    }
-		    catch(FileNotFoundException ex) {
-		      System.out.println(
-		                         "Unable to open file 'temp'"); 
-		      ableToOpen = false;
-		    }
-		    catch(IOException ex) {
-		      System.out.println(
-		                         "Error reading file 'temp'");  
-		      ableToOpen = false;
-		    }
-		    find = ableToOpen;
-	  }
+	  employees.remove(index);
+	  //one journal line instead of rewriting the employee database
+	  find = EmployeeStore.forFile(employeeDatabase).delete(username);
+	  EmployeeDirectory.invalidate(employeeDatabase);
 	  return find;
-	  
   }
   
  
   
   public int update(String username, String password, String position, String name)
   {
-	  readFile();
-	  int userFound = -1; //user not found
-	  int index = -1;
-	  for(int i=0;i<employees.size();i++){
-	        if(username.equals((employees.get(i).getUsername())))
-	        {
-	          userFound = 0; //user found
-	          index=i;
-	          break;
-	        }
-	  }
+	  EmployeeStore store = EmployeeStore.forFile(employeeDatabase);
+	  if (!(position.equals("Admin")||position.equals("Cashier") || position.equals("")))
+		  return store.find(username) == null ? -1 : -2;
 	  
-	  if (userFound == 0)
-	  {
-		  if (!(position.equals("Admin")||position.equals("Cashier") || position.equals("")))
-			  return userFound = -2;
-		  
-		  //updates information
+	  //read, changed and written under the store's lock, concurrent edits of the employee both apply
+	  Employee updated = store.update(username, employee -> {
+		  //only the salted verifier of the password is stored
 		  if (!password.equals(""))
-			  employees.get(index).setPassword(password);
+			  employee.setPassword(PasswordHasher.hash(password));
 		  
 		  if (!position.equals(""))
-			  employees.get(index).setPosition(position);
-		  
-	      if (!name.equals(""))
-	    	  employees.get(index).setName(name);
-	      
-	      
-	      try{
-	        File tempF= new File (temp);
-	        FileReader fileR = new FileReader(employeeDatabase);
-	        BufferedReader reader = new BufferedReader(fileR);
-	        BufferedWriter writer = new BufferedWriter(new FileWriter(tempF));
-	        for (int i=0; i<employees.size();i++){
-	          writer.write(employees.get(i).getUsername()+" "+employees.get(i).getPosition()+" "+employees.get(i).getName()+" "+employees.get(i).getPassword());
-	          writer.write(System.getProperty( "line.separator" ));
-	        }
-	        fileR.close();
-	        writer.close(); 
-	        reader.close(); 
-	        File file = new File(employeeDatabase);
-	        file.delete();
-	        tempF.renameTo(new File(employeeDatabase));
-	      }
-	      catch(FileNotFoundException ex) {
-	        System.out.println(
-	                           "Unable to open file 'temp'"); 
-	      }
-	      catch(IOException ex) {
-	        System.out.println(
-	                           "Error reading file 'temp'");  
-	      }
+			  employee.setPosition(position);
 		  
-	  }
-	  return userFound;
+		  if (!name.equals(""))
+			  employee.setName(name);
+		  return employee;
+	  });
+	  if (updated == null)
+		  return -1; //user not found
+	  EmployeeDirectory.invalidate(employeeDatabase);
+	  
+	  //the list as stored, the password only as its verifier
+	  readFile();
+	  return 0;
   }
   
   
@@ -164,39 +94,8 @@ public class EmployeeManagement{
       //employeeDatabase = "..\\Database\\employeeDatabase.txt";
     }
     
-    String line = null;
-    String[] lineSort;
-    
-    
-    //Checks database file for the item  
-    try {
-  
-      FileReader fileR = new FileReader(employeeDatabase);
-      BufferedReader textReader = new BufferedReader(fileR);
-      //reads the entire database
-      employees.clear();
-      while ((line = textReader.readLine()) != null)
-      {
-        lineSort = line.split(" "); //separates words    
-        String name=lineSort[2]+" "+lineSort[3];
-        employees.add(new Employee(lineSort[0],name,lineSort[1],lineSort[4]));
-      }
-      textReader.close();
-      
-    }
-    
-    //catches exceptions
-    catch(FileNotFoundException ex) {
-      System.out.println(
-                         "Unable to open file '" + 
-                         employeeDatabase + "'"); 
-
-    }
-    catch(IOException ex) {
-      System.out.println(
-                         "Error reading file '" 
-                           + employeeDatabase + "'");  
-
-    }
+    //the employee database with the changes journaled since its last snapshot
+    employees.clear();
+    employees.addAll(EmployeeStore.forFile(employeeDatabase).list());
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,383 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.UnaryOperator;
+
+//Employees of an employee database kept as a snapshot plus a change journal. The snapshot is the
+//employee database itself ("username position first last password" lines); changes are appended to
+//<database>.journal as "put <employee line>" or "delete <username>" lines, so an add, update or delete
+//writes one line instead of the whole file. Every compactAfter changes the journal is folded into a new
+//snapshot. Each snapshot written here ends with a "#generation <random>" line and the journal's first
+//line names the generation it applies to, so a copy, restore or touch of the snapshot keeps its journal
+//and one left behind when the snapshot is replaced by anything else is ignored. A snapshot without a
+//generation (written by hand or by an older register) has one appended before the first change.
+//Changes from all registers are serialized by an exclusive lock on <database>.lock, and each register
+//reloads when the snapshot or journal changed since it last looked.
+public class EmployeeStore
+{
+  public static int compactAfter = 100;
+
+  private static final String HEADER = "snapshot ";
+  private static final String GENERATION = "#generation ";
+  private static final Map<String, EmployeeStore> stores = new ConcurrentHashMap<String, EmployeeStore>();
+  //FileChannel locks cannot overlap inside one JVM, stores of the same file in this process take turns
+  private static final Map<String, ReentrantLock> processLocks = new ConcurrentHashMap<String, ReentrantLock>();
+
+  private final File snapshot;
+  private final File journal;
+  private final File lockFile;
+  private final ReentrantLock processLock;
+
+  private LinkedHashMap<String, Employee> employees = new LinkedHashMap<String, Employee>(); //username -> employee, in file order
+  private long loadedVersion = -1;
+  private long journalEntries = 0;
+  private String generation = ""; //of the loaded snapshot, "" if it has none
+
+  EmployeeStore(String databaseFile)
+  {
+    snapshot = new File(databaseFile);
+    journal = new File(databaseFile + ".journal");
+    lockFile = new File(databaseFile + ".lock");
+    processLock = processLocks.computeIfAbsent(lockFile.getAbsolutePath(), path -> new ReentrantLock());
+  }
+
+  //one store per database file, its lock is only taken once per register
+  public static EmployeeStore forFile(String databaseFile)
+  {
+    return stores.computeIfAbsent(databaseFile, EmployeeStore::new);
+  }
+
+  //copies of the employees in file order
+  public synchronized List<Employee> list()
+  {
+    FileLock shared = lock(true);
+    try {
+      refresh();
+    }
+    finally {
+      release(shared);
+    }
+    List<Employee> copies = new ArrayList<Employee>();
+    for (Employee employee : employees.values())
+      copies.add(copy(employee));
+    return copies;
+  }
+
+  public synchronized Employee find(String username)
+  {
+    FileLock shared = lock(true);
+    try {
+      refresh();
+    }
+    finally {
+      release(shared);
+    }
+    Employee employee = employees.get(username);
+    return employee == null ? null : copy(employee);
+  }
+
+  //adds the employee or replaces the one with the same username
+  public synchronized boolean put(Employee employee)
+  {
+    return change("put " + line(employee));
+  }
+
+  //false if there is no such employee or the change cannot be written
+  public synchronized boolean delete(String username)
+  {
+    return change("delete " + username);
+  }
+
+  //changes the employee under the lock, so concurrent edits of one employee both apply; returns the
+  //changed employee, null if there is no such employee, the change returns null or cannot be written
+  public synchronized Employee update(String username, UnaryOperator<Employee> change)
+  {
+    FileLock exclusive = lock(false);
+    try {
+      refresh();
+      Employee current = employees.get(username);
+      if (current == null)
+        return null;
+      Employee updated = change.apply(copy(current));
+      if (updated == null || !updated.getUsername().equals(username))
+        return null;
+      return write("put " + line(updated)) ? copy(updated) : null;
+    }
+    finally {
+      release(exclusive);
+    }
+  }
+
+  //changes whenever the snapshot or the journal is written, checked without reading them
+  public long version()
+  {
+    return stamp(snapshot)*31 + journal.length();
+  }
+
+  private boolean change(String entry)
+  {
+    FileLock exclusive = lock(false);
+    try {
+      refresh();
+      return write(entry);
+    }
+    finally {
+      release(exclusive);
+    }
+  }
+
+  //applies and records the change, the caller holds the exclusive lock
+  private boolean write(String entry)
+  {
+    if (!apply(employees, entry))
+      return false;
+    try {
+      if (journalEntries + 1 >= compactAfter)
+        writeSnapshot(); //the change is part of the new snapshot
+      else
+      {
+        if (generation.isEmpty())
+          addGeneration();
+        appendJournal(entry);
+      }
+    }
+    catch (IOException e) {
+      System.out.println("Unable to write employee journal '" + journal + "'");
+      loadedVersion = -1; //reloads what was actually written
+      return false;
+    }
+    loadedVersion = version();
+    return true;
+  }
+
+  //folds the journal into a new snapshot
+  public synchronized boolean compact()
+  {
+    FileLock exclusive = lock(false);
+    try {
+      refresh();
+      writeSnapshot();
+      loadedVersion = version();
+      return true;
+    }
+    catch (IOException e) {
+      System.out.println("Unable to write employee snapshot '" + snapshot + "'");
+      return false;
+    }
+    finally {
+      release(exclusive);
+    }
+  }
+
+  private void refresh()
+  {
+    long version = version();
+    if (version == loadedVersion)
+      return;
+    LinkedHashMap<String, Employee> loaded = new LinkedHashMap<String, Employee>();
+    generation = "";
+    try {
+      BufferedReader textReader = new BufferedReader(new FileReader(snapshot));
+      String line;
+      while ((line = textReader.readLine()) != null)
+      {
+        if (line.startsWith(GENERATION))
+          generation = line.substring(GENERATION.length()).trim();
+        else
+          apply(loaded, "put " + line);
+      }
+      textReader.close();
+    }
+    catch(FileNotFoundException ex) {
+      System.out.println("Unable to open file '" + snapshot + "'");
+    }
+    catch(IOException ex) {
+      System.out.println("Error reading file '" + snapshot + "'");
+    }
+    journalEntries = generation.isEmpty() ? 0 : replayJournal(loaded);
+    employees = loaded;
+    loadedVersion = version;
+  }
+
+  private long replayJournal(Map<String, Employee> loaded)
+  {
+    if (!journal.exists())
+      return 0;
+    String contents;
+    try {
+      contents = new String(Files.readAllBytes(journal.toPath()), StandardCharsets.UTF_8);
+    }
+    catch (IOException e) {
+      System.out.println("Error reading file '" + journal + "'");
+      return 0;
+    }
+    String[] lines = contents.split("\n", -1);
+    if (!lines[0].equals(HEADER + generation))
+      return 0; //written for a snapshot that has since been replaced
+    long entries = 0;
+    //the last piece has no newline, it is empty or a change torn by a crash
+    for (int i = 1; i < lines.length - 1; i++)
+    {
+      apply(loaded, lines[i]);
+      entries++;
+    }
+    return entries;
+  }
+
+  //false if the entry is malformed or deletes an unknown employee
+  private static boolean apply(Map<String, Employee> employees, String entry)
+  {
+    if (entry.startsWith("delete "))
+      return employees.remove(entry.substring(7)) != null;
+    if (!entry.startsWith("put "))
+      return false;
+    String[] lineSort = entry.substring(4).split(" "); //username position first last password
+    if (lineSort.length < 5)
+      return false;
+    employees.put(lineSort[0], new Employee(lineSort[0], lineSort[2] + " " + lineSort[3], lineSort[1], lineSort[4]));
+    return true;
+  }
+
+  private void appendJournal(String entry) throws IOException
+  {
+    if (journalEntries == 0 && !isCurrentJournal())
+      writeJournalHeader();
+    try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND))
+    {
+      ByteBuffer buffer = StandardCharsets.UTF_8.encode(entry + "\n");
+      while (buffer.hasRemaining())
+        channel.write(buffer);
+    }
+    journalEntries++;
+  }
+
+  private boolean isCurrentJournal()
+  {
+    try (BufferedReader reader = new BufferedReader(new FileReader(journal)))
+    {
+      return (HEADER + generation).equals(reader.readLine());
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  //starts an empty journal for the current snapshot
+  private void writeJournalHeader() throws IOException
+  {
+    File temp = new File(journal + ".tmp");
+    Files.write(temp.toPath(), (HEADER + generation + "\n").getBytes(StandardCharsets.UTF_8));
+    Files.move(temp.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    journalEntries = 0;
+  }
+
+  //gives a snapshot without a generation one, in place, and starts its journal
+  private void addGeneration() throws IOException
+  {
+    String next = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    String separator = System.getProperty("line.separator");
+    boolean newLine = true;
+    if (snapshot.length() > 0)
+    {
+      try (RandomAccessFile file = new RandomAccessFile(snapshot, "r"))
+      {
+        file.seek(file.length() - 1);
+        int last = file.read();
+        newLine = last == '\n' || last == '\r';
+      }
+    }
+    try (Writer writer = new BufferedWriter(new FileWriter(snapshot, true)))
+    {
+      writer.write((newLine ? "" : separator) + GENERATION + next + separator);
+    }
+    generation = next;
+    writeJournalHeader();
+  }
+
+  private void writeSnapshot() throws IOException
+  {
+    File temp = new File(snapshot + ".tmp");
+    String next = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    BufferedWriter writer = new BufferedWriter(new FileWriter(temp));
+    for (Employee employee : employees.values())
+    {
+      writer.write(line(employee));
+      writer.write(System.getProperty( "line.separator" ));
+    }
+    writer.write(GENERATION + next);
+    writer.write(System.getProperty( "line.separator" ));
+    writer.close();
+    //a crash after the move leaves a journal for the old generation, which is then ignored
+    Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    generation = next;
+    writeJournalHeader();
+  }
+
+  private static String line(Employee employee)
+  {
+    return employee.getUsername() + " " + employee.getPosition() + " " + employee.getName() + " " + employee.getPassword();
+  }
+
+  private static Employee copy(Employee employee)
+  {
+    return new Employee(employee.getUsername(), employee.getName(), employee.getPosition(), employee.getPassword());
+  }
+
+  //identity and modification time of the file, 0 if it does not exist
+  private static long stamp(File file)
+  {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+      Object key = attributes.fileKey();
+      return (attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS)*31 + attributes.size())*31
+        + (key == null ? 0 : key.hashCode());
+    }
+    catch (IOException e) {
+      return 0;
+    }
+  }
+
+  //null when the lock file cannot be used, the process lock still serializes this register
+  private FileLock lock(boolean shared)
+  {
+    processLock.lock();
+    try {
+      FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      try {
+        return channel.lock(0, Long.MAX_VALUE, shared);
+      }
+      catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void release(FileLock lock)
+  {
+    try {
+      if (lock != null)
+        lock.channel().close(); //also releases the lock
+    }
+    catch (IOException e) {
+      System.out.println("Unable to release employee database lock");
+    }
+    finally {
+      processLock.unlock();
+    }
+  }
+}
@@ -89,7 +89,8 @@ public class EnterItem_Interface extends JFrame implements ActionListener
 			{
 				quantity = amount.getText();
 				if (!transaction.enterItem(getItemID(), getAmount()))
-					JOptionPane.showMessageDialog(null, "Item not found on inventory");
+					JOptionPane.showMessageDialog(null, transaction instanceof POH && ((POH) transaction).getReceipt() != null
+							? "Item not found on the receipt" : "Item not found on inventory");
 
 				else //Add line to textbox
 				{
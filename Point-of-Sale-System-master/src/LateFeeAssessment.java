@@ -0,0 +1,203 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+//Nightly batch job: streams every customer line of the user database, accrues the late fees of
+//all outstanding rentals in parallel and writes one "phone fee" line per customer to a snapshot file.
+//The register then answers fee lookups from the loaded snapshot instead of rescanning the database,
+//and loads it again once the next assessment has replaced it.
+public class LateFeeAssessment
+{
+  //fraction of the rental price charged for every day the item is kept
+  public static final double LATE_FEE_RATE = 0.1;
+
+  public static String userDatabase = "Database/userDatabase.txt";
+  public static String rentalDatabase = "Database/rentalDatabase.txt";
+  public static String snapshotFile = "Database/lateFeeSnapshot.txt";
+
+  //Singleton design pattern applied, the snapshot is loaded once per assessment
+  private static LateFeeAssessment uniqueInstance = null;
+
+  private volatile Map<Long, Double> fees = new HashMap<Long, Double>(); //phone -> fee from the last snapshot
+  private Map<Integer, Float> prices = new HashMap<Integer, Float>(); //rental itemID -> price
+  private Map<String, Integer> daysByDate = new ConcurrentHashMap<String, Integer>(); //few distinct dates, parse each once
+  private List<Object> loaded = null; //file, file key, modification time and size of the snapshot the fees came from
+
+  public LateFeeAssessment() {}
+
+  public static synchronized LateFeeAssessment getInstance()
+  {
+    if (uniqueInstance == null)
+      uniqueInstance = new LateFeeAssessment();
+    //a register left running overnight picks up the snapshot the nightly assessment moved in
+    if (!uniqueInstance.stamp(snapshotFile).equals(uniqueInstance.loaded))
+      uniqueInstance.loadSnapshot(snapshotFile);
+    return uniqueInstance;
+  }
+
+  //fee for keeping amount units of an item for the given number of days
+  public static double lateFee(int amount, float price, int days)
+  {
+    return amount*price*LATE_FEE_RATE*days;
+  }
+
+  //computes the fees of every customer and writes the snapshot, returns the number of customers owing fees or -1 on failure
+  public int assess(String userDatabase, String rentalDatabase, String snapshotFile)
+  {
+    List<Item> rentalItems = new ArrayList<Item>();
+    if (!Inventory.getInstance().accessInventory(rentalDatabase, rentalItems))
+      return -1;
+    prices.clear();
+    for (Item item : rentalItems)
+      prices.put(item.getItemID(), item.getPrice());
+
+    final ConcurrentHashMap<Long, Double> assessed = new ConcurrentHashMap<Long, Double>();
+    try (Stream<String> lines = Files.lines(Paths.get(userDatabase), StandardCharsets.UTF_8))
+    {
+      //the header line does not start with a phone number and is skipped by accrue
+      lines.parallel().forEach(line -> accrue(line, assessed));
+    }
+    catch (IOException | UncheckedIOException ex) {
+      System.out.println("Unable to read user database '" + userDatabase + "'");
+      return -1;
+    }
+
+    if (!writeSnapshot(snapshotFile, assessed))
+      return -1;
+    fees = assessed;
+    return assessed.size();
+  }
+
+  private void accrue(String line, ConcurrentHashMap<Long, Double> assessed)
+  {
+    int end = line.indexOf(' ');
+    if (end <= 0) //blank line or customer without rentals
+      return;
+    long phone;
+    try {
+      phone = Long.parseLong(line.substring(0, end));
+    } catch (NumberFormatException e) {
+      return;
+    }
+
+    double fee = 0;
+    //each entry looks like 1022,6/31/11,false
+    for (String entry : line.substring(end + 1).split(" "))
+    {
+      String[] fields = entry.split(",");
+      if (fields.length < 3 || fields[2].equalsIgnoreCase("true"))
+        continue;
+      Float price;
+      try {
+        price = prices.get(Integer.parseInt(fields[0]));
+      } catch (NumberFormatException e) {
+        continue;
+      }
+      if (price == null)
+        continue;
+      int days = daysByDate.computeIfAbsent(fields[1], Management::daysSince);
+      if (days > 0)
+        fee += lateFee(1, price, days);
+    }
+    if (fee > 0)
+      assessed.merge(phone, fee, Double::sum);
+  }
+
+  private boolean writeSnapshot(String snapshotFile, Map<Long, Double> assessed)
+  {
+    File snapshot = new File(snapshotFile);
+    File temp = new File(snapshotFile + ".tmp");
+    try {
+      BufferedWriter writer = new BufferedWriter(new FileWriter(temp));
+      writer.write("Phone number lateFee");
+      writer.newLine();
+      for (Map.Entry<Long, Double> fee : assessed.entrySet())
+      {
+        writer.write(fee.getKey() + " " + fee.getValue());
+        writer.newLine();
+      }
+      writer.close();
+      //readers never see a half written snapshot
+      Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      return true;
+    }
+    catch (IOException e) {
+      System.out.println("Unable to write late fee snapshot '" + snapshotFile + "'");
+      temp.delete();
+      return false;
+    }
+  }
+
+  //identifies the snapshot file as it is now, a snapshot moved in over it has another file key
+  private List<Object> stamp(String snapshotFile)
+  {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(Paths.get(snapshotFile), BasicFileAttributes.class);
+      return Arrays.asList(snapshotFile, attributes.fileKey(), attributes.lastModifiedTime(), attributes.size());
+    }
+    catch (IOException e) {
+      return Arrays.asList(snapshotFile); //no assessment has run yet
+    }
+  }
+
+  public boolean loadSnapshot(String snapshotFile)
+  {
+    //taken before reading, a snapshot replaced while it is read is loaded again on the next lookup
+    List<Object> stamp = stamp(snapshotFile);
+    Map<Long, Double> loaded = new HashMap<Long, Double>();
+    try {
+      BufferedReader reader = new BufferedReader(new FileReader(snapshotFile));
+      String line = reader.readLine(); //skips the header line
+      while ((line = reader.readLine()) != null)
+      {
+        String[] fields = line.split(" ");
+        try {
+          loaded.put(Long.parseLong(fields[0]), Double.parseDouble(fields[1]));
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+          continue;
+        }
+      }
+      reader.close();
+    }
+    catch (FileNotFoundException ex) {
+      this.loaded = stamp;
+      return false; //no assessment has run yet
+    }
+    catch (IOException ex) {
+      System.out.println("Error reading file '" + snapshotFile + "'");
+      return false;
+    }
+    fees = loaded;
+    this.loaded = stamp;
+    return true;
+  }
+
+  //late fees owed by the customer as of the last assessment
+  public double getFee(long phone)
+  {
+    Double fee = fees.get(phone);
+    return fee == null ? 0 : fee;
+  }
+
+  //usage: LateFeeAssessment [userDatabase rentalDatabase snapshotFile]
+  public static void main(String[] args)
+  {
+    if (args.length == 3)
+    {
+      userDatabase = args[0];
+      rentalDatabase = args[1];
+      snapshotFile = args[2];
+    }
+    long start = System.currentTimeMillis();
+    int customers = new LateFeeAssessment().assess(userDatabase, rentalDatabase, snapshotFile);
+    if (customers < 0)
+      System.exit(1);
+    System.out.println("Late fees assessed for " + customers + " customers in " + (System.currentTimeMillis() - start) + " ms");
+  }
+}
@@ -6,6 +6,9 @@ import java.text.*;
 public class Management {
  
  private static String userDatabase = "Database/userDatabase.txt";
+ //all reads and writes of customer records go through the store, which keeps concurrent registers from losing updates
+ //and caches the customers seen during this session
+ private static CustomerStore store = new CachedCustomerStore(new TextCustomerStore(userDatabase));
  
  
  public Management(){
@@ -19,131 +22,77 @@ public class Management {
    
  }
  
- public Boolean checkUser(Long phone){ //returns true if user phone is in DB, false if not
-     //needs to be cleaned up.. written with terrible style right now but *at least it works*
-    //check user will open the user database and check to see if user's phone number is on the list
-     try{
-       FileReader fileR = new FileReader(userDatabase);
-       BufferedReader textReader = new BufferedReader(fileR);
-       String line;
-       long nextPh = 0;
-       //reads the entire database
-       line = textReader.readLine(); //skips the first line, which explains how the DB is formatted. 
-       while ((line = textReader.readLine()) != null){
-         
-         
-         try {  
-           nextPh = Long.parseLong(line.split(" ")[0]);    
-         } catch (NumberFormatException e) {  
-           continue;  
-         } 
-         
-         
-         if(nextPh==phone){
-           textReader.close();
-           fileR.close();
-           //System.out.println("user phone number found in userDatabase");
-           return true;
-         }
-         //System.out.println(line.split(" ")[0]);
-       }
-       textReader.close();
-       fileR.close();
-       //System.out.println("reached end of userDatabase, phone number not found");
-       return false; 
-     }
-     //catches exceptions
-     catch(FileNotFoundException ex) {
-       System.out.println("cannot open userDB"); 
-      
-     }
-     catch(IOException ex) {
-       System.out.println("ioexception");
-     }
+ public static CustomerStore getCustomerStore() {return store;}
+ public static void setCustomerStore(CustomerStore customerStore) {store = customerStore;}
+ 
+ //customer records live in the mapped store once the text user database has been migrated to it,
+ //its index is rebuilt from the data file if it is missing; false if it is there but cannot be opened
+ public static boolean openCustomerStore()
+ {
+   if (!new File(MappedCustomerStore.indexFile).exists() && !new File(MappedCustomerStore.dataFile).exists())
+     return true;
+   try {
+     store = new CachedCustomerStore(new MappedCustomerStore(MappedCustomerStore.indexFile, MappedCustomerStore.dataFile));
+     return true;
+   }
+   catch (IOException e) {
+     System.out.println("Unable to open customer store: " + e.getMessage());
+     return false;
+   }
+ }
+ 
+ //releases the mapped store for the next process, false if it cannot be closed
+ public static boolean closeCustomerStore()
+ {
+   CustomerStore opened = store instanceof CachedCustomerStore ? ((CachedCustomerStore) store).getStore() : store;
+   if (!(opened instanceof Closeable))
+     return true;
+   try {
+     ((Closeable) opened).close();
      return true;
    }
+   catch (IOException e) {
+     System.out.println("Unable to close customer store");
+     return false;
+   }
+ }
+ 
+ public Boolean checkUser(Long phone){ //returns true if user phone is in DB, false if not
+   return store.find(phone) != null;
+ }
  
  public List<ReturnItem> getLatestReturnDate(Long phone) 
  {
-   long nextPh = 0;
    boolean outstandingReturns = false;
    
    SimpleDateFormat formatter =  new SimpleDateFormat("MM/dd/yy");
    List<ReturnItem> returnList = new ArrayList<ReturnItem>(); //this list will store all items to be used in this sale
    
-   String thisReturnDate = null;
-   int numberDaysPassed = 0;
+   String record = store.find(phone);
+   if (record == null)
+     return returnList;
    
-  //Read from database:
-   try{
-       FileReader fileR = new FileReader(userDatabase);
-       BufferedReader textReader = new BufferedReader(fileR);
-       String line;
-       
-       //reads the entire database
-       line = textReader.readLine(); //skips the first line, which explains how the DB is formatted. 
-       while ((line = textReader.readLine()) != null){
-        
-         try {  
-           nextPh = Long.parseLong(line.split(" ")[0]);    
-         } catch (NumberFormatException e) {  
-           continue;  
-         } 
-         if(nextPh == phone)//finds the user in the database
-         { 
-           
-           //System.out.println("getLatestReturnDate: found phone..");
-           
-           if(line.split(" ").length >1){
-            //System.out.println("you've rented with us before"); 
-             //System.out.print("here are the items you've rented before: ");
-             for(int i =1; i<line.split(" ").length; i++){
-               //line.split(" ")[i] represents 1022,6/31/11,true for example
-               String returnedBool = (line.split(" ")[i]).split(",")[2];
-               //System.out.print(line.split(" ")[i]);
-               //System.out.print(returnedBool);
-               boolean b = returnedBool.equalsIgnoreCase("true");
-               if (!b){ //if item wasn't returned already
-                 outstandingReturns = true; 
-                 //System.out.println("You still haven't returned item id: "+(line.split(" ")[i]).split(",")[0]+", due: "+(line.split(" ")[i]).split(",")[1]);
-                 thisReturnDate = line.split(" ")[i].split(",")[1];
-                 
-                 try {
-     Date returnDate = formatter.parse(thisReturnDate);
-     Calendar with = Calendar.getInstance();
-     with.setTime(returnDate);
-     numberDaysPassed = daysBetween (with);
-     ReturnItem returnItem = new ReturnItem(Integer.parseInt(line.split(" ")[i].split(",")[0]) , numberDaysPassed );
-     returnList.add(returnItem);
-     
-    } 
-                 catch (ParseException e) {
-     // TODO Auto-generated catch block
-     e.printStackTrace();
-    }
-                 
-                 
-               }     
-             }
-           }
-           if (!outstandingReturns){
-            System.out.println("No outstanding returns"); 
-           }
-         }
+   String[] rentals = record.split(" ");
+   for(int i =1; i<rentals.length; i++){
+     //rentals[i] represents 1022,6/31/11,true for example
+     String[] rental = rentals[i].split(",");
+     boolean b = rental[2].equalsIgnoreCase("true");
+     if (!b){ //if item wasn't returned already
+       outstandingReturns = true; 
+       try {
+         Date returnDate = formatter.parse(rental[1]);
+         Calendar with = Calendar.getInstance();
+         with.setTime(returnDate);
+         returnList.add(new ReturnItem(Integer.parseInt(rental[0]), daysBetween(with)));
+       } 
+       catch (ParseException e) {
+         e.printStackTrace();
        }
-       
-       textReader.close();
-       fileR.close();
-    }
-   
-   //catches exceptions
-     catch(FileNotFoundException ex) {
-       System.out.println("cannot open userDB"); 
-      
-     }
-     catch(IOException ex) {
-       System.out.println("ioexception");
      }
+   }
+   if (!outstandingReturns){
+     System.out.println("No outstanding returns"); 
+   }
    
    return returnList;
    
@@ -180,207 +129,67 @@ public class Management {
          return extraDays - dayTwo.get(Calendar.DAY_OF_YEAR) + dayOneOriginalYearDays ;
      }
  }
- 
- public boolean createUser(Long phone){
 
-   String strPhone = Long.toString(phone);
-   File file = new File (userDatabase);
+ //number of days from a "MM/dd/yy" rental date until today, -1 if the date cannot be parsed
+ static int daysSince(String rentalDate){
+   SimpleDateFormat formatter =  new SimpleDateFormat("MM/dd/yy");
    try {
-    PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file, true)));
-    out.println();
-    out.print(strPhone);
-    out.close();
-    return true;
-   } catch (IOException e) {
-     System.out.println("cannot write to userDB");
-     return false;
+     Calendar with = Calendar.getInstance();
+     with.setTime(formatter.parse(rentalDate));
+     return daysBetween(with);
+   }
+   catch (ParseException e) {
+     return -1;
    }
  }
+
+ public boolean createUser(Long phone){
+   return store.create(phone);
+ }
  
  public static void addRental(long phone, List <Item> rentalList)
  {
-  long nextPhone = 0;
-  List <String> fileList = new ArrayList<String>();
-  Date date = new Date();
-     Format formatter = new SimpleDateFormat("MM/dd/yy");
-     String dateFormat = formatter.format(date);
-     boolean ableToRead = false;
-  
-     
-     //Reads from file to read the changes to make:
-  try{
-     ableToRead = true;
-        FileReader fileR = new FileReader(userDatabase);
-        BufferedReader textReader = new BufferedReader(fileR);
-        String line;
-        //reads the entire database
-        line = textReader.readLine(); //skips the first line, which explains how the DB is formatted. 
-        fileList.add(line); //but stores it since it is the first line of the DB
-        while ((line = textReader.readLine()) != null)
-        {
-         
-          try {  
-            nextPhone = Long.parseLong(line.split(" ")[0]);    
-          } catch (NumberFormatException e) {  
-            continue;  
-          } 
-          System.out.println("comparing "+ nextPhone+" == "+ phone);
-          if(nextPhone == phone)//finds the user in the database
-          { 
-           
-     //loop through each "ID" in rentalList
-     for (Item item : rentalList){
-      line = line + " "+ item.getItemID() + ","+dateFormat+","+"false";
-     }
-     
-           fileList.add(line);
-          }
-          else
-           fileList.add(line); //adds the lines that are not modified from the database to the list to be rewritten later
-           
-       
-        }
-        textReader.close();
-        fileR.close();
-  }
-    
-    //catches exceptions
-      catch(FileNotFoundException ex) {
-        System.out.println("cannot open userDB"); 
-       
-      }
-      catch(IOException ex) {
-        System.out.println("ioexception");
-      }
-  
-  //Now writes to file to make the changes:
-  if (ableToRead) //if file has been read throughly
-  {
-   try
-   {
-    File file = new File(userDatabase);  
-    FileWriter fileR = new FileWriter(file.getAbsoluteFile());
-    BufferedWriter bWriter = new BufferedWriter(fileR);
-    PrintWriter writer = new PrintWriter(bWriter);
-    
-    for (int wCounter = 0; wCounter < fileList.size() ; ++wCounter)
-     writer.println(fileList.get(wCounter));
-    
-    bWriter.close(); //closes writer
-   }
-   
-   catch(IOException e){}
-   {
-   }
-  }
+  Format formatter = new SimpleDateFormat("MM/dd/yy");
+  final String dateFormat = formatter.format(new Date());
   
+  store.update(phone, line -> withRentals(line, rentalList, dateFormat));
+ }
+ 
+ //the customer's record with the items rented on the date added
+ static String withRentals(String line, List <Item> rentalList, String dateFormat)
+ {
+  StringBuilder modifiedLine = new StringBuilder(line);
+  //loop through each "ID" in rentalList
+  for (Item item : rentalList)
+   modifiedLine.append(" ").append(item.getItemID()).append(",").append(dateFormat).append(",false");
+  return modifiedLine.toString();
  }
  
  
  public void updateRentalStatus(long phone, List <ReturnItem> returnedList)
  {
-  long nextPhone = 0;
-  List <String> fileList = new ArrayList<String>();
-  String modifiedLine;
-  Date date = new Date();
-     Format formatter = new SimpleDateFormat("MM/dd/yy");
-     String dateFormat = formatter.format(date);
-     boolean ableToRead = false;
+  Format formatter = new SimpleDateFormat("MM/dd/yy");
+  final String dateFormat = formatter.format(new Date());
   
-     
-     //Reads from file to read the changes to make:
-
-  try{
-     ableToRead = true;
-        FileReader fileR = new FileReader(userDatabase);
-        BufferedReader textReader = new BufferedReader(fileR);
-        String line;
-        int returnCounter = 0;
-        //reads the entire database
-        line = textReader.readLine(); //skips the first line, which explains how the DB is formatted. 
-        fileList.add(line); //but stores it since it is the first line of the DB
-        while ((line = textReader.readLine()) != null)
-        {
-         
-          try {  
-            nextPhone = Long.parseLong(line.split(" ")[0]);    
-          } catch (NumberFormatException e) {  
-            continue;  
-          } 
-          if(nextPhone == phone)//finds the user in the database
-          { 
-           modifiedLine = line.split(" ")[0];
-           if(line.split(" ").length >1)
-           {
-               
-                   for(int i =1; i<line.split(" ").length; i++)
-                   {
-                  String returnedBool = (line.split(" ")[i]).split(",")[2];
- 
-                     boolean b = returnedBool.equalsIgnoreCase("true");
-                     if (!b)//if item wasn't returned already
-                     { 
-                      for (returnCounter = 0 ; returnCounter < returnedList.size() ; returnCounter++) 
-                       if (Integer.parseInt(line.split(" ")[i].split(",")[0]) == returnedList.get(returnCounter).getItemID())
-                       {
-                        modifiedLine += " " + line.split(" ")[i].split(",")[0] + "," + dateFormat + "," + "true";
-          
-                       }
-                     /* if (returnCounter == returnedList.size() )
-                       modifiedLine += line.split(" ")[i]; //not returning this item now*/
-                     }
-                   
-                     
-                     else
-                     {
-                      modifiedLine += " " + line.split(" ")[i];
-                     }
-                   }
-           }
-           fileList.add(modifiedLine);
-          }
-          else
-           fileList.add(line); //adds the lines that are not modified from the database to the list to be rewritten later
-           
-       
-        }
-        textReader.close();
-        fileR.close();
-  }
-    
-    //catches exceptions
-      catch(FileNotFoundException ex) {
-        System.out.println("cannot open userDB"); 
-       
-      }
-      catch(IOException ex) {
-        System.out.println("ioexception");
-      }
+  //IDs being returned now, each rental entry is checked against the set once
+  final Set <Integer> returnedIDs = new HashSet<Integer>();
+  for (ReturnItem item : returnedList)
+   returnedIDs.add(item.getItemID());
   
-  //Now writes to file to make the changes:
-  if (ableToRead) //if file has been read throughly
-  {
-   try
-   {
-    File file = new File(userDatabase);  
-    FileWriter fileR = new FileWriter(file.getAbsoluteFile());
-    BufferedWriter bWriter = new BufferedWriter(fileR);
-    PrintWriter writer = new PrintWriter(bWriter);
-    
-    for (int wCounter = 0; wCounter < fileList.size() ; ++wCounter)
-     writer.println(fileList.get(wCounter));
-    
-    bWriter.close(); //closes writer
-   }
-   
-   catch(IOException e){}
+  store.update(phone, line -> {
+   String[] rentals = line.split(" ");
+   StringBuilder modifiedLine = new StringBuilder(rentals[0]);
+   for(int i =1; i<rentals.length; i++)
    {
+    String[] rental = rentals[i].split(",");
+    boolean b = rental[2].equalsIgnoreCase("true");
+    if (!b && returnedIDs.contains(Integer.parseInt(rental[0])))//if item wasn't returned already and is returned now
+     modifiedLine.append(" ").append(rental[0]).append(",").append(dateFormat).append(",true");
+    else
+     modifiedLine.append(" ").append(rentals[i]); //returned before or not returning this item now
    }
-  }
-  
-
+   return modifiedLine.toString();
+  });
  }
  
- 
- 
 }
@@ -0,0 +1,536 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+//Customer store for large customer bases. An open addressing hash table of phone -> record offset is
+//memory mapped from the index file, and the records are appended to a data file:
+//  index: header (magic, version, capacity, size, dirty, data length indexed) then capacity slots of
+//         [long phone][long offset]
+//  data:  records of [long phone][int length][length bytes of the customer line]
+//A lookup touches the slot's page of the index and the record's page of the data file, nothing is
+//loaded onto the heap. An update appends a new version of the record and repoints the slot, so the
+//data file is also a log the index can be rebuilt from, which is done on open whenever the index is
+//missing, damaged or does not cover the whole data file. updateAll writes a new data file holding only
+//the current version of each record and swaps it in, which is how the superseded versions are dropped. The store is owned by a single process: it holds
+//an exclusive lock on the data file while open, a second register opening it gets an IOException.
+public class MappedCustomerStore extends CustomerStore implements Closeable
+{
+  public static String indexFile = "Database/customerIndex.dat";
+  public static String dataFile = "Database/customerData.dat";
+
+  private static final int MAGIC = 0x504F5343;
+  private static final int VERSION = 2; //adds the data length indexed
+  private static final int HEADER = 64;
+  private static final int INDEXED_TO = 24; //header offset of the data length the slots cover
+  private static final int SLOT = 16;
+  private static final int RECORD_HEADER = 12;
+  private static final int MIN_CAPACITY = 1024;
+  private static final int MAX_CAPACITY = 1 << 26; //1 GB of slots, the most a single mapping can hold
+  private static final double MAX_LOAD = 0.7;
+  private static final int STRIPES = 64; //power of two
+
+  private final File index;
+  private final File dataPath;
+  private FileChannel indexChannel;
+  private MappedByteBuffer slots;
+  private int capacity;
+  private int size;
+  private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+
+  private FileChannel data;
+  private FileLock owner;
+  private long dataEnd;
+  private final Object appendLock = new Object(); //appends and repoints slots in data order
+  //an update reads the record, changes it and appends the new version; updates of the same customer are
+  //serialized on the stripe of its phone number, different customers are changed concurrently
+  private final ReentrantReadWriteLock[] stripes = new ReentrantReadWriteLock[STRIPES];
+
+  public MappedCustomerStore(String indexFile, String dataFile) throws IOException
+  {
+    this(indexFile, dataFile, MIN_CAPACITY);
+  }
+
+  MappedCustomerStore(String indexFile, String dataFile, int initialCapacity) throws IOException
+  {
+    for (int i = 0; i < STRIPES; i++)
+      stripes[i] = new ReentrantReadWriteLock();
+    index = new File(indexFile);
+    dataPath = new File(dataFile);
+    data = new RandomAccessFile(dataPath, "rw").getChannel();
+    try {
+      owner = data.tryLock();
+    }
+    catch (OverlappingFileLockException e) {
+      owner = null;
+    }
+    if (owner == null)
+    {
+      data.close();
+      throw new IOException("customer store '" + dataFile + "' is open in another register");
+    }
+    dataEnd = data.size();
+    indexChannel = new RandomAccessFile(index, "rw").getChannel();
+
+    boolean valid = false;
+    if (indexChannel.size() >= HEADER)
+    {
+      slots = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+      capacity = slots.getInt(8);
+      size = slots.getInt(12);
+      valid = slots.getInt(0) == MAGIC && slots.getInt(4) == VERSION && slots.getInt(16) == 0
+        && capacity > 0 && indexChannel.size() >= HEADER + (long) capacity*SLOT
+        && slots.getLong(INDEXED_TO) == dataEnd;
+    }
+    //missing, interrupted while resizing, behind the data file or not an index file
+    if (!valid)
+      rebuildIndex(initialCapacity);
+  }
+
+  public String find(long phone)
+  {
+    if (phone <= 0)
+      return null;
+    indexLock.readLock().lock();
+    try {
+      int slot = locate(phone);
+      if (slots.getLong(position(slot)) != phone)
+        return null;
+      return readRecord(slots.getLong(position(slot) + 8));
+    }
+    catch (IOException e) {
+      System.out.println("cannot read customer data");
+      return null;
+    }
+    finally {
+      indexLock.readLock().unlock();
+    }
+  }
+
+  public boolean create(long phone)
+  {
+    if (phone <= 0)
+      return false;
+    ReentrantReadWriteLock customer = stripe(phone);
+    customer.writeLock().lock();
+    try {
+      if (find(phone) != null) //already registered
+        return true;
+      store(phone, Long.toString(phone));
+      return true;
+    }
+    catch (IOException e) {
+      System.out.println("cannot write customer data");
+      return false;
+    }
+    finally {
+      customer.writeLock().unlock();
+    }
+  }
+
+  public boolean update(long phone, UnaryOperator<String> change)
+  {
+    ReentrantReadWriteLock customer = stripe(phone);
+    customer.writeLock().lock();
+    try {
+      String record = find(phone);
+      if (record == null)
+        return false;
+      store(phone, change.apply(record));
+      return true;
+    }
+    catch (IOException e) {
+      System.out.println("cannot write customer data");
+      return false;
+    }
+    finally {
+      customer.writeLock().unlock();
+    }
+  }
+
+  public boolean forEach(Consumer<String> action)
+  {
+    indexLock.readLock().lock();
+    try {
+      for (int slot = 0; slot < capacity; slot++)
+      {
+        if (slots.getLong(position(slot)) != 0)
+          action.accept(readRecord(slots.getLong(position(slot) + 8)));
+      }
+      return true;
+    }
+    catch (IOException e) {
+      System.out.println("cannot read customer data");
+      return false;
+    }
+    finally {
+      indexLock.readLock().unlock();
+    }
+  }
+
+  //rewrites the data file with change applied to the current version of every record, then the index over it
+  public boolean updateAll(UnaryOperator<String> change)
+  {
+    lockAll();
+    try {
+      synchronized (appendLock)
+      {
+        indexLock.writeLock().lock();
+        try {
+          rewrite(change);
+          return true;
+        }
+        finally {
+          indexLock.writeLock().unlock();
+        }
+      }
+    }
+    catch (IOException e) {
+      System.out.println("cannot write customer data");
+      return false;
+    }
+    finally {
+      unlockAll();
+    }
+  }
+
+  public int size()
+  {
+    indexLock.readLock().lock();
+    try {
+      return size;
+    }
+    finally {
+      indexLock.readLock().unlock();
+    }
+  }
+
+  //loads the customers of a text user database into an empty store, returns the number of records read
+  //or -1 on failure; a store already holding customers is not imported into again, which would add their
+  //rentals a second time
+  public int importFrom(String textDatabase)
+  {
+    int records = 0;
+    if (size() > 0)
+    {
+      System.out.println("customer store already holds " + size() + " customers");
+      return -1;
+    }
+    try {
+      BufferedReader textReader = new BufferedReader(new FileReader(textDatabase));
+      String line = textReader.readLine(); //skips the first line, which explains how the DB is formatted.
+      while ((line = textReader.readLine()) != null)
+      {
+        final String record = line;
+        long phone = phoneOf(record);
+        if (phone <= 0)
+          continue;
+        final String rentals = record.indexOf(' ') < 0 ? "" : record.substring(record.indexOf(' '));
+        //a phone listed twice keeps the rentals of both lines
+        if (!update(phone, existing -> existing + rentals))
+          store(phone, record);
+        records++;
+      }
+      textReader.close();
+    }
+    catch(FileNotFoundException ex) {
+      System.out.println("cannot open userDB");
+      return -1;
+    }
+    catch(IOException ex) {
+      System.out.println("ioexception");
+      return -1;
+    }
+    return records;
+  }
+
+  public void close() throws IOException
+  {
+    indexLock.writeLock().lock();
+    try {
+      slots.force();
+      indexChannel.close();
+      data.force(false);
+      data.close();
+    }
+    finally {
+      indexLock.writeLock().unlock();
+    }
+  }
+
+  private ReentrantReadWriteLock stripe(long phone)
+  {
+    int hash = Long.hashCode(phone);
+    hash ^= (hash >>> 16);
+    return stripes[hash & (STRIPES - 1)];
+  }
+
+  //takes every stripe, for passes that change all customers at once
+  private void lockAll()
+  {
+    for (ReentrantReadWriteLock stripe : stripes)
+      stripe.writeLock().lock();
+  }
+
+  private void unlockAll()
+  {
+    for (int i = STRIPES - 1; i >= 0; i--)
+      stripes[i].writeLock().unlock();
+  }
+
+  private static int position(int slot) {return HEADER + slot*SLOT;} //fits an int up to MAX_CAPACITY
+
+  //slot holding the phone, or the empty slot where it would be inserted
+  private int locate(long phone)
+  {
+    long hash = phone * 0x9E3779B97F4A7C15L;
+    int slot = (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+    while (true)
+    {
+      long key = slots.getLong(position(slot));
+      if (key == phone || key == 0)
+        return slot;
+      slot = (slot + 1) & (capacity - 1);
+    }
+  }
+
+  private void put(long phone, long offset) throws IOException
+  {
+    indexLock.writeLock().lock();
+    try {
+      int slot = locate(phone);
+      if (slots.getLong(position(slot)) == 0)
+      {
+        if (size + 1 > capacity*MAX_LOAD)
+        {
+          resize(capacity*2);
+          slot = locate(phone);
+        }
+        slots.putLong(position(slot), phone);
+        size++;
+        slots.putInt(12, size);
+      }
+      slots.putLong(position(slot) + 8, offset);
+    }
+    finally {
+      indexLock.writeLock().unlock();
+    }
+  }
+
+  //grows the table in place, a dirty flag makes the next open rebuild the index if this is interrupted
+  private void resize(int newCapacity) throws IOException
+  {
+    if (newCapacity > MAX_CAPACITY)
+      throw new IOException("customer index is full");
+    long[] phones = new long[size];
+    long[] offsets = new long[size];
+    int count = 0;
+    for (int slot = 0; slot < capacity; slot++)
+    {
+      long key = slots.getLong(position(slot));
+      if (key != 0)
+      {
+        phones[count] = key;
+        offsets[count++] = slots.getLong(position(slot) + 8);
+      }
+    }
+    mapIndex(newCapacity, 1);
+    for (int i = 0; i < count; i++)
+    {
+      int slot = locate(phones[i]);
+      slots.putLong(position(slot), phones[i]);
+      slots.putLong(position(slot) + 8, offsets[i]);
+    }
+    size = count;
+    slots.putInt(12, size);
+    slots.putInt(16, 0);
+  }
+
+  //maps an empty table of the given capacity over the index file, the header is written first
+  private void mapIndex(int newCapacity, int dirty) throws IOException
+  {
+    slots = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, position(newCapacity));
+    capacity = newCapacity;
+    size = 0;
+    slots.putInt(0, MAGIC);
+    slots.putInt(4, VERSION);
+    slots.putInt(8, capacity);
+    slots.putInt(12, size);
+    slots.putInt(16, dirty);
+    slots.putLong(INDEXED_TO, 0);
+    for (int position = HEADER; position < position(newCapacity); position += 8)
+      slots.putLong(position, 0);
+  }
+
+  //the new data file is written and locked beside the old one and renamed over it, the index is marked
+  //dirty first so an interrupted swap is rebuilt from whichever data file is in place on the next open
+  private void rewrite(UnaryOperator<String> change) throws IOException
+  {
+    File temp = new File(dataPath.getPath() + ".tmp");
+    FileChannel rewritten = new RandomAccessFile(temp, "rw").getChannel();
+    FileLock rewrittenOwner;
+    long[] phones = new long[size];
+    long[] offsets = new long[size];
+    int count = 0;
+    long end = 0;
+    try {
+      rewrittenOwner = rewritten.tryLock();
+      if (rewrittenOwner == null)
+        throw new IOException("customer store '" + temp + "' is being rewritten by another register");
+      rewritten.truncate(0);
+      for (int slot = 0; slot < capacity; slot++)
+      {
+        long phone = slots.getLong(position(slot));
+        if (phone == 0)
+          continue;
+        byte[] bytes = change.apply(readRecord(slots.getLong(position(slot) + 8))).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + bytes.length);
+        buffer.putLong(phone).putInt(bytes.length).put(bytes);
+        buffer.flip();
+        while (buffer.hasRemaining())
+          rewritten.write(buffer, end + buffer.position());
+        phones[count] = phone;
+        offsets[count++] = end;
+        end += RECORD_HEADER + bytes.length;
+      }
+      rewritten.force(false);
+      slots.putInt(16, 1);
+      slots.force();
+      Files.move(temp.toPath(), dataPath.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException | OverlappingFileLockException e) {
+      rewritten.close();
+      temp.delete();
+      slots.putInt(16, 0);
+      throw e instanceof IOException ? (IOException) e : new IOException(e);
+    }
+    data.close(); //also releases the lock on the old file
+    data = rewritten;
+    owner = rewrittenOwner;
+    dataEnd = end;
+    mapIndex(powerOfTwo((int) Math.min(MAX_CAPACITY, count/MAX_LOAD + 1)), 1);
+    for (int i = 0; i < count; i++)
+      put(phones[i], offsets[i]);
+    slots.putLong(INDEXED_TO, dataEnd);
+    slots.putInt(16, 0);
+  }
+
+  //replays the data file, the last record of each phone is its current version
+  private void rebuildIndex(int minimumCapacity) throws IOException
+  {
+    int records = 0;
+    long offset = 0;
+    ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+    while (offset + RECORD_HEADER <= dataEnd)
+    {
+      header.clear();
+      readFully(header, offset);
+      int length = header.getInt(8);
+      if (length < 0 || offset + RECORD_HEADER + length > dataEnd) //torn last record
+        break;
+      offset += RECORD_HEADER + length;
+      records++;
+    }
+    if (records > 0)
+      System.out.println("Rebuilding customer index '" + index + "'");
+    mapIndex(powerOfTwo((int) Math.max(minimumCapacity, Math.min(MAX_CAPACITY, records/MAX_LOAD + 1))), 1);
+    offset = 0;
+    while (offset + RECORD_HEADER <= dataEnd)
+    {
+      header.clear();
+      readFully(header, offset);
+      int length = header.getInt(8);
+      if (length < 0 || offset + RECORD_HEADER + length > dataEnd) //torn last record
+        break;
+      put(header.getLong(0), offset);
+      offset += RECORD_HEADER + length;
+    }
+    if (offset < data.size())
+      data.truncate(offset); //the next append goes where the torn record was
+    dataEnd = offset;
+    slots.putLong(INDEXED_TO, dataEnd);
+    slots.putInt(16, 0);
+  }
+
+  //appends the record and points the phone's slot at it, the index then covers the data file again
+  private void store(long phone, String record) throws IOException
+  {
+    synchronized (appendLock)
+    {
+      put(phone, appendRecord(phone, record));
+      slots.putLong(INDEXED_TO, dataEnd);
+    }
+  }
+
+  private long appendRecord(long phone, String record) throws IOException
+  {
+    byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + bytes.length);
+    buffer.putLong(phone).putInt(bytes.length).put(bytes);
+    buffer.flip();
+    synchronized (appendLock)
+    {
+      long offset = dataEnd;
+      while (buffer.hasRemaining())
+        data.write(buffer, offset + buffer.position());
+      dataEnd += RECORD_HEADER + bytes.length;
+      return offset;
+    }
+  }
+
+  private String readRecord(long offset) throws IOException
+  {
+    ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+    readFully(header, offset);
+    ByteBuffer bytes = ByteBuffer.allocate(header.getInt(8));
+    readFully(bytes, offset + RECORD_HEADER);
+    return new String(bytes.array(), StandardCharsets.UTF_8);
+  }
+
+  private void readFully(ByteBuffer buffer, long offset) throws IOException
+  {
+    while (buffer.hasRemaining())
+      if (data.read(buffer, offset + buffer.position()) < 0)
+        throw new EOFException();
+    buffer.flip();
+  }
+
+  private static int powerOfTwo(int minimum)
+  {
+    int capacity = MIN_CAPACITY;
+    while (capacity < minimum && capacity < MAX_CAPACITY)
+      capacity <<= 1;
+    return capacity;
+  }
+
+  //migrates the text user database: MappedCustomerStore [userDatabase indexFile dataFile]
+  public static void main(String[] args)
+  {
+    String textDatabase = args.length == 3 ? args[0] : "Database/userDatabase.txt";
+    if (args.length == 3)
+    {
+      indexFile = args[1];
+      dataFile = args[2];
+    }
+    try {
+      MappedCustomerStore store = new MappedCustomerStore(indexFile, dataFile);
+      int records = store.importFrom(textDatabase);
+      System.out.println("Migrated " + records + " records, " + store.size() + " customers");
+      store.close();
+      if (records < 0)
+        System.exit(1);
+    }
+    catch (IOException e) {
+      System.out.println("Unable to open customer store: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+}
@@ -6,13 +6,19 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 public class POH extends PointOfSale
 {
  List <ReturnItem> returnList = new ArrayList<ReturnItem>();
  long phone;
+ private ReturnQuote quote = null; //late fees for the current cart, computed once per return
+ private SalesJournal.Record receipt = null; //sale the unsatisfactory items were bought in, if shown
+ private List<Item> returnedBefore = new ArrayList<Item>(); //items of the receipt refunded by earlier returns
+ private double lateFees = 0; //charged by the last endPOS, rented items are not paid for again when they come back
  
  public POH(){
    this.phone=0;
@@ -68,14 +74,120 @@ public class POH extends PointOfSale
       }
       
     }
+    //late fees for the items in the cart, shared by the payment screen and endPOS
+    public ReturnQuote getReturnQuote()
+    {
+      if (quote == null)
+        quote = ReturnQuote.compute(phone, transactionItem);
+      return quote;
+    }
+    
+    //false if there is no sale with this receipt number
+    public boolean setReceipt(long transactionId)
+    {
+      SalesJournal.Record sale = TransactionIndex.forFile(SalesJournal.journalFile).find(transactionId);
+      if (sale == null || sale.getType() != SalesJournal.SALE)
+        return false;
+      receipt = sale;
+      returnedBefore.clear();
+      for (SalesJournal.Record earlier : TransactionIndex.forFile(SalesJournal.journalFile).returnsOf(transactionId))
+        returnedBefore.addAll(earlier.getLines());
+      return true;
+    }
+    
+    public SalesJournal.Record getReceipt() {return receipt;}
+    
+    //unsatisfactory items are refunded, late fees are paid
+    double tenderAmount() {return returnSale ? -totalPrice : lateFees;}
+    
+    //the refund, or the late fees of the quote endPOS will charge
+    public double checkoutTotal()
+    {
+      if (returnSale)
+        return totalPrice;
+      double total = 0;
+      if (transactionItem.size() > 0)
+        for (ReturnQuote.Line line : getReturnQuote().getLines())
+          total += line.getFee();
+      return total;
+    }
+    
+    public boolean enterItem(int itemID, int amount)
+    {
+      //with a receipt, only what was bought on it and is neither in the cart nor refunded before can come back
+      if (receipt != null)
+      {
+        int bought = 0;
+        for (Item item : receipt.getLines())
+          if (item.getItemID() == itemID)
+            bought += item.getAmount();
+        for (Item item : returnedBefore)
+          if (item.getItemID() == itemID)
+            bought -= item.getAmount();
+        for (Item item : transactionItem)
+          if (item.getItemID() == itemID)
+            bought -= item.getAmount();
+        if (amount > bought)
+          return false;
+      }
+      quote = null;
+      return super.enterItem(itemID, amount);
+    }
+    
+    public boolean removeItems(int itemID)
+    {
+      quote = null;
+      return super.removeItems(itemID);
+    }
+    
     public double endPOS(String textFile){
+      CommitPipeline pipeline = CommitPipeline.running();
+      if (pipeline != null)
+        return endPOSAsync(pipeline, textFile);
       //detectSystem();
+      lateFees = 0;
+      if (transactionItem.size() > 0 && !textFile.equals(""))
+      {
+	    Management management = new Management();
+	    ReturnQuote returnQuote = getReturnQuote();
+	    returnList = returnQuote.getOutstanding();
+
+	    for (ReturnQuote.Line line : returnQuote.getLines())
+	    {
+	      totalPrice += line.getFee();
+	      lateFees += line.getFee();
+	      System.out.println("Item Name: " + line.getItem().getItemName() + "    Days Late: " 
+	                           + line.getDays() + "   To be paid: " + line.getFee());
+	      System.out.println("Total: " + totalPrice);
+	    }
+	   
+	    inventory.updateInventory(textFile, transactionItem, databaseItem,false);
+	    
+	    //only the rentals in the cart are marked as returned, the rest stay outstanding
+	    management.updateRentalStatus(phone,returnQuote.getReturned());
+
+      }
+      
+      long time = System.currentTimeMillis();
+      if (transactionItem.size() > 0)
+      {
+        //refunds and late fees go into the sales journal next to the sales, returns name the sale on the receipt
+        transactionId = journal(new SalesJournal.Record(
+          returnSale ? SalesJournal.RETURN : SalesJournal.RENTAL_RETURN, 0, register, cashier, time,
+          new ArrayList<Item>(transactionItem), totalPrice - lateFees, 0, 0, returnSale ? totalPrice : lateFees,
+          returnSale && receipt != null ? receipt.getTransactionId() : 0, phone));
+        SalesAggregates.forFile(SalesJournal.journalFile).refresh();
+      }
+      
         if(returnSale==true){
                 try{
       String t = "Database/returnSale.txt";
       
       FileWriter fw2 = new FileWriter(t,true);
       BufferedWriter bw2 = new BufferedWriter(fw2);
+      //"Return <transaction> <time> receipt <sale, 0 without one>", read by ReturnAnalytics
+      bw2.write("Return "+transactionId+" "+new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(time))
+                +" receipt "+(receipt == null ? 0 : receipt.getTransactionId()));
       bw2.write(System.getProperty( "line.separator" ));
       for(int i=0;i<transactionItem.size();i++){
        String log=Integer.toString(transactionItem.get(i).getItemID())+" "+transactionItem.get(i).getItemName()+" "+
@@ -86,6 +198,7 @@ public class POH extends PointOfSale
       }
       bw2.newLine();
       bw2.close();
+      SegmentedLog.forFile(t).rotateIfNeeded();
       
     } catch (FileNotFoundException e) {
       System.out.println("Unable to open file Log File for logout"); 
@@ -94,41 +207,33 @@ public class POH extends PointOfSale
       e.printStackTrace();
     }  
         }
+      quote = null;
+      databaseItem.clear();
+      transactionItem.clear();
+      return totalPrice; 
+    }
+    
+    //the return is recorded in the journal with its late fees, the inventory, rentals and returns log are left to the pipeline
+    private double endPOSAsync(CommitPipeline pipeline, String textFile){
+      lateFees = 0;
       if (transactionItem.size() > 0 && !textFile.equals(""))
       {
-	    Management management = new Management();
-	    returnList = management.getLatestReturnDate(phone);
-	    double itemPrice = 0;
-	  //  totalPrice = 0;
-	    
-	    
-            
-            
-           
-                for (int transactionCounter = 0; transactionCounter < transactionItem.size(); transactionCounter++)
-	             for (int returnCounter = 0; returnCounter < returnList.size(); returnCounter++)
-	           {
-	             if (transactionItem.get(transactionCounter).getItemID() == returnList.get(returnCounter).getItemID())
-	             {
-	               //Applies a value to be payed depending on the amount of days it is late. If it is not late, no value is applied
-	               itemPrice = transactionItem.get(transactionCounter).getAmount()*transactionItem.get(transactionCounter).getPrice()* 0.1 * returnList.get(returnCounter).getDays();
-	               totalPrice += itemPrice;
-	               System.out.println("Item Name: " + transactionItem.get(transactionCounter).getItemName() + "    Days Late: " 
-	                                    + returnList.get(returnCounter).getDays() + "   To be paid: " + itemPrice);
-	               System.out.println("Total: " + totalPrice);
-	             }
-	           }
-            
-	   
-	    inventory.updateInventory(textFile, transactionItem, databaseItem,false);
-	    
-	    management.updateRentalStatus(phone,returnList);
-
+        ReturnQuote returnQuote = getReturnQuote();
+        returnList = returnQuote.getOutstanding();
+        for (ReturnQuote.Line line : returnQuote.getLines())
+        {
+          totalPrice += line.getFee();
+          lateFees += line.getFee();
+        }
       }
-      
+      if (transactionItem.size() > 0)
+        transactionId = pipeline.commit(withTender(new SalesJournal.Record(returnSale ? SalesJournal.RETURN : SalesJournal.RENTAL_RETURN, 0,
+          register, cashier, System.currentTimeMillis(), new ArrayList<Item>(transactionItem), totalPrice - lateFees, 0, 0,
+          returnSale ? totalPrice : lateFees, returnSale && receipt != null ? receipt.getTransactionId() : 0, phone)), textFile);
+      quote = null;
       databaseItem.clear();
       transactionItem.clear();
-      return totalPrice; 
+      return totalPrice;
     }
     
     public void retrieveTemp(String textFile){
@@ -1,5 +1,6 @@
 
 import java.io.*;
+import java.util.ArrayList;
 
 
 public class POR extends PointOfSale {
@@ -54,6 +55,9 @@ public class POR extends PointOfSale {
   
   @SuppressWarnings("static-access")
 public double endPOS(String textFile){
+    CommitPipeline pipeline = CommitPipeline.running();
+    if (pipeline != null)
+      return endPOSAsync(pipeline, textFile);
     Management man = new Management();
     man.addRental(this.phoneNum, this.transactionItem);
     detectSystem();
@@ -72,10 +76,27 @@ public double endPOS(String textFile){
         inventory.updateInventory(textFile, transactionItem, databaseItem,true);
       }*/
       inventory.updateInventory(textFile, transactionItem, databaseItem,true);
+      //rental income goes into the sales journal next to the sales
+      transactionId = journal(new SalesJournal.Record(SalesJournal.RENTAL, 0,
+        register, cashier, System.currentTimeMillis(), new ArrayList<Item>(transactionItem), totalPrice/tax, 0,
+        totalPrice - totalPrice/tax, totalPrice, 0, phoneNum));
     }
     //delete log file
-    File file = new File(tempFile);
-    file.delete();
+    deleteTemp();
+    databaseItem.clear();
+    transactionItem.clear();
+    return totalPrice;
+  }
+
+  //the rental is recorded in the journal and the customer's rentals and the inventory are left to the pipeline
+  private double endPOSAsync(CommitPipeline pipeline, String textFile){
+    if (transactionItem.size()>0){
+      totalPrice = totalPrice*tax;
+      transactionId = pipeline.commit(withTender(new SalesJournal.Record(SalesJournal.RENTAL, 0, register, cashier,
+        System.currentTimeMillis(), new ArrayList<Item>(transactionItem), totalPrice/tax, 0,
+        totalPrice - totalPrice/tax, totalPrice, 0, phoneNum)), textFile);
+    }
+    deleteTemp();
     databaseItem.clear();
     transactionItem.clear();
     return totalPrice;
@@ -47,8 +47,12 @@ public class POS extends PointOfSale {
   
   public double endPOS(String textFile)
   {
+    CommitPipeline pipeline = CommitPipeline.running();
+    if (pipeline != null)
+      return endPOSAsync(pipeline, textFile);
     detectSystem();
     boolean bool=true;
+    double preTax=totalPrice;
     if (transactionItem.size()>0){
     totalPrice = totalPrice*tax; //calculates price with tax
     //prints total with taxes
@@ -58,13 +62,12 @@ public class POS extends PointOfSale {
     inventory.updateInventory(textFile, transactionItem, databaseItem,true);
     }
     //delete log file
-    File file = new File(tempFile);
-      file.delete();
+    deleteTemp();
       if(bool==true){
+    Calendar cal = Calendar.getInstance(); //same time in both logs, the journal converter relies on it
     //invoice record file
     try{
       DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-  Calendar cal = Calendar.getInstance();
       String t = "Database/saleInvoiceRecord.txt";
       if(System.getProperty("os.name").startsWith("W")||System.getProperty("os.name").startsWith("w")){
         //t = "..\\Database\\saleInvoiceRecord.txt"; 
@@ -83,6 +86,7 @@ public class POS extends PointOfSale {
       bw2.write("Total with tax: "+totalPrice);
       bw2.newLine();
       bw2.close();
+      SegmentedLog.forFile(t).rotateIfNeeded();
       
     } catch (FileNotFoundException e) {
       System.out.println("Unable to open file Log File for logout"); 
@@ -90,11 +94,35 @@ public class POS extends PointOfSale {
     catch (IOException e) {
       e.printStackTrace();
     }  
+      //binary record of the sale, read by the reports; an empty cart sold nothing
+      if (transactionItem.size()>0){
+      transactionId = journal(new SalesJournal.Record(SalesJournal.SALE, 0, register, cashier,
+        cal.getTimeInMillis(), new ArrayList<Item>(transactionItem), preTax + couponDiscount, couponDiscount, totalPrice - preTax, totalPrice));
+      SalesAggregates.forFile(SalesJournal.journalFile).refresh();
+      }
       }
+     couponDiscount=0;
      databaseItem.clear();
     transactionItem.clear();
     return totalPrice;
   }
+
+  //the sale is recorded in the journal and the inventory and invoice are left to the pipeline
+  private double endPOSAsync(CommitPipeline pipeline, String textFile)
+  {
+    double preTax=totalPrice;
+    deleteTemp();
+    if (transactionItem.size()>0)
+    {
+      totalPrice = totalPrice*tax;
+      transactionId = pipeline.commit(withTender(new SalesJournal.Record(SalesJournal.SALE, 0, register, cashier, System.currentTimeMillis(),
+        new ArrayList<Item>(transactionItem), preTax + couponDiscount, couponDiscount, totalPrice - preTax, totalPrice)), textFile);
+    }
+    couponDiscount=0;
+    databaseItem.clear();
+    transactionItem.clear();
+    return totalPrice;
+  }
   
   public void retrieveTemp(String textFile){
     try{
@@ -1,6 +1,4 @@
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.io.*;
 import java.io.FileNotFoundException;
@@ -11,12 +9,50 @@ public class POSSystem{
   public static String rentalDatabaseFile = "Database/rentalDatabase.txt"; 
   public static String itemDatabaseFile = "Database/itemDatabase.txt"; 
   public List<Employee> employees = new ArrayList<Employee>();
-  DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
   Calendar cal=null;
-  private int index=-1;
   String username="";
   String password="";
   String name="";
+  //session of the employee logged in through this object, passed from screen to screen
+  private SessionManager.Session session=null;
+  public String register=SessionManager.defaultRegister; //the register logins through this object are opened on
+  
+  public POSSystem(){}
+  
+  //resumes a session opened by an earlier login
+  public POSSystem(SessionManager.Session session){
+    this.session=session;
+    if (session != null){
+      username=session.getUsername();
+      name=session.getName();
+    }
+  }
+  
+  public SessionManager.Session getSession() {return session;}
+  
+  //an action of the logged in employee, keeps the session from expiring; false if it has expired already,
+  //the employee was logged out then and has to log in again
+  public boolean touch(){
+    if (session == null)
+      return true;
+    if (SessionManager.getInstance().get(session.getToken()) != null)
+      return true;
+    session=null;
+    return false;
+  }
+  
+  //the transaction open on this employee's register, kept with the session
+  public void setTransaction(PointOfSale transaction){
+    if (session != null){
+      session.setTransaction(transaction);
+      session.touch();
+      if (transaction != null){
+        transaction.session=session;
+        transaction.register=session.getRegister();
+        transaction.cashier=session.getUsername();
+      }
+    }
+  }
   
   public void readFile(){
     if (System.getProperty("os.name").startsWith("W")||System.getProperty("os.name").startsWith("w")){
@@ -26,59 +62,14 @@ public class POSSystem{
       //itemDatabaseFile = "..\\Database\\itemDatabase.txt";
     }
     
-    String line = null;
-    String[] lineSort;
-    
-    //Checks database file for the item  
-    try {
-      FileReader fileR = new FileReader(employeeDatabase);
-      BufferedReader textReader = new BufferedReader(fileR);
-      //reads the entire database
-      while ((line = textReader.readLine()) != null)
-      {
-        lineSort = line.split(" "); //separates words    
-        String name=lineSort[2]+" "+lineSort[3];
-        employees.add(new Employee(lineSort[0],name,lineSort[1],lineSort[4]));
-      }
-      textReader.close();
-      
-    }
-    
-    //catches exceptions
-    catch(FileNotFoundException ex) {
-      System.out.println(
-                         "Unable to open file '" + 
-                         employeeDatabase + "'"); 
-    }
-    catch(IOException ex) {
-      System.out.println(
-                         "Error reading file '" 
-                           + employeeDatabase + "'");  
-    }
+    //the employee database with the changes journaled since its last snapshot
+    employees.clear();
+    employees.addAll(EmployeeStore.forFile(employeeDatabase).list());
   } 
   
   public void logInToFile(String username,String name,String position,Calendar cal){
-    try{
-      String temp = "Database/employeeLogfile.txt";
-      //if(System.getProperty("os.name").startsWith("W")||System.getProperty("os.name").startsWith("w")){
-        //temp = "..\\Database\\employeeLogfile.txt";  //commented out to support netbeans
-      //}
-      FileWriter fw = new FileWriter(temp,true);
-      BufferedWriter bw = new BufferedWriter(fw);
-      String log=name+" ("+username+" "+position+") logs into POS System. Time: "+dateFormat.format(cal.getTime());
-      bw.write(log);
-      bw.write(System.getProperty( "line.separator" ));
-      bw.close();
-      if(position.equals("Admin")){
-          
-      }
-      
-    } catch (FileNotFoundException e) {
-      System.out.println("Unable to open file Log File for logIn"); 
-    }
-    catch (IOException e) {
-      e.printStackTrace();
-    }
+    //written to Database/employeeLogfile.txt by the audit logger's thread
+    AuditLogger.getInstance().logIn(username,name,position,cal.getTimeInMillis());
   }
   
   public boolean checkTemp()
@@ -143,59 +134,54 @@ public class POSSystem{
   }
   
   public void logOutToFile(String username,String name,String position,Calendar cal){
-    try{
-      String temp = "Database/employeeLogfile.txt";
-      if(System.getProperty("os.name").startsWith("W")||System.getProperty("os.name").startsWith("w")){
-        //temp = "..\\Database\\employeeLogfile.txt"; 
-      }
-      FileWriter fw = new FileWriter(temp,true);
-      BufferedWriter bw = new BufferedWriter(fw);
-      String log=name+" ("+username+" "+position+") logs out of POS System. Time: "+dateFormat.format(cal.getTime());
-      bw.write(log);
-      bw.write(System.getProperty( "line.separator" ));
-      bw.close();
-      
-    } catch (FileNotFoundException e) {
-      System.out.println("Unable to open file Log File for logout"); 
-    }
-    catch (IOException e) {
-      e.printStackTrace();
-    }
+    AuditLogger.getInstance().logOut(username,name,position,cal.getTimeInMillis());
   }
   
+  //logs out once: not again after an earlier logOut, or after the session expired and was logged out then
   public void logOut(String pos){
+      if (session == null)
+        return;
+      boolean open = SessionManager.getInstance().close(session.getToken());
+      session=null;
+      if (!open)
+        return;
       cal = Calendar.getInstance();
       logOutToFile(username,name,pos,cal);
   }
   
   
   public int logIn(String userAuth, String passAuth){
-     readFile();
      username=userAuth;
-     boolean find=false;
-     for(int i=0;i<employees.size();i++){
-       if(username.equals((employees.get(i)).getUsername())){
-          find=true;
-          index=i;
-          break;
+     //indexed lookup, the employee database is only read again after it changes
+     Employee employee = EmployeeDirectory.forFile(employeeDatabase).find(username);
+     if (employee == null){
+       //employees loaded or added on this instance
+       for(int i=0;i<employees.size();i++){
+         if(username.equals((employees.get(i)).getUsername())){
+            employee=employees.get(i);
+            break;
+           }
          }
-       }
-     if (find == true)
+     }
+     if (employee != null)
      {
       password=passAuth;
-      if(!password.equals((employees.get(index)).getPassword())){
+      if(!PasswordHasher.verify(password, employee.getPassword())){
         return 0; //didnt find employee password
       }
       else{
           //employee logIn file update
            cal = Calendar.getInstance();
-           name=(employees.get(index)).getName();
-          logInToFile((employees.get(index)).getUsername(),name,(employees.get(index)).getPosition(),cal);
+           name=employee.getName();
+          logInToFile(employee.getUsername(),name,employee.getPosition(),cal);
+          if (session != null)
+            SessionManager.getInstance().close(session.getToken()); //logged in again through this object
+          session=SessionManager.getInstance().open(employee,register);
           
-      if(((employees.get(index)).getPosition()).equals("Cashier")){
+      if((employee.getPosition()).equals("Cashier")){
         return 1;  //returns cashier status
       }
-      else if(((employees.get(index)).getPosition()).equals("Admin")){
+      else if((employee.getPosition()).equals("Admin")){
         return 2; //returns admin status
       }  
      }
@@ -0,0 +1,167 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+//Salted PBKDF2 verifiers for employee passwords, stored in the password field of the employee database
+//as pbkdf2$<iterations>$<base64 salt>$<base64 hash>. Each verifier keeps its own iteration count, so the
+//cost can be raised for new passwords without breaking old ones. Passwords not migrated yet are still
+//plaintext and are compared in constant time as well.
+public class PasswordHasher
+{
+  public static String costFile = "Database/passwordCost.txt";
+  public static int defaultIterations = 100000;
+  public static final int MIN_ITERATIONS = 10000;
+
+  private static final String PREFIX = "pbkdf2$";
+  private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+  private static final int SALT_BYTES = 16;
+  private static final int HASH_BITS = 256;
+  private static final SecureRandom random = new SecureRandom();
+
+  private static volatile int iterations = -1; //loaded from the cost file on first use
+
+  //iteration count used for new verifiers, as chosen by the last calibration
+  public static int getIterations()
+  {
+    if (iterations < 0)
+    {
+      int cost = defaultIterations;
+      try {
+        cost = Math.max(MIN_ITERATIONS, Integer.parseInt(new String(Files.readAllBytes(Paths.get(costFile)), StandardCharsets.UTF_8).trim()));
+      }
+      catch (IOException | NumberFormatException e) {
+        //not calibrated on this register yet
+      }
+      iterations = cost;
+    }
+    return iterations;
+  }
+
+  public static void setIterations(int cost)
+  {
+    iterations = Math.max(MIN_ITERATIONS, cost);
+  }
+
+  public static String hash(String password)
+  {
+    byte[] salt = new byte[SALT_BYTES];
+    random.nextBytes(salt);
+    int cost = getIterations();
+    Base64.Encoder base64 = Base64.getEncoder();
+    return PREFIX + cost + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(pbkdf2(password, salt, cost));
+  }
+
+  public static boolean isHashed(String stored)
+  {
+    return stored.startsWith(PREFIX);
+  }
+
+  //true if the password matches the stored verifier, or the stored plaintext of an unmigrated employee
+  public static boolean verify(String password, String stored)
+  {
+    if (password == null || stored == null)
+      return false;
+    if (!isHashed(stored))
+      return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+    String[] fields = stored.split("\\$");
+    if (fields.length != 4)
+      return false;
+    try {
+      int cost = Integer.parseInt(fields[1]);
+      byte[] salt = Base64.getDecoder().decode(fields[2]);
+      byte[] expected = Base64.getDecoder().decode(fields[3]);
+      return MessageDigest.isEqual(pbkdf2(password, salt, cost), expected);
+    }
+    catch (IllegalArgumentException e) { //also NumberFormatException
+      return false;
+    }
+  }
+
+  private static byte[] pbkdf2(String password, byte[] salt, int cost)
+  {
+    PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, cost, HASH_BITS);
+    try {
+      return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+    }
+    catch (GeneralSecurityException e) {
+      throw new IllegalStateException(ALGORITHM + " is not available", e);
+    }
+    finally {
+      spec.clearPassword();
+    }
+  }
+
+  //highest iteration count whose verification stays within the login budget on this machine
+  public static int calibrate(long budgetMillis)
+  {
+    byte[] salt = new byte[SALT_BYTES];
+    pbkdf2("warm up", salt, MIN_ITERATIONS); //loads the provider before timing
+    int cost = MIN_ITERATIONS;
+    long elapsed = 0;
+    //doubles until a run takes a quarter of the budget, then scales the measured rate
+    while (elapsed*4 < budgetMillis*1000000 && cost < Integer.MAX_VALUE/2)
+    {
+      long start = System.nanoTime();
+      pbkdf2("calibration", salt, cost);
+      elapsed = System.nanoTime() - start;
+      if (elapsed*4 < budgetMillis*1000000)
+        cost *= 2;
+    }
+    long scaled = (long) cost*budgetMillis*1000000/Math.max(1, elapsed);
+    return (int) Math.max(MIN_ITERATIONS, Math.min(Integer.MAX_VALUE, scaled));
+  }
+
+  //replaces every plaintext password of the employee database by a verifier, returns the number migrated or -1 on failure
+  public static int migrate(String employeeDatabase)
+  {
+    EmployeeStore store = EmployeeStore.forFile(employeeDatabase);
+    int migrated = 0;
+    for (Employee employee : store.list())
+    {
+      if (isHashed(employee.getPassword()))
+        continue;
+      employee.setPassword(hash(employee.getPassword()));
+      if (!store.put(employee))
+        return -1;
+      migrated++;
+    }
+    EmployeeDirectory.invalidate(employeeDatabase);
+    return migrated;
+  }
+
+  //usage: PasswordHasher calibrate <budgetMillis> | PasswordHasher migrate [employeeDatabase]
+  public static void main(String[] args)
+  {
+    if (args.length == 2 && args[0].equals("calibrate"))
+    {
+      int cost = calibrate(Long.parseLong(args[1]));
+      try {
+        Files.write(Paths.get(costFile), Integer.toString(cost).getBytes(StandardCharsets.UTF_8));
+      }
+      catch (IOException e) {
+        System.out.println("Unable to write file '" + costFile + "'");
+        System.exit(1);
+      }
+      System.out.println("New passwords will use " + cost + " iterations");
+    }
+    else if (args.length >= 1 && args[0].equals("migrate"))
+    {
+      int migrated = migrate(args.length == 2 ? args[1] : EmployeeManagement.employeeDatabase);
+      if (migrated < 0)
+        System.exit(1);
+      System.out.println("Migrated " + migrated + " passwords");
+    }
+    else
+    {
+      System.out.println("usage: PasswordHasher calibrate <budgetMillis> | PasswordHasher migrate [employeeDatabase]");
+      System.exit(1);
+    }
+  }
+}
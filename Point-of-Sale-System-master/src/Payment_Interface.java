@@ -35,14 +35,24 @@ public class Payment_Interface extends JFrame implements ActionListener
 	String operation;
     
     boolean returnOrNot;
+    
+	private POSSystem system; //logged in cashier, returned to after payment
+	private byte tender = SalesJournal.CASH; //recorded in the sales journal with the transaction once confirmed
+	private double total; //what the customer pays, the transaction is checked out on confirm
 
 	
 	
     public Payment_Interface(PointOfSale transaction, String databaseFile, String operation, String phone,boolean r)
+	{
+		this(transaction, databaseFile, operation, phone, r, new POSSystem());
+	}
+	
+    public Payment_Interface(PointOfSale transaction, String databaseFile, String operation, String phone,boolean r, POSSystem system)
 
 	{
 		super ("SG Technologies - Payment View");
 		setLayout(null);
+		this.system = system;
         
         returnOrNot=true;
 		
@@ -100,19 +110,30 @@ public class Payment_Interface extends JFrame implements ActionListener
 	
 	public void actionPerformed(ActionEvent event)
 	{
+		if (!system.touch())
+		{
+			//logged out while idle, nothing is charged and the cart is continued after logging in
+			JOptionPane.showMessageDialog(null, "Your session has expired, please log in again");
+			Login_Interface login = new Login_Interface();
+			login.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+			login.setVisible(true);
+			this.setVisible(false);
+			dispose();
+			return;
+		}
 		
 		if (event.getSource() == PayCash)
 		{
 			double cash;
 			cash = Double.parseDouble(JOptionPane.showInputDialog("Amount payed on cash:"));
 			
-			while (cash < transaction.getTotal())
+			while (cash < total)
 			{
 				JOptionPane.showMessageDialog(null,"Value must be greater than total value");
 				cash = Double.parseDouble(JOptionPane.showInputDialog("Amount payed on cash:"));
 			}
 			double change;
-			if ( (change = cash - transaction.getTotal()) > 0 )
+			if ( (change = cash - total) > 0 )
 				JOptionPane.showMessageDialog(null, "Change $:" + String.format("%.2f", change) );
 			
 			//Finalizes receipt
@@ -122,6 +143,7 @@ public class Payment_Interface extends JFrame implements ActionListener
 			if (operation.equals("Rental"))
 				appendReturnDate();
 			
+			tender = SalesJournal.CASH;
 			remove(PayCash);
 			remove(PayElectronic);
 			remove(cancelTransaction);
@@ -139,6 +161,7 @@ public class Payment_Interface extends JFrame implements ActionListener
 				JOptionPane.showMessageDialog(null, "Invalid credit card number");
 			else
 			{
+				tender = SalesJournal.CARD;
                 if(returnOrNot==false){
 				String cashBackString;
 				double cashBack;
@@ -149,7 +172,7 @@ public class Payment_Interface extends JFrame implements ActionListener
 					cashBack = Double.parseDouble(cashBackString);
 				
 				transactionDialog.append("\n\nCash back: $" + String.format("%.2f",cashBack) + "\n");
-				transactionDialog.append("Total price: $" + String.format("%.2f", cashBack + transaction.getTotal()) + "\n");
+				transactionDialog.append("Total price: $" + String.format("%.2f", cashBack + total) + "\n");
 				
 				if (operation.equals("Rental"))
 					appendReturnDate();
@@ -166,8 +189,9 @@ public class Payment_Interface extends JFrame implements ActionListener
 		if (event.getSource() == cancelTransaction)
 		{
 			JOptionPane.showMessageDialog(null, "Transaction canceled");
-			POSSystem sys=new POSSystem();
-			Cashier_Interface cashier = new Cashier_Interface(sys);
+			transaction.deleteTemp(); //nothing was checked out
+			system.setTransaction(null);
+			Cashier_Interface cashier = new Cashier_Interface(system);
 			cashier.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 			cashier.setVisible(true);
 			
@@ -178,9 +202,12 @@ public class Payment_Interface extends JFrame implements ActionListener
 		
 		if (event.getSource() == confirm)
 		{
-			JOptionPane.showMessageDialog(null, "Payment confirmed");
-            POSSystem sys=new POSSystem();
-			Cashier_Interface cashier = new Cashier_Interface(sys);
+			transaction.setTender(tender);
+			transaction.endPOS(database);
+			JOptionPane.showMessageDialog(null, transaction.transactionId > 0
+				? "Payment confirmed\nReceipt number: " + transaction.transactionId : "Payment confirmed");
+            system.setTransaction(null);
+			Cashier_Interface cashier = new Cashier_Interface(system);
 			cashier.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 			cashier.setVisible(true);
 			
@@ -193,29 +220,19 @@ public class Payment_Interface extends JFrame implements ActionListener
 	{
 		if (operation.equals("Return"))
 		{
-			List<ReturnItem> returnList;
-			List<Item> transactionItem;
-			
-			Management management = new Management();
-		    returnList = management.getLatestReturnDate(phoneNum);
-		    transactionItem = transaction.getCart();
+			//the quote is computed once here and reused by endPOS on confirm to charge the same fees
+			ReturnQuote quote = ((POH) transaction).getReturnQuote();
 		    
-		    double itemPrice = 0;
 		    transactionDialog.setText(null);
-		    for (int transactionCounter = 0; transactionCounter < transactionItem.size(); transactionCounter++)
-		             for (int returnCounter = 0; returnCounter < returnList.size(); returnCounter++)
-		             {
-			             if (transactionItem.get(transactionCounter).getItemID() == returnList.get(returnCounter).getItemID())
-			             {
-			               //Applies a value to be payed depending on the amount of days it is late. If it is not late, no value is applied
-			               itemPrice = transactionItem.get(transactionCounter).getAmount()*transactionItem.get(transactionCounter).getPrice()* 0.1 * returnList.get(returnCounter).getDays();
-			               transactionDialog.append("Item ID: " + transactionItem.get(transactionCounter).getItemID() + "    Item Name: " 
-			            		   					+ transactionItem.get(transactionCounter).getItemName() + "    Amount: x" + transactionItem.get(transactionCounter).getAmount() + 
-			            		   					"    Days Late: " + returnList.get(returnCounter).getDays() + "   To be paid: $" + itemPrice + "\n");
-			               
-			             }
-		             }
-		    transactionDialog.append("\nTotal: $" + String.format("%.2f", transaction.endPOS(database)) + "\n" );
+		    for (ReturnQuote.Line line : quote.getLines())
+		    {
+		    	Item item = line.getItem();
+		    	transactionDialog.append("Item ID: " + item.getItemID() + "    Item Name: " 
+		    			+ item.getItemName() + "    Amount: x" + item.getAmount() + 
+		    			"    Days Late: " + line.getDays() + "   To be paid: $" + line.getFee() + "\n");
+		    }
+		    total = transaction.checkoutTotal();
+		    transactionDialog.append("\nTotal: $" + String.format("%.2f", total) + "\n" );
 		}
 		else
 		{
@@ -228,8 +245,8 @@ public class Payment_Interface extends JFrame implements ActionListener
 			}
 			transactionDialog.append("\nTotal: $" + String.format("%.2f", transaction.getTotal()) + "\n" );
 			
-			double totalWithTax = transaction.endPOS(database);
-			transactionDialog.append("Total with taxes: $" + String.format("%.2f", totalWithTax) + "\n");
+			total = transaction.checkoutTotal();
+			transactionDialog.append("Total with taxes: $" + String.format("%.2f", total) + "\n");
 		}
 	}
 	
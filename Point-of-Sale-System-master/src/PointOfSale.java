@@ -10,6 +10,16 @@ abstract class PointOfSale {
   public double tax=1.06;
   
   public boolean returnSale=true;
+  public double couponDiscount=0; //taken off the total by coupons, before tax
+  //recorded with the sale in the sales journal
+  public String register=SessionManager.defaultRegister;
+  public String cashier="";
+  SessionManager.Session session=null; //of the cashier, touched as items are entered and removed
+  public long transactionId=0; //receipt number given by the sales journal at checkout, 0 before
+  byte tender=0; //SalesJournal.CASH or CARD, journaled with the transaction at checkout; 0 records none
+  //the cart is mirrored in tempFile for the screens' crash recovery, off for transactions run without them,
+  //which share neither the file nor its recovery
+  boolean recoverable=true;
   
   //public static String rentalDatabaseFile = "../Database/rentalDatabase.txt"; 
   public static String couponNumber = "Database/couponNumber.txt";
@@ -38,8 +48,15 @@ abstract class PointOfSale {
 	  return false;
   }
   
+  void touch()
+  {
+    if (session != null)
+      session.touch();
+  }
+  
   public boolean enterItem(int itemID, int amount) //might include in a "mother class" in the future
   {
+    touch();
     detectSystem();
     boolean foundItem = false;
     
@@ -116,7 +133,11 @@ abstract class PointOfSale {
         }
       }
       if (valid)
+      {
+    	  double before = totalPrice;
     	  totalPrice *=discount;
+    	  couponDiscount += before - totalPrice;
+      }
       
       return valid;
   }
@@ -171,6 +192,8 @@ abstract class PointOfSale {
   }*/
   
   public void createTemp(int id, int amount){
+    if (!recoverable)
+      return;
     try{
       FileWriter fw = new FileWriter(tempFile,true);
       BufferedWriter bw = new BufferedWriter(fw);
@@ -189,6 +212,7 @@ abstract class PointOfSale {
   
   public boolean removeItems(int itemID)
   {
+	  touch();
 	  boolean inTheList=false;
       int index=-1;
       for (int i=0; i<transactionItem.size();i++){
@@ -200,12 +224,11 @@ abstract class PointOfSale {
       if (inTheList==true)
       {
         totalPrice -= transactionItem.get(index).getPrice()*transactionItem.get(index).getAmount();
-        deleteTempItem(itemID);
+        if (recoverable)
+          deleteTempItem(itemID);
         transactionItem.remove(transactionItem.get(index));
-        if (transactionItem.size()==0){
-          File file=new File (tempFile);
-          file.delete();
-        }
+        if (transactionItem.size()==0)
+          deleteTemp();
         return true;
       }
       return false;
@@ -213,6 +236,41 @@ abstract class PointOfSale {
   
   public double getTotal() {return totalPrice;}
   
+  //the transaction is over, its crash recovery file goes
+  void deleteTemp()
+  {
+    if (recoverable)
+      new File(tempFile).delete();
+  }
+  
+  //money taken from the customer for the transaction, negative when it is given back
+  double tenderAmount() {return totalPrice;}
+  
+  //what endPOS will charge, shown before the customer pays
+  public double checkoutTotal() {return transactionItem.size()>0 ? totalPrice*tax : totalPrice;}
+  
+  //how the transaction is paid (SalesJournal.CASH or CARD), chosen before endPOS records it with the transaction
+  public void setTender(byte kind) {tender = kind;}
+  
+  //the transaction's record followed by the tender paying it, for one append to the sales journal
+  List<SalesJournal.Record> withTender(SalesJournal.Record record)
+  {
+    List<SalesJournal.Record> records = new ArrayList<SalesJournal.Record>();
+    records.add(record);
+    if (tender != 0)
+      records.add(new SalesJournal.Record(tender, 0, register, cashier, record.getTime(), new ArrayList<Item>(),
+        tenderAmount(), 0, 0, tenderAmount(), 0).paying(record));
+    return records;
+  }
+  
+  //appends the transaction's record and its tender, returns the transaction ID or -1
+  long journal(SalesJournal.Record record)
+  {
+    if (SalesJournal.forFile(SalesJournal.journalFile).append(withTender(record)) < 0)
+      return -1;
+    return record.getTransactionId();
+  }
+  
   public void detectSystem(){
     if (System.getProperty("os.name").startsWith("W")||System.getProperty("os.name").startsWith("w")){
       //unixOS = false; //these lines are commented out for running on netbeans, which uses a linux protocol despite OS
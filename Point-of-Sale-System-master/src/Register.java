@@ -1,4 +1,5 @@
 
+import java.io.IOException;
 
 import javax.swing.JFrame;
 
@@ -8,11 +9,26 @@ public class Register {
   public static void main(String[] args)
   {
     
+	  //a mapped store another process holds is not replaced by the user database, its changes would be lost
+	  if (!Management.openCustomerStore())
+		  System.exit(1);
+	  
+	  //checkouts only write the sales journal, -Dpos.asyncCommit=true, the rest is applied in the background;
+	  //otherwise what a pipelined run of this register left unapplied is applied before it checks out itself
+	  try {
+		  if (Boolean.getBoolean("pos.asyncCommit"))
+			  CommitPipeline.start(SalesJournal.journalFile, SessionManager.defaultRegister, CommitPipeline.defaultCapacity);
+		  else
+			  CommitPipeline.recover(SalesJournal.journalFile, SessionManager.defaultRegister);
+	  }
+	  catch (IOException e) {
+		  System.out.println("Unable to start register '" + SessionManager.defaultRegister + "': " + e.getMessage());
+		  System.exit(1);
+	  }
+	  
 	  Login_Interface loginInterface = new Login_Interface();
 	  loginInterface.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 	  loginInterface.setVisible(true);
   
   }
 }
-
-
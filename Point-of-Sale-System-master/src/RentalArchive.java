@@ -0,0 +1,197 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+//Moves returned rentals older than a cutoff out of the customer store, so the records read on every
+//rental and return only carry recent history. Archived entries are appended as "phone itemID,date,true"
+//lines to one gzip file per month of the return date (rentals-yyyy-MM.gz), which are only opened when
+//a customer's history is asked for.
+//The entries are written to the archive before they are removed from the store. An interrupted pass
+//leaves them in both places, and running it again archives them a second time.
+public class RentalArchive
+{
+  public static String archiveDirectory = "Database/archive";
+  public static int defaultRetentionDays = 365;
+
+  private static final String PREFIX = "rentals-";
+  private static final String SUFFIX = ".gz";
+
+  private final CustomerStore store;
+  private final File directory;
+  private final SimpleDateFormat rentalDate = new SimpleDateFormat("MM/dd/yy");
+  private final SimpleDateFormat partitionMonth = new SimpleDateFormat("yyyy-MM");
+
+  public RentalArchive(CustomerStore store, String archiveDirectory)
+  {
+    this.store = store;
+    this.directory = new File(archiveDirectory);
+  }
+
+  //archives the entries returned before the cutoff, returns the number archived or -1 on failure
+  public synchronized int archive(final Date cutoff)
+  {
+    directory.mkdirs();
+    final Map<String, Writer> partitions = new HashMap<String, Writer>();
+    final int[] archived = {0};
+    final IOException[] failure = {null};
+    boolean read = store.forEach(record -> {
+      if (failure[0] != null)
+        return;
+      String[] entries = record.split(" ");
+      for (int i = 1; i < entries.length; i++)
+      {
+        String month = partitionOf(entries[i], cutoff);
+        if (month == null)
+          continue;
+        try {
+          Writer partition = partitions.get(month);
+          if (partition == null)
+          {
+            //each pass appends its own gzip member, readers see the members as one stream
+            partition = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(
+              new FileOutputStream(partitionFile(month), true)), StandardCharsets.UTF_8));
+            partitions.put(month, partition);
+          }
+          partition.write(entries[0] + " " + entries[i] + "\n");
+          archived[0]++;
+        }
+        catch (IOException e) {
+          failure[0] = e;
+          return;
+        }
+      }
+    });
+
+    for (Writer partition : partitions.values())
+    {
+      try {
+        partition.close();
+      }
+      catch (IOException e) {
+        failure[0] = e;
+      }
+    }
+    if (!read || failure[0] != null)
+    {
+      System.out.println("Unable to write rental archive '" + directory + "'");
+      return -1; //nothing was removed from the store
+    }
+    if (archived[0] == 0)
+      return 0;
+
+    //the same entries are selected again, returns marked since the first pass are newer than the cutoff
+    boolean compacted = store.updateAll(record -> {
+      String[] entries = record.split(" ");
+      StringBuilder kept = new StringBuilder(entries[0]);
+      for (int i = 1; i < entries.length; i++)
+      {
+        if (partitionOf(entries[i], cutoff) == null)
+          kept.append(" ").append(entries[i]);
+      }
+      return kept.toString();
+    });
+    if (!compacted)
+    {
+      System.out.println("Unable to remove archived rentals from the customer store");
+      return -1;
+    }
+    return archived[0];
+  }
+
+  //month partition of an entry that is archived with this cutoff, null if it stays in the store
+  private String partitionOf(String entry, Date cutoff)
+  {
+    //entry looks like 1022,6/31/11,true
+    String[] rental = entry.split(",");
+    if (rental.length < 3 || !rental[2].equalsIgnoreCase("true"))
+      return null;
+    Date date = parse(rental[1]);
+    if (date == null || !date.before(cutoff))
+      return null;
+    return partitionMonth.format(date);
+  }
+
+  //archived "itemID,date,true" entries of the customer
+  public List<String> history(long phone)
+  {
+    return history(phone, null, null);
+  }
+
+  //archived entries of the customer returned between from and to, either can be null; only the months in range are read
+  public synchronized List<String> history(long phone, Date from, Date to)
+  {
+    List<String> entries = new ArrayList<String>();
+    String[] names = directory.list();
+    if (names == null)
+      return entries;
+    Arrays.sort(names);
+    String fromMonth = from == null ? null : partitionMonth.format(from);
+    String toMonth = to == null ? null : partitionMonth.format(to);
+    String prefix = phone + " ";
+
+    for (String name : names)
+    {
+      if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX))
+        continue;
+      String month = name.substring(PREFIX.length(), name.length() - SUFFIX.length());
+      if ((fromMonth != null && month.compareTo(fromMonth) < 0) || (toMonth != null && month.compareTo(toMonth) > 0))
+        continue;
+      try {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(
+          new FileInputStream(new File(directory, name))), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+          if (!line.startsWith(prefix))
+            continue;
+          String entry = line.substring(prefix.length());
+          String[] rental = entry.split(",");
+          Date date = rental.length < 2 ? null : parse(rental[1]);
+          if (date != null && ((from != null && date.before(from)) || (to != null && date.after(to))))
+            continue;
+          entries.add(entry);
+        }
+        reader.close();
+      }
+      catch (IOException e) {
+        System.out.println("Error reading file '" + name + "'");
+      }
+    }
+    return entries;
+  }
+
+  private File partitionFile(String month)
+  {
+    return new File(directory, PREFIX + month + SUFFIX);
+  }
+
+  private Date parse(String date)
+  {
+    try {
+      return rentalDate.parse(date);
+    } catch (ParseException e) {
+      return null;
+    }
+  }
+
+  //usage: RentalArchive [retentionDays]
+  public static void main(String[] args)
+  {
+    int days = args.length == 1 ? Integer.parseInt(args[0]) : defaultRetentionDays;
+    Calendar cutoff = Calendar.getInstance();
+    cutoff.add(Calendar.DAY_OF_YEAR, -days);
+    //the same store the registers use, the user database is not archived in place of a locked mapped store
+    if (!Management.openCustomerStore())
+      System.exit(1);
+    int archived = new RentalArchive(Management.getCustomerStore(), archiveDirectory).archive(cutoff.getTime());
+    if (!Management.closeCustomerStore())
+      archived = -1;
+    if (archived < 0)
+      System.exit(1);
+    System.out.println("Archived " + archived + " returned rentals older than " + days + " days");
+  }
+}
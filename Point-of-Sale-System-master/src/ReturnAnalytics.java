@@ -0,0 +1,310 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+//Return rate of each item: units brought back as unsatisfactory over units sold. Returns are read from
+//the returns log written by POH, units sold come from the per item sales totals kept over the sales
+//journal, and the two are joined on item ID in a hash table of the returned items, probed with every
+//item sold. Returns made against a receipt are also joined with that sale to time how long after the
+//sale items come back.
+//The returns of segments rotated out of the log are folded once and saved to <returnsLog>.rates with
+//the name of the last segment folded, so each run only reads the segments sealed since and the live
+//log. If that segment is gone from the manifest the fold starts over.
+public class ReturnAnalytics
+{
+  public static String returnsLog = "Database/returnSale.txt";
+
+  private static final int MAGIC = 0x52455452; //"RETR"
+  private static final int VERSION = 1;
+  private static final double DAY = 24.0*60*60*1000;
+
+  public static class ItemRate
+  {
+    private final int itemID;
+    private String name;
+    long sold, returns, returnedUnits, timedReturns, millisToReturn;
+    double refunds;
+
+    ItemRate(int itemID, String name)
+    {
+      this.itemID = itemID; this.name = name;
+    }
+
+    ItemRate copy()
+    {
+      ItemRate copy = new ItemRate(itemID, name);
+      copy.sold = sold; copy.returns = returns; copy.returnedUnits = returnedUnits;
+      copy.timedReturns = timedReturns; copy.millisToReturn = millisToReturn; copy.refunds = refunds;
+      return copy;
+    }
+
+    public int getItemID() {return itemID;}
+    public String getName() {return name;}
+    public long getSold() {return sold;}
+    public long getReturns() {return returns;} //transactions the item came back in
+    public long getReturnedUnits() {return returnedUnits;}
+    public double getRefunds() {return refunds;}
+    //returned over sold, 0 for an item never sold since the journal was started
+    public double getRate() {return sold == 0 ? 0 : (double) returnedUnits/sold;}
+    //days between the sale on the receipt and the return, -1 if no return named its sale
+    public double getAverageDaysToReturn() {return timedReturns == 0 ? -1 : millisToReturn/DAY/timedReturns;}
+  }
+
+  private final SegmentedLog log;
+  private final File live;
+  private final File state;
+  private final String journalFile;
+  private final Map<Integer, ItemRate> sealed = new HashMap<Integer, ItemRate>(); //returns of the folded segments
+  private String lastSegment = "";
+  private int segmentsRead = 0;
+
+  ReturnAnalytics(String returnsLog, String journalFile)
+  {
+    this.log = SegmentedLog.forFile(returnsLog);
+    this.live = new File(returnsLog);
+    this.state = new File(returnsLog + ".rates");
+    this.journalFile = journalFile;
+  }
+
+  //return rate of every item sold or returned, highest first
+  public static List<ItemRate> run(String returnsLog, String journalFile)
+  {
+    return new ReturnAnalytics(returnsLog, journalFile).rates();
+  }
+
+  List<ItemRate> rates()
+  {
+    if (!readState())
+      clear();
+    List<SegmentedLog.Segment> segments = log.segments();
+    int next = 0;
+    if (!lastSegment.isEmpty())
+    {
+      while (next < segments.size() && !segments.get(next).getName().equals(lastSegment))
+        next++;
+      if (next == segments.size())
+      {
+        System.out.println("Reading every segment of '" + live + "' again");
+        clear();
+        next = 0;
+      }
+      else
+        next++;
+    }
+    for (; next < segments.size(); next++)
+    {
+      SegmentedLog.Segment segment = segments.get(next);
+      try (InputStream in = segment.open())
+      {
+        fold(in, sealed);
+      }
+      catch (IOException e) {
+        System.out.println("Error reading file '" + segment.getFile() + "'");
+        break; //read again on the next run
+      }
+      lastSegment = segment.getName();
+      segmentsRead++;
+    }
+    if (segmentsRead > 0)
+      writeState();
+
+    //the live log is read on every run and not saved, it is still being written
+    Map<Integer, ItemRate> returned = new HashMap<Integer, ItemRate>();
+    for (ItemRate item : sealed.values())
+      returned.put(item.itemID, item.copy());
+    if (live.exists())
+    {
+      try (InputStream in = new FileInputStream(live))
+      {
+        fold(in, returned);
+      }
+      catch (IOException e) {
+        System.out.println("Error reading file '" + live + "'");
+      }
+    }
+
+    //probes the returned items with each item sold
+    List<ItemRate> rates = new ArrayList<ItemRate>();
+    for (SalesAggregates.ItemTotal sold : SalesAggregates.forFile(journalFile).items())
+    {
+      if (sold.getUnits() == 0)
+        continue; //only ever returned, added below
+      ItemRate rate = returned.remove(sold.getItemID());
+      if (rate == null)
+        rate = new ItemRate(sold.getItemID(), sold.getName());
+      rate.name = sold.getName();
+      rate.sold = sold.getUnits();
+      rates.add(rate);
+    }
+    rates.addAll(returned.values()); //sold before the journal was started
+    rates.sort((a, b) -> Double.compare(b.getRate(), a.getRate()));
+    return rates;
+  }
+
+  //segments read by the last run, the ones sealed since the run before
+  int getSegmentsRead() {return segmentsRead;}
+
+  //adds the returns of a part of the log: a "Return <transaction> <time> receipt <sale>" line then
+  //"itemID name amount refund" lines; older returns have only a blank line before their items
+  private void fold(InputStream in, Map<Integer, ItemRate> items) throws IOException
+  {
+    SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    TransactionIndex transactions = TransactionIndex.forFile(journalFile);
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+    boolean inReturn = false;
+    long saleTime = -1, returnTime = -1;
+    Set<Integer> seen = new HashSet<Integer>(); //items of this return, each counted as one return
+    String line;
+    while ((line = reader.readLine()) != null)
+    {
+      String[] lineSort = line.trim().split(" ");
+      if (lineSort[0].equals("Return") && lineSort.length == 6)
+      {
+        inReturn = true;
+        seen.clear();
+        saleTime = returnTime = -1;
+        try {
+          returnTime = dateFormat.parse(lineSort[2] + " " + lineSort[3]).getTime();
+          SalesJournal.Record sale = transactions.find(Long.parseLong(lineSort[5]));
+          if (sale != null)
+            saleTime = sale.getTime();
+        }
+        catch (ParseException | NumberFormatException e) {
+          //counted without its time
+        }
+        continue;
+      }
+      if (lineSort.length < 4)
+      {
+        if (line.trim().isEmpty() && !seen.isEmpty())
+          inReturn = false; //the blank line after the items
+        continue;
+      }
+      int itemID, amount;
+      double refund;
+      try {
+        itemID = Integer.parseInt(lineSort[0]);
+        amount = Integer.parseInt(lineSort[lineSort.length - 2]);
+        refund = Double.parseDouble(lineSort[lineSort.length - 1]);
+      }
+      catch (NumberFormatException e) {
+        continue; //not an item line
+      }
+      if (!inReturn)
+      {
+        inReturn = true; //an older return, no time or receipt
+        seen.clear();
+        saleTime = returnTime = -1;
+      }
+      ItemRate item = items.get(itemID);
+      if (item == null)
+      {
+        item = new ItemRate(itemID, String.join(" ", Arrays.asList(lineSort).subList(1, lineSort.length - 2)));
+        items.put(itemID, item);
+      }
+      item.returnedUnits += amount;
+      item.refunds += refund;
+      if (seen.add(itemID))
+      {
+        item.returns++;
+        if (saleTime >= 0 && returnTime >= saleTime)
+        {
+          item.timedReturns++;
+          item.millisToReturn += returnTime - saleTime;
+        }
+      }
+    }
+  }
+
+  private void clear()
+  {
+    sealed.clear();
+    lastSegment = "";
+  }
+
+  private void writeState()
+  {
+    File temp = new File(state + ".tmp");
+    CRC32 crc = new CRC32();
+    try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temp)), crc)))
+    {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(lastSegment);
+      out.writeInt(sealed.size());
+      for (ItemRate item : sealed.values())
+      {
+        out.writeInt(item.itemID);
+        out.writeUTF(item.name);
+        out.writeLong(item.returns); out.writeLong(item.returnedUnits);
+        out.writeLong(item.timedReturns); out.writeLong(item.millisToReturn);
+        out.writeDouble(item.refunds);
+      }
+      out.flush();
+      out.writeInt((int) crc.getValue());
+    }
+    catch (IOException e) {
+      System.out.println("Unable to write file '" + state + "'");
+      return;
+    }
+    try {
+      Files.move(temp.toPath(), state.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (IOException e) {
+      System.out.println("Unable to write file '" + state + "'");
+    }
+  }
+
+  //false if there is no usable state, every segment is read again
+  private boolean readState()
+  {
+    if (!state.exists())
+      return false;
+    CRC32 crc = new CRC32();
+    try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(new FileInputStream(state)), crc)))
+    {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        return false;
+      lastSegment = in.readUTF();
+      int itemCount = in.readInt();
+      for (int i = 0; i < itemCount; i++)
+      {
+        ItemRate item = new ItemRate(in.readInt(), in.readUTF());
+        item.returns = in.readLong(); item.returnedUnits = in.readLong();
+        item.timedReturns = in.readLong(); item.millisToReturn = in.readLong();
+        item.refunds = in.readDouble();
+        sealed.put(item.itemID, item);
+      }
+      int expected = (int) crc.getValue();
+      return in.readInt() == expected;
+    }
+    catch (IOException e) {
+      System.out.println("Ignoring damaged return rates '" + state + "'");
+      return false;
+    }
+  }
+
+  //usage: ReturnAnalytics [returnsLog] [journalFile]
+  public static void main(String[] args)
+  {
+    String logFile = args.length >= 1 ? args[0] : returnsLog;
+    String journalFile = args.length >= 2 ? args[1] : SalesJournal.journalFile;
+    ReturnAnalytics analytics = new ReturnAnalytics(logFile, journalFile);
+    List<ItemRate> rates = analytics.rates();
+    System.out.println(analytics.getSegmentsRead() + " new segments read");
+    for (ItemRate item : rates)
+    {
+      System.out.print(String.format("%d %-20s %6d sold %6d returned %6.1f%% $%.2f refunded", item.getItemID(), item.getName(),
+        item.getSold(), item.getReturnedUnits(), 100*item.getRate(), item.getRefunds()));
+      if (item.getAverageDaysToReturn() >= 0)
+        System.out.print(String.format(", back after %.1f days", item.getAverageDaysToReturn()));
+      System.out.println();
+    }
+  }
+}
@@ -0,0 +1,80 @@
+import java.util.*;
+
+//Late fees owed for the items being returned in one transaction. The customer's outstanding
+//rentals are read once and hash joined with the cart, then the same quote is used to show the fees,
+//charge them and mark the rentals as returned.
+public class ReturnQuote
+{
+  public static class Line
+  {
+    private Item item;
+    private ReturnItem rental;
+    private double fee;
+
+    Line(Item item, ReturnItem rental, double fee)
+    {
+      this.item = item; this.rental = rental; this.fee = fee;
+    }
+
+    public Item getItem() {return item;}
+    public ReturnItem getRental() {return rental;}
+    public int getDays() {return rental.getDays();}
+    public double getFee() {return fee;}
+  }
+
+  private List<ReturnItem> outstanding;
+  private List<Line> lines = new ArrayList<Line>();
+  private double total = 0;
+
+  public ReturnQuote(List<Item> cart, List<ReturnItem> outstanding)
+  {
+    this.outstanding = outstanding;
+
+    //itemID -> outstanding rentals of that item, a customer can have the same item out more than once
+    Map<Integer, List<ReturnItem>> rentalsByID = new HashMap<Integer, List<ReturnItem>>();
+    for (ReturnItem rental : outstanding)
+    {
+      List<ReturnItem> rentals = rentalsByID.get(rental.getItemID());
+      if (rentals == null)
+      {
+        rentals = new ArrayList<ReturnItem>();
+        rentalsByID.put(rental.getItemID(), rentals);
+      }
+      rentals.add(rental);
+    }
+
+    for (Item item : cart)
+    {
+      List<ReturnItem> rentals = rentalsByID.get(item.getItemID());
+      if (rentals == null)
+        continue;
+      for (ReturnItem rental : rentals)
+      {
+        //Applies a value to be payed depending on the amount of days it is late
+        double fee = LateFeeAssessment.lateFee(item.getAmount(), item.getPrice(), rental.getDays());
+        lines.add(new Line(item, rental, fee));
+        total += fee;
+      }
+    }
+  }
+
+  //reads the customer's outstanding rentals and prices the cart against them
+  public static ReturnQuote compute(long phone, List<Item> cart)
+  {
+    Management management = new Management();
+    return new ReturnQuote(cart, management.getLatestReturnDate(phone));
+  }
+
+  public List<Line> getLines() {return lines;}
+  public List<ReturnItem> getOutstanding() {return outstanding;}
+  public double getTotal() {return total;}
+
+  //the outstanding rentals that are being brought back in this transaction
+  public List<ReturnItem> getReturned()
+  {
+    List<ReturnItem> returned = new ArrayList<ReturnItem>();
+    for (Line line : lines)
+      returned.add(line.getRental());
+    return returned;
+  }
+}
@@ -0,0 +1,360 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+//Running totals per day and per item, kept current at checkout so the dashboard and the end of day
+//report read them instead of the sales journal. They are a fold of the journal up to an offset: after
+//each checkout the records appended since (by this register or another) are added, and every
+//checkpointEvery records the totals are saved to <journal>.totals with that offset and the checksum of
+//the last record added. If the snapshot is lost, damaged, or no longer matches the journal at its
+//offset, the totals are rebuilt from the start of the journal.
+public class SalesAggregates
+{
+  public static int checkpointEvery = 20;
+
+  private static final int MAGIC = 0x53414747; //"SAGG"
+  private static final int VERSION = 1;
+  private static final Map<String, SalesAggregates> aggregates = new ConcurrentHashMap<String, SalesAggregates>();
+
+  public static class DayTotal
+  {
+    private final LocalDate day;
+    long sales, units, returns, returnedUnits, rentalReturns;
+    double revenue, tax, couponDiscount, refunds, lateFees;
+
+    DayTotal(LocalDate day)
+    {
+      this.day = day;
+    }
+
+    DayTotal copy()
+    {
+      DayTotal copy = new DayTotal(day);
+      copy.sales = sales; copy.units = units; copy.returns = returns;
+      copy.returnedUnits = returnedUnits; copy.rentalReturns = rentalReturns;
+      copy.revenue = revenue; copy.tax = tax; copy.couponDiscount = couponDiscount;
+      copy.refunds = refunds; copy.lateFees = lateFees;
+      return copy;
+    }
+
+    public LocalDate getDay() {return day;}
+    public long getSales() {return sales;}
+    public long getUnits() {return units;}
+    public double getRevenue() {return revenue;} //with tax
+    public double getTax() {return tax;}
+    public double getCouponDiscount() {return couponDiscount;}
+    public long getReturns() {return returns;}
+    public long getReturnedUnits() {return returnedUnits;}
+    public double getRefunds() {return refunds;}
+    public long getRentalReturns() {return rentalReturns;}
+    public double getLateFees() {return lateFees;}
+  }
+
+  public static class ItemTotal
+  {
+    private final int itemID;
+    String name;
+    long units, returnedUnits;
+    double revenue, tax;
+
+    ItemTotal(int itemID, String name)
+    {
+      this.itemID = itemID; this.name = name;
+    }
+
+    ItemTotal copy()
+    {
+      ItemTotal copy = new ItemTotal(itemID, name);
+      copy.units = units; copy.returnedUnits = returnedUnits;
+      copy.revenue = revenue; copy.tax = tax;
+      return copy;
+    }
+
+    public int getItemID() {return itemID;}
+    public String getName() {return name;}
+    public long getUnits() {return units;}
+    public double getRevenue() {return revenue;} //before coupons and tax
+    public double getTax() {return tax;} //the sale's tax shared out by line revenue
+    public long getReturnedUnits() {return returnedUnits;}
+  }
+
+  private final File journal;
+  private final File snapshot;
+  private final TreeMap<Long, DayTotal> days = new TreeMap<Long, DayTotal>(); //by epoch day
+  private final Map<Integer, ItemTotal> items = new HashMap<Integer, ItemTotal>();
+  private long offset = 0; //records before this journal offset are added
+  private int lastChecksum = 0; //of the record ending at offset
+  private boolean loaded = false;
+  private int sinceCheckpoint = 0;
+
+  SalesAggregates(String journalFile)
+  {
+    journal = new File(journalFile);
+    snapshot = new File(journalFile + ".totals");
+  }
+
+  public static SalesAggregates forFile(String journalFile)
+  {
+    return aggregates.computeIfAbsent(journalFile, SalesAggregates::new);
+  }
+
+  //adds the records appended to the journal since the last call, called after each checkout
+  public synchronized void refresh()
+  {
+    if (!loaded)
+    {
+      loaded = true;
+      if (!readSnapshot())
+        clear();
+    }
+    if (!matchesJournal())
+    {
+      System.out.println("Rebuilding sales totals from '" + journal + "'");
+      clear();
+      sinceCheckpoint = checkpointEvery; //saves the rebuilt totals
+    }
+    if (!journal.exists())
+      return;
+    try (SalesJournal.Reader reader = new SalesJournal.Reader(journal.getPath(), offset))
+    {
+      SalesJournal.Record record;
+      while ((record = reader.next()) != null)
+      {
+        add(record);
+        offset = reader.position();
+        lastChecksum = reader.lastChecksum();
+        sinceCheckpoint++;
+      }
+    }
+    catch (IOException e) {
+      System.out.println("Error reading file '" + journal + "'");
+    }
+    if (sinceCheckpoint >= checkpointEvery)
+      checkpoint();
+  }
+
+  //copies of the totals of the day, empty if nothing was sold or returned that day
+  public synchronized DayTotal day(LocalDate day)
+  {
+    refresh();
+    DayTotal total = days.get(day.toEpochDay());
+    return total == null ? new DayTotal(day) : total.copy();
+  }
+
+  public synchronized List<DayTotal> days()
+  {
+    refresh();
+    List<DayTotal> copies = new ArrayList<DayTotal>(days.size());
+    for (DayTotal day : days.values())
+      copies.add(day.copy());
+    return copies;
+  }
+
+  //null if the item was never sold or returned
+  public synchronized ItemTotal item(int itemID)
+  {
+    refresh();
+    ItemTotal item = items.get(itemID);
+    return item == null ? null : item.copy();
+  }
+
+  public synchronized List<ItemTotal> items()
+  {
+    refresh();
+    List<ItemTotal> copies = new ArrayList<ItemTotal>(items.size());
+    for (ItemTotal item : items.values())
+      copies.add(item.copy());
+    return copies;
+  }
+
+  private void add(SalesJournal.Record record)
+  {
+    long local = record.getTime() + TimeZone.getDefault().getOffset(record.getTime());
+    long epochDay = Math.floorDiv(local, 24L*60*60*1000);
+    DayTotal day = days.get(epochDay);
+    if (day == null)
+    {
+      day = new DayTotal(LocalDate.ofEpochDay(epochDay));
+      days.put(epochDay, day);
+    }
+
+    long units = 0;
+    for (Item line : record.getLines())
+    {
+      units += line.getAmount();
+      if (record.getType() != SalesJournal.SALE && record.getType() != SalesJournal.RETURN)
+        continue;
+      ItemTotal item = items.get(line.getItemID());
+      if (item == null)
+      {
+        item = new ItemTotal(line.getItemID(), line.getItemName());
+        items.put(line.getItemID(), item);
+      }
+      if (record.getType() == SalesJournal.SALE)
+      {
+        double revenue = (double) line.getPrice()*line.getAmount();
+        item.units += line.getAmount();
+        item.revenue += revenue;
+        if (record.getSubtotal() > 0)
+          item.tax += record.getTax()*revenue/record.getSubtotal();
+      }
+      else if (record.getType() == SalesJournal.RETURN)
+        item.returnedUnits += line.getAmount();
+    }
+
+    if (record.getType() == SalesJournal.SALE)
+    {
+      day.sales++;
+      day.units += units;
+      day.revenue += record.getTotal();
+      day.tax += record.getTax();
+      day.couponDiscount += record.getCouponDiscount();
+    }
+    else if (record.getType() == SalesJournal.RETURN)
+    {
+      day.returns++;
+      day.returnedUnits += units;
+      day.refunds += record.getTotal();
+    }
+    else if (record.getType() == SalesJournal.RENTAL_RETURN)
+    {
+      day.rentalReturns++;
+      day.lateFees += record.getTotal();
+    }
+  }
+
+  private void clear()
+  {
+    days.clear();
+    items.clear();
+    offset = 0;
+    lastChecksum = 0;
+  }
+
+  //true if the journal still holds the record the totals end with
+  private boolean matchesJournal()
+  {
+    if (offset == 0)
+      return true;
+    try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.READ))
+    {
+      if (channel.size() < offset)
+        return false;
+      ByteBuffer checksum = ByteBuffer.allocate(4);
+      while (checksum.hasRemaining() && channel.read(checksum, offset - 4 + checksum.position()) > 0);
+      return checksum.getInt(0) == lastChecksum;
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  //saves the totals, they are rebuilt from the journal if this fails
+  public synchronized void checkpoint()
+  {
+    File temp = new File(snapshot + ".tmp");
+    CRC32 crc = new CRC32();
+    try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temp)), crc)))
+    {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(offset);
+      out.writeInt(lastChecksum);
+      out.writeInt(days.size());
+      for (Map.Entry<Long, DayTotal> entry : days.entrySet())
+      {
+        DayTotal day = entry.getValue();
+        out.writeLong(entry.getKey());
+        out.writeLong(day.sales); out.writeLong(day.units); out.writeLong(day.returns);
+        out.writeLong(day.returnedUnits); out.writeLong(day.rentalReturns);
+        out.writeDouble(day.revenue); out.writeDouble(day.tax); out.writeDouble(day.couponDiscount);
+        out.writeDouble(day.refunds); out.writeDouble(day.lateFees);
+      }
+      out.writeInt(items.size());
+      for (ItemTotal item : items.values())
+      {
+        out.writeInt(item.itemID);
+        out.writeUTF(item.name);
+        out.writeLong(item.units); out.writeLong(item.returnedUnits);
+        out.writeDouble(item.revenue); out.writeDouble(item.tax);
+      }
+      out.flush();
+      out.writeInt((int) crc.getValue());
+    }
+    catch (IOException e) {
+      System.out.println("Unable to write file '" + snapshot + "'");
+      return;
+    }
+    try {
+      Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      sinceCheckpoint = 0;
+    }
+    catch (IOException e) {
+      System.out.println("Unable to write file '" + snapshot + "'");
+    }
+  }
+
+  //false if there is no usable snapshot
+  private boolean readSnapshot()
+  {
+    if (!snapshot.exists())
+      return false;
+    CRC32 crc = new CRC32();
+    try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(new FileInputStream(snapshot)), crc)))
+    {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        return false;
+      offset = in.readLong();
+      lastChecksum = in.readInt();
+      if (offset < 0)
+        return false;
+      int dayCount = in.readInt();
+      for (int i = 0; i < dayCount; i++)
+      {
+        long epochDay = in.readLong();
+        DayTotal day = new DayTotal(LocalDate.ofEpochDay(epochDay));
+        day.sales = in.readLong(); day.units = in.readLong(); day.returns = in.readLong();
+        day.returnedUnits = in.readLong(); day.rentalReturns = in.readLong();
+        day.revenue = in.readDouble(); day.tax = in.readDouble(); day.couponDiscount = in.readDouble();
+        day.refunds = in.readDouble(); day.lateFees = in.readDouble();
+        days.put(epochDay, day);
+      }
+      int itemCount = in.readInt();
+      for (int i = 0; i < itemCount; i++)
+      {
+        ItemTotal item = new ItemTotal(in.readInt(), in.readUTF());
+        item.units = in.readLong(); item.returnedUnits = in.readLong();
+        item.revenue = in.readDouble(); item.tax = in.readDouble();
+        items.put(item.itemID, item);
+      }
+      int expected = (int) crc.getValue();
+      return in.readInt() == expected;
+    }
+    catch (IOException e) {
+      System.out.println("Ignoring damaged sales totals '" + snapshot + "'");
+      return false;
+    }
+  }
+
+  //usage: SalesAggregates [journalFile] [yyyy-MM-dd]
+  public static void main(String[] args)
+  {
+    SalesAggregates totals = forFile(args.length >= 1 ? args[0] : SalesJournal.journalFile);
+    LocalDate date = args.length >= 2 ? LocalDate.parse(args[1]) : LocalDate.now();
+    DayTotal day = totals.day(date);
+    totals.checkpoint();
+    System.out.println(String.format("%s: %d sales, %d items, $%.2f (tax $%.2f, coupons $%.2f)", date, day.getSales(),
+      day.getUnits(), day.getRevenue(), day.getTax(), day.getCouponDiscount()));
+    System.out.println(String.format("  %d returns, %d items, $%.2f refunded; %d rental returns, $%.2f late fees",
+      day.getReturns(), day.getReturnedUnits(), day.getRefunds(), day.getRentalReturns(), day.getLateFees()));
+  }
+}
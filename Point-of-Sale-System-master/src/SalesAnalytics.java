@@ -0,0 +1,400 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.zip.CRC32;
+
+//Daily totals, best selling items, revenue by hour and basket size over the sales journal. The journal
+//is cut into segments of equal size that are memory mapped and aggregated in parallel; a segment starts
+//at the first record framed inside it, found by its magic number and checksum, and owns the records
+//that start before its end. Each segment adds into its own arrays of primitives keyed by day and item,
+//which are merged once every segment is done, so the scan neither locks nor boxes per record.
+public class SalesAnalytics
+{
+  static long segmentBytes = 32L*1024*1024;
+  private static final long WINDOW_SLACK = 1024*1024; //mapped past the segment end for its last record
+  private static final long DAY = 24L*60*60*1000;
+  private static final long HOUR = 60L*60*1000;
+
+  public static class DayTotal
+  {
+    private final LocalDate day;
+    private final long transactions, units;
+    private final double revenue, tax, couponDiscount;
+
+    DayTotal(LocalDate day, long transactions, long units, double revenue, double tax, double couponDiscount)
+    {
+      this.day = day; this.transactions = transactions; this.units = units;
+      this.revenue = revenue; this.tax = tax; this.couponDiscount = couponDiscount;
+    }
+
+    public LocalDate getDay() {return day;}
+    public long getTransactions() {return transactions;}
+    public long getUnits() {return units;}
+    public double getRevenue() {return revenue;} //with tax
+    public double getTax() {return tax;}
+    public double getCouponDiscount() {return couponDiscount;}
+  }
+
+  public static class ItemTotal
+  {
+    private final int itemID;
+    private final String name;
+    private final long units;
+    private final double revenue;
+
+    ItemTotal(int itemID, String name, long units, double revenue)
+    {
+      this.itemID = itemID; this.name = name; this.units = units; this.revenue = revenue;
+    }
+
+    public int getItemID() {return itemID;}
+    public String getName() {return name;}
+    public long getUnits() {return units;}
+    public double getRevenue() {return revenue;} //before coupons and tax
+  }
+
+  //columns of totals for each key, in the order the keys were first seen; an open addressing table
+  //maps a key to its row
+  static final class Totals
+  {
+    long[] keys = new long[16];
+    long[] count = new long[16];
+    long[] units = new long[16];
+    double[] revenue = new double[16];
+    double[] tax = new double[16];
+    double[] discount = new double[16];
+    String[] names = new String[16];
+    int size = 0;
+    private int[] table = new int[32]; //row + 1, 0 for a free slot
+
+    int row(long key)
+    {
+      int mask = table.length - 1;
+      int slot = (int) (mix(key) & mask);
+      while (table[slot] != 0)
+      {
+        if (keys[table[slot] - 1] == key)
+          return table[slot] - 1;
+        slot = (slot + 1) & mask;
+      }
+      if (size == keys.length)
+        grow();
+      keys[size] = key;
+      table[slot] = ++size;
+      if (size*2 > table.length)
+        rehash();
+      return size - 1;
+    }
+
+    private static long mix(long key)
+    {
+      key *= 0x9e3779b97f4a7c15L;
+      return key ^ (key >>> 32);
+    }
+
+    private void grow()
+    {
+      int capacity = keys.length*2;
+      keys = Arrays.copyOf(keys, capacity);
+      count = Arrays.copyOf(count, capacity);
+      units = Arrays.copyOf(units, capacity);
+      revenue = Arrays.copyOf(revenue, capacity);
+      tax = Arrays.copyOf(tax, capacity);
+      discount = Arrays.copyOf(discount, capacity);
+      names = Arrays.copyOf(names, capacity);
+    }
+
+    private void rehash()
+    {
+      table = new int[table.length*2];
+      int mask = table.length - 1;
+      for (int row = 0; row < size; row++)
+      {
+        int slot = (int) (mix(keys[row]) & mask);
+        while (table[slot] != 0)
+          slot = (slot + 1) & mask;
+        table[slot] = row + 1;
+      }
+    }
+
+    void merge(Totals other)
+    {
+      for (int from = 0; from < other.size; from++)
+      {
+        int to = row(other.keys[from]);
+        count[to] += other.count[from];
+        units[to] += other.units[from];
+        revenue[to] += other.revenue[from];
+        tax[to] += other.tax[from];
+        discount[to] += other.discount[from];
+        if (names[to] == null)
+          names[to] = other.names[from];
+      }
+    }
+  }
+
+  //what one segment adds up
+  static final class Accumulator
+  {
+    final Totals days = new Totals();
+    final Totals items = new Totals();
+    final double[] revenueByHour = new double[24];
+    long transactions = 0;
+    long units = 0;
+    double revenue = 0;
+    int damaged = 0; //records skipped for a bad checksum
+
+    void merge(Accumulator other)
+    {
+      days.merge(other.days);
+      items.merge(other.items);
+      for (int hour = 0; hour < 24; hour++)
+        revenueByHour[hour] += other.revenueByHour[hour];
+      transactions += other.transactions;
+      units += other.units;
+      revenue += other.revenue;
+      damaged += other.damaged;
+    }
+  }
+
+  private final Accumulator totals;
+
+  SalesAnalytics(Accumulator totals)
+  {
+    this.totals = totals;
+  }
+
+  //every sale of the journal, null if it cannot be read
+  public static SalesAnalytics run(String journalFile)
+  {
+    return run(journalFile, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  //sales made from (inclusive) to (exclusive) the given epoch millis, null if the journal cannot be read
+  public static SalesAnalytics run(String journalFile, final long from, final long to)
+  {
+    if (!new File(journalFile).exists())
+      return new SalesAnalytics(new Accumulator());
+    try (FileChannel channel = FileChannel.open(Paths.get(journalFile), StandardOpenOption.READ))
+    {
+      final long size = channel.size();
+      List<Accumulator> segments = LongStream.range(0, (size + segmentBytes - 1)/segmentBytes)
+        .parallel()
+        .mapToObj(segment -> scan(channel, segment*segmentBytes, Math.min(size, (segment + 1)*segmentBytes), size, from, to))
+        .collect(Collectors.toList());
+      Accumulator merged = new Accumulator();
+      for (Accumulator segment : segments)
+        merged.merge(segment);
+      return new SalesAnalytics(merged);
+    }
+    catch (IOException | UncheckedIOException e) {
+      System.out.println("Error reading file '" + journalFile + "'");
+      return null;
+    }
+  }
+
+  private static Accumulator scan(FileChannel channel, long start, long end, long size, long from, long to)
+  {
+    Accumulator accumulator = new Accumulator();
+    CRC32 crc = new CRC32();
+    try {
+      ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size, end + WINDOW_SLACK) - start);
+      long offset = start;
+      boolean synced = start == 0;
+      while (offset < end)
+      {
+        ByteBuffer record = recordAt(channel, window, start, offset, size, crc);
+        if (record == null)
+        {
+          if (synced)
+            accumulator.damaged++; //resynchronizes at the next valid record
+          synced = false;
+          offset++;
+          continue;
+        }
+        synced = true;
+        add(accumulator, record, from, to);
+        offset += record.remaining() + 12;
+      }
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return accumulator;
+  }
+
+  //the payload of a valid record framed at the offset, null if none is
+  private static ByteBuffer recordAt(FileChannel channel, ByteBuffer window, long windowStart, long offset, long size, CRC32 crc) throws IOException
+  {
+    if (offset + 12 > size)
+      return null;
+    int at = (int) (offset - windowStart);
+    ByteBuffer source = window;
+    if (at + 8 > source.limit())
+    {
+      source = channel.map(FileChannel.MapMode.READ_ONLY, offset, 8);
+      at = 0;
+    }
+    if (source.getInt(at) != SalesJournal.MAGIC)
+      return null;
+    int length = source.getInt(at + 4);
+    if (length < 0 || length > SalesJournal.MAX_PAYLOAD || offset + 12 + length > size)
+      return null;
+    if (at + 12 + length > source.limit())
+    {
+      //runs past the mapped window
+      source = channel.map(FileChannel.MapMode.READ_ONLY, offset, 12 + length);
+      at = 0;
+    }
+    ByteBuffer payload = source.duplicate();
+    payload.limit(at + 8 + length).position(at + 8);
+    crc.reset();
+    crc.update(payload.duplicate());
+    if ((int) crc.getValue() != source.getInt(at + 8 + length))
+      return null;
+    return payload.slice();
+  }
+
+  //adds a sale read straight from its payload, laid out as SalesJournal.frame writes it
+  private static void add(Accumulator accumulator, ByteBuffer payload, long from, long to)
+  {
+    if (payload.get(0) != SalesJournal.SALE)
+      return;
+    int at = 9; //type and transaction ID
+    at += 2 + (payload.getShort(at) & 0xffff); //register
+    at += 2 + (payload.getShort(at) & 0xffff); //cashier
+    long time = payload.getLong(at);
+    if (time < from || time >= to)
+      return;
+    at += 8;
+    int count = payload.getInt(at);
+    at += 4;
+
+    long local = time + TimeZone.getDefault().getOffset(time);
+    long units = 0;
+    Totals items = accumulator.items;
+    for (int line = 0; line < count; line++)
+    {
+      int itemID = payload.getInt(at);
+      int nameLength = payload.getShort(at + 4) & 0xffff;
+      int nameAt = at + 6;
+      at = nameAt + nameLength;
+      int amount = payload.getInt(at);
+      float price = payload.getFloat(at + 4);
+      at += 8;
+
+      int row = items.row(itemID);
+      if (items.names[row] == null)
+        items.names[row] = name(payload, nameAt, nameLength);
+      items.count[row]++;
+      items.units[row] += amount;
+      items.revenue[row] += (double) price*amount;
+      units += amount;
+    }
+    double couponDiscount = payload.getDouble(at + 8);
+    double tax = payload.getDouble(at + 16);
+    double total = payload.getDouble(at + 24);
+
+    Totals days = accumulator.days;
+    int row = days.row(Math.floorDiv(local, DAY));
+    days.count[row]++;
+    days.units[row] += units;
+    days.revenue[row] += total;
+    days.tax[row] += tax;
+    days.discount[row] += couponDiscount;
+    accumulator.revenueByHour[(int) Math.floorMod(Math.floorDiv(local, HOUR), 24L)] += total;
+    accumulator.transactions++;
+    accumulator.units += units;
+    accumulator.revenue += total;
+  }
+
+  private static String name(ByteBuffer payload, int at, int length)
+  {
+    byte[] bytes = new byte[length];
+    ByteBuffer source = payload.duplicate();
+    source.position(at);
+    source.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8); //item names carry no characters that modified UTF-8 encodes differently
+  }
+
+  public long getTransactions() {return totals.transactions;}
+  public long getUnits() {return totals.units;}
+  public double getRevenue() {return totals.revenue;}
+  public int getDamagedRecords() {return totals.damaged;}
+
+  public double averageBasketSize()
+  {
+    return totals.transactions == 0 ? 0 : (double) totals.units/totals.transactions;
+  }
+
+  public double averageBasketValue()
+  {
+    return totals.transactions == 0 ? 0 : totals.revenue/totals.transactions;
+  }
+
+  //revenue with tax taken in each hour of the day, local time
+  public double[] revenueByHour()
+  {
+    return totals.revenueByHour.clone();
+  }
+
+  //by day
+  public List<DayTotal> dailyTotals()
+  {
+    Totals days = totals.days;
+    List<DayTotal> daily = new ArrayList<DayTotal>(days.size);
+    for (int row = 0; row < days.size; row++)
+      daily.add(new DayTotal(LocalDate.ofEpochDay(days.keys[row]), days.count[row], days.units[row],
+                             days.revenue[row], days.tax[row], days.discount[row]));
+    daily.sort(Comparator.comparing(DayTotal::getDay));
+    return daily;
+  }
+
+  //the n items with the most revenue, or the most units sold
+  public List<ItemTotal> topItems(int n, boolean byRevenue)
+  {
+    Totals items = totals.items;
+    List<ItemTotal> ranked = new ArrayList<ItemTotal>(items.size);
+    for (int row = 0; row < items.size; row++)
+      ranked.add(new ItemTotal((int) items.keys[row], items.names[row], items.units[row], items.revenue[row]));
+    ranked.sort(byRevenue ? Comparator.comparingDouble(ItemTotal::getRevenue).reversed()
+                          : Comparator.comparingLong(ItemTotal::getUnits).reversed());
+    return ranked.subList(0, Math.min(n, ranked.size()));
+  }
+
+  //usage: SalesAnalytics [journalFile] [topN]
+  public static void main(String[] args)
+  {
+    String journalFile = args.length >= 1 ? args[0] : SalesJournal.journalFile;
+    int n = args.length >= 2 ? Integer.parseInt(args[1]) : 10;
+    long start = System.currentTimeMillis();
+    SalesAnalytics report = run(journalFile);
+    if (report == null)
+      System.exit(1);
+    System.out.println(String.format("%d sales, %d items, $%.2f in %d ms", report.getTransactions(), report.getUnits(),
+      report.getRevenue(), System.currentTimeMillis() - start));
+    System.out.println(String.format("Average basket: %.2f items, $%.2f", report.averageBasketSize(), report.averageBasketValue()));
+
+    System.out.println("Daily totals:");
+    for (DayTotal day : report.dailyTotals())
+      System.out.println(String.format("  %s %6d sales %8d items $%12.2f (tax $%.2f, coupons $%.2f)", day.getDay(),
+        day.getTransactions(), day.getUnits(), day.getRevenue(), day.getTax(), day.getCouponDiscount()));
+
+    System.out.println("Top " + n + " items:");
+    for (ItemTotal item : report.topItems(n, true))
+      System.out.println(String.format("  %d %-24s %8d $%12.2f", item.getItemID(), item.getName(), item.getUnits(), item.getRevenue()));
+
+    System.out.println("Revenue by hour:");
+    double[] hours = report.revenueByHour();
+    for (int hour = 0; hour < 24; hour++)
+      if (hours[hour] > 0)
+        System.out.println(String.format("  %02d:00 $%12.2f", hour, hours[hour]));
+  }
+}
@@ -0,0 +1,265 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+//Sparse index of the sales journal by time, kept in <journal>.idx beside it. Every entryEvery-th record
+//of the journal has an entry of two longs, its time and its offset, so the entries are sorted by time
+//like the journal itself. A range query binary searches the memory mapped index for the last entry
+//before the range and reads the memory mapped journal from there until the first record after it.
+//SalesJournal brings the index up to date under its append lock after every append. An index that does
+//not match the journal (lost, cut short, or left from a replaced journal) is rebuilt by a full pass.
+public class SalesIndex
+{
+  public static int entryEvery = 64;
+
+  private static final int ENTRY_BYTES = 16;
+  private static final long WINDOW_BYTES = 64L*1024*1024;
+
+  private static final Map<String, SalesIndex> indexes = new ConcurrentHashMap<String, SalesIndex>();
+
+  private final File journal;
+  private final File index;
+  //where the last update stopped, trusted while the index still has the length it left
+  private long indexedTo = -1;
+  private long sinceEntry = 0; //records read after the last entry
+  private long indexLength = -1;
+
+  SalesIndex(String journalFile)
+  {
+    journal = new File(journalFile);
+    index = new File(journalFile + ".idx");
+  }
+
+  public static SalesIndex forFile(String journalFile)
+  {
+    return indexes.computeIfAbsent(journalFile, SalesIndex::new);
+  }
+
+  //adds entries for the records appended since the last update, false if the index cannot be written
+  synchronized boolean update()
+  {
+    try {
+      if (indexedTo < 0 || index.length() != indexLength || indexedTo > journal.length())
+        resume();
+      try (SalesJournal.Reader reader = new SalesJournal.Reader(journal.getPath(), indexedTo);
+           DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index, true))))
+      {
+        SalesJournal.Record record;
+        while ((record = reader.next()) != null)
+        {
+          if (sinceEntry == 0)
+          {
+            out.writeLong(record.getTime());
+            out.writeLong(reader.recordOffset());
+          }
+          sinceEntry = (sinceEntry + 1) % entryEvery;
+        }
+        indexedTo = reader.position();
+      }
+      indexLength = index.length();
+      return true;
+    }
+    catch (IOException e) {
+      System.out.println("Unable to update sales index '" + index + "'");
+      indexedTo = -1;
+      return false;
+    }
+  }
+
+  //drops the index, the next update indexes the whole journal
+  synchronized void rebuild()
+  {
+    index.delete();
+    indexedTo = -1;
+    update();
+  }
+
+  //continues after the last entry of the index on disk, or starts over if it does not match the journal
+  private void resume() throws IOException
+  {
+    indexedTo = 0;
+    sinceEntry = 0;
+    long entries = index.length()/ENTRY_BYTES;
+    if (entries > 0)
+    {
+      try (RandomAccessFile file = new RandomAccessFile(index, "rw"))
+      {
+        file.setLength(entries*ENTRY_BYTES); //an entry cut short by a crash
+        file.seek((entries - 1)*ENTRY_BYTES);
+        long time = file.readLong();
+        long offset = file.readLong();
+        if (offset < journal.length())
+        {
+          try (SalesJournal.Reader reader = new SalesJournal.Reader(journal.getPath(), offset))
+          {
+            SalesJournal.Record record = reader.next();
+            if (record != null && record.getTime() == time)
+            {
+              indexedTo = reader.position();
+              sinceEntry = 1;
+              return;
+            }
+          }
+        }
+      }
+    }
+    if (index.exists() && !index.delete())
+      throw new IOException("cannot replace " + index);
+  }
+
+  //journal offset to read from for records at or after the time, 0 without a usable index
+  long startOffset(long from)
+  {
+    if (!index.exists() || index.length() < ENTRY_BYTES)
+      return 0;
+    try (FileChannel channel = FileChannel.open(index.toPath(), StandardOpenOption.READ))
+    {
+      long entries = channel.size()/ENTRY_BYTES;
+      MappedByteBuffer entryBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, entries*ENTRY_BYTES);
+      //last entry timed before from, the records before it are all earlier
+      long low = 0, high = entries - 1, found = -1;
+      while (low <= high)
+      {
+        long middle = (low + high) >>> 1;
+        if (entryBuffer.getLong((int) (middle*ENTRY_BYTES)) < from)
+        {
+          found = middle;
+          low = middle + 1;
+        }
+        else
+          high = middle - 1;
+      }
+      if (found < 0)
+        return 0;
+      long time = entryBuffer.getLong((int) (found*ENTRY_BYTES));
+      long offset = entryBuffer.getLong((int) (found*ENTRY_BYTES) + 8);
+      //an index left from a replaced journal is not trusted
+      if (offset >= journal.length())
+        return 0;
+      try (SalesJournal.Reader reader = new SalesJournal.Reader(journal.getPath(), offset))
+      {
+        SalesJournal.Record record = reader.next();
+        return record != null && record.getTime() == time ? offset : 0;
+      }
+    }
+    catch (IOException e) {
+      return 0;
+    }
+  }
+
+  //passes the records timed from (inclusive) to (exclusive) to the action, returns how many or -1
+  public static long forEachBetween(String journalFile, long from, long to, Consumer<SalesJournal.Record> action)
+  {
+    return forEachBetween(journalFile, from, to, action, () -> { });
+  }
+
+  //as above, running damaged once for every damaged record skipped on the way, read on from the next good one
+  public static long forEachBetween(String journalFile, long from, long to, Consumer<SalesJournal.Record> action, Runnable damaged)
+  {
+    File journal = new File(journalFile);
+    if (!journal.exists())
+      return 0;
+    long offset = forFile(journalFile).startOffset(from);
+    long count = 0;
+    try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.READ))
+    {
+      long size = channel.size();
+      MappedByteBuffer window = null;
+      long windowStart = 0;
+      byte[] body = new byte[256];
+      CRC32 crc = new CRC32();
+      boolean skipping = false; //past a damaged record, looking for the next good one
+      while (offset + 12 <= size)
+      {
+        if (window == null || offset + 8 > windowStart + window.limit())
+        {
+          windowStart = offset;
+          window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW_BYTES, size - offset));
+        }
+        int at = (int) (offset - windowStart);
+        int length = window.getInt(at + 4);
+        if (window.getInt(at) != SalesJournal.MAGIC || length < 0 || length > SalesJournal.MAX_PAYLOAD || offset + 12 + length > size)
+        {
+          skipping = true;
+          offset++;
+          continue;
+        }
+        if (at + 12 + length > window.limit())
+        {
+          //the record runs past the window
+          windowStart = offset;
+          window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.max(12 + length, Math.min(WINDOW_BYTES, size - offset)));
+          at = 0;
+        }
+        if (body.length < length)
+          body = new byte[Math.max(length, body.length*2)];
+        ByteBuffer payload = window.duplicate();
+        payload.position(at + 8);
+        payload.get(body, 0, length);
+        crc.reset();
+        crc.update(body, 0, length);
+        if ((int) crc.getValue() != window.getInt(at + 8 + length))
+        {
+          skipping = true;
+          offset++;
+          continue;
+        }
+        //a torn record after the last good one is not counted, the next append cuts it off
+        if (skipping)
+          damaged.run();
+        skipping = false;
+        SalesJournal.Record record = SalesJournal.decode(body, length);
+        if (record.getTime() >= to)
+          break;
+        if (record.getTime() >= from)
+        {
+          action.accept(record);
+          count++;
+        }
+        offset += 12 + length;
+      }
+      return count;
+    }
+    catch (IOException e) {
+      System.out.println("Error reading file '" + journalFile + "'");
+      return -1;
+    }
+  }
+
+  //usage: SalesIndex [journalFile] <from yyyy-MM-dd HH:mm> <to yyyy-MM-dd HH:mm>
+  public static void main(String[] args)
+  {
+    if (args.length != 2 && args.length != 3)
+    {
+      System.out.println("usage: SalesIndex [journalFile] <from yyyy-MM-dd HH:mm> <to yyyy-MM-dd HH:mm>");
+      System.exit(1);
+    }
+    String journalFile = args.length == 3 ? args[0] : SalesJournal.journalFile;
+    SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+    long from, to;
+    try {
+      from = dateFormat.parse(args[args.length - 2]).getTime();
+      to = dateFormat.parse(args[args.length - 1]).getTime();
+    }
+    catch (ParseException e) {
+      System.out.println("Times are written as yyyy-MM-dd HH:mm");
+      System.exit(1);
+      return;
+    }
+    if (!forFile(journalFile).update())
+      System.exit(1);
+    final double[] total = {0};
+    long count = forEachBetween(journalFile, from, to, record -> total[0] += record.getTotal());
+    if (count < 0)
+      System.exit(1);
+    System.out.println(String.format("%d records, $%.2f", count, total[0]));
+  }
+}
@@ -0,0 +1,598 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+//Completed sales as binary records, so reports read fields instead of parsing the text invoice log.
+//Each record is framed as [int MAGIC][int length][payload][int crc32 of payload]; the payload holds the
+//record type, transaction ID, register, cashier, time in epoch millis, the item lines, the totals and,
+//for a return, the transaction ID of the sale on its receipt, then the customer's phone number for rentals
+//(records written before these were added end at the totals or the reference).
+//A record that is cut short or fails its checksum is skipped: reading carries on at the next offset
+//holding a whole record with a good checksum, so damage in the middle loses only the damaged records.
+//Bytes after the last good record are where a crash left the journal; the next append truncates them
+//before writing after it.
+//Transaction IDs are numbered in append order. Registers append under an exclusive lock on
+//<journal>.lock and first read the records other registers appended since, to continue their numbering.
+//Record times never go backwards in the journal, a record timed before the last one appended (by a
+//register whose clock is behind) is recorded at the last one's time; the time index relies on this.
+public class SalesJournal
+{
+  public static String journalFile = "Database/salesJournal.bin";
+  public static String legacyLog = "Database/saleInvoiceRecord.txt";
+
+  public static final byte SALE = 1;
+  public static final byte RETURN = 2; //unsatisfactory items refunded, total is the refund
+  public static final byte RENTAL_RETURN = 3; //rentals brought back, total is the late fees
+  public static final byte RENTAL = 4; //rentals taken out, total is the rental price with tax
+  //how a transaction was paid, the reference is its ID and the total what was paid, negative if refunded
+  public static final byte CASH = 5;
+  public static final byte CARD = 6;
+
+  static final int MAGIC = 0x534a524e; //"SJRN", lets a reader find the next record from any offset
+  static final int MAX_PAYLOAD = 16*1024*1024;
+  private static final int READ_BUFFER = 1 << 20;
+  private static final double LEGACY_TAX = 1.06; //PointOfSale's tax, the text log only kept totals
+
+  private static final Map<String, SalesJournal> journals = new ConcurrentHashMap<String, SalesJournal>();
+  //FileChannel locks cannot overlap inside one JVM, journals of the same file in this process take turns
+  private static final Map<String, ReentrantLock> processLocks = new ConcurrentHashMap<String, ReentrantLock>();
+
+  public static class Record
+  {
+    private final byte type;
+    private long transactionId;
+    private final String register;
+    private final String cashier;
+    private long time;
+    private final List<Item> lines; //unit price and amount of each item
+    private final double subtotal; //before the coupon and tax
+    private final double couponDiscount;
+    private final double tax;
+    private final double total;
+    private long reference; //the sale a return was bought in or the transaction a tender paid, 0 if unknown
+    private final long customer; //phone number of the customer of a rental or rental return, 0 otherwise
+    private Record paid = null; //transaction of the same batch this tender pays, its ID becomes the reference
+
+    public Record(byte type, long transactionId, String register, String cashier, long time, List<Item> lines,
+                  double subtotal, double couponDiscount, double tax, double total)
+    {
+      this(type, transactionId, register, cashier, time, lines, subtotal, couponDiscount, tax, total, 0);
+    }
+
+    public Record(byte type, long transactionId, String register, String cashier, long time, List<Item> lines,
+                  double subtotal, double couponDiscount, double tax, double total, long reference)
+    {
+      this(type, transactionId, register, cashier, time, lines, subtotal, couponDiscount, tax, total, reference, 0);
+    }
+
+    public Record(byte type, long transactionId, String register, String cashier, long time, List<Item> lines,
+                  double subtotal, double couponDiscount, double tax, double total, long reference, long customer)
+    {
+      this.type = type; this.transactionId = transactionId; this.register = register; this.cashier = cashier;
+      this.time = time; this.lines = lines; this.subtotal = subtotal; this.couponDiscount = couponDiscount;
+      this.tax = tax; this.total = total; this.reference = reference; this.customer = customer;
+    }
+
+    public byte getType() {return type;}
+    public long getTransactionId() {return transactionId;} //0 for sales converted from the text log
+    public String getRegister() {return register;}
+    public String getCashier() {return cashier;}
+    public long getTime() {return time;}
+    public List<Item> getLines() {return lines;}
+    public double getSubtotal() {return subtotal;}
+    public double getCouponDiscount() {return couponDiscount;}
+    public double getTax() {return tax;}
+    public double getTotal() {return total;}
+    public long getReference() {return reference;}
+    public long getCustomer() {return customer;}
+
+    //makes this tender pay a transaction appended before it in the same batch, which has no ID yet
+    public Record paying(Record transaction)
+    {
+      paid = transaction;
+      return this;
+    }
+  }
+
+  private final File journal;
+  private final File lockFile;
+  private final ReentrantLock processLock;
+  private final SalesIndex index;
+  private final TransactionIndex transactions;
+  private long lastId = 0;
+  private long lastTime = Long.MIN_VALUE;
+  private long scannedTo = 0; //records before this offset are counted in lastId and lastTime
+
+  SalesJournal(String journalFile)
+  {
+    journal = new File(journalFile);
+    lockFile = new File(journalFile + ".lock");
+    processLock = processLocks.computeIfAbsent(lockFile.getAbsolutePath(), path -> new ReentrantLock());
+    index = SalesIndex.forFile(journalFile);
+    transactions = TransactionIndex.forFile(journalFile);
+  }
+
+  //one journal per file, so a register only reads other registers' records once
+  public static SalesJournal forFile(String journalFile)
+  {
+    return journals.computeIfAbsent(journalFile, SalesJournal::new);
+  }
+
+  //appends the sale under the next transaction ID and returns it, -1 if it could not be written
+  public long append(Record record)
+  {
+    return append(Collections.singletonList(record)) < 0 ? -1 : record.transactionId;
+  }
+
+  //appends the records with one write, numbering those without a transaction ID; returns how many or -1.
+  //A transaction and the tender paying it are appended together, so neither is in the journal without the other
+  public synchronized int append(List<Record> records)
+  {
+    FileLock exclusive = lock();
+    try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+    {
+      catchUp(channel);
+      long id = lastId;
+      long time = lastTime;
+      ByteArrayOutputStream frames = new ByteArrayOutputStream();
+      for (Record record : records)
+      {
+        if (record.transactionId == 0)
+          record.transactionId = ++id;
+        if (record.paid != null)
+          record.reference = record.paid.transactionId;
+        record.time = time = Math.max(time, record.time);
+        frames.write(frame(record));
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(frames.toByteArray());
+      channel.position(channel.size());
+      while (buffer.hasRemaining())
+        channel.write(buffer);
+      channel.force(false);
+      lastId = id;
+      lastTime = time;
+      scannedTo = channel.size();
+      index.update();
+      transactions.update();
+      return records.size();
+    }
+    catch (IOException e) {
+      System.out.println("Unable to write sales journal '" + journal + "'");
+      scannedTo = 0; //reads back what was actually written
+      lastId = 0;
+      lastTime = Long.MIN_VALUE;
+      return -1;
+    }
+    finally {
+      release(exclusive);
+    }
+  }
+
+  //reads the records appended since the last look and cuts off a torn record at the end; the reader
+  //skips damaged records followed by good ones, only bytes after the last good record are cut
+  private void catchUp(FileChannel channel) throws IOException
+  {
+    if (channel.size() < scannedTo)
+    {
+      scannedTo = 0; //replaced since, count from the start
+      lastId = 0;
+      lastTime = Long.MIN_VALUE;
+    }
+    try (Reader reader = new Reader(journal.getPath(), scannedTo))
+    {
+      Record record;
+      while ((record = reader.next()) != null)
+      {
+        lastId = Math.max(lastId, record.transactionId);
+        lastTime = Math.max(lastTime, record.time);
+      }
+      scannedTo = reader.position();
+      if (reader.damaged() > 0)
+        System.out.println("Skipped " + reader.damaged() + " damaged records in '" + journal + "'");
+    }
+    if (scannedTo < channel.size())
+    {
+      System.out.println("Discarding " + (channel.size() - scannedTo) + " bytes of a torn record in '" + journal + "'");
+      channel.truncate(scannedTo);
+    }
+  }
+
+  static byte[] frame(Record record) throws IOException
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+    DataOutputStream payload = new DataOutputStream(bytes);
+    payload.writeByte(record.type);
+    payload.writeLong(record.transactionId);
+    payload.writeUTF(record.register == null ? "" : record.register);
+    payload.writeUTF(record.cashier == null ? "" : record.cashier);
+    payload.writeLong(record.time);
+    payload.writeInt(record.lines.size());
+    for (Item item : record.lines)
+    {
+      payload.writeInt(item.getItemID());
+      payload.writeUTF(item.getItemName());
+      payload.writeInt(item.getAmount());
+      payload.writeFloat(item.getPrice());
+    }
+    payload.writeDouble(record.subtotal);
+    payload.writeDouble(record.couponDiscount);
+    payload.writeDouble(record.tax);
+    payload.writeDouble(record.total);
+    payload.writeLong(record.reference); //added later, records written before end with the total
+    payload.writeLong(record.customer); //added after the reference
+    payload.close();
+
+    byte[] body = bytes.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(body);
+    ByteBuffer framed = ByteBuffer.allocate(body.length + 12);
+    framed.putInt(MAGIC).putInt(body.length).put(body).putInt((int) crc.getValue());
+    return framed.array();
+  }
+
+  static Record decode(byte[] body, int length) throws IOException
+  {
+    DataInputStream payload = new DataInputStream(new ByteArrayInputStream(body, 0, length));
+    byte type = payload.readByte();
+    long transactionId = payload.readLong();
+    String register = payload.readUTF();
+    String cashier = payload.readUTF();
+    long time = payload.readLong();
+    int count = payload.readInt();
+    if (count < 0 || count > length)
+      throw new IOException("bad line count");
+    List<Item> lines = new ArrayList<Item>(count);
+    for (int i = 0; i < count; i++)
+    {
+      int itemID = payload.readInt();
+      String name = payload.readUTF();
+      int amount = payload.readInt();
+      lines.add(new Item(itemID, name, payload.readFloat(), amount));
+    }
+    double subtotal = payload.readDouble();
+    double couponDiscount = payload.readDouble();
+    double tax = payload.readDouble();
+    double total = payload.readDouble();
+    long reference = payload.available() >= 8 ? payload.readLong() : 0;
+    long customer = payload.available() >= 8 ? payload.readLong() : 0;
+    return new Record(type, transactionId, register, cashier, time, lines, subtotal, couponDiscount, tax, total,
+                      reference, customer);
+  }
+
+  //streams the records of a journal in file order
+  public static class Reader implements Closeable
+  {
+    private final FileInputStream file;
+    private DataInputStream in;
+    private final CRC32 crc = new CRC32();
+    private long position;
+    private long recordOffset = -1;
+    private int lastChecksum = 0;
+    private int damaged = 0;
+    private byte[] body = new byte[256];
+
+    public Reader(String journalFile) throws IOException
+    {
+      this(journalFile, 0);
+    }
+
+    //starts at the record at this offset
+    public Reader(String journalFile, long offset) throws IOException
+    {
+      file = new FileInputStream(journalFile);
+      try {
+        file.getChannel().position(offset);
+      }
+      catch (IOException e) {
+        file.close();
+        throw e;
+      }
+      in = new DataInputStream(new BufferedInputStream(file, READ_BUFFER));
+      position = offset;
+    }
+
+    //the next record, null at the end of the journal or at a torn record after the last good one
+    public Record next() throws IOException
+    {
+      while (true)
+      {
+        Record record = read();
+        if (record != null)
+          return record;
+        //a damaged record, read on from the next good one if there is one
+        FileChannel channel = file.getChannel();
+        long next = nextRecord(channel, position + 1, channel.size());
+        if (next < 0)
+          return null;
+        damaged++;
+        channel.position(next);
+        in = new DataInputStream(new BufferedInputStream(file, READ_BUFFER));
+        position = next;
+      }
+    }
+
+    private Record read() throws IOException
+    {
+      try {
+        if (in.readInt() != MAGIC)
+          return null;
+        int length = in.readInt();
+        if (length < 0 || length > MAX_PAYLOAD)
+          return null;
+        if (body.length < length)
+          body = new byte[Math.max(length, body.length*2)];
+        in.readFully(body, 0, length);
+        int checksum = in.readInt();
+        crc.reset();
+        crc.update(body, 0, length);
+        if ((int) crc.getValue() != checksum)
+          return null;
+        Record record = decode(body, length);
+        recordOffset = position;
+        position += length + 12;
+        lastChecksum = checksum;
+        return record;
+      }
+      catch (EOFException e) {
+        return null;
+      }
+    }
+
+    //offset of the record next returned
+    public long recordOffset() {return recordOffset;}
+
+    //damaged records skipped so far
+    public int damaged() {return damaged;}
+
+    //offset of the next record, the end of the valid records once next returned null
+    public long position() {return position;}
+
+    //checksum field of the last record returned, identifies it when the journal is read again
+    public int lastChecksum() {return lastChecksum;}
+
+    public void close() throws IOException
+    {
+      in.close();
+    }
+  }
+
+  //offset of the first whole record with a good checksum at or after from, -1 if there is none
+  static long nextRecord(FileChannel channel, long from, long size) throws IOException
+  {
+    CRC32 crc = new CRC32();
+    ByteBuffer window = ByteBuffer.allocate(READ_BUFFER);
+    window.limit(0);
+    long windowStart = from;
+    for (long offset = from; offset + 12 <= size; offset++)
+    {
+      if (offset + 8 > windowStart + window.limit())
+      {
+        window.clear();
+        window.limit((int) Math.min(READ_BUFFER, size - offset));
+        windowStart = offset;
+        readFully(channel, window, offset);
+        window.flip();
+      }
+      int at = (int) (offset - windowStart);
+      if (window.getInt(at) != MAGIC)
+        continue;
+      int length = window.getInt(at + 4);
+      if (length < 0 || length > MAX_PAYLOAD || offset + 12 + length > size)
+        continue;
+      ByteBuffer frame = ByteBuffer.allocate(length + 4);
+      readFully(channel, frame, offset + 8);
+      crc.reset();
+      crc.update(frame.array(), 0, length);
+      if ((int) crc.getValue() == frame.getInt(length))
+        return offset;
+    }
+    return -1;
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+  {
+    while (buffer.hasRemaining())
+      if (channel.read(buffer, position + buffer.position()) < 0)
+        throw new EOFException();
+  }
+
+  //passes every record of the journal to the action, returns the number read or -1 if it cannot be read
+  public static long forEach(String journalFile, Consumer<Record> action)
+  {
+    if (!new File(journalFile).exists())
+      return 0;
+    long count = 0;
+    try (Reader reader = new Reader(journalFile))
+    {
+      Record record;
+      while ((record = reader.next()) != null)
+      {
+        action.accept(record);
+        count++;
+      }
+      return count;
+    }
+    catch (IOException e) {
+      System.out.println("Error reading file '" + journalFile + "'");
+      return -1;
+    }
+  }
+
+  //Puts the sales of the text invoice log in front of the journal, up to the journal's first record
+  //since the register writes both. Converted sales have no transaction ID, register or cashier, and
+  //their tax and coupon are derived from the totals. Returns the number converted or -1 on failure.
+  public synchronized int convertLegacy(String textLog)
+  {
+    FileLock exclusive = lock();
+    try {
+      long firstTime = Long.MAX_VALUE;
+      if (journal.exists())
+      {
+        try (Reader reader = new Reader(journal.getPath()))
+        {
+          Record first = reader.next();
+          if (first != null)
+            firstTime = first.time;
+        }
+      }
+      List<Record> legacy = readLegacy(textLog, firstTime);
+      if (legacy == null)
+        return -1;
+      if (legacy.isEmpty())
+        return 0;
+      legacy.sort(Comparator.comparingLong(Record::getTime)); //registers appended to the text log out of step
+
+      File temp = new File(journal + ".tmp");
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), READ_BUFFER))
+      {
+        for (Record record : legacy)
+          out.write(frame(record));
+        if (journal.exists())
+          Files.copy(journal.toPath(), out);
+      }
+      Files.move(temp.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      scannedTo = 0; //the numbering is read again on the next append
+      lastId = 0;
+      lastTime = Long.MIN_VALUE;
+      index.rebuild();
+      transactions.rebuild();
+      return legacy.size();
+    }
+    catch (IOException e) {
+      System.out.println("Unable to convert '" + textLog + "' into '" + journal + "'");
+      return -1;
+    }
+    finally {
+      release(exclusive);
+    }
+  }
+
+  //sales of the text log and its rotated segments dated before the given time, null if it cannot be read
+  static List<Record> readLegacy(String textLog, long before)
+  {
+    SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    dateFormat.setLenient(false);
+    List<Record> records = new ArrayList<Record>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+           SegmentedLog.forFile(textLog).open(Long.MIN_VALUE, before))))
+    {
+      long time = -1;
+      List<Item> lines = new ArrayList<Item>();
+      double subtotal = 0;
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        if (line.startsWith("Total with tax: "))
+        {
+          double total = Double.parseDouble(line.substring(16).trim());
+          if (time >= 0 && time < before)
+          {
+            double preTax = total/LEGACY_TAX;
+            records.add(new Record(SALE, 0, "", "", time, lines, subtotal, Math.max(0, subtotal - preTax), total - preTax, total));
+          }
+          time = -1;
+          lines = new ArrayList<Item>();
+          subtotal = 0;
+          continue;
+        }
+        try {
+          time = dateFormat.parse(line).getTime();
+          lines = new ArrayList<Item>(); //a sale cut off before its total is dropped
+          subtotal = 0;
+          continue;
+        }
+        catch (ParseException e) {
+          //an item line
+        }
+        //"itemID name amount lineTotal", the name may contain spaces
+        String[] lineSort = line.trim().split(" ");
+        if (lineSort.length < 4)
+          continue;
+        try {
+          int amount = Integer.parseInt(lineSort[lineSort.length - 2]);
+          double lineTotal = Double.parseDouble(lineSort[lineSort.length - 1]);
+          String name = String.join(" ", Arrays.asList(lineSort).subList(1, lineSort.length - 2));
+          lines.add(new Item(Integer.parseInt(lineSort[0]), name, amount == 0 ? 0 : (float) (lineTotal/amount), amount));
+          subtotal += lineTotal;
+        }
+        catch (NumberFormatException e) {
+          //not a sale line
+        }
+      }
+      return records;
+    }
+    catch (IOException | UncheckedIOException | NumberFormatException e) {
+      System.out.println("Error reading file '" + textLog + "'");
+      return null;
+    }
+  }
+
+  //null when the lock file cannot be used, the process lock still serializes this register
+  private FileLock lock()
+  {
+    processLock.lock();
+    try {
+      FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      try {
+        return channel.lock();
+      }
+      catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void release(FileLock lock)
+  {
+    try {
+      if (lock != null)
+        lock.channel().close(); //also releases the lock
+    }
+    catch (IOException e) {
+      System.out.println("Unable to release sales journal lock");
+    }
+    finally {
+      processLock.unlock();
+    }
+  }
+
+  //usage: SalesJournal convert [textLog] | SalesJournal dump
+  public static void main(String[] args)
+  {
+    if (args.length >= 1 && args[0].equals("convert"))
+    {
+      int converted = forFile(journalFile).convertLegacy(args.length == 2 ? args[1] : legacyLog);
+      if (converted < 0)
+        System.exit(1);
+      System.out.println("Converted " + converted + " sales");
+    }
+    else if (args.length == 1 && args[0].equals("dump"))
+    {
+      long read = forEach(journalFile, record -> System.out.println(String.format("%d %tF %<tT %s %s %d lines %.2f",
+        record.getTransactionId(), new Date(record.getTime()), record.getRegister(), record.getCashier(),
+        record.getLines().size(), record.getTotal())));
+      if (read < 0)
+        System.exit(1);
+    }
+    else
+    {
+      System.out.println("usage: SalesJournal convert [textLog] | SalesJournal dump");
+      System.exit(1);
+    }
+  }
+}
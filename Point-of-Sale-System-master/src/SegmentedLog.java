@@ -0,0 +1,556 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+//Rotation of an append-only text log (invoice record, returns, employee log) into numbered segments.
+//Writers keep appending to the log's own path; once it is larger than maxBytes or its first line is
+//older than maxAgeMillis, the next rotateIfNeeded renames it to <log>.<sequence> and the next append
+//starts a new file. Sealed segments are compressed to <log>.<sequence>.gz on a background thread once
+//writers that opened them before the rename are done, and <log>.manifest lists every segment with the
+//first and last time found in its lines, so readers can skip segments outside a time range.
+//Readers stream the segments in order, compressed or not, followed by the live log.
+//Compressed segments beyond the retention limits (count, total size, age of their last line) are dropped
+//from the manifest and deleted, oldest first; the limits are off (0) unless set.
+public class SegmentedLog
+{
+  public static long defaultMaxBytes = 16L*1024*1024;
+  public static long defaultMaxAgeMillis = 24L*60*60*1000;
+  public static long settleMillis = 5000; //a sealed segment is compressed after this
+  public static int defaultMaxSegments = 0; //retention limits, 0 keeps every segment
+  public static long defaultMaxTotalBytes = 0;
+  public static long defaultRetentionMillis = 0;
+
+  //times as the logs write them, the first and last found date a segment
+  private static final Pattern TIME = Pattern.compile("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{3}");
+  private static final Map<String, SegmentedLog> logs = new ConcurrentHashMap<String, SegmentedLog>();
+  //FileChannel locks cannot overlap inside one JVM, logs of the same file in this process take turns
+  private static final Map<String, ReentrantLock> processLocks = new ConcurrentHashMap<String, ReentrantLock>();
+  private static ExecutorService compressor = null;
+
+  public static class Segment
+  {
+    private final String name; //without .gz
+    private final long firstTime, lastTime; //-1 until the segment is compressed
+    private final File directory;
+
+    Segment(File directory, String name, long firstTime, long lastTime)
+    {
+      this.directory = directory; this.name = name; this.firstTime = firstTime; this.lastTime = lastTime;
+    }
+
+    public String getName() {return name;}
+    public long getFirstTime() {return firstTime;}
+    public long getLastTime() {return lastTime;}
+    public boolean isCompressed() {return new File(directory, name + ".gz").exists();}
+
+    //the file holding the segment now
+    public File getFile()
+    {
+      File compressed = new File(directory, name + ".gz");
+      return compressed.exists() ? compressed : new File(directory, name);
+    }
+
+    //the lines of the segment, uncompressed
+    public InputStream open() throws IOException
+    {
+      File plain = new File(directory, name);
+      try {
+        if (!isCompressed())
+          return new FileInputStream(plain);
+      }
+      catch (FileNotFoundException e) {
+        //compressed since it was checked
+      }
+      return new GZIPInputStream(new FileInputStream(new File(directory, name + ".gz")), 64*1024);
+    }
+
+    //true if some line of the segment may be timed from (inclusive) to (exclusive)
+    boolean overlaps(long from, long to)
+    {
+      return firstTime < 0 || (lastTime >= from && firstTime < to);
+    }
+
+    String line()
+    {
+      return name + " " + firstTime + " " + lastTime;
+    }
+  }
+
+  private final File live;
+  private final File directory;
+  private final File manifest;
+  private final File lockFile;
+  private final ReentrantLock processLock;
+  private long maxBytes = defaultMaxBytes;
+  private long maxAgeMillis = defaultMaxAgeMillis;
+  private int maxSegments = defaultMaxSegments;
+  private long maxTotalBytes = defaultMaxTotalBytes;
+  private long retentionMillis = defaultRetentionMillis;
+  //first time in the live log, looked up again once the log was replaced
+  private long liveFirstTime = -1;
+  private Object liveKey = null;
+
+  SegmentedLog(String logFile)
+  {
+    live = new File(logFile).getAbsoluteFile();
+    directory = live.getParentFile();
+    manifest = new File(live.getPath() + ".manifest");
+    lockFile = new File(live.getPath() + ".lock");
+    processLock = processLocks.computeIfAbsent(lockFile.getPath(), path -> new ReentrantLock());
+  }
+
+  public static SegmentedLog forFile(String logFile)
+  {
+    return logs.computeIfAbsent(new File(logFile).getAbsolutePath(), SegmentedLog::new);
+  }
+
+  public void setLimits(long maxBytes, long maxAgeMillis)
+  {
+    this.maxBytes = maxBytes;
+    this.maxAgeMillis = maxAgeMillis;
+  }
+
+  public void setRetention(int maxSegments, long maxTotalBytes, long retentionMillis)
+  {
+    this.maxSegments = maxSegments;
+    this.maxTotalBytes = maxTotalBytes;
+    this.retentionMillis = retentionMillis;
+  }
+
+  //called after appending, rotates the log when it is too large or too old; true if it was rotated
+  public boolean rotateIfNeeded()
+  {
+    long length = live.length();
+    if (length == 0)
+      return false;
+    if (length < maxBytes)
+    {
+      long first = liveFirstTime();
+      if (first < 0 || System.currentTimeMillis() - first < maxAgeMillis)
+        return false;
+    }
+    return rotate();
+  }
+
+  //seals the live log as the next segment, false if there was nothing to seal or it failed.
+  //The segment is listed in the manifest before the log is renamed to it: a rotation stopped in between
+  //leaves an entry without a file, which is dropped, rather than a segment no reader knows of.
+  public boolean rotate()
+  {
+    FileLock exclusive = lock();
+    try {
+      if (!live.exists() || live.length() == 0)
+        return false;
+      List<Segment> segments = readManifest();
+      segments.removeIf(segment -> !segment.getFile().exists());
+      String name = String.format("%s.%06d", live.getName(), nextSequence());
+      File sealed = new File(directory, name);
+      if (sealed.exists() || new File(directory, name + ".gz").exists())
+        throw new IOException(sealed + " exists");
+      segments.add(new Segment(directory, name, -1, -1));
+      writeManifest(segments);
+      try {
+        Files.move(live.toPath(), sealed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (IOException e) {
+        segments.remove(segments.size() - 1);
+        writeManifest(segments);
+        throw e;
+      }
+      liveFirstTime = -1;
+      liveKey = null;
+    }
+    catch (IOException e) {
+      System.out.println("Unable to rotate log '" + live + "'");
+      return false;
+    }
+    finally {
+      release(exclusive);
+    }
+    schedule(this);
+    return true;
+  }
+
+  //one past the highest sequence of the segment files on disk, listed in the manifest or not
+  private long nextSequence()
+  {
+    Pattern segmentName = Pattern.compile(Pattern.quote(live.getName()) + "\\.(\\d+)(\\.gz)?");
+    long sequence = 1;
+    String[] names = directory.list();
+    if (names != null)
+    {
+      for (String name : names)
+      {
+        Matcher matcher = segmentName.matcher(name);
+        if (matcher.matches())
+        {
+          try {
+            sequence = Math.max(sequence, Long.parseLong(matcher.group(1)) + 1);
+          }
+          catch (NumberFormatException e) {
+            //not one of ours
+          }
+        }
+      }
+    }
+    return sequence;
+  }
+
+  private static synchronized void schedule(final SegmentedLog log)
+  {
+    if (compressor == null)
+    {
+      compressor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "log-compressor");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    compressor.execute(() -> {
+      try {
+        Thread.sleep(settleMillis);
+      }
+      catch (InterruptedException e) {
+        return;
+      }
+      log.compressSealed();
+      log.expire();
+    });
+  }
+
+  //compresses every sealed segment still plain and dates it in the manifest, returns how many
+  public int compressSealed()
+  {
+    int compressed = 0;
+    for (Segment segment : segments())
+    {
+      File plain = new File(directory, segment.name);
+      if (!plain.exists() || segment.isCompressed())
+        continue;
+      File gz = new File(directory, segment.name + ".gz");
+      //a temporary file of its own, another process may be compressing the same segment
+      File temp;
+      try {
+        temp = Files.createTempFile(directory.toPath(), segment.name + ".", ".gz.tmp").toFile();
+      }
+      catch (IOException e) {
+        System.out.println("Unable to compress log segment '" + plain + "'");
+        continue;
+      }
+      long[] times = {-1, -1};
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(plain), StandardCharsets.UTF_8));
+           Writer out = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(temp), 64*1024), StandardCharsets.UTF_8))
+      {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+          out.write(line);
+          out.write('\n');
+          long time = time(line, dateFormat);
+          if (time >= 0)
+          {
+            times[0] = times[0] < 0 ? time : Math.min(times[0], time);
+            times[1] = Math.max(times[1], time);
+          }
+        }
+      }
+      catch (IOException e) {
+        System.out.println("Unable to compress log segment '" + plain + "'");
+        temp.delete();
+        continue;
+      }
+      if (times[0] < 0)
+      {
+        //undated lines, dated by when the segment was started and last written
+        try {
+          times[0] = Files.readAttributes(plain.toPath(), BasicFileAttributes.class).creationTime().toMillis();
+          times[1] = Math.max(times[0], plain.lastModified());
+        }
+        catch (IOException e) {
+          //left undated, never skipped by a reader
+        }
+      }
+
+      FileLock exclusive = lock();
+      try {
+        //compressed by another process meanwhile, or expired: its copy is the one the manifest dates
+        List<Segment> segments = readManifest();
+        int listed = -1;
+        for (int i = 0; i < segments.size(); i++)
+          if (segments.get(i).name.equals(segment.name))
+            listed = i;
+        if (listed < 0 || gz.exists() || !plain.exists())
+          continue;
+        Files.move(temp.toPath(), gz.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        segments.set(listed, new Segment(directory, segment.name, times[0], times[1]));
+        writeManifest(segments);
+        plain.delete();
+        compressed++;
+      }
+      catch (IOException e) {
+        System.out.println("Unable to compress log segment '" + plain + "'");
+      }
+      finally {
+        temp.delete(); //moved in, or not needed
+        release(exclusive);
+      }
+    }
+    return compressed;
+  }
+
+  //deletes the oldest compressed segments until the log is within its retention limits, returns how many.
+  //They leave the manifest before their files are deleted, a failed delete leaves a file no reader uses.
+  public int expire()
+  {
+    if (maxSegments <= 0 && maxTotalBytes <= 0 && retentionMillis <= 0)
+      return 0;
+    List<Segment> expired = new ArrayList<Segment>();
+    FileLock exclusive = lock();
+    try {
+      List<Segment> segments = readManifest();
+      long total = 0;
+      for (Segment segment : segments)
+        total += segment.getFile().length();
+      long oldest = System.currentTimeMillis() - retentionMillis;
+      //plain segments may still be written by whoever opened the log before it was sealed, they stay
+      while (!segments.isEmpty() && segments.get(0).isCompressed())
+      {
+        Segment segment = segments.get(0);
+        boolean tooMany = maxSegments > 0 && segments.size() > maxSegments;
+        boolean tooLarge = maxTotalBytes > 0 && total > maxTotalBytes;
+        boolean tooOld = retentionMillis > 0 && segment.lastTime >= 0 && segment.lastTime < oldest;
+        if (!tooMany && !tooLarge && !tooOld)
+          break;
+        total -= segment.getFile().length();
+        expired.add(segments.remove(0));
+      }
+      if (expired.isEmpty())
+        return 0;
+      writeManifest(segments);
+    }
+    catch (IOException e) {
+      System.out.println("Unable to expire segments of log '" + live + "'");
+      return 0;
+    }
+    finally {
+      release(exclusive);
+    }
+    for (Segment segment : expired)
+      if (!segment.getFile().delete())
+        System.out.println("Unable to delete log segment '" + segment.getFile() + "'");
+    return expired.size();
+  }
+
+  //the sealed segments, oldest first
+  public List<Segment> segments()
+  {
+    FileLock shared = lock();
+    try {
+      return readManifest();
+    }
+    finally {
+      release(shared);
+    }
+  }
+
+  //the whole log, sealed segments then the live file
+  public InputStream open() throws IOException
+  {
+    return open(Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  //the segments that may hold lines timed from (inclusive) to (exclusive), then the live file;
+  //lines are not filtered, only segments dated outside the range are skipped
+  public InputStream open(long from, long to) throws IOException
+  {
+    final List<Segment> segments = new ArrayList<Segment>();
+    for (Segment segment : segments())
+      if (segment.overlaps(from, to) && segment.getFile().exists()) //listed by a rotation that did not finish
+        segments.add(segment);
+    if (!live.exists() && segments.isEmpty())
+      throw new FileNotFoundException(live.getPath());
+    return new SequenceInputStream(new Enumeration<InputStream>() {
+      private int next = 0;
+
+      public boolean hasMoreElements()
+      {
+        return next <= segments.size();
+      }
+
+      public InputStream nextElement()
+      {
+        try {
+          if (next < segments.size())
+            return segments.get(next++).open();
+          next++;
+          return live.exists() ? new FileInputStream(live) : new ByteArrayInputStream(new byte[0]);
+        }
+        catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    });
+  }
+
+  public BufferedReader reader() throws IOException
+  {
+    return new BufferedReader(new InputStreamReader(open(), StandardCharsets.UTF_8));
+  }
+
+  //the first time in the line, -1 if it has none
+  static long time(String line, SimpleDateFormat dateFormat)
+  {
+    Matcher matcher = TIME.matcher(line);
+    if (!matcher.find())
+      return -1;
+    try {
+      return dateFormat.parse(matcher.group()).getTime();
+    }
+    catch (ParseException e) {
+      return -1;
+    }
+  }
+
+  //time of the first dated line of the live log, read once per file
+  private long liveFirstTime()
+  {
+    BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(live.toPath(), BasicFileAttributes.class);
+    }
+    catch (IOException e) {
+      return -1;
+    }
+    Object key = attributes.fileKey();
+    if (liveFirstTime >= 0 && key != null && key.equals(liveKey))
+      return liveFirstTime;
+    SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(live), StandardCharsets.UTF_8)))
+    {
+      String line;
+      for (int read = 0; read < 100 && (line = reader.readLine()) != null; read++)
+      {
+        long time = time(line, dateFormat);
+        if (time >= 0)
+        {
+          liveFirstTime = time;
+          liveKey = key;
+          return time;
+        }
+      }
+    }
+    catch (IOException e) {
+      return -1;
+    }
+    //undated lines (the returns log), aged from when the file was started
+    liveFirstTime = attributes.creationTime().toMillis();
+    liveKey = key;
+    return liveFirstTime;
+  }
+
+  private List<Segment> readManifest()
+  {
+    List<Segment> segments = new ArrayList<Segment>();
+    if (!manifest.exists())
+      return segments;
+    try (BufferedReader reader = new BufferedReader(new FileReader(manifest)))
+    {
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        String[] lineSort = line.split(" ");
+        if (lineSort.length == 3)
+          segments.add(new Segment(directory, lineSort[0], Long.parseLong(lineSort[1]), Long.parseLong(lineSort[2])));
+      }
+    }
+    catch (IOException | NumberFormatException e) {
+      System.out.println("Error reading file '" + manifest + "'");
+    }
+    return segments;
+  }
+
+  private void writeManifest(List<Segment> segments) throws IOException
+  {
+    File temp = new File(manifest.getPath() + ".tmp");
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp)))
+    {
+      for (Segment segment : segments)
+      {
+        writer.write(segment.line());
+        writer.newLine();
+      }
+    }
+    Files.move(temp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  //null when the lock file cannot be used, the process lock still serializes this register
+  private FileLock lock()
+  {
+    processLock.lock();
+    try {
+      FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      try {
+        return channel.lock();
+      }
+      catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void release(FileLock lock)
+  {
+    try {
+      if (lock != null)
+        lock.channel().close(); //also releases the lock
+    }
+    catch (IOException e) {
+      System.out.println("Unable to release log lock '" + lockFile + "'");
+    }
+    finally {
+      processLock.unlock();
+    }
+  }
+
+  //usage: SegmentedLog rotate|compress|list <logFile>, compress also applies the default retention limits
+  public static void main(String[] args)
+  {
+    if (args.length != 2)
+    {
+      System.out.println("usage: SegmentedLog rotate|compress|list <logFile>");
+      System.exit(1);
+    }
+    SegmentedLog log = forFile(args[1]);
+    if (args[0].equals("rotate"))
+      System.out.println(log.rotate() ? "Rotated" : "Nothing to rotate");
+    if (args[0].equals("rotate") || args[0].equals("compress"))
+    {
+      System.out.println("Compressed " + log.compressSealed() + " segments");
+      System.out.println("Deleted " + log.expire() + " segments");
+    }
+    for (Segment segment : log.segments())
+      System.out.println(String.format("%s %s %tF %<tT - %tF %<tT", segment.getName(), segment.isCompressed() ? "gz" : "  ",
+        new Date(segment.getFirstTime()), new Date(segment.getLastTime())));
+  }
+}
@@ -0,0 +1,159 @@
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Logged-in employees of every register served by this JVM. A login opens a session under a random
+//token that remembers the employee, the register and its open transaction, so screens can pass the
+//session along instead of logging in again. Screens and transactions touch the session on every action;
+//sessions left idle longer than the timeout are closed the next time sessions are looked up or opened,
+//and logged out at their last action.
+public class SessionManager
+{
+  public static long defaultIdleTimeoutMillis = 30*60*1000;
+  //this register in sessions, the sales journal and the commit pipeline's cursor; every register sharing the
+  //Database directory needs its own, set with -Dpos.register=<id> where several run on one host
+  public static String defaultRegister = System.getProperty("pos.register", "register-" + hostName());
+
+  private static final long SWEEP_INTERVAL_MILLIS = 60*1000;
+  private static final SecureRandom random = new SecureRandom();
+
+  //Singleton design pattern applied, one table of sessions per JVM
+  private static SessionManager uniqueInstance = null;
+
+  public static class Session
+  {
+    private final String token;
+    private final String username;
+    private final String name;
+    private final String position;
+    private final String register;
+    private volatile PointOfSale transaction = null;
+    private volatile long lastAccess;
+
+    Session(String token, Employee employee, String register, long now)
+    {
+      this.token = token;
+      this.username = employee.getUsername();
+      this.name = employee.getName();
+      this.position = employee.getPosition();
+      this.register = register;
+      this.lastAccess = now;
+    }
+
+    public String getToken() {return token;}
+    public String getUsername() {return username;}
+    public String getName() {return name;}
+    public String getPosition() {return position;}
+    public String getRegister() {return register;}
+    public PointOfSale getTransaction() {return transaction;}
+    public void setTransaction(PointOfSale transaction) {this.transaction = transaction;}
+    public long getLastAccess() {return lastAccess;}
+    //keeps the session from expiring while the employee works on its screens and transactions
+    public void touch() {lastAccess = System.currentTimeMillis();}
+  }
+
+  private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+  private final long idleTimeoutMillis;
+  private volatile long nextSweep = 0;
+
+  public SessionManager(long idleTimeoutMillis)
+  {
+    this.idleTimeoutMillis = idleTimeoutMillis;
+  }
+
+  private static String hostName()
+  {
+    try {
+      return java.net.InetAddress.getLocalHost().getHostName();
+    }
+    catch (java.io.IOException e) {
+      return "1";
+    }
+  }
+
+  public static synchronized SessionManager getInstance()
+  {
+    if (uniqueInstance == null)
+      uniqueInstance = new SessionManager(defaultIdleTimeoutMillis);
+    return uniqueInstance;
+  }
+
+  public Session open(Employee employee, String register)
+  {
+    long now = System.currentTimeMillis();
+    sweep(now);
+    byte[] bytes = new byte[16];
+    random.nextBytes(bytes);
+    String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    Session session = new Session(token, employee, register, now);
+    sessions.put(token, session);
+    return session;
+  }
+
+  //the live session of the token, null if it was closed or has expired
+  public Session get(String token)
+  {
+    if (token == null)
+      return null;
+    long now = System.currentTimeMillis();
+    sweep(now);
+    Session session = sessions.get(token);
+    if (session == null)
+      return null;
+    if (now - session.lastAccess > idleTimeoutMillis)
+    {
+      expire(session);
+      return null;
+    }
+    session.lastAccess = now;
+    return session;
+  }
+
+  //false if the session was already closed or expired
+  public boolean close(String token)
+  {
+    return token != null && sessions.remove(token) != null;
+  }
+
+  //live sessions of the register
+  public List<Session> sessionsOf(String register)
+  {
+    List<Session> open = new ArrayList<Session>();
+    for (Session session : sessions.values())
+      if (session.register.equals(register))
+        open.add(session);
+    return open;
+  }
+
+  public int size() {return sessions.size();}
+
+  //closes every session idle longer than the timeout, returns how many were closed
+  public int expireIdle()
+  {
+    long now = System.currentTimeMillis();
+    int expired = 0;
+    for (Session session : sessions.values())
+    {
+      if (now - session.lastAccess > idleTimeoutMillis && expire(session))
+        expired++;
+    }
+    return expired;
+  }
+
+  private void sweep(long now)
+  {
+    if (now < nextSweep)
+      return;
+    nextSweep = now + Math.min(SWEEP_INTERVAL_MILLIS, idleTimeoutMillis);
+    expireIdle();
+  }
+
+  private boolean expire(Session session)
+  {
+    //remove(key, value) lets only one thread expire it
+    if (!sessions.remove(session.token, session))
+      return false;
+    AuditLogger.getInstance().logOut(session.username, session.name, session.position, session.lastAccess);
+    return true;
+  }
+}
@@ -0,0 +1,284 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+//Shifts worked by each employee, read from the login/logout lines of the employee log. The log is
+//split at line boundaries into chunks that are memory mapped and parsed in parallel, then each
+//employee's events are paired in time order: a login opens a shift and the next logout closes it.
+//A login followed by another login has no known end and only counts as unmatched; the last shift of
+//an employee who logged in during the last day and is still on runs until the report was built.
+//Shifts are indexed by the days they cover, so who was on at a given time only looks at that day.
+//Segments rotated out of the log by SegmentedLog are read first, each streamed on its own thread.
+public class ShiftReport
+{
+  private static final Pattern LINE = Pattern.compile("^(.*) \\((\\S+) (\\S+)\\) logs (into|out of) POS System\\. Time: (.*)$");
+  private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+  private static final long CHUNK_BYTES = 8L*1024*1024;
+  private static final int MAX_LINE = 4096; //longer lines are not log lines
+  private static final long DAY = 24L*60*60*1000;
+
+  public static class Shift
+  {
+    private final String username, name, position;
+    private final long start, end;
+    private final boolean ongoing;
+
+    Shift(String username, String name, String position, long start, long end, boolean ongoing)
+    {
+      this.username = username; this.name = name; this.position = position;
+      this.start = start; this.end = end; this.ongoing = ongoing;
+    }
+
+    public String getUsername() {return username;}
+    public String getName() {return name;}
+    public String getPosition() {return position;}
+    public long getStart() {return start;}
+    public long getEnd() {return end;}
+    public boolean isOngoing() {return ongoing;} //no logout yet, ends when the report was built
+    public long getMillis() {return end - start;}
+  }
+
+  static class Event
+  {
+    final String username, name, position;
+    final boolean login;
+    final long time;
+
+    Event(String username, String name, String position, boolean login, long time)
+    {
+      this.username = username; this.name = name; this.position = position; this.login = login; this.time = time;
+    }
+  }
+
+  private final List<Shift> shifts = new ArrayList<Shift>(); //by start time
+  private final Map<Long, List<Shift>> shiftsByDay = new HashMap<Long, List<Shift>>();
+  private int unmatched = 0;
+  private int skippedLines = 0;
+
+  //pairs the events into shifts, shifts still open end at asOf
+  ShiftReport(List<Event> events, int skippedLines, long asOf)
+  {
+    this.skippedLines = skippedLines;
+    Map<String, List<Event>> byEmployee = new HashMap<String, List<Event>>();
+    for (Event event : events)
+      byEmployee.computeIfAbsent(event.username, username -> new ArrayList<Event>()).add(event);
+
+    for (List<Event> history : byEmployee.values())
+    {
+      //stable, events logged in the same millisecond keep their log order
+      history.sort(Comparator.comparingLong(event -> event.time));
+      Event open = null;
+      for (Event event : history)
+      {
+        if (event.login)
+        {
+          if (open != null)
+            unmatched++; //logged in again without logging out
+          open = event;
+        }
+        else if (open != null)
+        {
+          shifts.add(new Shift(open.username, open.name, open.position, open.time, event.time, false));
+          open = null;
+        }
+        else
+          unmatched++; //logout without a login
+      }
+      if (open != null && open.time <= asOf && asOf - open.time <= DAY)
+        shifts.add(new Shift(open.username, open.name, open.position, open.time, asOf, true));
+      else if (open != null)
+        unmatched++; //never logged out
+    }
+
+    shifts.sort(Comparator.comparingLong(Shift::getStart));
+    for (Shift shift : shifts)
+    {
+      for (long day = Math.floorDiv(shift.start, DAY); day <= Math.floorDiv(shift.end, DAY); day++)
+        shiftsByDay.computeIfAbsent(day, key -> new ArrayList<Shift>()).add(shift);
+    }
+  }
+
+  //reads the employee log, null if it cannot be read
+  public static ShiftReport load(String logFile)
+  {
+    if (new File(logFile).getAbsoluteFile().equals(new File(AuditLogger.logFile).getAbsoluteFile()))
+      AuditLogger.getInstance().flush(); //logins still queued by this register
+
+    //rotated segments are streamed, each on its own thread, the live log is split into mapped chunks
+    List<SegmentedLog.Segment> segments = SegmentedLog.forFile(logFile).segments();
+    File live = new File(logFile);
+    try (FileChannel channel = !live.exists() && !segments.isEmpty() ? null : FileChannel.open(live.toPath(), StandardOpenOption.READ))
+    {
+      final long size = channel == null ? 0 : channel.size();
+      List<List<Event>> chunks = segments.parallelStream()
+        .map(ShiftReport::parseSegment)
+        .collect(Collectors.toList());
+      chunks.addAll(LongStream.range(0, (size + CHUNK_BYTES - 1)/CHUNK_BYTES)
+        .parallel()
+        .mapToObj(chunk -> parseChunk(channel, chunk*CHUNK_BYTES, Math.min(size, (chunk + 1)*CHUNK_BYTES), size))
+        .collect(Collectors.toList()));
+      List<Event> events = new ArrayList<Event>();
+      int skipped = 0;
+      for (List<Event> chunk : chunks)
+      {
+        for (Event event : chunk)
+        {
+          if (event == null)
+            skipped++;
+          else
+            events.add(event);
+        }
+      }
+      return new ShiftReport(events, skipped, System.currentTimeMillis());
+    }
+    catch (IOException | UncheckedIOException e) {
+      System.out.println("Error reading file '" + logFile + "'");
+      return null;
+    }
+  }
+
+  //events of a rotated segment of the log, null for a line that is not a login or logout
+  private static List<Event> parseSegment(SegmentedLog.Segment segment)
+  {
+    List<Event> events = new ArrayList<Event>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(segment.open(), StandardCharsets.UTF_8)))
+    {
+      String line;
+      while ((line = reader.readLine()) != null)
+        if (line.length() > 0)
+          events.add(line.length() <= MAX_LINE ? parse(line) : null);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return events;
+  }
+
+  //events of the lines starting in [start, end), null for a line that is not a login or logout
+  private static List<Event> parseChunk(FileChannel channel, long start, long end, long size)
+  {
+    List<Event> events = new ArrayList<Event>();
+    long from = start == 0 ? 0 : start - 1;
+    MappedByteBuffer buffer;
+    try {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(size, end + MAX_LINE) - from);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    int limit = buffer.limit();
+    int position = 0;
+    if (start > 0)
+    {
+      //the line running into this chunk belongs to the previous one
+      while (position < limit && buffer.get(position) != '\n')
+        position++;
+      position++;
+    }
+    byte[] line = new byte[MAX_LINE];
+    while (position < limit && from + position < end)
+    {
+      int length = 0;
+      while (position < limit && buffer.get(position) != '\n')
+      {
+        if (length < MAX_LINE)
+          line[length] = buffer.get(position);
+        length++;
+        position++;
+      }
+      position++;
+      if (length > 0 && length <= MAX_LINE)
+        events.add(parse(new String(line, 0, line[length - 1] == '\r' ? length - 1 : length, StandardCharsets.UTF_8)));
+      else if (length > MAX_LINE)
+        events.add(null);
+    }
+    return events;
+  }
+
+  static Event parse(String line)
+  {
+    Matcher matcher = LINE.matcher(line);
+    if (!matcher.matches())
+      return null;
+    try {
+      long time = LocalDateTime.parse(matcher.group(5), TIME).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+      return new Event(matcher.group(2), matcher.group(1), matcher.group(3), matcher.group(4).equals("into"), time);
+    }
+    catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  public List<Shift> getShifts() {return shifts;}
+  public int getUnmatched() {return unmatched;}
+  public int getSkippedLines() {return skippedLines;}
+
+  //time worked by each employee between from and to, shifts crossing the range are clipped to it
+  public Map<String, Long> millisByEmployee(long from, long to)
+  {
+    Map<String, Long> worked = new TreeMap<String, Long>();
+    for (Shift shift : shifts)
+    {
+      long overlap = Math.min(to, shift.end) - Math.max(from, shift.start);
+      if (overlap > 0)
+        worked.merge(shift.username, overlap, Long::sum);
+    }
+    return worked;
+  }
+
+  public double hours(String username, long from, long to)
+  {
+    Long millis = millisByEmployee(from, to).get(username);
+    return millis == null ? 0 : millis/3600000.0;
+  }
+
+  //shifts under way at the given time
+  public List<Shift> onShiftAt(long time)
+  {
+    List<Shift> on = new ArrayList<Shift>();
+    List<Shift> day = shiftsByDay.get(Math.floorDiv(time, DAY));
+    if (day == null)
+      return on;
+    for (Shift shift : day)
+      if (shift.start <= time && time < shift.end)
+        on.add(shift);
+    return on;
+  }
+
+  //usage: ShiftReport [logFile] [yyyy-MM-dd HH:mm:ss.SSS]
+  public static void main(String[] args)
+  {
+    String logFile = args.length >= 1 ? args[0] : AuditLogger.logFile;
+    long start = System.currentTimeMillis();
+    ShiftReport report = load(logFile);
+    if (report == null)
+      System.exit(1);
+    System.out.println(report.getShifts().size() + " shifts (" + report.getUnmatched() + " unmatched events, "
+      + report.getSkippedLines() + " unreadable lines) in " + (System.currentTimeMillis() - start) + " ms");
+
+    Map<String, String> names = new HashMap<String, String>();
+    for (Shift shift : report.getShifts())
+      names.put(shift.getUsername(), shift.getName());
+    for (Map.Entry<String, Long> worked : report.millisByEmployee(Long.MIN_VALUE, Long.MAX_VALUE).entrySet())
+      System.out.println(String.format("%s %-20s %10.2f hours", worked.getKey(), names.get(worked.getKey()), worked.getValue()/3600000.0));
+
+    if (args.length == 2)
+    {
+      long time = LocalDateTime.parse(args[1], TIME).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+      System.out.println("On shift at " + args[1] + ":");
+      for (Shift shift : report.onShiftAt(time))
+        System.out.println("  " + shift.getName() + " (" + shift.getUsername() + " " + shift.getPosition() + ")");
+    }
+  }
+}
@@ -0,0 +1,286 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+//Customer store kept in the text user database. Readers run concurrently, writers rewrite the file
+//one at a time: a change to any customer rewrites the whole file, so there is no per-customer locking. Registers in other processes are kept out with a FileChannel lock on a side lock file:
+//shared while this process is reading, exclusive while it is writing.
+public class TextCustomerStore extends CustomerStore
+{
+  private final String databaseFile;
+  private final File lockFile;
+
+  //in-process readers/writer of the file, FileChannel locks cannot overlap inside one JVM
+  private final ReentrantReadWriteLock fileLock = new ReentrantReadWriteLock();
+  private FileChannel lockChannel = null;
+  private FileLock sharedLock = null;
+  private int sharedHolders = 0;
+
+  public TextCustomerStore(String databaseFile)
+  {
+    this.databaseFile = databaseFile;
+    this.lockFile = new File(databaseFile + ".lock");
+  }
+
+  public String getDatabaseFile() {return databaseFile;}
+
+  //modification time and length of the database, checked without reading it
+  public long version()
+  {
+    File file = new File(databaseFile);
+    return file.lastModified()*31 + file.length();
+  }
+
+  public String find(long phone)
+  {
+    beginRead();
+    try {
+      BufferedReader textReader = new BufferedReader(new FileReader(databaseFile));
+      String line = textReader.readLine(); //skips the first line, which explains how the DB is formatted.
+      while ((line = textReader.readLine()) != null)
+      {
+        if (phoneOf(line) == phone)
+        {
+          textReader.close();
+          return line;
+        }
+      }
+      textReader.close();
+    }
+    catch(FileNotFoundException ex) {
+      System.out.println("cannot open userDB");
+    }
+    catch(IOException ex) {
+      System.out.println("ioexception");
+    }
+    finally {
+      endRead();
+    }
+    return null;
+  }
+
+  public boolean create(long phone)
+  {
+    FileLock exclusive = beginWrite();
+    try {
+      PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(databaseFile, true)));
+      out.println();
+      out.print(Long.toString(phone));
+      out.close();
+      return true;
+    }
+    catch (IOException e) {
+      System.out.println("cannot write to userDB");
+      return false;
+    }
+    finally {
+      endWrite(exclusive);
+    }
+  }
+
+  //one read of the database to collect the existing phones, then one append of the new customers
+  public int createAll(long[] phones)
+  {
+    FileLock exclusive = beginWrite();
+    try {
+      long[] existing = new long[1024];
+      int count = 0;
+      BufferedReader textReader = new BufferedReader(new FileReader(databaseFile));
+      String line = textReader.readLine(); //skips the first line, which explains how the DB is formatted.
+      while ((line = textReader.readLine()) != null)
+      {
+        long phone = phoneOf(line);
+        if (phone < 0)
+          continue;
+        if (count == existing.length)
+          existing = Arrays.copyOf(existing, count*2);
+        existing[count++] = phone;
+      }
+      textReader.close();
+      Arrays.sort(existing, 0, count);
+
+      //merges the two sorted lists, writing the phones that are only in the new one
+      int created = 0;
+      int next = 0;
+      PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(databaseFile, true), 1 << 16));
+      for (long phone : phones)
+      {
+        while (next < count && existing[next] < phone)
+          next++;
+        if (next < count && existing[next] == phone)
+          continue;
+        out.println();
+        out.print(Long.toString(phone));
+        created++;
+      }
+      out.close();
+      return out.checkError() ? -1 : created;
+    }
+    catch(FileNotFoundException ex) {
+      System.out.println("cannot open userDB");
+      return -1;
+    }
+    catch(IOException ex) {
+      System.out.println("ioexception");
+      return -1;
+    }
+    finally {
+      endWrite(exclusive);
+    }
+  }
+
+  public boolean update(long phone, UnaryOperator<String> change)
+  {
+    return rewrite(phone, change);
+  }
+
+  //one pass over the database instead of a rewrite per customer
+  public boolean updateAll(UnaryOperator<String> change)
+  {
+    return rewrite(-1, change);
+  }
+
+  public boolean forEach(Consumer<String> action)
+  {
+    beginRead();
+    try {
+      BufferedReader textReader = new BufferedReader(new FileReader(databaseFile));
+      String line = textReader.readLine(); //skips the first line, which explains how the DB is formatted.
+      while ((line = textReader.readLine()) != null)
+      {
+        if (phoneOf(line) >= 0)
+          action.accept(line);
+      }
+      textReader.close();
+      return true;
+    }
+    catch(FileNotFoundException ex) {
+      System.out.println("cannot open userDB");
+    }
+    catch(IOException ex) {
+      System.out.println("ioexception");
+    }
+    finally {
+      endRead();
+    }
+    return false;
+  }
+
+  //rewrites the database applying change to the customer's record, or to every record when phone is -1
+  private boolean rewrite(long phone, UnaryOperator<String> change)
+  {
+    FileLock exclusive = beginWrite();
+    try {
+      List<String> fileList = new ArrayList<String>();
+      boolean found = false;
+      BufferedReader textReader = new BufferedReader(new FileReader(databaseFile));
+      String line = textReader.readLine();
+      fileList.add(line); //the first line explains how the DB is formatted
+      while ((line = textReader.readLine()) != null)
+      {
+        long nextPhone = phoneOf(line);
+        if (nextPhone < 0)
+          continue; //drops blank and malformed lines
+        if (phone == -1 || (nextPhone == phone && !found))
+        {
+          line = change.apply(line);
+          found = true;
+        }
+        fileList.add(line);
+      }
+      textReader.close();
+      if (!found && phone != -1)
+        return false;
+
+      //writes a full copy and swaps it in, readers never see a half written database
+      File temp = new File(databaseFile + ".tmp");
+      PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(temp)));
+      for (String record : fileList)
+        writer.println(record);
+      writer.close();
+      Files.move(temp.toPath(), new File(databaseFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+      return true;
+    }
+    catch(FileNotFoundException ex) {
+      System.out.println("cannot open userDB");
+      return false;
+    }
+    catch(IOException ex) {
+      System.out.println("ioexception");
+      return false;
+    }
+    finally {
+      endWrite(exclusive);
+    }
+  }
+
+  private void beginRead()
+  {
+    fileLock.readLock().lock();
+    synchronized (this)
+    {
+      //the first reader of this process takes the shared lock for all of them
+      if (sharedHolders++ == 0)
+        sharedLock = lockRegion(true);
+    }
+  }
+
+  private void endRead()
+  {
+    synchronized (this)
+    {
+      if (--sharedHolders == 0)
+      {
+        release(sharedLock);
+        sharedLock = null;
+      }
+    }
+    fileLock.readLock().unlock();
+  }
+
+  private FileLock beginWrite()
+  {
+    fileLock.writeLock().lock();
+    return lockRegion(false);
+  }
+
+  private void endWrite(FileLock exclusive)
+  {
+    release(exclusive);
+    fileLock.writeLock().unlock();
+  }
+
+  //null when the lock file cannot be used, the in-process locks still apply
+  private FileLock lockRegion(boolean shared)
+  {
+    try {
+      synchronized (lockFile)
+      {
+        if (lockChannel == null || !lockChannel.isOpen())
+          lockChannel = new RandomAccessFile(lockFile, "rw").getChannel();
+      }
+      return lockChannel.lock(0, Long.MAX_VALUE, shared);
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static void release(FileLock lock)
+  {
+    if (lock == null)
+      return;
+    try {
+      lock.release();
+    }
+    catch (IOException e) {
+      System.out.println("Unable to release userDB lock");
+    }
+  }
+}
@@ -0,0 +1,244 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Journal offset of every transaction ID, kept in <journal>.tid beside the sales journal. The journal
+//numbers its records 1, 2, 3... so the file is a flat array: the entry of transaction n is the two longs
+//at 16 + 16*(n - 1), its offset (plus one, 0 for none) and a link, and a lookup is one read of the index
+//and one of the journal. The link of a sale is the ID of the latest return against it and the link of a
+//return the one before that, so the returns of a sale are found without reading the journal.
+//The 16 byte header holds the journal offset indexed up to, the checksum of the record ending there and
+//the entry size; if the journal no longer has that record (replaced or cut short), or the index was
+//written with another entry size, the index is built again.
+//SalesJournal brings it up to date under its append lock after every append.
+public class TransactionIndex
+{
+  private static final int HEADER_BYTES = 16;
+  private static final int ENTRY_BYTES = 16; //offset and link
+  private static final Map<String, TransactionIndex> indexes = new ConcurrentHashMap<String, TransactionIndex>();
+
+  private final File journal;
+  private final File index;
+
+  TransactionIndex(String journalFile)
+  {
+    journal = new File(journalFile);
+    index = new File(journalFile + ".tid");
+  }
+
+  public static TransactionIndex forFile(String journalFile)
+  {
+    return indexes.computeIfAbsent(journalFile, TransactionIndex::new);
+  }
+
+  //adds the records appended since the last update, false if the index cannot be written
+  synchronized boolean update()
+  {
+    try (RandomAccessFile file = new RandomAccessFile(index, "rw"))
+    {
+      long indexedTo = 0;
+      int lastChecksum = 0;
+      int entryBytes = ENTRY_BYTES;
+      if (file.length() >= HEADER_BYTES)
+      {
+        indexedTo = file.readLong();
+        lastChecksum = file.readInt();
+        entryBytes = file.readInt();
+      }
+      if (entryBytes != ENTRY_BYTES || (indexedTo > 0 && !endsWith(indexedTo, lastChecksum)))
+      {
+        file.setLength(0); //the journal it was built for is gone, or it has offsets only
+        indexedTo = 0;
+        lastChecksum = 0;
+      }
+      try (SalesJournal.Reader reader = new SalesJournal.Reader(journal.getPath(), indexedTo))
+      {
+        SalesJournal.Record record;
+        while ((record = reader.next()) != null)
+        {
+          if (record.getTransactionId() > 0)
+            add(file, record, reader.recordOffset());
+        }
+        //the header moves on only after the entries are written
+        file.seek(0);
+        file.writeLong(reader.position());
+        file.writeInt(reader.lastChecksum() == 0 ? lastChecksum : reader.lastChecksum());
+        file.writeInt(ENTRY_BYTES);
+      }
+      return true;
+    }
+    catch (IOException e) {
+      System.out.println("Unable to update transaction index '" + index + "'");
+      return false;
+    }
+  }
+
+  //writes the record's entry; records indexed again after a crash keep the links they were given
+  private static void add(RandomAccessFile file, SalesJournal.Record record, long offset) throws IOException
+  {
+    long transactionId = record.getTransactionId();
+    long at = entryAt(transactionId);
+    long sale = record.getReference();
+    if (record.getType() == SalesJournal.RETURN && sale > 0 && sale < transactionId && entryAt(sale) + ENTRY_BYTES <= file.length())
+    {
+      file.seek(entryAt(sale) + 8);
+      long latest = file.readLong();
+      if (latest < transactionId)
+      {
+        file.seek(at);
+        file.writeLong(offset + 1);
+        file.writeLong(latest);
+        file.seek(entryAt(sale) + 8);
+        file.writeLong(transactionId);
+        return;
+      }
+    }
+    boolean indexed = at + ENTRY_BYTES <= file.length();
+    file.seek(at);
+    file.writeLong(offset + 1);
+    if (!indexed)
+      file.writeLong(0);
+  }
+
+  private static long entryAt(long transactionId) {return HEADER_BYTES + ENTRY_BYTES*(transactionId - 1);}
+
+  //drops the index, the next update indexes the whole journal
+  synchronized void rebuild()
+  {
+    index.delete();
+    update();
+  }
+
+  //true if the record ending at the offset has this checksum
+  private boolean endsWith(long offset, int checksum)
+  {
+    try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.READ))
+    {
+      if (channel.size() < offset)
+        return false;
+      ByteBuffer buffer = ByteBuffer.allocate(4);
+      while (buffer.hasRemaining() && channel.read(buffer, offset - 4 + buffer.position()) > 0);
+      return buffer.getInt(0) == checksum;
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  //the record of the transaction, null if there is none
+  public SalesJournal.Record find(long transactionId)
+  {
+    long offset = offsetOf(transactionId);
+    if (offset < 0)
+      return null;
+    try (SalesJournal.Reader reader = new SalesJournal.Reader(journal.getPath(), offset))
+    {
+      SalesJournal.Record record = reader.next();
+      //an index left from another journal points at the wrong record
+      return record != null && record.getTransactionId() == transactionId ? record : null;
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  //the returns recorded against the sale, latest first, followed through the links of their entries
+  public List<SalesJournal.Record> returnsOf(long transactionId)
+  {
+    List<SalesJournal.Record> returns = new ArrayList<SalesJournal.Record>();
+    long later = Long.MAX_VALUE;
+    //each link goes back to an earlier return of the sale, an index that does not is not followed
+    for (long returnId = linkOf(transactionId); returnId > transactionId && returnId < later; returnId = linkOf(returnId))
+    {
+      SalesJournal.Record record = find(returnId);
+      if (record == null || record.getType() != SalesJournal.RETURN || record.getReference() != transactionId)
+        break; //an index left from another journal
+      returns.add(record);
+      later = returnId;
+    }
+    return returns;
+  }
+
+  //highest transaction ID indexed, 0 for none
+  long lastId()
+  {
+    return Math.max(0, (index.length() - HEADER_BYTES)/ENTRY_BYTES);
+  }
+
+  //journal offset the index gives for the transaction, -1 if it has none; checked by reading the record there
+  long offsetOf(long transactionId)
+  {
+    if (transactionId <= 0)
+      return -1;
+    try (RandomAccessFile file = new RandomAccessFile(index, "r"))
+    {
+      long at = entryAt(transactionId);
+      if (at + ENTRY_BYTES > file.length())
+        return -1;
+      file.seek(at);
+      return file.readLong() - 1;
+    }
+    catch (IOException e) {
+      return -1;
+    }
+  }
+
+  //link of the transaction's entry, 0 for none
+  private long linkOf(long transactionId)
+  {
+    if (transactionId <= 0)
+      return 0;
+    try (RandomAccessFile file = new RandomAccessFile(index, "r"))
+    {
+      long at = entryAt(transactionId);
+      if (at + ENTRY_BYTES > file.length())
+        return 0;
+      file.seek(at + 8);
+      return file.readLong();
+    }
+    catch (IOException e) {
+      return 0;
+    }
+  }
+
+  //the receipt of a sale as printed for the customer
+  public static String receipt(SalesJournal.Record record)
+  {
+    StringBuilder text = new StringBuilder();
+    text.append("Receipt number: ").append(record.getTransactionId()).append("\n");
+    text.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(record.getTime())));
+    text.append("   Register: ").append(record.getRegister()).append("   Cashier: ").append(record.getCashier()).append("\n\n");
+    for (Item item : record.getLines())
+      text.append(String.format("%d\t%s \tx%d\t$%.2f%n", item.getItemID(), item.getItemName(), item.getAmount(),
+        item.getAmount()*item.getPrice()));
+    text.append(String.format("%nSubtotal: $%.2f%n", record.getSubtotal()));
+    if (record.getCouponDiscount() > 0)
+      text.append(String.format("Coupon: -$%.2f%n", record.getCouponDiscount()));
+    text.append(String.format("Tax: $%.2f%nTotal: $%.2f%n", record.getTax(), record.getTotal()));
+    return text.toString();
+  }
+
+  //usage: TransactionIndex <transactionId> [journalFile]
+  public static void main(String[] args)
+  {
+    if (args.length < 1)
+    {
+      System.out.println("usage: TransactionIndex <transactionId> [journalFile]");
+      System.exit(1);
+    }
+    String journalFile = args.length >= 2 ? args[1] : SalesJournal.journalFile;
+    TransactionIndex index = forFile(journalFile);
+    index.update();
+    SalesJournal.Record record = index.find(Long.parseLong(args[0]));
+    if (record == null)
+    {
+      System.out.println("No transaction " + args[0]);
+      System.exit(1);
+    }
+    System.out.print(receipt(record));
+  }
+}
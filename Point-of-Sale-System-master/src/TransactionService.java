@@ -0,0 +1,243 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Sales, rentals and returns without the Swing screens: the steps Transaction_Interface, EnterItem_Interface
+//and Payment_Interface take on a POS, POR or POH, as calls on a transaction handle. Load tests, batch jobs
+//and other front ends start a transaction, scan and remove items, apply a coupon, choose the tender and
+//commit, which checks out with endPOS, recording the transaction and its tender in the sales journal together.
+//Each transaction is used by one thread at a time, different transactions can run on different threads.
+//Checkouts of the same inventory file take turns with each other and with starts, and read the inventory
+//again first: the cart was priced from the copy read at start, and the file is rewritten from the copy
+//held at checkout.
+public class TransactionService
+{
+  //operations as Transaction_Interface names them
+  public static final String SALE = "Sale";
+  public static final String RENTAL = "Rental";
+  public static final String RENTAL_RETURN = "Return"; //rented items brought back
+  public static final String RETURN = "Unsatisfactory"; //bought items refunded
+
+  public static String itemDatabase = "Database/itemDatabase.txt";
+  public static String rentalDatabase = "Database/rentalDatabase.txt";
+
+  private static final Map<String, Object> inventoryLocks = new ConcurrentHashMap<String, Object>();
+
+  //what a committed transaction comes to
+  public static class Receipt
+  {
+    private final long transactionId;
+    private final String operation;
+    private final List<Item> lines;
+    private final double total;
+    private final byte tender;
+
+    Receipt(long transactionId, String operation, List<Item> lines, double total, byte tender)
+    {
+      this.transactionId = transactionId; this.operation = operation; this.lines = lines;
+      this.total = total; this.tender = tender;
+    }
+
+    public long getTransactionId() {return transactionId;} //the receipt number
+    public String getOperation() {return operation;}
+    public List<Item> getLines() {return lines;}
+    public double getTotal() {return total;} //with tax and late fees
+    public byte getTender() {return tender;} //SalesJournal.CASH or CARD
+  }
+
+  static class Open
+  {
+    final String operation;
+    final PointOfSale transaction;
+    final String databaseFile;
+    byte tender = 0;
+
+    Open(String operation, PointOfSale transaction, String databaseFile)
+    {
+      this.operation = operation; this.transaction = transaction; this.databaseFile = databaseFile;
+    }
+  }
+
+  private final String register;
+  private final String cashier;
+  private final Map<Long, Open> open = new ConcurrentHashMap<Long, Open>();
+  private final AtomicLong nextHandle = new AtomicLong();
+  private SessionManager.Session session = null; //touched on every call, null for a service without a login
+
+  public TransactionService(String register, String cashier)
+  {
+    this.register = register;
+    this.cashier = cashier;
+  }
+
+  //transactions of the employee logged in to the system, on their register
+  public static TransactionService forSession(SessionManager.Session session)
+  {
+    TransactionService service = new TransactionService(session.getRegister(), session.getUsername());
+    service.session = session;
+    return service;
+  }
+
+  //a new transaction, -1 if the operation is unknown or its inventory cannot be read;
+  //the phone number is the customer's for rentals and rental returns, ignored otherwise
+  public long start(String operation, long phone)
+  {
+    PointOfSale transaction;
+    String databaseFile;
+    if (operation.equals(SALE))
+    {
+      transaction = new POS();
+      databaseFile = itemDatabase;
+    }
+    else if (operation.equals(RENTAL))
+    {
+      transaction = new POR(phone);
+      databaseFile = rentalDatabase;
+    }
+    else if (operation.equals(RENTAL_RETURN))
+    {
+      transaction = new POH(phone);
+      transaction.returnSale = false;
+      databaseFile = rentalDatabase;
+    }
+    else if (operation.equals(RETURN))
+    {
+      transaction = new POH();
+      transaction.returnSale = true;
+      databaseFile = itemDatabase;
+    }
+    else
+      return -1;
+    transaction.register = register;
+    transaction.cashier = cashier;
+    transaction.session = session;
+    transaction.recoverable = false; //temp.txt is the register's, kept for its screens
+    transaction.touch();
+    //the inventory file is rewritten in place at checkout, it is read between checkouts
+    synchronized (inventoryLock(databaseFile))
+    {
+      if (!transaction.startNew(databaseFile))
+        return -1;
+    }
+    long handle = nextHandle.incrementAndGet();
+    open.put(handle, new Open(operation, transaction, databaseFile));
+    return handle;
+  }
+
+  //the sale an unsatisfactory return was bought in, false if there is no such sale
+  public boolean setReceipt(long handle, long receipt)
+  {
+    Open current = get(handle);
+    if (current == null || !current.operation.equals(RETURN))
+      return false;
+    return ((POH) current.transaction).setReceipt(receipt);
+  }
+
+  //adds an item to the cart, false if it is not in the inventory (or not on the receipt of a return)
+  public boolean scan(long handle, int itemID, int amount)
+  {
+    Open current = get(handle);
+    if (current == null || amount <= 0 || !current.transaction.enterItem(itemID, amount))
+      return false;
+    current.transaction.updateTotal();
+    return true;
+  }
+
+  public boolean remove(long handle, int itemID)
+  {
+    Open current = get(handle);
+    return current != null && current.transaction.removeItems(itemID);
+  }
+
+  //takes the coupon off the items in the cart, only sales take coupons
+  public boolean applyCoupon(long handle, String code)
+  {
+    Open current = get(handle);
+    return current != null && current.operation.equals(SALE) && current.transaction.coupon(code);
+  }
+
+  //how the customer pays, SalesJournal.CASH or CARD; a card number is checked like the payment screen does
+  public boolean tender(long handle, byte kind, String cardNumber)
+  {
+    Open current = get(handle);
+    if (current == null || (kind != SalesJournal.CASH && kind != SalesJournal.CARD))
+      return false;
+    if (kind == SalesJournal.CARD && (cardNumber == null || !current.transaction.creditCard(cardNumber)))
+      return false;
+    current.tender = kind;
+    return true;
+  }
+
+  //running total of the cart, before tax
+  public double total(long handle)
+  {
+    Open current = get(handle);
+    return current == null ? -1 : current.transaction.getTotal();
+  }
+
+  public List<Item> cart(long handle)
+  {
+    Open current = get(handle);
+    return current == null ? new ArrayList<Item>() : new ArrayList<Item>(current.transaction.getCart());
+  }
+
+  //checks out and records the tender, null if the cart is empty or no tender was chosen for a payment;
+  //an unsatisfactory return is refunded in cash unless another tender was chosen
+  public Receipt commit(long handle)
+  {
+    Open current = get(handle);
+    if (current == null || current.transaction.getCartSize() == 0)
+      return null;
+    if (current.tender == 0 && !current.operation.equals(RETURN))
+      return null;
+    open.remove(handle);
+    PointOfSale transaction = current.transaction;
+    List<Item> lines = new ArrayList<Item>(transaction.getCart());
+    //unsatisfactory returns are put back on the shelf by the inventory screen, not at checkout
+    String checkoutFile = current.operation.equals(RETURN) ? "" : current.databaseFile;
+    byte tender = current.tender == 0 ? SalesJournal.CASH : current.tender;
+    transaction.setTender(tender); //journaled with the transaction
+    double total;
+    //with the commit pipeline started the inventory is rewritten by its applier, which takes the lock itself;
+    //holding it here would keep the applier from draining a full queue
+    if (CommitPipeline.running() != null)
+      total = transaction.endPOS(checkoutFile);
+    else synchronized (inventoryLock(current.databaseFile))
+    {
+      if (!checkoutFile.isEmpty())
+      {
+        transaction.databaseItem.clear();
+        transaction.startNew(checkoutFile);
+      }
+      total = transaction.endPOS(checkoutFile);
+    }
+    return new Receipt(transaction.transactionId, current.operation, lines, total, tender);
+  }
+
+  //drops the transaction, nothing was recorded for it
+  public boolean cancel(long handle)
+  {
+    Open current = get(handle);
+    return current != null && open.remove(handle) != null;
+  }
+
+  public int openTransactions() {return open.size();}
+
+  //the open transaction of the handle, an action of its cashier
+  private Open get(long handle)
+  {
+    Open current = open.get(handle);
+    if (current != null)
+      current.transaction.touch();
+    return current;
+  }
+
+  //held while the inventory file is read or rewritten, also by the commit pipeline
+  static Object inventoryLock(String databaseFile)
+  {
+    return inventoryLocks.computeIfAbsent(new File(databaseFile).getAbsolutePath(), file -> new Object());
+  }
+}
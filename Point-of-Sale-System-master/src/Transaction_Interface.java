@@ -36,9 +36,17 @@ public class Transaction_Interface extends JFrame implements ActionListener
 	
 	private int choice = 3;
 	
+	private POSSystem system; //logged in cashier, the open transaction is kept with the session
+	
 	public Transaction_Interface(String operation)
+	{
+		this(operation, new POSSystem());
+	}
+	
+	public Transaction_Interface(String operation, POSSystem system)
 	{
 		super ("SG Technologies - Transaction View");
+		this.system = system;
 		setLayout(null);
 		
                 
@@ -130,6 +138,7 @@ public class Transaction_Interface extends JFrame implements ActionListener
             }
             else{
                   transaction = new POH();
+                  getReceipt();
                   databaseFile = "Database/itemDatabase.txt";
                   transaction.returnSale=true;
                   phone = "0000000000";
@@ -137,6 +146,7 @@ public class Transaction_Interface extends JFrame implements ActionListener
 		}
 		
 		transaction.startNew(databaseFile);
+		system.setTransaction(transaction);
 		
 		if (operation.equals("Return") && choice != 0)
 		{
@@ -149,6 +159,17 @@ public class Transaction_Interface extends JFrame implements ActionListener
 	
 	public void actionPerformed(ActionEvent event)
 	{
+		if (!system.touch())
+		{
+			//logged out while idle, the cart stays in the temp file and is continued after logging in
+			JOptionPane.showMessageDialog(null, "Your session has expired, please log in again");
+			Login_Interface login = new Login_Interface();
+			login.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+			login.setVisible(true);
+			this.setVisible(false);
+			dispose();
+			return;
+		}
 		if (event.getSource() == addItem)
 		{
 			EnterItem_Interface enterItem = new EnterItem_Interface(transaction,true,transactionDialog,operation, choice);
@@ -181,8 +202,8 @@ public class Transaction_Interface extends JFrame implements ActionListener
 				{
 					transaction.endPOS(databaseFile);
 					JOptionPane.showMessageDialog(null, "Returning items is complete");
-		             POSSystem sys=new POSSystem();
-		 			Cashier_Interface cashier = new Cashier_Interface(sys);
+		             system.setTransaction(null);
+		 			Cashier_Interface cashier = new Cashier_Interface(system);
 		 			cashier.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 		 			cashier.setVisible(true);
 		 			
@@ -193,7 +214,7 @@ public class Transaction_Interface extends JFrame implements ActionListener
 				
 				else {
 
-					Payment_Interface payment = new Payment_Interface(transaction,databaseFile,operation,phone,returnOrNot);
+					Payment_Interface payment = new Payment_Interface(transaction,databaseFile,operation,phone,returnOrNot,system);
 
 					payment.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 					payment.setVisible(true);
@@ -211,8 +232,8 @@ public class Transaction_Interface extends JFrame implements ActionListener
 		if (event.getSource() == cancelTransaction) //cancels transaction for customer
 		{
 			JOptionPane.showMessageDialog(null,"Transaction Has Been Cancelled");
-                        POSSystem sys=new POSSystem();
-			Cashier_Interface cashier = new Cashier_Interface(sys);
+                        system.setTransaction(null);
+			Cashier_Interface cashier = new Cashier_Interface(system);
 			cashier.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 			cashier.setVisible(true);
 			
@@ -221,6 +242,24 @@ public class Transaction_Interface extends JFrame implements ActionListener
 		}
 	}
 	
+	//the sale the items were bought in, looked up by the receipt number; none if left blank
+	private void getReceipt()
+	{
+		String receipt = JOptionPane.showInputDialog("Enter the receipt number, or leave it blank if the customer has none");
+		while (receipt != null && !receipt.trim().equals(""))
+		{
+			try {
+				if (((POH) transaction).setReceipt(Long.parseLong(receipt.trim())))
+					return;
+			}
+			catch (NumberFormatException e) {
+				//asked again below
+			}
+			JOptionPane.showMessageDialog(null, "No sale with that receipt number. Please enter again");
+			receipt = JOptionPane.showInputDialog("Enter the receipt number, or leave it blank if the customer has none");
+		}
+	}
+	
 	private void getCustomerPhone()
 	{
 		phone = JOptionPane.showInputDialog("Please enter customer's phone number");
@@ -236,5 +275,9 @@ public class Transaction_Interface extends JFrame implements ActionListener
 			 else
 				 JOptionPane.showMessageDialog(null, "New customer couldn't be registered");
 		 }
+
+		 double lateFees = LateFeeAssessment.getInstance().getFee(phoneNum);
+		 if (lateFees > 0)
+			 JOptionPane.showMessageDialog(null, "Customer owes $" + String.format("%.2f", lateFees) + " in late fees");
 	}
 }
@@ -0,0 +1,147 @@
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
+//End of day closing report of one register day: sales, tax, coupons, rentals, late fees, returns and
+//how the money was taken. It is one pass over that day's records of the sales journal, found through
+//the time index and read from the memory mapped journal, adding each record into a fixed set of totals,
+//so it takes the same memory for a quiet day as for a busy one.
+public class ZReport
+{
+  private final LocalDate day;
+  private long sales, units, rentals, rentalReturns, returns, returnedUnits, cashTenders, cardTenders;
+  private long firstTransaction = 0, lastTransaction = 0;
+  private long damagedRecords = 0; //skipped, their money is missing from the totals
+  private double grossSales, couponDiscount, tax, salesTotal, rentalIncome, rentalTax, lateFees, refunds, cash, card;
+
+  ZReport(LocalDate day)
+  {
+    this.day = day;
+  }
+
+  //the report of the day, null if the journal cannot be read
+  public static ZReport forDay(String journalFile, LocalDate day)
+  {
+    ZoneId zone = ZoneId.systemDefault();
+    ZReport report = new ZReport(day);
+    long records = SalesIndex.forEachBetween(journalFile, day.atStartOfDay(zone).toInstant().toEpochMilli(),
+      day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli(), report::add, () -> report.damagedRecords++);
+    return records < 0 ? null : report;
+  }
+
+  void add(SalesJournal.Record record)
+  {
+    long transactionId = record.getTransactionId();
+    if (transactionId > 0)
+    {
+      if (firstTransaction == 0)
+        firstTransaction = transactionId;
+      lastTransaction = transactionId;
+    }
+    switch (record.getType())
+    {
+      case SalesJournal.SALE:
+        sales++;
+        for (Item line : record.getLines())
+          units += line.getAmount();
+        grossSales += record.getSubtotal();
+        couponDiscount += record.getCouponDiscount();
+        tax += record.getTax();
+        salesTotal += record.getTotal();
+        break;
+      case SalesJournal.RENTAL:
+        rentals++;
+        rentalIncome += record.getSubtotal();
+        rentalTax += record.getTax();
+        tax += record.getTax();
+        break;
+      case SalesJournal.RENTAL_RETURN:
+        rentalReturns++;
+        lateFees += record.getTotal();
+        break;
+      case SalesJournal.RETURN:
+        returns++;
+        for (Item line : record.getLines())
+          returnedUnits += line.getAmount();
+        refunds += record.getTotal();
+        break;
+      case SalesJournal.CASH:
+        cashTenders++;
+        cash += record.getTotal();
+        break;
+      case SalesJournal.CARD:
+        cardTenders++;
+        card += record.getTotal();
+        break;
+      default:
+        break; //written by a newer register
+    }
+  }
+
+  public LocalDate getDay() {return day;}
+  public long getSales() {return sales;}
+  public long getUnits() {return units;}
+  public double getGrossSales() {return grossSales;} //before coupons and tax
+  public double getCouponDiscount() {return couponDiscount;}
+  public double getNetSales() {return grossSales - couponDiscount;}
+  public double getTax() {return tax;} //on sales and rentals
+  public long getRentals() {return rentals;}
+  public double getRentalIncome() {return rentalIncome;} //before tax
+  public long getRentalReturns() {return rentalReturns;}
+  public double getLateFees() {return lateFees;}
+  public long getReturns() {return returns;}
+  public long getReturnedUnits() {return returnedUnits;}
+  public double getRefunds() {return refunds;}
+  public long getCashTenders() {return cashTenders;}
+  public double getCash() {return cash;} //net of cash refunds
+  public long getCardTenders() {return cardTenders;}
+  public double getCard() {return card;}
+  //money the day should have taken in, to be matched with the tenders
+  public double getNetTotal() {return salesTotal + rentalIncome + rentalTax + lateFees - refunds;}
+  public long getFirstTransaction() {return firstTransaction;}
+  public long getLastTransaction() {return lastTransaction;}
+  public long getDamagedRecords() {return damagedRecords;}
+
+  public String format()
+  {
+    double tendered = cash + card;
+    StringBuilder text = new StringBuilder();
+    text.append("Z report for ").append(day).append(String.format("   transactions %d to %d%n%n", firstTransaction, lastTransaction));
+    text.append(String.format("Sales:          %6d  ($%.2f, %d items)%n", sales, salesTotal, units));
+    text.append(String.format("  Gross sales:           $%.2f%n", grossSales));
+    text.append(String.format("  Coupon discounts:     -$%.2f%n", couponDiscount));
+    text.append(String.format("  Net sales:             $%.2f%n", getNetSales()));
+    text.append(String.format("Rentals:        %6d  $%.2f%n", rentals, rentalIncome));
+    text.append(String.format("Late fees:      %6d  $%.2f%n", rentalReturns, lateFees));
+    text.append(String.format("Tax collected:           $%.2f%n", tax));
+    text.append(String.format("Returns:        %6d  -$%.2f (%d items)%n", returns, refunds, returnedUnits));
+    text.append(String.format("Net total:               $%.2f%n%n", getNetTotal()));
+    text.append("Tender mix:\n");
+    text.append(String.format("  Cash:         %6d  $%.2f (%.1f%%)%n", cashTenders, cash, tendered == 0 ? 0 : 100*cash/tendered));
+    text.append(String.format("  Card:         %6d  $%.2f (%.1f%%)%n", cardTenders, card, tendered == 0 ? 0 : 100*card/tendered));
+    if (damagedRecords > 0)
+      text.append(String.format("%nDamaged records: %d, not in the totals above%n", damagedRecords));
+    return text.toString();
+  }
+
+  //usage: ZReport [journalFile] [yyyy-MM-dd]
+  public static void main(String[] args)
+  {
+    String journalFile = args.length >= 1 ? args[0] : SalesJournal.journalFile;
+    LocalDate day;
+    try {
+      day = args.length >= 2 ? LocalDate.parse(args[1]) : LocalDate.now();
+    }
+    catch (DateTimeParseException e) {
+      System.out.println("usage: ZReport [journalFile] [yyyy-MM-dd]");
+      System.exit(1);
+      return;
+    }
+    long start = System.currentTimeMillis();
+    ZReport report = forDay(journalFile, day);
+    if (report == null)
+      System.exit(1);
+    System.out.print(report.format());
+    System.out.println("(" + (System.currentTimeMillis() - start) + " ms)");
+  }
+}
@@ -0,0 +1,94 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.GregorianCalendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AuditLoggerTest {
+
+    private static final String TEST_LOG = "Database/auditLogfile.txt";
+    private AuditLogger logger;
+
+    @Before
+    public void setUp() {
+        new File("Database").mkdir();
+        new File(TEST_LOG).delete();
+        logger = new AuditLogger(TEST_LOG, 16, 20);
+    }
+
+    @After
+    public void tearDown() {
+        logger.close();
+        new File(TEST_LOG).delete();
+    }
+
+    private List<String> readLog() throws IOException {
+        return Files.readAllLines(Paths.get(TEST_LOG));
+    }
+
+    @Test
+    public void testFormat() {
+        long time = new GregorianCalendar(2024, 0, 2, 3, 4, 5).getTimeInMillis() + 6;
+        assertEquals("Harry Larry (110001 Admin) logs into POS System. Time: 2024-01-02 03:04:05.006",
+            AuditLogger.format(new AuditLogger.Event("Harry Larry", "110001", "Admin", "logs into", time)));
+    }
+
+    @Test
+    public void testFlushWritesLogInAndLogOut() throws IOException {
+        logger.logIn("110002", "Debra Cooper", "Cashier", System.currentTimeMillis());
+        logger.logOut("110002", "Debra Cooper", "Cashier", System.currentTimeMillis());
+        logger.flush();
+        List<String> lines = readLog();
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("Debra Cooper (110002 Cashier) logs into POS System. Time: "));
+        assertTrue(lines.get(1).startsWith("Debra Cooper (110002 Cashier) logs out of POS System. Time: "));
+    }
+
+    @Test
+    public void testConcurrentLoggersFillTheQueue() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            final String username = "11000" + t;
+            pool.execute(() -> {
+                for (int i = 0; i < 250; i++)
+                    logger.logIn(username, "Test User", "Cashier", System.currentTimeMillis());
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        logger.flush();
+        assertEquals(2000, readLog().size());
+    }
+
+    @Test
+    public void testUnwritableBatchIsCountedAsLost() {
+        logger.close();
+        new File(TEST_LOG).mkdir(); //cannot be opened as a file
+        logger = new AuditLogger(TEST_LOG, 16, 5);
+        logger.logIn("110001", "Harry Larry", "Admin", System.currentTimeMillis());
+        logger.logOut("110001", "Harry Larry", "Admin", System.currentTimeMillis());
+        logger.flush();
+        assertEquals(2, logger.getLost());
+    }
+
+    @Test
+    public void testReopensDeletedLog() throws IOException {
+        logger.logIn("110001", "Harry Larry", "Admin", System.currentTimeMillis());
+        logger.flush();
+        new File(TEST_LOG).delete();
+        logger.logOut("110001", "Harry Larry", "Admin", System.currentTimeMillis());
+        logger.flush();
+        List<String> lines = readLog();
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("logs out of"));
+    }
+}
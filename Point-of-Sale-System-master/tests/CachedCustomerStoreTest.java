@@ -0,0 +1,128 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CachedCustomerStoreTest {
+
+    private CachedCustomerStore cache;
+    private static final String TEST_USER_DB = "Database/cacheUserDatabase.txt";
+
+    @Before
+    public void setUp() throws IOException {
+        new File("Database").mkdir();
+        writeDatabase("1234567890 1022,12/30/22,false");
+        cache = new CachedCustomerStore(new TextCustomerStore(TEST_USER_DB), 100, 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() {
+        new File(TEST_USER_DB).delete();
+        new File(TEST_USER_DB + ".lock").delete();
+    }
+
+    private void writeDatabase(String... lines) throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_USER_DB)));
+        out.println("User Database");
+        for (String line : lines)
+            out.println(line);
+        out.close();
+    }
+
+    @Test
+    public void testRepeatLookupIsHit() {
+        cache.find(1234567890L);
+        cache.find(1234567890L);
+
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(0.5, cache.getHitRate(), 0.001);
+    }
+
+    @Test
+    public void testUnknownPhoneIsCached() {
+        assertNull(cache.find(9876543210L));
+        assertNull(cache.find(9876543210L));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testWriteThrough() {
+        cache.find(1234567890L);
+        cache.update(1234567890L, line -> line + " 1023,12/31/22,false");
+
+        // Served from the cache and matches the database
+        assertEquals("1234567890 1022,12/30/22,false 1023,12/31/22,false", cache.find(1234567890L));
+        assertEquals(1, cache.getMisses());
+        assertEquals(cache.find(1234567890L), cache.getStore().find(1234567890L));
+    }
+
+    @Test
+    public void testConcurrentUpdatesCacheTheLastWrite() throws Exception {
+        Thread[] writers = new Thread[8];
+        for (int i = 0; i < writers.length; i++) {
+            final int item = 2000 + i;
+            writers[i] = new Thread(() -> {
+                for (int j = 0; j < 5; j++)
+                    cache.update(1234567890L, line -> line + " " + item + ",12/31/22,false");
+            });
+            writers[i].start();
+        }
+        for (Thread writer : writers)
+            writer.join();
+
+        String stored = new TextCustomerStore(TEST_USER_DB).find(1234567890L);
+        assertEquals(42, stored.split(" ").length); //phone, the first rental and 40 more
+        assertEquals(stored, cache.find(1234567890L));
+    }
+
+    @Test
+    public void testCreateClearsUnknownPhone() {
+        assertNull(cache.find(9876543210L));
+        assertTrue(cache.create(9876543210L));
+        assertEquals("9876543210", cache.find(9876543210L));
+    }
+
+    @Test
+    public void testEntryLimitEvictsLeastRecentlyUsed() throws IOException {
+        writeDatabase("1000000001", "1000000002", "1000000003");
+        cache = new CachedCustomerStore(new TextCustomerStore(TEST_USER_DB), 2, 1024 * 1024);
+
+        cache.find(1000000001L);
+        cache.find(1000000002L);
+        cache.find(1000000001L); // 1000000002 is now the least recently used
+        cache.find(1000000003L);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        long misses = cache.getMisses();
+        cache.find(1000000001L);
+        assertEquals(misses, cache.getMisses());
+    }
+
+    @Test
+    public void testByteLimit() throws IOException {
+        writeDatabase("1000000001", "1000000002", "1000000003");
+        cache = new CachedCustomerStore(new TextCustomerStore(TEST_USER_DB), 100, 200);
+
+        cache.find(1000000001L);
+        cache.find(1000000002L);
+        cache.find(1000000003L);
+
+        assertTrue(cache.getBytes() <= 200);
+        assertTrue(cache.getEvictions() > 0);
+    }
+
+    @Test
+    public void testExternalChangeInvalidates() throws Exception {
+        cache.find(1234567890L);
+        Thread.sleep(20);
+        writeDatabase("1234567890 1022,12/30/22,true 1030,01/02/23,false");
+
+        assertEquals("1234567890 1022,12/30/22,true 1030,01/02/23,false", cache.find(1234567890L));
+    }
+}
@@ -0,0 +1,243 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CommitPipelineTest {
+
+    private static final String TEST_DATABASE = "Database/pipelineItemDatabase.txt";
+    private static final String TEST_JOURNAL = "Database/pipelineSalesJournal.bin";
+    private static final String TEST_INVOICES = "Database/pipelineSaleInvoiceRecord.txt";
+    private static final String TEST_RETURNS = "Database/pipelineReturnSale.txt";
+    private String itemDatabase, journalFile, invoiceLog, returnsLog;
+
+    @Before
+    public void setUp() throws IOException {
+        new File("Database").mkdir();
+        itemDatabase = TransactionService.itemDatabase;
+        journalFile = SalesJournal.journalFile;
+        invoiceLog = SalesJournal.legacyLog;
+        returnsLog = ReturnAnalytics.returnsLog;
+        TransactionService.itemDatabase = TEST_DATABASE;
+        SalesJournal.journalFile = TEST_JOURNAL;
+        SalesJournal.legacyLog = TEST_INVOICES;
+        ReturnAnalytics.returnsLog = TEST_RETURNS;
+        try (PrintWriter out = new PrintWriter(new FileWriter(TEST_DATABASE))) {
+            out.println("1000 Potato 1.0 500");
+            out.println("1001 Chicken 4.0 100");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        CommitPipeline.stop();
+        TransactionService.itemDatabase = itemDatabase;
+        SalesJournal.journalFile = journalFile;
+        SalesJournal.legacyLog = invoiceLog;
+        ReturnAnalytics.returnsLog = returnsLog;
+        new File(TEST_DATABASE).delete();
+        new File(TEST_INVOICES).delete();
+        new File(TEST_RETURNS).delete();
+        for (String suffix : new String[] {"", ".lock", ".idx", ".tid", ".totals", ".register-2.applied", ".register-9.applied"})
+            new File(TEST_JOURNAL + suffix).delete();
+    }
+
+    private int stock(int itemID) {
+        List<Item> items = new ArrayList<Item>();
+        Inventory.getInstance().accessInventory(TEST_DATABASE, items);
+        for (Item item : items)
+            if (item.getItemID() == itemID)
+                return item.getAmount();
+        return -1;
+    }
+
+    private static SalesJournal.Record sale(String register, int itemID, int amount) {
+        return new SalesJournal.Record(SalesJournal.SALE, 0, register, "110002", System.currentTimeMillis(),
+            Arrays.asList(new Item(itemID, "Potato", 1.0f, amount)), amount, 0, 0.06*amount, 1.06*amount);
+    }
+
+    private static void writeCursor(String register, long lastApplied, boolean closed) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(9);
+        buffer.putLong(lastApplied).put((byte) (closed ? 1 : 0));
+        Files.write(new File(TEST_JOURNAL + "." + register + ".applied").toPath(), buffer.array());
+    }
+
+    //a register stopped while applying the transaction, after forcing the intent of one of its steps
+    private static void writeCursor(String register, long transactionId, int step, long crc, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(37);
+        buffer.putLong(transactionId - 1).put((byte) 0).putLong(transactionId).putInt(step).putLong(crc).putLong(offset);
+        Files.write(new File(TEST_JOURNAL + "." + register + ".applied").toPath(), buffer.array());
+    }
+
+    private static long crc(String file) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(new File(file).toPath()));
+        return crc.getValue();
+    }
+
+    private static int invoices() throws IOException {
+        int count = 0;
+        for (String line : Files.readAllLines(new File(TEST_INVOICES).toPath()))
+            if (line.startsWith("Total with tax: "))
+                count++;
+        return count;
+    }
+
+    @Test
+    public void testNotStarted() {
+        assertNull(CommitPipeline.running());
+    }
+
+    @Test
+    public void testAsyncSale() throws IOException {
+        CommitPipeline pipeline = CommitPipeline.start(TEST_JOURNAL, "register-2", 16);
+        assertNotNull(CommitPipeline.running());
+
+        TransactionService service = new TransactionService("register-2", "110002");
+        long sale = service.start(TransactionService.SALE, 0);
+        assertTrue(service.scan(sale, 1000, 10));
+        assertTrue(service.tender(sale, SalesJournal.CASH, null));
+        TransactionService.Receipt receipt = service.commit(sale);
+        assertNotNull(receipt);
+        assertTrue(receipt.getTransactionId() > 0);
+        assertEquals(10.6, receipt.getTotal(), 0.001);
+
+        pipeline.flush();
+        assertEquals(490, stock(1000));
+        assertEquals(1, invoices());
+        SalesJournal.Record record = TransactionIndex.forFile(TEST_JOURNAL).find(receipt.getTransactionId());
+        assertNotNull(record);
+        assertEquals(SalesJournal.SALE, record.getType());
+        SalesJournal.Record tender = TransactionIndex.forFile(TEST_JOURNAL).find(receipt.getTransactionId() + 1);
+        assertEquals(SalesJournal.CASH, tender.getType()); //appended with the sale
+        assertEquals(receipt.getTransactionId(), tender.getReference());
+        assertEquals(10, SalesAggregates.forFile(TEST_JOURNAL).item(1000).getUnits());
+    }
+
+    @Test
+    public void testBackpressure() throws IOException {
+        CommitPipeline pipeline = CommitPipeline.start(TEST_JOURNAL, "register-2", 2);
+        long lastId = 0;
+        for (int i = 0; i < 50; i++) {
+            long transactionId = pipeline.commit(sale("register-2", 1000, 1), TEST_DATABASE);
+            assertTrue(transactionId > lastId);
+            lastId = transactionId;
+            assertTrue(pipeline.queued() <= 2);
+        }
+        pipeline.flush();
+        assertEquals(0, pipeline.queued());
+        assertEquals(450, stock(1000));
+    }
+
+    @Test
+    public void testCleanStopIsNotReplayed() throws IOException {
+        CommitPipeline.start(TEST_JOURNAL, "register-2", 16).commit(sale("register-2", 1000, 5), TEST_DATABASE);
+        CommitPipeline.stop();
+        assertEquals(495, stock(1000));
+        CommitPipeline.start(TEST_JOURNAL, "register-2", 16).flush();
+        CommitPipeline.stop();
+        assertEquals(495, stock(1000));
+    }
+
+    @Test
+    public void testReplayAfterUncleanStop() throws IOException {
+        SalesJournal journal = SalesJournal.forFile(TEST_JOURNAL);
+        long applied = journal.append(sale("register-9", 1000, 1));
+        journal.append(sale("register-9", 1000, 2));
+        journal.append(sale("register-1", 1000, 4)); //another register's, applied there
+        journal.append(sale("register-9", 1001, 3));
+        writeCursor("register-9", applied, false);
+
+        CommitPipeline pipeline = new CommitPipeline(TEST_JOURNAL, "register-9", 16);
+        pipeline.commit(sale("register-9", 1000, 10), TEST_DATABASE);
+        pipeline.close();
+        assertEquals(488, stock(1000));
+        assertEquals(97, stock(1001));
+    }
+
+    @Test
+    public void testNewRegisterStartsAtTheEnd() throws IOException {
+        SalesJournal.forFile(TEST_JOURNAL).append(sale("register-9", 1000, 7));
+        CommitPipeline pipeline = new CommitPipeline(TEST_JOURNAL, "register-9", 16);
+        pipeline.close();
+        assertEquals(500, stock(1000));
+    }
+
+    @Test
+    public void testInventoryWrittenBeforeStopIsNotAppliedAgain() throws IOException {
+        CommitPipeline pipeline = new CommitPipeline(TEST_JOURNAL, "register-9", 16);
+        long transactionId = pipeline.commit(sale("register-9", 1000, 5), TEST_DATABASE);
+        pipeline.close();
+        assertEquals(495, stock(1000));
+        new File(TEST_INVOICES).delete();
+        writeCursor("register-9", transactionId, 1, crc(TEST_DATABASE), 0); //stopped before the invoice
+
+        new CommitPipeline(TEST_JOURNAL, "register-9", 16).close();
+        assertEquals(495, stock(1000));
+        assertEquals(1, invoices());
+    }
+
+    @Test
+    public void testInvoiceWrittenBeforeStopIsNotAppendedAgain() throws IOException {
+        CommitPipeline pipeline = new CommitPipeline(TEST_JOURNAL, "register-9", 16);
+        long transactionId = pipeline.commit(sale("register-9", 1000, 5), TEST_DATABASE);
+        pipeline.close();
+        writeCursor("register-9", transactionId, 3, 0, 0); //stopped after appending the invoice
+
+        new CommitPipeline(TEST_JOURNAL, "register-9", 16).close();
+        assertEquals(495, stock(1000));
+        assertEquals(1, invoices());
+    }
+
+    @Test
+    public void testStepNotMadeBeforeStopIsApplied() throws IOException {
+        CommitPipeline pipeline = new CommitPipeline(TEST_JOURNAL, "register-9", 16);
+        long transactionId = pipeline.commit(sale("register-9", 1000, 5), TEST_DATABASE);
+        pipeline.close();
+        writeCursor("register-9", transactionId, 1, crc(TEST_DATABASE) + 1, 0); //stopped before the inventory was moved in
+
+        new CommitPipeline(TEST_JOURNAL, "register-9", 16).close();
+        assertEquals(490, stock(1000));
+        assertEquals(2, invoices());
+    }
+
+    @Test
+    public void testRegisterRunsOnePipeline() throws IOException {
+        CommitPipeline pipeline = new CommitPipeline(TEST_JOURNAL, "register-9", 16);
+        try {
+            new CommitPipeline(TEST_JOURNAL, "register-9", 16);
+            fail("two pipelines share the cursor of register-9");
+        }
+        catch (IOException e) {
+            //the cursor is locked by the running one
+        }
+        pipeline.close();
+        new CommitPipeline(TEST_JOURNAL, "register-9", 16).close();
+    }
+
+    @Test
+    public void testRecoverClosesTheCursor() throws IOException {
+        SalesJournal journal = SalesJournal.forFile(TEST_JOURNAL);
+        long applied = journal.append(sale("register-9", 1000, 1));
+        journal.append(sale("register-9", 1000, 2));
+        writeCursor("register-9", applied, false);
+
+        CommitPipeline.recover(TEST_JOURNAL, "register-9");
+        assertEquals(498, stock(1000));
+        journal.append(sale("register-9", 1000, 4)); //checked out without the pipeline, applied by endPOS
+        new CommitPipeline(TEST_JOURNAL, "register-9", 16).close();
+        assertEquals(498, stock(1000));
+    }
+}
@@ -0,0 +1,97 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class CustomerImportTest {
+
+    private static final String TEST_USER_DB = "Database/importUserDatabase.txt";
+    private static final String TEST_CSV = "Database/importCustomers.csv";
+    private TextCustomerStore store;
+    private CustomerImport customerImport;
+
+    @Before
+    public void setUp() throws IOException {
+        new File("Database").mkdir();
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_USER_DB)));
+        out.println("User Database");
+        out.print("1234567890 1022,12/30/22,false");
+        out.close();
+        store = new TextCustomerStore(TEST_USER_DB);
+        customerImport = new CustomerImport();
+    }
+
+    @After
+    public void tearDown() {
+        new File(TEST_USER_DB).delete();
+        new File(TEST_USER_DB + ".lock").delete();
+        new File(TEST_CSV).delete();
+    }
+
+    private void writeCsv(String... lines) throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_CSV)));
+        for (String line : lines)
+            out.println(line);
+        out.close();
+    }
+
+    @Test
+    public void testParsePhone() {
+        assertEquals(5551234567L, CustomerImport.parsePhone("(555) 123-4567,Jane,Doe"));
+        assertEquals(1234567890L, CustomerImport.parsePhone("1234567890"));
+        assertEquals(-1, CustomerImport.parsePhone("phone,first,last"));
+        assertEquals(-1, CustomerImport.parsePhone(""));
+    }
+
+    @Test
+    public void testReadPhonesSortsAndRemovesDuplicates() throws IOException {
+        writeCsv("phone,name", "3333333333,c", "1111111111,a", "3333333333,c again", "2222222222,b");
+        assertArrayEquals(new long[] {1111111111L, 2222222222L, 3333333333L}, customerImport.readPhones(TEST_CSV));
+        assertEquals(5, customerImport.getRows());
+        assertEquals(1, customerImport.getSkipped());
+    }
+
+    @Test
+    public void testImportSkipsExistingCustomers() throws IOException {
+        writeCsv("phone,name", "1234567890,existing", "9876543210,new", "9876543210,new");
+        assertEquals(1, customerImport.importCsv(TEST_CSV, store));
+        assertEquals("1234567890 1022,12/30/22,false", store.find(1234567890L));
+        assertEquals("9876543210", store.find(9876543210L));
+    }
+
+    @Test
+    public void testImportTwiceAddsNothing() throws IOException {
+        writeCsv("5555555555", "6666666666");
+        assertEquals(2, customerImport.importCsv(TEST_CSV, store));
+        assertEquals(0, customerImport.importCsv(TEST_CSV, store));
+    }
+
+    @Test
+    public void testImportThroughCache() throws IOException {
+        CachedCustomerStore cache = new CachedCustomerStore(store, 100, 1024 * 1024);
+        assertNull(cache.find(5555555555L));
+        writeCsv("5555555555");
+        assertEquals(1, customerImport.importCsv(TEST_CSV, cache));
+        assertNotNull(cache.find(5555555555L));
+    }
+
+    @Test
+    public void testImportMissingFile() {
+        assertEquals(-1, customerImport.importCsv("Database/nonexistent.csv", store));
+    }
+
+    @Test
+    public void testLargeImport() throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_CSV)));
+        for (int i = 0; i < 200000; i++)
+            out.println((2000000000L + i % 100000) + ",customer " + i);
+        out.close();
+        assertEquals(100000, customerImport.importCsv(TEST_CSV, store));
+        assertEquals("2000099999", store.find(2000099999L));
+    }
+}
@@ -0,0 +1,78 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class EmployeeDirectoryTest {
+
+    private static final String TEST_EMPLOYEE_DB = "Database/directoryEmployeeDatabase.txt";
+    private EmployeeDirectory directory;
+
+    @Before
+    public void setUp() throws IOException {
+        new File("Database").mkdir();
+        writeDatabase("110001 Admin Harry Larry 1", "110002 Cashier Debra Cooper lehigh2016");
+        directory = new EmployeeDirectory(TEST_EMPLOYEE_DB);
+    }
+
+    @After
+    public void tearDown() {
+        new File(TEST_EMPLOYEE_DB).delete();
+        EmployeeManagement.employeeDatabase = "Database/employeeDatabase.txt";
+    }
+
+    private void writeDatabase(String... lines) throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_EMPLOYEE_DB)));
+        for (String line : lines)
+            out.println(line);
+        out.close();
+    }
+
+    @Test
+    public void testFind() {
+        Employee employee = directory.find("110002");
+        assertNotNull(employee);
+        assertEquals("Debra Cooper", employee.getName());
+        assertEquals("Cashier", employee.getPosition());
+        assertEquals("lehigh2016", employee.getPassword());
+        assertNull(directory.find("999999"));
+    }
+
+    @Test
+    public void testLoadsOnce() {
+        assertSame(directory.find("110001"), directory.find("110001"));
+        assertEquals(2, directory.size());
+    }
+
+    @Test
+    public void testSkipsMalformedLines() throws IOException {
+        writeDatabase("110001 Admin Harry Larry 1", "broken line", "");
+        directory.invalidate();
+        assertEquals(1, directory.size());
+    }
+
+    @Test
+    public void testMissingFile() {
+        assertEquals(0, new EmployeeDirectory("Database/nonexistent.txt").size());
+    }
+
+    @Test
+    public void testSharedPerFile() {
+        assertSame(EmployeeDirectory.forFile(TEST_EMPLOYEE_DB), EmployeeDirectory.forFile(TEST_EMPLOYEE_DB));
+    }
+
+    @Test
+    public void testEmployeeManagementWriteInvalidates() {
+        EmployeeDirectory shared = EmployeeDirectory.forFile(TEST_EMPLOYEE_DB);
+        assertNotNull(shared.find("110002"));
+        EmployeeManagement.employeeDatabase = TEST_EMPLOYEE_DB;
+        new EmployeeManagement().delete("110002");
+        assertNull(shared.find("110002"));
+        assertNotNull(shared.find("110001"));
+    }
+}
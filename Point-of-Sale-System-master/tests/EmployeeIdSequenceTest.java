@@ -0,0 +1,110 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EmployeeIdSequenceTest {
+
+    private static final String TEST_SEQUENCE = "Database/testEmployeeSequence.txt";
+    private static final String TEST_EMPLOYEE_DB = "Database/sequenceEmployeeDatabase.txt";
+
+    @Before
+    public void setUp() throws IOException {
+        new File("Database").mkdir();
+        new File(TEST_SEQUENCE).delete();
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_EMPLOYEE_DB)));
+        out.println("110001 Admin Harry Larry 1");
+        out.println("110015 Cashier Michael Scott thatswhatshesaid");
+        out.println("110002 Cashier Debra Cooper lehigh2016");
+        out.close();
+    }
+
+    @After
+    public void tearDown() {
+        new File(TEST_SEQUENCE).delete();
+        new File(TEST_EMPLOYEE_DB).delete();
+        new File(TEST_EMPLOYEE_DB + ".journal").delete();
+        new File(TEST_EMPLOYEE_DB + ".lock").delete();
+    }
+
+    private String readSequence() throws IOException {
+        return new String(Files.readAllBytes(Paths.get(TEST_SEQUENCE))).trim();
+    }
+
+    @Test
+    public void testStartsAfterHighestUsername() throws IOException {
+        EmployeeIdSequence sequence = new EmployeeIdSequence(TEST_SEQUENCE, TEST_EMPLOYEE_DB, 10);
+        assertEquals(110016, sequence.nextId());
+        assertEquals(110017, sequence.nextId());
+        assertEquals("110026", readSequence());
+    }
+
+    @Test
+    public void testStartsAfterUsernameInJournal() {
+        //added since the last snapshot, only in the journal
+        assertTrue(EmployeeStore.forFile(TEST_EMPLOYEE_DB).put(new Employee("110040", "Jim Halpert", "Cashier", "x")));
+        assertTrue(new File(TEST_EMPLOYEE_DB + ".journal").exists());
+        EmployeeIdSequence sequence = new EmployeeIdSequence(TEST_SEQUENCE, TEST_EMPLOYEE_DB, 10);
+        assertEquals(110041, sequence.nextId());
+    }
+
+    @Test
+    public void testReservesNextBlockWhenExhausted() throws IOException {
+        EmployeeIdSequence sequence = new EmployeeIdSequence(TEST_SEQUENCE, TEST_EMPLOYEE_DB, 2);
+        sequence.nextId();
+        sequence.nextId();
+        assertEquals("110018", readSequence());
+        assertEquals(110018, sequence.nextId());
+        assertEquals("110020", readSequence());
+    }
+
+    @Test
+    public void testAdvancedValueReplacesTheStoredOne() throws IOException {
+        Files.write(Paths.get(TEST_SEQUENCE), "110050\n".getBytes()); //written by hand, with a newline
+        EmployeeIdSequence sequence = new EmployeeIdSequence(TEST_SEQUENCE, TEST_EMPLOYEE_DB, 10);
+        assertEquals(110050, sequence.nextId());
+        assertEquals("110060", new String(Files.readAllBytes(Paths.get(TEST_SEQUENCE))));
+    }
+
+    @Test
+    public void testTwoRegistersGetDistinctBlocks() {
+        EmployeeIdSequence first = new EmployeeIdSequence(TEST_SEQUENCE, TEST_EMPLOYEE_DB, 10);
+        EmployeeIdSequence second = new EmployeeIdSequence(TEST_SEQUENCE, TEST_EMPLOYEE_DB, 10);
+        assertEquals(110016, first.nextId());
+        assertEquals(110026, second.nextId());
+        assertEquals(110017, first.nextId());
+    }
+
+    @Test
+    public void testConcurrentIdsAreUnique() throws Exception {
+        final EmployeeIdSequence sequence = new EmployeeIdSequence(TEST_SEQUENCE, TEST_EMPLOYEE_DB, 7);
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 500; i++)
+                    ids.add(sequence.nextId());
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(4000, ids.size());
+        assertTrue(!ids.contains(-1L));
+    }
+
+    @Test
+    public void testUnreadableSequence() throws IOException {
+        Files.write(Paths.get(TEST_SEQUENCE), "not a number".getBytes());
+        assertEquals(-1, new EmployeeIdSequence(TEST_SEQUENCE, TEST_EMPLOYEE_DB, 10).nextId());
+    }
+}
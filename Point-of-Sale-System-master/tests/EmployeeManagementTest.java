@@ -85,7 +85,7 @@ public class EmployeeManagementTest {
         int result = employeeManagement.update("110002", "newPass", "Admin", "Debra Updated");
         assertEquals(0, result); // Employee found
         Employee updatedEmployee = employeeManagement.employees.get(1);
-        assertEquals("newPass", updatedEmployee.getPassword());
+        assertTrue(PasswordHasher.verify("newPass", updatedEmployee.getPassword()));
         assertEquals("Admin", updatedEmployee.getPosition());
         assertEquals("Debra Updated", updatedEmployee.getName());
     }
@@ -187,7 +187,7 @@ public class EmployeeManagementTest {
         int result = employeeManagement.update("110002", "newPass", "", "Debra Updated");
         assertEquals(0, result); // Employee found
         Employee updatedEmployee = employeeManagement.employees.get(1);
-        assertEquals("newPass", updatedEmployee.getPassword()); // Password changed
+        assertTrue(PasswordHasher.verify("newPass", updatedEmployee.getPassword())); // Password changed
         assertEquals("Cashier", updatedEmployee.getPosition()); // Position should remain unchanged
     }
 
@@ -0,0 +1,171 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EmployeeStoreTest {
+
+    private static final String TEST_EMPLOYEE_DB = "Database/storeEmployeeDatabase.txt";
+    private EmployeeStore store;
+    private int compactAfter;
+
+    @Before
+    public void setUp() throws IOException {
+        new File("Database").mkdir();
+        compactAfter = EmployeeStore.compactAfter;
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_EMPLOYEE_DB)));
+        out.println("110001 Admin Harry Larry 1");
+        out.println("110002 Cashier Debra Cooper lehigh2016");
+        out.close();
+        store = new EmployeeStore(TEST_EMPLOYEE_DB);
+    }
+
+    @After
+    public void tearDown() {
+        EmployeeStore.compactAfter = compactAfter;
+        new File(TEST_EMPLOYEE_DB).delete();
+        new File(TEST_EMPLOYEE_DB + ".journal").delete();
+        new File(TEST_EMPLOYEE_DB + ".lock").delete();
+    }
+
+    //employee lines of the snapshot, without its generation
+    private List<String> snapshotLines() throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(TEST_EMPLOYEE_DB));
+        lines.removeIf(line -> line.startsWith("#generation "));
+        return lines;
+    }
+
+    @Test
+    public void testList() {
+        List<Employee> employees = store.list();
+        assertEquals(2, employees.size());
+        assertEquals("Harry Larry", employees.get(0).getName());
+        assertEquals("Cashier", employees.get(1).getPosition());
+    }
+
+    @Test
+    public void testUpdateAppendsToJournal() throws IOException {
+        assertTrue(store.put(new Employee("110002", "Debra Cooper", "Admin", "newPass")));
+        assertEquals("Admin", store.find("110002").getPosition());
+        assertEquals("110002 Cashier Debra Cooper lehigh2016", snapshotLines().get(1)); //snapshot untouched
+        List<String> journal = Files.readAllLines(Paths.get(TEST_EMPLOYEE_DB + ".journal"));
+        assertEquals(2, journal.size());
+        assertEquals("put 110002 Admin Debra Cooper newPass", journal.get(1));
+    }
+
+    @Test
+    public void testDelete() {
+        assertTrue(store.delete("110001"));
+        assertFalse(store.delete("110001"));
+        assertNull(store.find("110001"));
+        assertEquals(1, store.list().size());
+    }
+
+    @Test
+    public void testAnotherRegisterSeesChanges() {
+        EmployeeStore other = new EmployeeStore(TEST_EMPLOYEE_DB);
+        other.list();
+        store.put(new Employee("110016", "Alice Cooper", "Cashier", "pw"));
+        assertEquals("Alice Cooper", other.find("110016").getName());
+        assertEquals(3, other.list().size());
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        EmployeeStore.compactAfter = 3;
+        store.put(new Employee("110016", "Alice Cooper", "Cashier", "pw"));
+        store.delete("110001");
+        store.put(new Employee("110017", "Bruce Wayne", "Admin", "batman"));
+        List<String> lines = snapshotLines();
+        assertEquals(3, lines.size());
+        assertEquals("110002 Cashier Debra Cooper lehigh2016", lines.get(0));
+        assertEquals("110017 Admin Bruce Wayne batman", lines.get(2));
+        assertEquals(1, Files.readAllLines(Paths.get(TEST_EMPLOYEE_DB + ".journal")).size());
+        assertEquals(3, new EmployeeStore(TEST_EMPLOYEE_DB).list().size());
+    }
+
+    @Test
+    public void testJournalOfReplacedSnapshotIsIgnored() throws Exception {
+        store.delete("110001");
+        Thread.sleep(5);
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_EMPLOYEE_DB)));
+        out.println("110001 Admin Harry Larry 1");
+        out.println("110003 Admin Clayton Watson lehigh2017");
+        out.close();
+        List<Employee> employees = new EmployeeStore(TEST_EMPLOYEE_DB).list();
+        assertEquals(2, employees.size());
+        assertEquals("110001", employees.get(0).getUsername());
+    }
+
+    @Test
+    public void testJournalSurvivesCopyOfSnapshot() throws Exception {
+        store.delete("110001");
+        byte[] contents = Files.readAllBytes(Paths.get(TEST_EMPLOYEE_DB));
+        Thread.sleep(5);
+        new File(TEST_EMPLOYEE_DB).delete();
+        Files.write(Paths.get(TEST_EMPLOYEE_DB), contents); //restored from a copy, a new file and time
+        new File(TEST_EMPLOYEE_DB).setLastModified(System.currentTimeMillis() + 60000);
+        List<Employee> employees = new EmployeeStore(TEST_EMPLOYEE_DB).list();
+        assertEquals(1, employees.size());
+        assertEquals("110002", employees.get(0).getUsername());
+    }
+
+    @Test
+    public void testConcurrentUpdatesOfOneEmployeeBothApply() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        pool.execute(() -> new EmployeeStore(TEST_EMPLOYEE_DB).update("110002", employee -> {
+            employee.setPosition("Admin");
+            return employee;
+        }));
+        pool.execute(() -> new EmployeeStore(TEST_EMPLOYEE_DB).update("110002", employee -> {
+            employee.setPassword("newPass");
+            return employee;
+        }));
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+        Employee employee = store.find("110002");
+        assertEquals("Admin", employee.getPosition());
+        assertEquals("newPass", employee.getPassword());
+        assertNull(store.update("999999", e -> e));
+    }
+
+    @Test
+    public void testTornJournalLineIsIgnored() throws IOException {
+        store.put(new Employee("110016", "Alice Cooper", "Cashier", "pw"));
+        Files.write(Paths.get(TEST_EMPLOYEE_DB + ".journal"), "delete 11000".getBytes(), java.nio.file.StandardOpenOption.APPEND);
+        assertEquals(3, new EmployeeStore(TEST_EMPLOYEE_DB).list().size());
+    }
+
+    @Test
+    public void testListReturnsCopies() {
+        store.list().get(0).setPassword("changed");
+        assertEquals("1", store.find("110001").getPassword());
+    }
+
+    @Test
+    public void testConcurrentEditsAreSerialized() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            pool.execute(() -> {
+                EmployeeStore register = new EmployeeStore(TEST_EMPLOYEE_DB);
+                for (int i = 0; i < 25; i++)
+                    register.put(new Employee(Integer.toString(200000 + thread * 100 + i), "Test User", "Cashier", "pw"));
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+        assertEquals(202, new EmployeeStore(TEST_EMPLOYEE_DB).list().size());
+    }
+}
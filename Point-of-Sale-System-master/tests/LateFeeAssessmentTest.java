@@ -0,0 +1,97 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LateFeeAssessmentTest {
+
+    private LateFeeAssessment assessment;
+    private static final String TEST_USER_DB = "Database/feeUserDatabase.txt";
+    private static final String TEST_RENTAL_DB = "Database/feeRentalDatabase.txt";
+    private static final String TEST_SNAPSHOT = "Database/feeSnapshot.txt";
+
+    @Before
+    public void setUp() throws IOException {
+        assessment = new LateFeeAssessment();
+        new File("Database").mkdir();
+        PrintWriter users = new PrintWriter(new BufferedWriter(new FileWriter(TEST_USER_DB)));
+        users.println("Phone number rentedItem1ID,rentedItem1Date,returned1Bool");
+        users.println("1234567890 1000,01/10/20,false 1001,01/10/20,true");
+        users.println("2345678901 1000,01/10/20,true");
+        users.println("");
+        users.println("3456789012");
+        users.close();
+        PrintWriter rentals = new PrintWriter(new BufferedWriter(new FileWriter(TEST_RENTAL_DB)));
+        rentals.println("1000 TheGodfather 5.0 10");
+        rentals.println("1001 Alien 4.0 10");
+        rentals.close();
+    }
+
+    @After
+    public void tearDown() {
+        new File(TEST_USER_DB).delete();
+        new File(TEST_RENTAL_DB).delete();
+        new File(TEST_SNAPSHOT).delete();
+    }
+
+    @Test
+    public void testLateFee() {
+        assertEquals(10.0, LateFeeAssessment.lateFee(2, 10.0f, 5), 0.01);
+    }
+
+    @Test
+    public void testAssessOnlyOutstandingRentals() {
+        int customers = assessment.assess(TEST_USER_DB, TEST_RENTAL_DB, TEST_SNAPSHOT);
+
+        // Only the first customer still has an item out
+        assertEquals(1, customers);
+        double expected = LateFeeAssessment.lateFee(1, 5.0f, Management.daysSince("01/10/20"));
+        assertEquals(expected, assessment.getFee(1234567890L), 0.01);
+        assertEquals(0.0, assessment.getFee(2345678901L), 0.01);
+    }
+
+    @Test
+    public void testSnapshotIsReloaded() {
+        assessment.assess(TEST_USER_DB, TEST_RENTAL_DB, TEST_SNAPSHOT);
+
+        LateFeeAssessment register = new LateFeeAssessment();
+        assertTrue(register.loadSnapshot(TEST_SNAPSHOT));
+        assertEquals(assessment.getFee(1234567890L), register.getFee(1234567890L), 0.0001);
+    }
+
+    @Test
+    public void testRegisterLoadsTheNextAssessment() throws IOException {
+        String snapshotFile = LateFeeAssessment.snapshotFile;
+        LateFeeAssessment.snapshotFile = TEST_SNAPSHOT;
+        try {
+            assertEquals(0.0, LateFeeAssessment.getInstance().getFee(1234567890L), 0.01); //not assessed yet
+            assessment.assess(TEST_USER_DB, TEST_RENTAL_DB, TEST_SNAPSHOT);
+            assertEquals(assessment.getFee(1234567890L), LateFeeAssessment.getInstance().getFee(1234567890L), 0.0001);
+
+            PrintWriter users = new PrintWriter(new BufferedWriter(new FileWriter(TEST_USER_DB)));
+            users.println("Phone number rentedItem1ID,rentedItem1Date,returned1Bool");
+            users.println("1234567890 1000,01/10/20,true 1001,01/10/20,true"); //returned since
+            users.close();
+            new LateFeeAssessment().assess(TEST_USER_DB, TEST_RENTAL_DB, TEST_SNAPSHOT);
+            assertEquals(0.0, LateFeeAssessment.getInstance().getFee(1234567890L), 0.01);
+        } finally {
+            LateFeeAssessment.snapshotFile = snapshotFile;
+        }
+    }
+
+    @Test
+    public void testAssessMissingUserDatabase() {
+        assertEquals(-1, assessment.assess("Database/nonexistent.txt", TEST_RENTAL_DB, TEST_SNAPSHOT));
+        assertFalse(new File(TEST_SNAPSHOT).exists());
+    }
+
+    @Test
+    public void testLoadMissingSnapshot() {
+        assertFalse(assessment.loadSnapshot("Database/nonexistent.txt"));
+        assertEquals(0.0, assessment.getFee(1234567890L), 0.01);
+    }
+}
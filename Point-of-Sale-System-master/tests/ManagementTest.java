@@ -167,4 +167,60 @@ public class ManagementTest {
         // Restore permissions
         file.setWritable(true);
     }
+
+    @Test
+    public void testUpdateRentalStatusKeepsItemsNotReturned() throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_USER_DB)));
+        out.println("User Database\n1234567890 1022,12/30/22,false 1023,12/30/22,false 1024,12/30/22,true");
+        out.close();
+        List<ReturnItem> returnedItems = new ArrayList<>();
+        returnedItems.add(new ReturnItem(1022, 2));
+
+        management.updateRentalStatus(1234567890L, returnedItems);
+        List<ReturnItem> outstandingReturns = management.getLatestReturnDate(1234567890L);
+
+        // 1023 was not returned and must still be outstanding
+        assertEquals(1, outstandingReturns.size());
+        assertEquals(1023, outstandingReturns.get(0).getItemID());
+    }
+
+    @Test
+    public void testUpdateRentalStatusThousandsOfRentals() throws IOException {
+        StringBuilder line = new StringBuilder("1234567890");
+        List<ReturnItem> returnedItems = new ArrayList<>();
+        for (int id = 0; id < 5000; id++) {
+            line.append(" ").append(id).append(",12/30/22,false");
+            if (id % 2 == 0)
+                returnedItems.add(new ReturnItem(id, 2));
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_USER_DB)));
+        out.println("User Database");
+        out.println(line);
+        out.println("2345678901 1000,12/30/22,false");
+        out.close();
+
+        management.updateRentalStatus(1234567890L, returnedItems);
+        List<ReturnItem> outstandingReturns = management.getLatestReturnDate(1234567890L);
+
+        // Only the odd IDs are still out, and other customers are untouched
+        assertEquals(2500, outstandingReturns.size());
+        for (ReturnItem item : outstandingReturns)
+            assertEquals(1, item.getItemID() % 2);
+        assertEquals(1, management.getLatestReturnDate(2345678901L).size());
+    }
+
+    @Test
+    public void testUpdateRentalStatusSameItemListedTwice() throws IOException {
+        List<ReturnItem> returnedItems = new ArrayList<>();
+        returnedItems.add(new ReturnItem(1022, 2));
+        returnedItems.add(new ReturnItem(1022, 2));
+
+        management.updateRentalStatus(1234567890L, returnedItems);
+
+        // The rental entry is rewritten once, not once per list entry
+        BufferedReader reader = new BufferedReader(new FileReader(TEST_USER_DB));
+        reader.readLine();
+        assertEquals(2, reader.readLine().split(" ").length);
+        reader.close();
+    }
 }
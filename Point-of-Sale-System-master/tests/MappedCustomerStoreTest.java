@@ -0,0 +1,197 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedCustomerStoreTest {
+
+    private MappedCustomerStore store;
+    private static final String TEST_INDEX = "Database/testCustomerIndex.dat";
+    private static final String TEST_DATA = "Database/testCustomerData.dat";
+    private static final String TEST_USER_DB = "Database/mappedUserDatabase.txt";
+
+    @Before
+    public void setUp() throws IOException {
+        new File("Database").mkdir();
+        store = new MappedCustomerStore(TEST_INDEX, TEST_DATA);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        new File(TEST_INDEX).delete();
+        new File(TEST_DATA).delete();
+        new File(TEST_DATA + ".tmp").delete();
+        new File(TEST_USER_DB).delete();
+    }
+
+    @Test
+    public void testCreateAndFind() {
+        assertTrue(store.create(1234567890L));
+        assertEquals("1234567890", store.find(1234567890L));
+        assertNull(store.find(9876543210L));
+    }
+
+    @Test
+    public void testCreateTwiceKeepsOneCustomer() {
+        store.create(1234567890L);
+        store.create(1234567890L);
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testUpdate() {
+        store.create(1234567890L);
+        assertTrue(store.update(1234567890L, line -> line + " 1022,12/30/22,false"));
+        assertEquals("1234567890 1022,12/30/22,false", store.find(1234567890L));
+        assertFalse(store.update(9876543210L, line -> line));
+    }
+
+    @Test
+    public void testRecordsSurviveReopen() throws IOException {
+        store.create(1234567890L);
+        store.update(1234567890L, line -> line + " 1022,12/30/22,false");
+        store.close();
+
+        store = new MappedCustomerStore(TEST_INDEX, TEST_DATA);
+        assertEquals("1234567890 1022,12/30/22,false", store.find(1234567890L));
+    }
+
+    @Test
+    public void testGrowsPastInitialCapacity() {
+        for (long phone = 5550000000L; phone < 5550005000L; phone++)
+            assertTrue(store.create(phone));
+
+        assertEquals(5000, store.size());
+        for (long phone = 5550000000L; phone < 5550005000L; phone++)
+            assertEquals(Long.toString(phone), store.find(phone));
+    }
+
+    @Test
+    public void testIndexRebuiltFromDataFile() throws IOException {
+        store.create(1234567890L);
+        store.update(1234567890L, line -> line + " 1022,12/30/22,false");
+        store.close();
+        // Corrupt the index header
+        RandomAccessFile index = new RandomAccessFile(TEST_INDEX, "rw");
+        index.writeInt(0);
+        index.close();
+
+        store = new MappedCustomerStore(TEST_INDEX, TEST_DATA);
+        assertEquals("1234567890 1022,12/30/22,false", store.find(1234567890L));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testMissingIndexRebuiltFromDataFile() throws IOException {
+        store.create(1234567890L);
+        store.create(2345678901L);
+        store.close();
+        new File(TEST_INDEX).delete();
+
+        store = new MappedCustomerStore(TEST_INDEX, TEST_DATA);
+        assertEquals("1234567890", store.find(1234567890L));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void testStaleIndexRebuiltFromDataFile() throws IOException {
+        store.create(1234567890L);
+        store.close();
+        byte[] index = java.nio.file.Files.readAllBytes(new File(TEST_INDEX).toPath());
+        store = new MappedCustomerStore(TEST_INDEX, TEST_DATA);
+        store.create(2345678901L);
+        store.close();
+        java.nio.file.Files.write(new File(TEST_INDEX).toPath(), index); //an index from before the second customer
+
+        store = new MappedCustomerStore(TEST_INDEX, TEST_DATA);
+        assertEquals("2345678901", store.find(2345678901L));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void testUpdateAllRewritesTheDataFile() throws IOException {
+        store.create(1234567890L);
+        store.create(2345678901L);
+        for (int i = 0; i < 20; i++)
+            store.update(1234567890L, line -> line + " 1022,12/30/22,true");
+        long before = new File(TEST_DATA).length();
+
+        assertTrue(store.updateAll(line -> line.split(" ")[0] + " 1023,01/02/23,false"));
+        assertTrue(new File(TEST_DATA).length() < before);
+        assertEquals("1234567890 1023,01/02/23,false", store.find(1234567890L));
+        assertTrue(store.update(2345678901L, line -> line + " 1024,01/03/23,false"));
+        store.close();
+
+        store = new MappedCustomerStore(TEST_INDEX, TEST_DATA);
+        assertEquals(2, store.size());
+        assertEquals("2345678901 1023,01/02/23,false 1024,01/03/23,false", store.find(2345678901L));
+    }
+
+    @Test(expected = IOException.class)
+    public void testSecondOpenIsRefused() throws IOException {
+        new MappedCustomerStore(TEST_INDEX, TEST_DATA);
+    }
+
+    @Test
+    public void testImportFromTextDatabase() throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_USER_DB)));
+        out.println("Phone number rentedItem1ID,rentedItem1Date,returned1Bool");
+        out.println("1234567890 1022,12/30/22,false");
+        out.println("");
+        out.println("2345678901");
+        out.println("1234567890 1023,12/30/22,true");
+        out.close();
+
+        assertEquals(3, store.importFrom(TEST_USER_DB));
+        assertEquals(2, store.size());
+        // The duplicate line keeps both rentals
+        assertEquals("1234567890 1022,12/30/22,false 1023,12/30/22,true", store.find(1234567890L));
+        assertEquals("2345678901", store.find(2345678901L));
+    }
+
+    @Test
+    public void testImportIntoAStoreWithCustomersIsRefused() throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_USER_DB)));
+        out.println("Phone number rentedItem1ID,rentedItem1Date,returned1Bool");
+        out.println("1234567890 1022,12/30/22,false");
+        out.close();
+
+        assertEquals(1, store.importFrom(TEST_USER_DB));
+        assertEquals(-1, store.importFrom(TEST_USER_DB));
+        assertEquals("1234567890 1022,12/30/22,false", store.find(1234567890L));
+    }
+
+    @Test(timeout = 10000)
+    public void testTornLengthIsCutOffOnRebuild() throws IOException {
+        store.create(1234567890L);
+        store.close();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(TEST_DATA, true))) {
+            out.writeLong(2345678901L);
+            out.writeInt(-12); //a length that would not move past the header
+        }
+        new File(TEST_INDEX).delete();
+        store = new MappedCustomerStore(TEST_INDEX, TEST_DATA);
+        assertEquals(1, store.size());
+        assertEquals("1234567890", store.find(1234567890L));
+        assertNull(store.find(2345678901L));
+    }
+
+    @Test
+    public void testManagementUsesMappedStore() {
+        CustomerStore previous = Management.getCustomerStore();
+        Management.setCustomerStore(store);
+        try {
+            Management management = new Management();
+            assertTrue(management.createUser(1234567890L));
+            assertTrue(management.checkUser(1234567890L));
+        } finally {
+            Management.setCustomerStore(previous);
+        }
+    }
+}
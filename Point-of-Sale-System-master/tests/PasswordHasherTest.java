@@ -0,0 +1,95 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PasswordHasherTest {
+
+    private static final String TEST_EMPLOYEE_DB = "Database/hasherEmployeeDatabase.txt";
+    private int iterations;
+
+    @Before
+    public void setUp() throws IOException {
+        new File("Database").mkdir();
+        iterations = PasswordHasher.getIterations();
+        PasswordHasher.setIterations(PasswordHasher.MIN_ITERATIONS);
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_EMPLOYEE_DB)));
+        out.println("110001 Admin Harry Larry 1");
+        out.println("110002 Cashier Debra Cooper lehigh2016");
+        out.close();
+    }
+
+    @After
+    public void tearDown() {
+        PasswordHasher.setIterations(iterations);
+        new File(TEST_EMPLOYEE_DB).delete();
+        new File(TEST_EMPLOYEE_DB + ".journal").delete();
+        new File(TEST_EMPLOYEE_DB + ".lock").delete();
+    }
+
+    @Test
+    public void testHashAndVerify() {
+        String stored = PasswordHasher.hash("lehigh2016");
+        assertTrue(stored.startsWith("pbkdf2$" + PasswordHasher.MIN_ITERATIONS + "$"));
+        assertFalse(stored.contains(" "));
+        assertTrue(PasswordHasher.verify("lehigh2016", stored));
+        assertFalse(PasswordHasher.verify("lehigh2017", stored));
+    }
+
+    @Test
+    public void testSaltedHashesDiffer() {
+        assertNotEquals(PasswordHasher.hash("same"), PasswordHasher.hash("same"));
+    }
+
+    @Test
+    public void testVerifierKeepsItsOwnCost() {
+        String stored = PasswordHasher.hash("secret");
+        PasswordHasher.setIterations(PasswordHasher.MIN_ITERATIONS * 2);
+        assertTrue(PasswordHasher.verify("secret", stored));
+    }
+
+    @Test
+    public void testPlaintextIsStillAccepted() {
+        assertTrue(PasswordHasher.verify("lehigh2016", "lehigh2016"));
+        assertFalse(PasswordHasher.verify("lehigh", "lehigh2016"));
+        assertFalse(PasswordHasher.verify(null, "lehigh2016"));
+    }
+
+    @Test
+    public void testMalformedVerifier() {
+        assertFalse(PasswordHasher.verify("secret", "pbkdf2$notanumber$abc$def"));
+        assertFalse(PasswordHasher.verify("secret", "pbkdf2$1000"));
+    }
+
+    @Test
+    public void testCalibrateStaysAtOrAboveMinimum() {
+        assertTrue(PasswordHasher.calibrate(1) >= PasswordHasher.MIN_ITERATIONS);
+    }
+
+    @Test
+    public void testMigrate() {
+        assertEquals(2, PasswordHasher.migrate(TEST_EMPLOYEE_DB));
+        Employee employee = EmployeeStore.forFile(TEST_EMPLOYEE_DB).find("110002");
+        assertTrue(PasswordHasher.isHashed(employee.getPassword()));
+        assertTrue(PasswordHasher.verify("lehigh2016", employee.getPassword()));
+        assertEquals(0, PasswordHasher.migrate(TEST_EMPLOYEE_DB));
+    }
+
+    @Test
+    public void testLogInAfterMigration() {
+        String database = POSSystem.employeeDatabase;
+        try {
+            PasswordHasher.migrate(TEST_EMPLOYEE_DB);
+            POSSystem.employeeDatabase = TEST_EMPLOYEE_DB;
+            assertEquals(1, new POSSystem().logIn("110002", "lehigh2016"));
+            assertEquals(0, new POSSystem().logIn("110002", "wrong"));
+        } finally {
+            POSSystem.employeeDatabase = database;
+        }
+    }
+}
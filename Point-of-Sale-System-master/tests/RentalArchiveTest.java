@@ -0,0 +1,91 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RentalArchiveTest {
+
+    private static final String TEST_USER_DB = "Database/archiveUserDatabase.txt";
+    private static final String TEST_ARCHIVE = "Database/testArchive";
+    private TextCustomerStore store;
+    private RentalArchive archive;
+    private Date cutoff;
+
+    @Before
+    public void setUp() throws Exception {
+        new File("Database").mkdir();
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_USER_DB)));
+        out.println("User Database");
+        out.println("1234567890 1022,01/15/20,true 1023,02/03/20,true 1024,01/20/20,false 1025,03/01/24,true");
+        out.println("9876543210 1022,01/28/20,true");
+        out.println("5555555555");
+        out.close();
+        store = new TextCustomerStore(TEST_USER_DB);
+        archive = new RentalArchive(store, TEST_ARCHIVE);
+        cutoff = new SimpleDateFormat("MM/dd/yy").parse("01/01/24");
+    }
+
+    @After
+    public void tearDown() {
+        new File(TEST_USER_DB).delete();
+        new File(TEST_USER_DB + ".lock").delete();
+        File[] partitions = new File(TEST_ARCHIVE).listFiles();
+        if (partitions != null)
+            for (File partition : partitions)
+                partition.delete();
+        new File(TEST_ARCHIVE).delete();
+    }
+
+    @Test
+    public void testArchiveKeepsOutstandingAndRecentRentals() {
+        assertEquals(3, archive.archive(cutoff));
+        assertEquals("1234567890 1024,01/20/20,false 1025,03/01/24,true", store.find(1234567890L));
+        assertEquals("9876543210", store.find(9876543210L));
+        assertEquals("5555555555", store.find(5555555555L));
+    }
+
+    @Test
+    public void testArchivePartitionsByMonth() {
+        archive.archive(cutoff);
+        assertTrue(new File(TEST_ARCHIVE, "rentals-2020-01.gz").exists());
+        assertTrue(new File(TEST_ARCHIVE, "rentals-2020-02.gz").exists());
+        assertEquals(2, new File(TEST_ARCHIVE).list().length);
+    }
+
+    @Test
+    public void testHistory() {
+        archive.archive(cutoff);
+        assertEquals(Arrays.asList("1022,01/15/20,true", "1023,02/03/20,true"), archive.history(1234567890L));
+        assertEquals(Arrays.asList("1022,01/28/20,true"), archive.history(9876543210L));
+        assertTrue(archive.history(5555555555L).isEmpty());
+    }
+
+    @Test
+    public void testHistoryInRange() throws Exception {
+        archive.archive(cutoff);
+        SimpleDateFormat format = new SimpleDateFormat("MM/dd/yy");
+        assertEquals(Arrays.asList("1023,02/03/20,true"),
+            archive.history(1234567890L, format.parse("02/01/20"), format.parse("02/29/20")));
+    }
+
+    @Test
+    public void testSecondPassAppendsToPartitions() throws Exception {
+        archive.archive(cutoff);
+        store.update(9876543210L, line -> line + " 1026,01/02/20,true");
+        assertEquals(1, archive.archive(cutoff));
+        assertEquals(Arrays.asList("1022,01/28/20,true", "1026,01/02/20,true"), archive.history(9876543210L));
+    }
+
+    @Test
+    public void testNothingToArchive() throws Exception {
+        Date early = new SimpleDateFormat("MM/dd/yy").parse("01/01/19");
+        assertEquals(0, archive.archive(early));
+        assertEquals("9876543210 1022,01/28/20,true", store.find(9876543210L));
+    }
+}
@@ -0,0 +1,157 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReturnAnalyticsTest {
+
+    private static final String TEST_LOG = "Database/returnsAnalyticsLog.txt";
+    private static final String TEST_JOURNAL = "Database/returnsSalesJournal.bin";
+    private static final long DAY = 24L*60*60*1000;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private SalesJournal journal;
+    private long start;
+
+    @Before
+    public void setUp() {
+        new File("Database").mkdir();
+        tearDown();
+        journal = new SalesJournal(TEST_JOURNAL);
+        start = System.currentTimeMillis() - 30*DAY;
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = new File("Database").listFiles((directory, name) ->
+            name.startsWith("returnsAnalyticsLog.txt") || name.startsWith("returnsSalesJournal.bin"));
+        if (files != null)
+            for (File file : files)
+                file.delete();
+    }
+
+    private long sale(int potatoes, int onions, long time) {
+        List<Item> lines = new ArrayList<Item>();
+        lines.add(new Item(1000, "Potato", 1.50f, potatoes));
+        lines.add(new Item(1002, "Red Onion", 0.75f, onions));
+        double subtotal = 1.5*potatoes + 0.75*onions;
+        return journal.append(new SalesJournal.Record(SalesJournal.SALE, 0, "register-1", "110002", time,
+                                                      lines, subtotal, 0, subtotal*0.06, subtotal*1.06));
+    }
+
+    private void writeReturn(long transactionId, long time, long receipt, String... lines) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(TEST_LOG, true))) {
+            out.println("Return " + transactionId + " " + dateFormat.format(new Date(time)) + " receipt " + receipt);
+            for (String line : lines)
+                out.println(line);
+            out.println();
+        }
+    }
+
+    private static ReturnAnalytics.ItemRate find(List<ReturnAnalytics.ItemRate> rates, int itemID) {
+        for (ReturnAnalytics.ItemRate rate : rates)
+            if (rate.getItemID() == itemID)
+                return rate;
+        return null;
+    }
+
+    @Test
+    public void testReturnRate() throws IOException {
+        long receipt = sale(10, 4, start);
+        sale(10, 0, start + DAY);
+        writeReturn(3, start + 3*DAY, receipt, "1000 Potato 2 3.0", "1002 Red Onion 1 0.75");
+        try (PrintWriter out = new PrintWriter(new FileWriter(TEST_LOG, true))) {
+            //a return written before returns were timed
+            out.println();
+            out.println("1000 Potato 3 4.5");
+            out.println();
+        }
+
+        List<ReturnAnalytics.ItemRate> rates = ReturnAnalytics.run(TEST_LOG, TEST_JOURNAL);
+        ReturnAnalytics.ItemRate potato = find(rates, 1000);
+        assertEquals(20, potato.getSold());
+        assertEquals(5, potato.getReturnedUnits());
+        assertEquals(2, potato.getReturns());
+        assertEquals(0.25, potato.getRate(), 0.0001);
+        assertEquals(7.5, potato.getRefunds(), 0.0001);
+        assertEquals(3.0, potato.getAverageDaysToReturn(), 0.0001);
+        ReturnAnalytics.ItemRate onion = find(rates, 1002);
+        assertEquals(0.25, onion.getRate(), 0.0001);
+        assertEquals("Red Onion", onion.getName());
+    }
+
+    @Test
+    public void testItemsSoldBeforeTheJournal() throws IOException {
+        sale(4, 4, start);
+        writeReturn(2, start, 0, "1500 Blender 1 29.99");
+        List<ReturnAnalytics.ItemRate> rates = ReturnAnalytics.run(TEST_LOG, TEST_JOURNAL);
+        assertEquals(3, rates.size());
+        ReturnAnalytics.ItemRate blender = find(rates, 1500);
+        assertEquals(0, blender.getSold());
+        assertEquals(1, blender.getReturnedUnits());
+        assertEquals(-1, blender.getAverageDaysToReturn(), 0);
+    }
+
+    @Test
+    public void testOnlyNewSegmentsAreRead() throws IOException {
+        SegmentedLog log = SegmentedLog.forFile(TEST_LOG);
+        sale(10, 10, start);
+        writeReturn(2, start, 1, "1000 Potato 1 1.5");
+        log.rotate();
+        writeReturn(3, start, 1, "1000 Potato 1 1.5");
+        log.rotate();
+
+        ReturnAnalytics analytics = new ReturnAnalytics(TEST_LOG, TEST_JOURNAL);
+        assertEquals(2, find(analytics.rates(), 1000).getReturnedUnits());
+        assertEquals(2, analytics.getSegmentsRead());
+
+        log.compressSealed();
+        writeReturn(4, start, 1, "1000 Potato 1 1.5");
+        log.rotate();
+        writeReturn(5, start, 1, "1000 Potato 1 1.5"); //live, read but not saved
+        analytics = new ReturnAnalytics(TEST_LOG, TEST_JOURNAL);
+        assertEquals(4, find(analytics.rates(), 1000).getReturnedUnits());
+        assertEquals(1, analytics.getSegmentsRead());
+
+        analytics = new ReturnAnalytics(TEST_LOG, TEST_JOURNAL);
+        assertEquals(4, find(analytics.rates(), 1000).getReturnedUnits());
+        assertEquals(0, analytics.getSegmentsRead());
+    }
+
+    @Test
+    public void testLostStateIsRebuilt() throws IOException {
+        SegmentedLog log = SegmentedLog.forFile(TEST_LOG);
+        sale(10, 10, start);
+        writeReturn(2, start, 1, "1000 Potato 1 1.5");
+        log.rotate();
+        ReturnAnalytics.run(TEST_LOG, TEST_JOURNAL);
+        try (RandomAccessFile state = new RandomAccessFile(TEST_LOG + ".rates", "rw")) {
+            state.seek(state.length() - 1);
+            int last = state.read();
+            state.seek(state.length() - 1);
+            state.write(last ^ 0xff);
+        }
+        ReturnAnalytics analytics = new ReturnAnalytics(TEST_LOG, TEST_JOURNAL);
+        assertEquals(1, find(analytics.rates(), 1000).getReturnedUnits());
+        assertEquals(1, analytics.getSegmentsRead());
+    }
+
+    @Test
+    public void testReturnNamesItsSale() {
+        long receipt = sale(2, 0, start);
+        List<Item> lines = new ArrayList<Item>();
+        lines.add(new Item(1000, "Potato", 1.50f, 1));
+        long id = journal.append(new SalesJournal.Record(SalesJournal.RETURN, 0, "register-1", "110002", start + DAY,
+                                                         lines, 1.5, 0, 0, 1.5, receipt));
+        SalesJournal.Record record = TransactionIndex.forFile(TEST_JOURNAL).find(id);
+        assertEquals(receipt, record.getReference());
+        assertEquals(0, TransactionIndex.forFile(TEST_JOURNAL).find(receipt).getReference());
+        assertTrue(record.getTotal() > 0);
+    }
+}
@@ -0,0 +1,71 @@
+import org.junit.Before;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ReturnQuoteTest {
+    private List<Item> cart;
+    private List<ReturnItem> outstanding;
+
+    @Before
+    public void setUp() {
+        cart = new ArrayList<>();
+        outstanding = new ArrayList<>();
+    }
+
+    @Test
+    public void testQuoteMatchesCartWithOutstandingRentals() {
+        cart.add(new Item(1000, "Movie", 10.0f, 2));
+        cart.add(new Item(1001, "Game", 5.0f, 1));
+        outstanding.add(new ReturnItem(1000, 5));
+        outstanding.add(new ReturnItem(1002, 3)); // Not being returned
+
+        ReturnQuote quote = new ReturnQuote(cart, outstanding);
+
+        assertEquals(1, quote.getLines().size());
+        assertEquals(1000, quote.getLines().get(0).getItem().getItemID());
+        assertEquals(5, quote.getLines().get(0).getDays());
+        assertEquals(10.0, quote.getTotal(), 0.01); // 2 * 10 * 0.1 * 5
+        assertSame(outstanding, quote.getOutstanding());
+    }
+
+    @Test
+    public void testSameItemRentedTwice() {
+        cart.add(new Item(1000, "Movie", 10.0f, 1));
+        outstanding.add(new ReturnItem(1000, 2));
+        outstanding.add(new ReturnItem(1000, 4));
+
+        ReturnQuote quote = new ReturnQuote(cart, outstanding);
+
+        // Every outstanding rental of the item is charged, as before
+        assertEquals(2, quote.getLines().size());
+        assertEquals(6.0, quote.getTotal(), 0.01);
+    }
+
+    @Test
+    public void testNoOutstandingRentals() {
+        cart.add(new Item(1000, "Movie", 10.0f, 1));
+
+        ReturnQuote quote = new ReturnQuote(cart, outstanding);
+
+        assertTrue(quote.getLines().isEmpty());
+        assertEquals(0.0, quote.getTotal(), 0.01);
+    }
+
+    @Test
+    public void testLargeCartJoin() {
+        for (int i = 0; i < 5000; i++) {
+            cart.add(new Item(i, "Item" + i, 1.0f, 1));
+            outstanding.add(new ReturnItem(i, 1));
+        }
+
+        ReturnQuote quote = new ReturnQuote(cart, outstanding);
+
+        assertEquals(5000, quote.getLines().size());
+        assertEquals(500.0, quote.getTotal(), 0.01);
+    }
+}
@@ -0,0 +1,132 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SalesAggregatesTest {
+
+    private static final String TEST_JOURNAL = "Database/aggregatesSalesJournal.bin";
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+    private SalesJournal journal;
+    private int checkpointEvery;
+
+    @Before
+    public void setUp() {
+        new File("Database").mkdir();
+        journal = new SalesJournal(TEST_JOURNAL);
+        checkpointEvery = SalesAggregates.checkpointEvery;
+        SalesAggregates.checkpointEvery = 1;
+    }
+
+    @After
+    public void tearDown() {
+        SalesAggregates.checkpointEvery = checkpointEvery;
+        new File(TEST_JOURNAL).delete();
+        new File(TEST_JOURNAL + ".lock").delete();
+        new File(TEST_JOURNAL + ".totals").delete();
+    }
+
+    private static long time(LocalDate day, int hour) {
+        return LocalDateTime.of(day.getYear(), day.getMonth(), day.getDayOfMonth(), hour, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static SalesJournal.Record record(byte type, LocalDate day, int potatoes, double total) {
+        List<Item> lines = new ArrayList<Item>();
+        lines.add(new Item(1000, "Potato", 1.50f, potatoes));
+        double subtotal = 1.5*potatoes;
+        double tax = type == SalesJournal.SALE ? subtotal*0.06 : 0;
+        return new SalesJournal.Record(type, 0, "register-1", "110002", time(day, 12), lines, subtotal, 0, tax, total);
+    }
+
+    @Test
+    public void testAddsRecordsAfterEachCheckout() {
+        SalesAggregates totals = new SalesAggregates(TEST_JOURNAL);
+        journal.append(record(SalesJournal.SALE, DAY, 2, 3.18));
+        totals.refresh();
+        assertEquals(1, totals.day(DAY).getSales());
+
+        journal.append(record(SalesJournal.SALE, DAY, 4, 6.36));
+        journal.append(record(SalesJournal.RETURN, DAY, 1, 1.50));
+        journal.append(record(SalesJournal.RENTAL_RETURN, DAY, 1, 0.45));
+        SalesAggregates.DayTotal day = totals.day(DAY);
+        assertEquals(2, day.getSales());
+        assertEquals(6, day.getUnits());
+        assertEquals(9.54, day.getRevenue(), 0.0001);
+        assertEquals(0.54, day.getTax(), 0.0001);
+        assertEquals(1, day.getReturns());
+        assertEquals(1.50, day.getRefunds(), 0.0001);
+        assertEquals(0.45, day.getLateFees(), 0.0001);
+
+        SalesAggregates.ItemTotal potato = totals.item(1000);
+        assertEquals(6, potato.getUnits());
+        assertEquals(1, potato.getReturnedUnits());
+        assertEquals(9.0, potato.getRevenue(), 0.0001);
+        assertEquals(0.54, potato.getTax(), 0.0001);
+        assertEquals(0, totals.day(DAY.plusDays(1)).getSales());
+    }
+
+    @Test
+    public void testSnapshotIsReloaded() {
+        journal.append(record(SalesJournal.SALE, DAY, 2, 3.18));
+        new SalesAggregates(TEST_JOURNAL).refresh();
+        assertTrue(new File(TEST_JOURNAL + ".totals").exists());
+
+        //a register started later only reads what was appended after the snapshot
+        journal.append(record(SalesJournal.SALE, DAY, 1, 1.59));
+        SalesAggregates restarted = new SalesAggregates(TEST_JOURNAL);
+        assertEquals(2, restarted.day(DAY).getSales());
+        assertEquals(3, restarted.day(DAY).getUnits());
+    }
+
+    @Test
+    public void testRebuildsWhenSnapshotIsLost() {
+        journal.append(record(SalesJournal.SALE, DAY, 2, 3.18));
+        journal.append(record(SalesJournal.SALE, DAY, 1, 1.59));
+        new SalesAggregates(TEST_JOURNAL).refresh();
+        new File(TEST_JOURNAL + ".totals").delete();
+        assertEquals(2, new SalesAggregates(TEST_JOURNAL).day(DAY).getSales());
+    }
+
+    @Test
+    public void testRebuildsWhenSnapshotIsDamaged() throws IOException {
+        journal.append(record(SalesJournal.SALE, DAY, 2, 3.18));
+        new SalesAggregates(TEST_JOURNAL).refresh();
+        try (RandomAccessFile file = new RandomAccessFile(TEST_JOURNAL + ".totals", "rw"))
+        {
+            file.seek(30);
+            file.write(0x7f);
+        }
+        assertEquals(1, new SalesAggregates(TEST_JOURNAL).day(DAY).getSales());
+    }
+
+    @Test
+    public void testRebuildsWhenJournalIsReplaced() {
+        journal.append(record(SalesJournal.SALE, DAY, 2, 3.18));
+        journal.append(record(SalesJournal.SALE, DAY, 2, 3.18));
+        SalesAggregates totals = new SalesAggregates(TEST_JOURNAL);
+        assertEquals(2, totals.day(DAY).getSales());
+
+        new File(TEST_JOURNAL).delete();
+        SalesJournal replaced = new SalesJournal(TEST_JOURNAL);
+        replaced.append(record(SalesJournal.SALE, DAY, 1, 1.59));
+        replaced.append(record(SalesJournal.SALE, DAY, 1, 1.59));
+        replaced.append(record(SalesJournal.SALE, DAY, 1, 1.59));
+        assertEquals(3, totals.day(DAY).getUnits());
+    }
+
+    @Test
+    public void testEmptyJournal() {
+        SalesAggregates totals = new SalesAggregates(TEST_JOURNAL);
+        assertEquals(0, totals.day(DAY).getSales());
+        assertNull(totals.item(1000));
+    }
+}
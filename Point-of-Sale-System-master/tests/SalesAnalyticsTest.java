@@ -0,0 +1,135 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class SalesAnalyticsTest {
+
+    private static final String TEST_JOURNAL = "Database/analyticsSalesJournal.bin";
+    private long segmentBytes;
+
+    @Before
+    public void setUp() {
+        new File("Database").mkdir();
+        segmentBytes = SalesAnalytics.segmentBytes;
+    }
+
+    @After
+    public void tearDown() {
+        SalesAnalytics.segmentBytes = segmentBytes;
+        new File(TEST_JOURNAL).delete();
+        new File(TEST_JOURNAL + ".lock").delete();
+    }
+
+    private static long time(int day, int hour) {
+        return LocalDateTime.of(2024, 3, day, hour, 30).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static SalesJournal.Record sale(long time, int potatoes, int chicken) {
+        List<Item> lines = new ArrayList<Item>();
+        if (potatoes > 0)
+            lines.add(new Item(1000, "Potato", 1.50f, potatoes));
+        if (chicken > 0)
+            lines.add(new Item(1001, "Chicken Breast", 4.00f, chicken));
+        double subtotal = 1.5*potatoes + 4.0*chicken;
+        return new SalesJournal.Record(SalesJournal.SALE, 0, "register-1", "110002", time, lines, subtotal, 0, subtotal*0.06, subtotal*1.06);
+    }
+
+    private void writeSales() {
+        List<SalesJournal.Record> records = new ArrayList<SalesJournal.Record>();
+        records.add(sale(time(1, 9), 2, 1));  //7.00
+        records.add(sale(time(1, 14), 4, 0)); //6.00
+        records.add(sale(time(2, 9), 0, 3));  //12.00
+        new SalesJournal(TEST_JOURNAL).append(records);
+    }
+
+    @Test
+    public void testTotals() {
+        writeSales();
+        SalesAnalytics report = SalesAnalytics.run(TEST_JOURNAL);
+        assertNotNull(report);
+        assertEquals(3, report.getTransactions());
+        assertEquals(10, report.getUnits());
+        assertEquals(25.0*1.06, report.getRevenue(), 0.0001);
+        assertEquals(10/3.0, report.averageBasketSize(), 0.0001);
+
+        List<SalesAnalytics.DayTotal> daily = report.dailyTotals();
+        assertEquals(2, daily.size());
+        assertEquals(LocalDate.of(2024, 3, 1), daily.get(0).getDay());
+        assertEquals(2, daily.get(0).getTransactions());
+        assertEquals(13.0*1.06, daily.get(0).getRevenue(), 0.0001);
+        assertEquals(13.0*0.06, daily.get(0).getTax(), 0.0001);
+
+        double[] hours = report.revenueByHour();
+        assertEquals(19.0*1.06, hours[9], 0.0001);
+        assertEquals(6.0*1.06, hours[14], 0.0001);
+    }
+
+    @Test
+    public void testTopItems() {
+        writeSales();
+        SalesAnalytics report = SalesAnalytics.run(TEST_JOURNAL);
+        List<SalesAnalytics.ItemTotal> byRevenue = report.topItems(1, true);
+        assertEquals(1, byRevenue.size());
+        assertEquals("Chicken Breast", byRevenue.get(0).getName());
+        assertEquals(16.0, byRevenue.get(0).getRevenue(), 0.0001);
+        List<SalesAnalytics.ItemTotal> byUnits = report.topItems(5, false);
+        assertEquals(2, byUnits.size());
+        assertEquals(1000, byUnits.get(0).getItemID());
+        assertEquals(6, byUnits.get(0).getUnits());
+    }
+
+    @Test
+    public void testTimeRange() {
+        writeSales();
+        SalesAnalytics report = SalesAnalytics.run(TEST_JOURNAL, time(2, 0), time(3, 0));
+        assertEquals(1, report.getTransactions());
+        assertEquals(3, report.getUnits());
+    }
+
+    @Test
+    public void testSegmentsMatchSequentialRead() {
+        SalesAnalytics.segmentBytes = 1000; //records straddle most segment boundaries
+        List<SalesJournal.Record> records = new ArrayList<SalesJournal.Record>();
+        for (int i = 0; i < 5000; i++)
+            records.add(sale(time(1 + i % 28, i % 24), 1 + i % 3, i % 2));
+        new SalesJournal(TEST_JOURNAL).append(records);
+
+        final long[] units = {0};
+        SalesJournal.forEach(TEST_JOURNAL, record -> {
+            for (Item item : record.getLines())
+                units[0] += item.getAmount();
+        });
+        SalesAnalytics report = SalesAnalytics.run(TEST_JOURNAL);
+        assertEquals(5000, report.getTransactions());
+        assertEquals(units[0], report.getUnits());
+        assertEquals(28, report.dailyTotals().size());
+        assertEquals(0, report.getDamagedRecords());
+    }
+
+    @Test
+    public void testSkipsDamagedRecord() throws IOException {
+        writeSales();
+        try (RandomAccessFile file = new RandomAccessFile(TEST_JOURNAL, "rw"))
+        {
+            file.seek(20);
+            file.write(0x7f); //flips a byte of the first payload
+        }
+        SalesAnalytics report = SalesAnalytics.run(TEST_JOURNAL);
+        assertEquals(2, report.getTransactions());
+        assertEquals(1, report.getDamagedRecords());
+    }
+
+    @Test
+    public void testMissingJournal() {
+        assertEquals(0, SalesAnalytics.run("Database/nonexistentJournal.bin").getTransactions());
+    }
+}
@@ -0,0 +1,122 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SalesIndexTest {
+
+    private static final String TEST_JOURNAL = "Database/indexSalesJournal.bin";
+    private static final long MINUTE = 60000L;
+    private SalesJournal journal;
+    private int entryEvery;
+
+    @Before
+    public void setUp() {
+        new File("Database").mkdir();
+        entryEvery = SalesIndex.entryEvery;
+        SalesIndex.entryEvery = 10;
+        journal = new SalesJournal(TEST_JOURNAL);
+    }
+
+    @After
+    public void tearDown() {
+        SalesIndex.entryEvery = entryEvery;
+        new File(TEST_JOURNAL).delete();
+        new File(TEST_JOURNAL + ".lock").delete();
+        new File(TEST_JOURNAL + ".idx").delete();
+    }
+
+    private static SalesJournal.Record sale(long time) {
+        List<Item> lines = new ArrayList<Item>();
+        lines.add(new Item(1000, "Potato", 1.50f, 1));
+        return new SalesJournal.Record(SalesJournal.SALE, 0, "register-1", "110002", time, lines, 1.5, 0, 0.09, 1.59);
+    }
+
+    //one sale a minute
+    private void writeSales(int count) {
+        for (int i = 0; i < count; i++)
+            journal.append(sale(i*MINUTE));
+    }
+
+    private List<Long> timesBetween(long from, long to) {
+        List<Long> times = new ArrayList<Long>();
+        SalesIndex.forEachBetween(TEST_JOURNAL, from, to, record -> times.add(record.getTime()));
+        return times;
+    }
+
+    @Test
+    public void testIndexIsKeptOnAppend() {
+        writeSales(95);
+        assertEquals(10*16, new File(TEST_JOURNAL + ".idx").length()); //records 0, 10, ..., 90
+    }
+
+    @Test
+    public void testRange() {
+        writeSales(200);
+        List<Long> times = timesBetween(60*MINUTE, 75*MINUTE);
+        assertEquals(15, times.size());
+        assertEquals(60*MINUTE, (long) times.get(0));
+        assertEquals(74*MINUTE, (long) times.get(14));
+        assertEquals(5, timesBetween(195*MINUTE, 1000*MINUTE).size());
+        assertEquals(3, timesBetween(-MINUTE, 3*MINUTE).size());
+        assertTrue(timesBetween(500*MINUTE, 600*MINUTE).isEmpty());
+    }
+
+    @Test
+    public void testStartsNearTheRange() {
+        writeSales(200);
+        SalesIndex index = new SalesIndex(TEST_JOURNAL);
+        long start = index.startOffset(105*MINUTE);
+        assertTrue(start > 0);
+        List<Long> first = new ArrayList<Long>();
+        try (SalesJournal.Reader reader = new SalesJournal.Reader(TEST_JOURNAL, start))
+        {
+            first.add(reader.next().getTime());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        assertEquals(100*MINUTE, (long) first.get(0));
+    }
+
+    @Test
+    public void testTimesNeverGoBackwards() {
+        journal.append(sale(10*MINUTE));
+        journal.append(sale(5*MINUTE)); //a register whose clock is behind
+        assertEquals(2, timesBetween(10*MINUTE, 11*MINUTE).size());
+    }
+
+    @Test
+    public void testLostIndexIsRebuilt() {
+        writeSales(50);
+        new File(TEST_JOURNAL + ".idx").delete();
+        journal.append(sale(50*MINUTE));
+        assertEquals(6*16, new File(TEST_JOURNAL + ".idx").length());
+        assertEquals(11, timesBetween(40*MINUTE, 60*MINUTE).size());
+    }
+
+    @Test
+    public void testStaleIndexIsIgnored() throws IOException {
+        writeSales(50);
+        new File(TEST_JOURNAL).delete();
+        SalesJournal replaced = new SalesJournal(TEST_JOURNAL);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(TEST_JOURNAL + ".idx", true)))
+        {
+            out.writeLong(45*MINUTE); //points past the new journal
+            out.writeLong(100000);
+        }
+        for (int i = 0; i < 20; i++)
+            replaced.append(sale(i*MINUTE));
+        assertEquals(10, timesBetween(10*MINUTE, 20*MINUTE).size());
+    }
+
+    @Test
+    public void testMissingJournal() {
+        assertEquals(0, SalesIndex.forEachBetween("Database/nonexistentJournal.bin", 0, Long.MAX_VALUE, record -> { }));
+    }
+}
@@ -0,0 +1,168 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SalesJournalTest {
+
+    private static final String TEST_JOURNAL = "Database/testSalesJournal.bin";
+    private static final String TEST_TEXT_LOG = "Database/testSaleInvoiceRecord.txt";
+    private SalesJournal journal;
+
+    @Before
+    public void setUp() {
+        new File("Database").mkdir();
+        journal = new SalesJournal(TEST_JOURNAL);
+    }
+
+    @After
+    public void tearDown() {
+        new File(TEST_JOURNAL).delete();
+        new File(TEST_JOURNAL + ".lock").delete();
+        new File(TEST_TEXT_LOG).delete();
+    }
+
+    private static SalesJournal.Record sale(long time, double total) {
+        List<Item> lines = new ArrayList<Item>();
+        lines.add(new Item(1000, "Potato", 1.50f, 2));
+        lines.add(new Item(1001, "Chicken Breast", 4.25f, 1));
+        return new SalesJournal.Record(SalesJournal.SALE, 0, "register-2", "110002", time, lines, 7.25, 0, total - 7.25, total);
+    }
+
+    private List<SalesJournal.Record> readAll(String file) {
+        List<SalesJournal.Record> records = new ArrayList<SalesJournal.Record>();
+        SalesJournal.forEach(file, records::add);
+        return records;
+    }
+
+    @Test
+    public void testAppendAndRead() {
+        assertEquals(1, journal.append(sale(1000L, 7.69)));
+        assertEquals(2, journal.append(sale(2000L, 7.69)));
+
+        List<SalesJournal.Record> records = readAll(TEST_JOURNAL);
+        assertEquals(2, records.size());
+        SalesJournal.Record record = records.get(1);
+        assertEquals(2, record.getTransactionId());
+        assertEquals("register-2", record.getRegister());
+        assertEquals("110002", record.getCashier());
+        assertEquals(2000L, record.getTime());
+        assertEquals(2, record.getLines().size());
+        assertEquals("Chicken Breast", record.getLines().get(1).getItemName());
+        assertEquals(4.25f, record.getLines().get(1).getPrice(), 0.0001);
+        assertEquals(7.69, record.getTotal(), 0.0001);
+    }
+
+    @Test
+    public void testNumberingContinuesAcrossRegisters() {
+        journal.append(sale(1000L, 7.69));
+        SalesJournal other = new SalesJournal(TEST_JOURNAL); //another register on the same file
+        assertEquals(2, other.append(sale(2000L, 7.69)));
+        assertEquals(3, journal.append(sale(3000L, 7.69)));
+    }
+
+    @Test
+    public void testTornRecordIsDiscarded() throws IOException {
+        journal.append(sale(1000L, 7.69));
+        long good = new File(TEST_JOURNAL).length();
+        journal.append(sale(2000L, 7.69));
+        try (FileChannel channel = FileChannel.open(new File(TEST_JOURNAL).toPath(), StandardOpenOption.WRITE))
+        {
+            channel.truncate(good + 10); //crashed in the middle of the second record
+        }
+        assertEquals(1, readAll(TEST_JOURNAL).size());
+
+        SalesJournal restarted = new SalesJournal(TEST_JOURNAL);
+        assertEquals(2, restarted.append(sale(3000L, 7.69)));
+        List<SalesJournal.Record> records = readAll(TEST_JOURNAL);
+        assertEquals(2, records.size());
+        assertEquals(3000L, records.get(1).getTime());
+    }
+
+    @Test
+    public void testCorruptRecordIsSkipped() throws IOException {
+        journal.append(sale(1000L, 7.69));
+        journal.append(sale(2000L, 7.69));
+        try (RandomAccessFile file = new RandomAccessFile(TEST_JOURNAL, "rw"))
+        {
+            file.seek(20);
+            file.write(0x7f); //flips a byte of the first payload
+        }
+        try (SalesJournal.Reader reader = new SalesJournal.Reader(TEST_JOURNAL))
+        {
+            SalesJournal.Record record = reader.next();
+            assertNotNull(record);
+            assertEquals(2000L, record.getTime());
+            assertEquals(1, reader.damaged());
+            assertNull(reader.next());
+            assertEquals(new File(TEST_JOURNAL).length(), reader.position());
+        }
+    }
+
+    @Test
+    public void testCorruptRecordKeepsLaterRecords() throws IOException {
+        journal.append(sale(1000L, 7.69));
+        journal.append(sale(2000L, 7.69));
+        journal.append(sale(3000L, 7.69));
+        try (RandomAccessFile file = new RandomAccessFile(TEST_JOURNAL, "rw"))
+        {
+            file.seek(20);
+            file.write(0x7f);
+        }
+        SalesJournal restarted = new SalesJournal(TEST_JOURNAL);
+        assertEquals(4, restarted.append(sale(4000L, 7.69)));
+        List<SalesJournal.Record> records = readAll(TEST_JOURNAL);
+        assertEquals(3, records.size());
+        assertEquals(2000L, records.get(0).getTime());
+        assertEquals(4000L, records.get(2).getTime());
+    }
+
+    @Test
+    public void testConvertLegacy() throws Exception {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_TEXT_LOG)));
+        out.println("2016-03-01 10:15:00.000");
+        out.println("1000 Potato 2 3.0");
+        out.println("1001 Chicken Breast 1 4.25");
+        out.println("Total with tax: 7.685");
+        out.println("2016-03-01 10:20:00.000");
+        out.println("1002 Cut off by a crash 1 1.0");
+        out.println("2099-01-01 00:00:00.000");
+        out.println("1000 Potato 1 1.5");
+        out.println("Total with tax: 1.59");
+        out.close();
+
+        journal.append(sale(dateFormat.parse("2098-12-31 00:00:00.000").getTime(), 7.69));
+        assertEquals(1, journal.convertLegacy(TEST_TEXT_LOG)); //the 2099 sale is already in the journal
+
+        List<SalesJournal.Record> records = readAll(TEST_JOURNAL);
+        assertEquals(2, records.size());
+        SalesJournal.Record legacy = records.get(0);
+        assertEquals(0, legacy.getTransactionId());
+        assertEquals(dateFormat.parse("2016-03-01 10:15:00.000").getTime(), legacy.getTime());
+        assertEquals(Arrays.asList("Potato", "Chicken Breast"),
+                     Arrays.asList(legacy.getLines().get(0).getItemName(), legacy.getLines().get(1).getItemName()));
+        assertEquals(1.5f, legacy.getLines().get(0).getPrice(), 0.0001);
+        assertEquals(7.25, legacy.getSubtotal(), 0.0001);
+        assertEquals(7.685, legacy.getTotal(), 0.0001);
+        assertEquals(0.435, legacy.getTax(), 0.001);
+
+        assertEquals(0, journal.convertLegacy(TEST_TEXT_LOG)); //nothing older than the journal is left
+        assertEquals(2, journal.append(sale(3000L, 7.69))); //numbering survives the rewrite
+    }
+
+    @Test
+    public void testMissingTextLog() {
+        assertEquals(-1, journal.convertLegacy("Database/nonexistentInvoiceRecord.txt"));
+    }
+}
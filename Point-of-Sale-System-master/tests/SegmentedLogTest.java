@@ -0,0 +1,233 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedLogTest {
+
+    private static final String TEST_LOG = "Database/segmentedLog.txt";
+    private static final long HOUR = 3600000L;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private SegmentedLog log;
+
+    @Before
+    public void setUp() {
+        new File("Database").mkdir();
+        tearDown();
+        log = new SegmentedLog(TEST_LOG);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = new File("Database").listFiles((directory, name) -> name.startsWith("segmentedLog.txt"));
+        if (files != null)
+            for (File file : files)
+                file.delete();
+    }
+
+    //a sale in the invoice record format
+    private void writeSale(long time, int amount) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(TEST_LOG, true))) {
+            out.println(dateFormat.format(new Date(time)));
+            out.println("1000 Potato " + amount + " " + 1.5*amount);
+            out.println("Total with tax: " + 1.59*amount);
+        }
+    }
+
+    private List<String> lines(InputStream in) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
+            String line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        }
+        return lines;
+    }
+
+    @Test
+    public void testRotatesWhenTooLarge() throws IOException {
+        log.setLimits(200, Long.MAX_VALUE);
+        long start = System.currentTimeMillis();
+        int rotations = 0;
+        for (int i = 1; i <= 10; i++) {
+            writeSale(start + i, i);
+            if (log.rotateIfNeeded())
+                rotations++;
+        }
+        assertTrue(rotations >= 2);
+        assertEquals(rotations, log.segments().size());
+        assertEquals("segmentedLog.txt.000001", log.segments().get(0).getName());
+        assertTrue(new File(TEST_LOG + ".000001").exists());
+    }
+
+    @Test
+    public void testRotatesWhenTooOld() throws IOException {
+        log.setLimits(Long.MAX_VALUE, 12*HOUR);
+        long now = System.currentTimeMillis();
+        writeSale(now - HOUR, 1);
+        assertFalse(log.rotateIfNeeded());
+        log = new SegmentedLog(TEST_LOG);
+        log.setLimits(Long.MAX_VALUE, 12*HOUR);
+        new File(TEST_LOG).delete();
+        writeSale(now - 13*HOUR, 1);
+        writeSale(now, 2);
+        assertTrue(log.rotateIfNeeded());
+        assertFalse(new File(TEST_LOG).exists());
+        assertFalse(log.rotateIfNeeded());
+    }
+
+    @Test
+    public void testCompressedSegmentsAreDated() throws IOException {
+        writeSale(1000*HOUR, 1);
+        writeSale(1001*HOUR, 2);
+        assertTrue(log.rotate());
+        assertEquals(1, log.compressSealed());
+        SegmentedLog.Segment segment = log.segments().get(0);
+        assertTrue(segment.isCompressed());
+        assertFalse(new File(TEST_LOG + ".000001").exists());
+        assertEquals(1000*HOUR, segment.getFirstTime());
+        assertEquals(1001*HOUR, segment.getLastTime());
+        assertEquals(0, log.compressSealed());
+    }
+
+    @Test
+    public void testCompressionLeavesAnotherProcessTempAlone() throws IOException {
+        writeSale(1000*HOUR, 1);
+        assertTrue(log.rotate());
+        File other = new File(TEST_LOG + ".000001.gz.tmp"); //being written by another register
+        try (FileOutputStream out = new FileOutputStream(other)) {
+            out.write(1);
+        }
+        assertEquals(1, log.compressSealed());
+        assertTrue(log.segments().get(0).isCompressed());
+        assertEquals(1, other.length());
+        File[] temps = new File("Database").listFiles((directory, name) -> name.startsWith("segmentedLog.txt") && name.endsWith(".tmp"));
+        assertEquals(1, temps.length); //its own was moved in
+    }
+
+    @Test
+    public void testRotationKeepsUnlistedSegment() throws IOException {
+        //sealed by a rotation that stopped before the manifest was written
+        writeSale(1000*HOUR, 1);
+        new File(TEST_LOG).renameTo(new File(TEST_LOG + ".000001"));
+        writeSale(1001*HOUR, 2);
+        assertTrue(log.rotate());
+        assertEquals("segmentedLog.txt.000002", log.segments().get(0).getName());
+        assertEquals("1000 Potato 1 1.5", lines(new FileInputStream(TEST_LOG + ".000001")).get(1));
+    }
+
+    @Test
+    public void testListedSegmentWithoutFileIsSkipped() throws IOException {
+        //listed by a rotation that stopped before the log was renamed
+        try (PrintWriter out = new PrintWriter(new FileWriter(TEST_LOG + ".manifest"))) {
+            out.println("segmentedLog.txt.000001 -1 -1");
+        }
+        writeSale(1000*HOUR, 1);
+        assertEquals(3, lines(log.open()).size());
+        assertTrue(log.rotate());
+        assertEquals(1, log.segments().size()); //the entry went, its number is free again
+        assertEquals(3, lines(log.open()).size());
+    }
+
+    @Test
+    public void testRetentionDeletesOldestSegments() throws IOException {
+        for (int i = 1; i <= 4; i++) {
+            writeSale(1000*HOUR + i, i);
+            log.rotate();
+        }
+        log.compressSealed();
+        writeSale(1000*HOUR + 5, 5);
+        log.rotate(); //not compressed yet, kept
+        log.setRetention(2, 0, 0);
+        assertEquals(3, log.expire());
+        assertEquals(2, log.segments().size());
+        assertEquals("segmentedLog.txt.000004", log.segments().get(0).getName());
+        assertFalse(new File(TEST_LOG + ".000001.gz").exists());
+        assertTrue(new File(TEST_LOG + ".000004.gz").exists());
+        assertEquals(0, log.expire());
+    }
+
+    @Test
+    public void testRetentionByAgeAndSize() throws IOException {
+        long now = System.currentTimeMillis();
+        writeSale(now - 48*HOUR, 1);
+        log.rotate();
+        writeSale(now - HOUR, 2);
+        log.rotate();
+        writeSale(now, 3);
+        log.rotate();
+        log.compressSealed();
+        log.setRetention(0, 0, 24*HOUR);
+        assertEquals(1, log.expire());
+        log.setRetention(0, log.segments().get(1).getFile().length(), 0);
+        assertEquals(1, log.expire());
+        assertEquals("segmentedLog.txt.000003", log.segments().get(0).getName());
+    }
+
+    @Test
+    public void testReadsAcrossSegments() throws IOException {
+        writeSale(1000*HOUR, 1);
+        log.rotate();
+        log.compressSealed();
+        writeSale(1001*HOUR, 2);
+        log.rotate(); //sealed but not yet compressed
+        writeSale(1002*HOUR, 3);
+        List<String> lines = lines(log.open());
+        assertEquals(9, lines.size());
+        assertEquals("1000 Potato 1 1.5", lines.get(1));
+        assertEquals("1000 Potato 2 3.0", lines.get(4));
+        assertEquals("1000 Potato 3 4.5", lines.get(7));
+    }
+
+    @Test
+    public void testSkipsSegmentsOutsideTheRange() throws IOException {
+        writeSale(1000*HOUR, 1);
+        log.rotate();
+        writeSale(1001*HOUR, 2);
+        log.rotate();
+        log.compressSealed();
+        writeSale(1002*HOUR, 3);
+        List<String> lines = lines(log.open(1001*HOUR, 1002*HOUR));
+        assertEquals(6, lines.size());
+        assertEquals("1000 Potato 2 3.0", lines.get(1));
+    }
+
+    @Test
+    public void testLegacyConversionReadsSegments() throws IOException {
+        writeSale(1000*HOUR, 1);
+        log.rotate();
+        log.compressSealed();
+        writeSale(1001*HOUR, 2);
+        List<SalesJournal.Record> records = SalesJournal.readLegacy(TEST_LOG, Long.MAX_VALUE);
+        assertEquals(2, records.size());
+        assertEquals(2, records.get(1).getLines().get(0).getAmount());
+    }
+
+    @Test
+    public void testShiftsAcrossSegments() throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(TEST_LOG))) {
+            out.println("Debra Cooper (110002 Cashier) logs into POS System. Time: 2024-03-01 09:00:00.000");
+        }
+        log.rotate();
+        log.compressSealed();
+        try (PrintWriter out = new PrintWriter(new FileWriter(TEST_LOG))) {
+            out.println("Debra Cooper (110002 Cashier) logs out of POS System. Time: 2024-03-01 17:00:00.000");
+        }
+        ShiftReport report = ShiftReport.load(TEST_LOG);
+        assertEquals(1, report.getShifts().size());
+        assertEquals(8.0, report.hours("110002", Long.MIN_VALUE, Long.MAX_VALUE), 0.001);
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testMissingLog() throws IOException {
+        log.open();
+    }
+}
@@ -0,0 +1,150 @@
+import org.junit.Before;
+import org.junit.Test;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SessionManagerTest {
+
+    private SessionManager sessions;
+    private Employee cashier;
+    private Employee admin;
+
+    @Before
+    public void setUp() {
+        sessions = new SessionManager(60000);
+        cashier = new Employee("110002", "Debra Cooper", "Cashier", "lehigh2016");
+        admin = new Employee("110001", "Harry Larry", "Admin", "1");
+    }
+
+    @Test
+    public void testOpenAndGet() {
+        SessionManager.Session session = sessions.open(cashier, "register-1");
+        assertSame(session, sessions.get(session.getToken()));
+        assertEquals("110002", session.getUsername());
+        assertEquals("Debra Cooper", session.getName());
+        assertEquals("Cashier", session.getPosition());
+        assertEquals("register-1", session.getRegister());
+    }
+
+    @Test
+    public void testSessionsDoNotInterfere() {
+        SessionManager.Session first = sessions.open(cashier, "register-1");
+        SessionManager.Session second = sessions.open(admin, "register-2");
+        assertNotEquals(first.getToken(), second.getToken());
+        POS sale = new POS();
+        first.setTransaction(sale);
+        assertSame(sale, sessions.get(first.getToken()).getTransaction());
+        assertNull(sessions.get(second.getToken()).getTransaction());
+        assertEquals(1, sessions.sessionsOf("register-2").size());
+    }
+
+    @Test
+    public void testClose() {
+        SessionManager.Session session = sessions.open(cashier, "register-1");
+        assertTrue(sessions.close(session.getToken()));
+        assertFalse(sessions.close(session.getToken()));
+        assertNull(sessions.get(session.getToken()));
+        assertNull(sessions.get(null));
+    }
+
+    @Test
+    public void testIdleSessionsExpire() throws Exception {
+        SessionManager shortLived = new SessionManager(20);
+        SessionManager.Session session = shortLived.open(cashier, "register-1");
+        Thread.sleep(50);
+        assertNull(shortLived.get(session.getToken()));
+        assertEquals(0, shortLived.size());
+    }
+
+    @Test
+    public void testWorkingSessionDoesNotExpire() throws Exception {
+        SessionManager shortLived = new SessionManager(100);
+        SessionManager.Session session = shortLived.open(cashier, "register-1");
+        POS sale = new POS();
+        sale.session = session;
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(40);
+            sale.removeItems(1000); //an action on the cart, found or not
+        }
+        assertEquals(0, shortLived.expireIdle());
+        assertSame(session, shortLived.get(session.getToken()));
+    }
+
+    @Test
+    public void testOpeningSweepsOnlyIdleSessions() throws Exception {
+        SessionManager shortLived = new SessionManager(100);
+        SessionManager.Session idle = shortLived.open(cashier, "register-1");
+        Thread.sleep(150);
+        SessionManager.Session fresh = shortLived.open(admin, "register-2");
+        assertEquals(1, shortLived.size());
+        assertNull(shortLived.get(idle.getToken()));
+        assertNotNull(shortLived.get(fresh.getToken()));
+        assertEquals(0, shortLived.expireIdle());
+    }
+
+    @Test
+    public void testLogInOpensAndLogOutClosesSession() {
+        POSSystem system = new POSSystem();
+        system.employees.add(new Employee("testUser", "Test User", "Cashier", "correctPassword"));
+        assertEquals(1, system.logIn("testUser", "correctPassword"));
+        SessionManager.Session session = system.getSession();
+        assertNotNull(session);
+        assertSame(session, SessionManager.getInstance().get(session.getToken()));
+
+        POSSystem resumed = new POSSystem(session);
+        POS sale = new POS();
+        resumed.setTransaction(sale);
+        assertSame(sale, session.getTransaction());
+
+        resumed.logOut("Cashier");
+        assertNull(SessionManager.getInstance().get(session.getToken()));
+        assertNull(resumed.getSession());
+    }
+
+    private static long logOuts(String username) throws IOException {
+        AuditLogger.getInstance().flush();
+        File log = new File(AuditLogger.logFile);
+        if (!log.exists())
+            return 0;
+        return Files.readAllLines(log.toPath()).stream()
+            .filter(line -> line.contains("(" + username + " ") && line.contains("logs out")).count();
+    }
+
+    @Test
+    public void testClosedSessionIsLoggedOutOnce() throws IOException {
+        POSSystem system = new POSSystem();
+        system.register = "register-7";
+        system.employees.add(new Employee("closedUser", "Closed User", "Cashier", "correctPassword"));
+        assertEquals(1, system.logIn("closedUser", "correctPassword"));
+        assertEquals("register-7", system.getSession().getRegister());
+        assertTrue(system.touch());
+        long before = logOuts("closedUser");
+
+        SessionManager.getInstance().close(system.getSession().getToken()); //as the session manager does when it expires
+        assertFalse(system.touch());
+        assertNull(system.getSession());
+        system.logOut("Cashier");
+        system.logOut("Cashier");
+        assertEquals(before, logOuts("closedUser"));
+    }
+
+    @Test
+    public void testLogOutTwiceWritesOneLogOut() throws IOException {
+        POSSystem system = new POSSystem();
+        system.employees.add(new Employee("twiceUser", "Twice User", "Cashier", "correctPassword"));
+        assertEquals(1, system.logIn("twiceUser", "correctPassword"));
+        long before = logOuts("twiceUser");
+        system.logOut("Cashier");
+        system.logOut("Cashier");
+        assertEquals(before + 1, logOuts("twiceUser"));
+    }
+}
@@ -0,0 +1,120 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShiftReportTest {
+
+    private static final String TEST_LOG = "Database/shiftLogfile.txt";
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    @Before
+    public void setUp() throws IOException {
+        new File("Database").mkdir();
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_LOG)));
+        out.println("Debra Cooper (110002 Cashier) logs into POS System. Time: 2024-03-01 09:00:00.000");
+        out.println("Harry Larry (110001 Admin) logs into POS System. Time: 2024-03-01 10:00:00.000");
+        out.println("Debra Cooper (110002 Cashier) logs out of POS System. Time: 2024-03-01 17:00:00.000");
+        out.println("not a log line");
+        out.println("Harry Larry (110001 Admin) logs out of POS System. Time: 2024-03-01 12:30:00.000");
+        out.println("Harry Larry (110001 Admin) logs out of POS System. Time: 2024-03-01 13:00:00.000");
+        out.println("Debra Cooper (110002 Cashier) logs into POS System. Time: 2024-03-02 22:00:00.000");
+        out.println("Debra Cooper (110002 Cashier) logs out of POS System. Time: 2024-03-03 02:00:00.000");
+        out.close();
+    }
+
+    @After
+    public void tearDown() {
+        new File(TEST_LOG).delete();
+    }
+
+    private static long time(String text) {
+        return LocalDateTime.parse(text, TIME).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @Test
+    public void testParse() {
+        ShiftReport.Event event = ShiftReport.parse("Debra Cooper (110002 Cashier) logs out of POS System. Time: 2024-03-01 17:00:00.000");
+        assertNotNull(event);
+        assertEquals("110002", event.username);
+        assertEquals("Debra Cooper", event.name);
+        assertFalse(event.login);
+        assertEquals(time("2024-03-01 17:00:00.000"), event.time);
+        assertNull(ShiftReport.parse("Debra Cooper (110002 Cashier) logs into POS System. Time: yesterday"));
+    }
+
+    @Test
+    public void testPairsShifts() {
+        ShiftReport report = ShiftReport.load(TEST_LOG);
+        assertEquals(3, report.getShifts().size());
+        assertEquals(1, report.getUnmatched()); //second logout of 110001
+        assertEquals(1, report.getSkippedLines());
+    }
+
+    @Test
+    public void testHoursPerEmployee() {
+        ShiftReport report = ShiftReport.load(TEST_LOG);
+        Map<String, Long> worked = report.millisByEmployee(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(12 * 3600000L, (long) worked.get("110002"));
+        assertEquals(2.5, report.hours("110001", Long.MIN_VALUE, Long.MAX_VALUE), 0.0001);
+        //clipped to the first of March
+        assertEquals(8.0, report.hours("110002", time("2024-03-01 00:00:00.000"), time("2024-03-02 00:00:00.000")), 0.0001);
+    }
+
+    @Test
+    public void testOnShiftAt() {
+        ShiftReport report = ShiftReport.load(TEST_LOG);
+        assertEquals(2, report.onShiftAt(time("2024-03-01 11:00:00.000")).size());
+        List<ShiftReport.Shift> evening = report.onShiftAt(time("2024-03-01 16:00:00.000"));
+        assertEquals(1, evening.size());
+        assertEquals("Debra Cooper", evening.get(0).getName());
+        assertEquals(1, report.onShiftAt(time("2024-03-03 01:00:00.000")).size()); //overnight shift
+        assertTrue(report.onShiftAt(time("2024-03-01 17:00:00.000")).isEmpty());
+    }
+
+    @Test
+    public void testOngoingShift() throws IOException {
+        long now = System.currentTimeMillis();
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_LOG, true)));
+        out.println("Seth Moss (110004 Cashier) logs into POS System. Time: "
+            + TIME.format(LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(now - 60000), ZoneId.systemDefault())));
+        out.close();
+        ShiftReport report = ShiftReport.load(TEST_LOG);
+        List<ShiftReport.Shift> on = report.onShiftAt(now - 30000);
+        assertEquals(1, on.size());
+        assertTrue(on.get(0).isOngoing());
+    }
+
+    @Test
+    public void testChunkBoundaries() throws IOException {
+        //enough lines to span several chunks
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_LOG)));
+        LocalDateTime start = LocalDateTime.of(2020, 1, 1, 8, 0);
+        for (int day = 0; day < 60000; day++) {
+            LocalDateTime in = start.plusHours(day * 24L);
+            out.println("Debra Cooper (110002 Cashier) logs into POS System. Time: " + TIME.format(in));
+            out.println("Debra Cooper (110002 Cashier) logs out of POS System. Time: " + TIME.format(in.plusHours(8)));
+        }
+        out.close();
+        ShiftReport report = ShiftReport.load(TEST_LOG);
+        assertEquals(60000, report.getShifts().size());
+        assertEquals(0, report.getUnmatched());
+        assertEquals(0, report.getSkippedLines());
+    }
+
+    @Test
+    public void testMissingLog() {
+        assertNull(ShiftReport.load("Database/nonexistentLog.txt"));
+    }
+}
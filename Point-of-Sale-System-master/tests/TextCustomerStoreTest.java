@@ -0,0 +1,96 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TextCustomerStoreTest {
+
+    private TextCustomerStore store;
+    private static final String TEST_USER_DB = "Database/storeUserDatabase.txt";
+
+    @Before
+    public void setUp() throws IOException {
+        new File("Database").mkdir();
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(TEST_USER_DB)));
+        out.println("User Database");
+        out.println("1234567890 1022,12/30/22,false");
+        out.close();
+        store = new TextCustomerStore(TEST_USER_DB);
+    }
+
+    @After
+    public void tearDown() {
+        new File(TEST_USER_DB).delete();
+        new File(TEST_USER_DB + ".lock").delete();
+    }
+
+    @Test
+    public void testFind() {
+        assertEquals("1234567890 1022,12/30/22,false", store.find(1234567890L));
+        assertNull(store.find(9876543210L));
+    }
+
+    @Test
+    public void testFindMissingFile() {
+        assertNull(new TextCustomerStore("Database/nonexistent.txt").find(1234567890L));
+    }
+
+    @Test
+    public void testCreate() {
+        assertTrue(store.create(9876543210L));
+        assertEquals("9876543210", store.find(9876543210L));
+    }
+
+    @Test
+    public void testUpdate() {
+        assertTrue(store.update(1234567890L, line -> line + " 1023,12/31/22,false"));
+        assertEquals("1234567890 1022,12/30/22,false 1023,12/31/22,false", store.find(1234567890L));
+    }
+
+    @Test
+    public void testUpdateUnknownCustomer() {
+        assertFalse(store.update(9876543210L, line -> line + " 1023,12/31/22,false"));
+    }
+
+    @Test
+    public void testUpdateMissingFileDoesNotCreateIt() {
+        TextCustomerStore missing = new TextCustomerStore("Database/nonexistent.txt");
+        assertFalse(missing.update(1234567890L, line -> line));
+        assertFalse(new File("Database/nonexistent.txt").exists());
+        new File("Database/nonexistent.txt.lock").delete();
+    }
+
+    @Test
+    public void testConcurrentRegistersDoNotLoseRentals() throws InterruptedException {
+        int registers = 50;
+        for (int r = 0; r < registers; r++)
+            store.create(5550000000L + r);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < registers; r++) {
+            final long phone = 5550000000L + r;
+            final int id = r;
+            Thread register = new Thread(() -> {
+                // Each register adds to its own customer and to the shared one
+                store.update(phone, line -> line + " " + id + ",12/30/22,false");
+                store.update(1234567890L, line -> line + " " + id + ",12/30/22,false");
+                store.find(1234567890L);
+            });
+            threads.add(register);
+            register.start();
+        }
+        for (Thread register : threads)
+            register.join();
+
+        assertEquals(registers + 2, store.find(1234567890L).split(" ").length);
+        for (int r = 0; r < registers; r++)
+            assertEquals(2, store.find(5550000000L + r).split(" ").length);
+    }
+}
@@ -0,0 +1,173 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransactionIndexTest {
+
+    private static final String TEST_JOURNAL = "Database/receiptSalesJournal.bin";
+    private SalesJournal journal;
+    private String journalFile;
+
+    @Before
+    public void setUp() {
+        new File("Database").mkdir();
+        journal = new SalesJournal(TEST_JOURNAL);
+        journalFile = SalesJournal.journalFile;
+    }
+
+    @After
+    public void tearDown() {
+        SalesJournal.journalFile = journalFile;
+        for (String suffix : new String[] {"", ".lock", ".idx", ".tid"})
+            new File(TEST_JOURNAL + suffix).delete();
+    }
+
+    private static SalesJournal.Record sale(int potatoes) {
+        List<Item> lines = new ArrayList<Item>();
+        lines.add(new Item(1000, "Potato", 1.50f, potatoes));
+        lines.add(new Item(1001, "Chicken Breast", 4.00f, 1));
+        double subtotal = 1.5*potatoes + 4.0;
+        return new SalesJournal.Record(SalesJournal.SALE, 0, "register-1", "110002", System.currentTimeMillis(),
+                                       lines, subtotal, 0, subtotal*0.06, subtotal*1.06);
+    }
+
+    @Test
+    public void testFind() {
+        for (int i = 1; i <= 50; i++)
+            assertEquals(i, journal.append(sale(i)));
+        TransactionIndex index = TransactionIndex.forFile(TEST_JOURNAL);
+        SalesJournal.Record record = index.find(37);
+        assertNotNull(record);
+        assertEquals(37, record.getTransactionId());
+        assertEquals(37, record.getLines().get(0).getAmount());
+        assertNull(index.find(51));
+        assertNull(index.find(0));
+    }
+
+    @Test
+    public void testIndexFromAnotherJournalIsRebuilt() {
+        for (int i = 1; i <= 5; i++)
+            journal.append(sale(i));
+        new File(TEST_JOURNAL).delete();
+        SalesJournal replaced = new SalesJournal(TEST_JOURNAL);
+        replaced.append(sale(9));
+        replaced.append(sale(8));
+        TransactionIndex index = TransactionIndex.forFile(TEST_JOURNAL);
+        assertEquals(8, index.find(2).getLines().get(0).getAmount());
+        assertNull(index.find(4));
+    }
+
+    @Test
+    public void testReceipt() {
+        journal.append(sale(2));
+        String receipt = TransactionIndex.receipt(TransactionIndex.forFile(TEST_JOURNAL).find(1));
+        assertTrue(receipt.startsWith("Receipt number: 1\n"));
+        assertTrue(receipt.contains("Chicken Breast"));
+        assertTrue(receipt.contains("Total: $7.42"));
+    }
+
+    @Test
+    public void testReturnAgainstReceipt() {
+        SalesJournal.journalFile = TEST_JOURNAL;
+        journal.append(sale(2));
+        POH returns = new POH();
+        returns.databaseItem.add(new Item(1000, "Potato", 1.50f, 100));
+        returns.databaseItem.add(new Item(1002, "Onion", 0.75f, 100));
+        assertFalse(returns.setReceipt(7));
+        assertTrue(returns.setReceipt(1));
+
+        assertTrue(returns.enterItem(1000, 1));
+        assertTrue(returns.enterItem(1000, 1));
+        assertFalse(returns.enterItem(1000, 1)); //only two were bought
+        assertFalse(returns.enterItem(1002, 1)); //not on the receipt
+    }
+
+    @Test
+    public void testEmptySaleIsNotJournaled() {
+        SalesJournal.journalFile = TEST_JOURNAL;
+        POS sale = new POS();
+        sale.recoverable = false;
+        sale.endPOS("Database/itemDatabase.txt");
+        assertEquals(0, sale.transactionId);
+        assertNull(TransactionIndex.forFile(TEST_JOURNAL).find(1));
+    }
+
+    @Test
+    public void testTenderIsAppendedWithTheTransaction() {
+        SalesJournal.Record sale = sale(2);
+        SalesJournal.Record tender = new SalesJournal.Record(SalesJournal.CARD, 0, "register-1", "110002", sale.getTime(),
+                                                             new ArrayList<Item>(), 7.42, 0, 0, 7.42, 0).paying(sale);
+        journal.append(sale(1));
+        List<SalesJournal.Record> batch = new ArrayList<SalesJournal.Record>();
+        batch.add(sale);
+        batch.add(tender);
+        assertEquals(2, journal.append(batch));
+        assertEquals(2, sale.getTransactionId());
+        SalesJournal.Record paid = TransactionIndex.forFile(TEST_JOURNAL).find(3);
+        assertEquals(SalesJournal.CARD, paid.getType());
+        assertEquals(2, paid.getReference());
+    }
+
+    @Test
+    public void testEarlierReturnsAreNotRefundedAgain() {
+        SalesJournal.journalFile = TEST_JOURNAL;
+        journal.append(sale(3));
+        journal.append(sale(5)); //another sale in between
+        List<Item> lines = new ArrayList<Item>();
+        lines.add(new Item(1000, "Potato", 1.50f, 2));
+        journal.append(new SalesJournal.Record(SalesJournal.RETURN, 0, "register-1", "110002", System.currentTimeMillis(),
+                                               lines, 3, 0, 0, 3, 1, 0));
+        assertEquals(1, TransactionIndex.forFile(TEST_JOURNAL).returnsOf(1).size());
+        assertTrue(TransactionIndex.forFile(TEST_JOURNAL).returnsOf(2).isEmpty());
+
+        POH returns = new POH();
+        returns.databaseItem.add(new Item(1000, "Potato", 1.50f, 100));
+        returns.databaseItem.add(new Item(1001, "Chicken Breast", 4.00f, 100));
+        assertTrue(returns.setReceipt(1));
+        assertFalse(returns.enterItem(1000, 2)); //two of the three came back already
+        assertTrue(returns.enterItem(1000, 1));
+        assertTrue(returns.enterItem(1001, 1));
+    }
+
+    private static SalesJournal.Record refund(long sale, int potatoes) {
+        List<Item> lines = new ArrayList<Item>();
+        lines.add(new Item(1000, "Potato", 1.50f, potatoes));
+        return new SalesJournal.Record(SalesJournal.RETURN, 0, "register-1", "110002", System.currentTimeMillis(),
+                                       lines, 1.5*potatoes, 0, 0, 1.5*potatoes, sale, 0);
+    }
+
+    @Test
+    public void testReturnsAreLinkedInTheIndex() throws IOException {
+        journal.append(sale(3));
+        journal.append(refund(1, 1));
+        journal.append(sale(5));
+        journal.append(refund(3, 2));
+        journal.append(refund(1, 1));
+        TransactionIndex index = TransactionIndex.forFile(TEST_JOURNAL);
+        List<SalesJournal.Record> returns = index.returnsOf(1);
+        assertEquals(2, returns.size());
+        assertEquals(5, returns.get(0).getTransactionId()); //latest first
+        assertEquals(2, returns.get(1).getTransactionId());
+        assertEquals(1, index.returnsOf(3).size());
+
+        try (RandomAccessFile file = new RandomAccessFile(TEST_JOURNAL + ".tid", "rw")) {
+            file.writeLong(0); //stopped before the header moved on, the records are indexed again
+        }
+        journal.append(sale(1));
+        assertEquals(2, index.returnsOf(1).size());
+        assertEquals(1, index.returnsOf(3).size());
+
+        index.rebuild();
+        assertEquals(2, index.returnsOf(1).size());
+        assertTrue(index.returnsOf(6).isEmpty());
+    }
+}
@@ -0,0 +1,192 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransactionServiceTest {
+
+    private static final String TEST_DATABASE = "Database/serviceItemDatabase.txt";
+    private static final String TEST_COUPONS = "Database/serviceCoupons.txt";
+    private static final String TEST_JOURNAL = "Database/serviceSalesJournal.bin";
+    private String itemDatabase, couponNumber, journalFile;
+    private TransactionService service;
+
+    @Before
+    public void setUp() throws IOException {
+        new File("Database").mkdir();
+        itemDatabase = TransactionService.itemDatabase;
+        couponNumber = PointOfSale.couponNumber;
+        journalFile = SalesJournal.journalFile;
+        TransactionService.itemDatabase = TEST_DATABASE;
+        PointOfSale.couponNumber = TEST_COUPONS;
+        SalesJournal.journalFile = TEST_JOURNAL;
+        try (PrintWriter out = new PrintWriter(new FileWriter(TEST_DATABASE))) {
+            out.println("1000 Potato 1.0 500");
+            out.println("1001 Chicken 4.0 100");
+        }
+        try (PrintWriter out = new PrintWriter(new FileWriter(TEST_COUPONS))) {
+            out.println("C001");
+        }
+        service = new TransactionService("register-2", "110002");
+    }
+
+    @After
+    public void tearDown() {
+        TransactionService.itemDatabase = itemDatabase;
+        PointOfSale.couponNumber = couponNumber;
+        SalesJournal.journalFile = journalFile;
+        new File(TEST_DATABASE).delete();
+        new File(TEST_COUPONS).delete();
+        for (String suffix : new String[] {"", ".lock", ".idx", ".tid", ".totals"})
+            new File(TEST_JOURNAL + suffix).delete();
+    }
+
+    private int stock(int itemID) {
+        List<Item> items = new ArrayList<Item>();
+        Inventory.getInstance().accessInventory(TEST_DATABASE, items);
+        for (Item item : items)
+            if (item.getItemID() == itemID)
+                return item.getAmount();
+        return -1;
+    }
+
+    private static List<SalesJournal.Record> journal() {
+        List<SalesJournal.Record> records = new ArrayList<SalesJournal.Record>();
+        SalesJournal.forEach(TEST_JOURNAL, records::add);
+        return records;
+    }
+
+    @Test
+    public void testSale() {
+        long sale = service.start(TransactionService.SALE, 0);
+        assertTrue(sale > 0);
+        assertTrue(service.scan(sale, 1000, 10));
+        assertTrue(service.scan(sale, 1001, 1));
+        assertFalse(service.scan(sale, 1234, 1));
+        assertTrue(service.remove(sale, 1001));
+        assertEquals(10, service.total(sale), 0.001);
+        assertTrue(service.applyCoupon(sale, "C001"));
+        assertFalse(service.tender(sale, SalesJournal.CARD, "1234"));
+        assertTrue(service.tender(sale, SalesJournal.CARD, "4111111111111111"));
+
+        TransactionService.Receipt receipt = service.commit(sale);
+        assertNotNull(receipt);
+        assertEquals(9*1.06, receipt.getTotal(), 0.001);
+        assertEquals(1, receipt.getLines().size());
+        assertEquals(490, stock(1000));
+        assertEquals(0, service.openTransactions());
+
+        List<SalesJournal.Record> records = journal();
+        assertEquals(2, records.size());
+        assertEquals(SalesJournal.SALE, records.get(0).getType());
+        assertEquals("register-2", records.get(0).getRegister());
+        assertEquals(1, records.get(0).getCouponDiscount(), 0.001);
+        assertEquals(SalesJournal.CARD, records.get(1).getType());
+        assertEquals(receipt.getTransactionId(), records.get(1).getReference());
+    }
+
+    @Test
+    public void testRegisterTempFileIsLeftAlone() throws IOException {
+        String tempFile = PointOfSale.tempFile;
+        PointOfSale.tempFile = "Database/serviceTemp.txt";
+        try {
+            try (PrintWriter out = new PrintWriter(new FileWriter(PointOfSale.tempFile))) {
+                out.println("Database/itemDatabase.txt");
+                out.println("Sale");
+                out.println("1001 2");
+            }
+            long sale = service.start(TransactionService.SALE, 0);
+            service.scan(sale, 1000, 1);
+            service.scan(sale, 1001, 1);
+            assertTrue(service.remove(sale, 1001));
+            assertTrue(service.remove(sale, 1000));
+            service.scan(sale, 1000, 1);
+            service.tender(sale, SalesJournal.CASH, null);
+            assertNotNull(service.commit(sale));
+
+            List<String> lines = new ArrayList<String>();
+            try (BufferedReader in = new BufferedReader(new FileReader(PointOfSale.tempFile))) {
+                for (String line; (line = in.readLine()) != null; )
+                    lines.add(line);
+            }
+            assertEquals(3, lines.size());
+            assertEquals("1001 2", lines.get(2));
+        } finally {
+            new File(PointOfSale.tempFile).delete();
+            PointOfSale.tempFile = tempFile;
+        }
+    }
+
+    @Test
+    public void testCommitNeedsATenderAndItems() {
+        long sale = service.start(TransactionService.SALE, 0);
+        assertTrue(service.tender(sale, SalesJournal.CASH, null));
+        assertNull(service.commit(sale)); //empty cart
+        long other = service.start(TransactionService.SALE, 0);
+        service.scan(other, 1000, 1);
+        assertNull(service.commit(other)); //no tender
+        assertTrue(service.cancel(other));
+        assertNull(service.commit(other));
+        assertEquals(-1, service.start("Layaway", 0));
+        assertTrue(journal().isEmpty());
+    }
+
+    @Test
+    public void testRefundAgainstReceipt() {
+        long sale = service.start(TransactionService.SALE, 0);
+        service.scan(sale, 1000, 3);
+        service.tender(sale, SalesJournal.CASH, null);
+        long receipt = service.commit(sale).getTransactionId();
+
+        long refund = service.start(TransactionService.RETURN, 0);
+        assertTrue(service.setReceipt(refund, receipt));
+        assertFalse(service.scan(refund, 1001, 1)); //not on the receipt
+        assertTrue(service.scan(refund, 1000, 2));
+        TransactionService.Receipt done = service.commit(refund);
+        assertEquals(2, done.getTotal(), 0.001);
+
+        List<SalesJournal.Record> records = journal();
+        SalesJournal.Record returned = records.get(2);
+        assertEquals(SalesJournal.RETURN, returned.getType());
+        assertEquals(receipt, returned.getReference());
+        assertEquals(SalesJournal.CASH, records.get(3).getType());
+        assertEquals(-2, records.get(3).getTotal(), 0.001);
+    }
+
+    @Test
+    public void testConcurrentSalesKeepTheInventory() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> done = new ArrayList<Future<Integer>>();
+        for (int thread = 0; thread < 4; thread++) {
+            done.add(threads.submit(() -> {
+                int sold = 0;
+                for (int i = 0; i < 25; i++) {
+                    long sale = service.start(TransactionService.SALE, 0);
+                    service.scan(sale, 1000, 1);
+                    service.tender(sale, SalesJournal.CASH, null);
+                    if (service.commit(sale) != null)
+                        sold++;
+                }
+                return sold;
+            }));
+        }
+        int sold = 0;
+        for (Future<Integer> future : done)
+            sold += future.get();
+        threads.shutdown();
+        assertEquals(100, sold);
+        assertEquals(400, stock(1000));
+        assertEquals(200, journal().size());
+    }
+}
@@ -0,0 +1,177 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.*;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ZReportTest {
+
+    private static final String TEST_JOURNAL = "Database/zReportSalesJournal.bin";
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+    private SalesJournal journal;
+    private long opening;
+    private String journalFile;
+
+    @Before
+    public void setUp() {
+        new File("Database").mkdir();
+        journal = new SalesJournal(TEST_JOURNAL);
+        journalFile = SalesJournal.journalFile;
+        opening = DAY.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() + 9*3600000L;
+    }
+
+    @After
+    public void tearDown() {
+        SalesJournal.journalFile = journalFile;
+        for (String suffix : new String[] {"", ".lock", ".idx", ".tid"})
+            new File(TEST_JOURNAL + suffix).delete();
+    }
+
+    private static SalesJournal.Record record(byte type, long time, int potatoes, double subtotal, double coupon,
+                                              double tax, double total, long reference) {
+        List<Item> lines = new ArrayList<Item>();
+        if (potatoes > 0)
+            lines.add(new Item(1000, "Potato", 1.50f, potatoes));
+        return new SalesJournal.Record(type, 0, "register-1", "110002", time, lines, subtotal, coupon, tax, total, reference);
+    }
+
+    @Test
+    public void testClosingTotals() {
+        List<SalesJournal.Record> day = new ArrayList<SalesJournal.Record>();
+        day.add(record(SalesJournal.SALE, opening - 86400000L, 1, 1.5, 0, 0.09, 1.59, 0)); //the day before
+        day.add(record(SalesJournal.SALE, opening, 10, 15, 1.5, 0.81, 14.31, 0));
+        day.add(record(SalesJournal.CASH, opening + 1, 0, 14.31, 0, 0, 14.31, 2));
+        day.add(record(SalesJournal.SALE, opening + 60000, 2, 3, 0, 0.18, 3.18, 0));
+        day.add(record(SalesJournal.CARD, opening + 60001, 0, 3.18, 0, 0, 3.18, 4));
+        day.add(record(SalesJournal.RENTAL, opening + 120000, 1, 20, 0, 1.2, 21.2, 0));
+        day.add(record(SalesJournal.CARD, opening + 120001, 0, 21.2, 0, 0, 21.2, 6));
+        day.add(record(SalesJournal.RENTAL_RETURN, opening + 180000, 1, 0, 0, 0, 3, 0));
+        day.add(record(SalesJournal.CASH, opening + 180001, 0, 3, 0, 0, 3, 8));
+        day.add(record(SalesJournal.RETURN, opening + 240000, 2, 3, 0, 0, 3, 2));
+        day.add(record(SalesJournal.CASH, opening + 240001, 0, -3, 0, 0, -3, 10));
+        day.add(record(SalesJournal.SALE, opening + 86400000L, 1, 1.5, 0, 0.09, 1.59, 0)); //the day after
+        assertEquals(12, journal.append(day));
+
+        ZReport report = ZReport.forDay(TEST_JOURNAL, DAY);
+        assertNotNull(report);
+        assertEquals(2, report.getSales());
+        assertEquals(12, report.getUnits());
+        assertEquals(18, report.getGrossSales(), 0.001);
+        assertEquals(1.5, report.getCouponDiscount(), 0.001);
+        assertEquals(16.5, report.getNetSales(), 0.001);
+        assertEquals(0.99 + 1.2, report.getTax(), 0.001);
+        assertEquals(1, report.getRentals());
+        assertEquals(20, report.getRentalIncome(), 0.001);
+        assertEquals(3, report.getLateFees(), 0.001);
+        assertEquals(1, report.getReturns());
+        assertEquals(3, report.getRefunds(), 0.001);
+        assertEquals(3, report.getCashTenders());
+        assertEquals(14.31, report.getCash(), 0.001);
+        assertEquals(24.38, report.getCard(), 0.001);
+        assertEquals(report.getNetTotal(), report.getCash() + report.getCard(), 0.001);
+        assertEquals(2, report.getFirstTransaction());
+        assertEquals(11, report.getLastTransaction());
+        assertTrue(report.format().contains("Net total:               $38.69"));
+    }
+
+    @Test
+    public void testEmptyDay() {
+        ZReport report = ZReport.forDay(TEST_JOURNAL, DAY);
+        assertNotNull(report);
+        assertEquals(0, report.getSales());
+        assertEquals(0, report.getNetTotal(), 0);
+    }
+
+    @Test
+    public void testBusyDay() {
+        List<SalesJournal.Record> day = new ArrayList<SalesJournal.Record>();
+        for (int i = 0; i < 50000; i++) {
+            day.add(record(SalesJournal.SALE, opening + i, 2, 3, 0, 0.18, 3.18, 0));
+            if (day.size() == 10000) {
+                journal.append(day);
+                day.clear();
+            }
+        }
+        long start = System.currentTimeMillis();
+        ZReport report = ZReport.forDay(TEST_JOURNAL, DAY);
+        long millis = System.currentTimeMillis() - start;
+        assertEquals(50000, report.getSales());
+        assertEquals(159000, report.getNetTotal(), 0.01);
+        assertTrue("took " + millis + " ms", millis < 5000); //well under a second on a register, slack for test machines
+    }
+
+    @Test
+    public void testTenderIsRecordedWithCheckout() {
+        SalesJournal.journalFile = TEST_JOURNAL;
+        POH refund = new POH();
+        refund.totalPrice = 5;
+        refund.returnSale = true;
+        refund.setTender(SalesJournal.CASH);
+        refund.transactionId = refund.journal(record(SalesJournal.RETURN, System.currentTimeMillis(), 1, 5, 0, 0, 5, 0));
+        assertTrue(refund.transactionId > 0);
+        ZReport report = ZReport.forDay(TEST_JOURNAL, LocalDate.now());
+        assertEquals(-5, report.getCash(), 0.001);
+        assertEquals(0, report.getNetTotal() - report.getCash(), 0.001);
+    }
+
+    @Test
+    public void testDamagedRecordIsSkippedAndReported() throws IOException {
+        journal.append(record(SalesJournal.SALE, opening, 1, 1.5, 0, 0.09, 1.59, 0));
+        long damaged = new File(TEST_JOURNAL).length();
+        journal.append(record(SalesJournal.SALE, opening + 60000, 2, 3, 0, 0.18, 3.18, 0));
+        journal.append(record(SalesJournal.SALE, opening + 120000, 4, 6, 0, 0.36, 6.36, 0));
+        try (RandomAccessFile file = new RandomAccessFile(TEST_JOURNAL, "rw")) {
+            file.seek(damaged + 20);
+            file.write(0x7f); //flips a byte of the second payload
+        }
+        ZReport report = ZReport.forDay(TEST_JOURNAL, DAY);
+        assertEquals(2, report.getSales()); //the one after it is still read
+        assertEquals(7.95, report.getNetTotal(), 0.001);
+        assertEquals(1, report.getDamagedRecords());
+        assertTrue(report.format().contains("Damaged records: 1"));
+    }
+
+    @Test
+    public void testRentalReturnTendersTheLateFees() throws IOException {
+        String rentals = "Database/zReportRentalDatabase.txt";
+        String customers = "Database/zReportUserDatabase.txt";
+        try (PrintWriter out = new PrintWriter(new FileWriter(rentals))) {
+            out.println("1000 TheGodfather 5.0 10");
+        }
+        try (PrintWriter out = new PrintWriter(new FileWriter(customers))) {
+            out.println("Phone number rentedItem1ID,rentedItem1Date,returned1Bool");
+            out.println("1234567890 1000,01/10/20,false");
+        }
+        CustomerStore store = Management.getCustomerStore();
+        Management.setCustomerStore(new TextCustomerStore(customers));
+        SalesJournal.journalFile = TEST_JOURNAL;
+        try {
+            POH rentalReturn = new POH(1234567890L);
+            rentalReturn.returnSale = false;
+            rentalReturn.recoverable = false;
+            rentalReturn.inventory.accessInventory(rentals, rentalReturn.databaseItem);
+            assertTrue(rentalReturn.enterItem(1000, 1));
+            double fees = LateFeeAssessment.lateFee(1, 5.0f, Management.daysSince("01/10/20"));
+            assertEquals(fees, rentalReturn.checkoutTotal(), 0.001); //the rental itself was paid when it went out
+            rentalReturn.setTender(SalesJournal.CASH);
+            rentalReturn.endPOS(rentals);
+
+            ZReport report = ZReport.forDay(TEST_JOURNAL, LocalDate.now());
+            assertEquals(1, report.getRentalReturns());
+            assertEquals(fees, report.getLateFees(), 0.001);
+            assertEquals(fees, report.getCash(), 0.001);
+            assertEquals(report.getNetTotal(), report.getCash() + report.getCard(), 0.001);
+        } finally {
+            Management.setCustomerStore(store);
+            new File(rentals).delete();
+            new File(customers).delete();
+        }
+    }
+}